@@ -11,6 +11,7 @@ export type ChallengeResponse = {
 
 export type LoginRequest = {
   address: string;
+  challenge: string;
   signature: string;
 }
 
@@ -45,6 +46,7 @@ export class AdManageApiClient {
           {
             headers: {
               'X-ETH-ADDRESS': req.address,
+              'X-AUTH-CHALLENGE': req.challenge,
               'X-AUTH-SIGNATURE': req.signature
             },
           }
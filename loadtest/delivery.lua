@@ -0,0 +1,8 @@
+-- wrk script posting delivery requests for random inventories
+-- usage: wrk -t8 -c10000 -d60s --latency -s loadtest/delivery.lua http://localhost:8080/delivery
+local inventoryCount = tonumber(os.getenv("INVENTORY_COUNT") or "100")
+
+request = function()
+  local body = string.format('{"inventoryId":%d}', math.random(1, inventoryCount))
+  return wrk.format("POST", nil, { ["Content-Type"] = "application/json" }, body)
+end
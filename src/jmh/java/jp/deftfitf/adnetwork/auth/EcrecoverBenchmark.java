@@ -0,0 +1,111 @@
+package jp.deftfitf.adnetwork.auth;
+
+import java.nio.charset.StandardCharsets;
+import java.security.SignatureException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import jp.deftfitf.adnetwork.auth.EcrecoverService.SignedMessage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.web3j.crypto.ECKeyPair;
+import org.web3j.crypto.Hash;
+import org.web3j.crypto.Keys;
+import org.web3j.crypto.Sign;
+import org.web3j.crypto.Sign.SignatureData;
+import org.web3j.utils.Numeric;
+
+/**
+ * Compares {@link EcrecoverService} with the former recovery path, which went through
+ * {@link Sign#signedPrefixedMessageToKey} and compared hex Strings of the address.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EcrecoverBenchmark {
+
+  private static final int BATCH_SIZE = 64;
+
+  private final EcrecoverService ecrecoverService = new EcrecoverService();
+  private final List<SignedMessage> messages = new ArrayList<>();
+  private int next;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    final var random = new Random(0);
+    for (int idx = 0; idx < BATCH_SIZE; idx++) {
+      final var privateKey = new byte[32];
+      random.nextBytes(privateKey);
+      privateKey[0] &= 0x7f;
+      privateKey[0] |= 0x01;
+      final var keyPair = ECKeyPair.create(privateKey);
+      final var message = "challenge-" + idx;
+      final var data = Sign.signPrefixedMessage(message.getBytes(StandardCharsets.UTF_8), keyPair);
+      final var signature = new byte[65];
+      System.arraycopy(data.getR(), 0, signature, 0, 32);
+      System.arraycopy(data.getS(), 0, signature, 32, 32);
+      signature[64] = data.getV()[0];
+      messages.add(SignedMessage.of(Keys.toChecksumAddress(Keys.getAddress(keyPair)), message,
+          Numeric.toHexString(signature)));
+    }
+  }
+
+  @Benchmark
+  public boolean legacy() throws SignatureException {
+    final var message = nextMessage();
+    return legacyVerify(message.getAddress(), message.getMessage(), message.getSignature());
+  }
+
+  @Benchmark
+  public SignedMessage verify() {
+    final var message = nextMessage();
+    ecrecoverService.verify(message.getAddress(), message.getMessage(), message.getSignature());
+    return message;
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(BATCH_SIZE)
+  public List<Boolean> verifyAll() {
+    return ecrecoverService.verifyAll(messages);
+  }
+
+  private SignedMessage nextMessage() {
+    next = (next + 1) % BATCH_SIZE;
+    return messages.get(next);
+  }
+
+  private static boolean legacyVerify(String address, String message, String signature)
+      throws SignatureException {
+    final var signatureBytes = Numeric.hexStringToByteArray(signature);
+    var v = signatureBytes[64];
+    if (v < 27) {
+      v += 27;
+    }
+    final var signatureData = new SignatureData(v,
+        Arrays.copyOfRange(signatureBytes, 0, 32),
+        Arrays.copyOfRange(signatureBytes, 32, 64));
+    final var recoveredKey = Sign.signedPrefixedMessageToKey(
+        message.getBytes(StandardCharsets.UTF_8), signatureData);
+    final var hashedKeyBytes = Numeric.hexStringToByteArray(
+        Hash.sha3(Numeric.toHexStringNoPrefix(recoveredKey)));
+    final var recoveredAddress = "0x" + Numeric.toHexStringNoPrefix(
+        Arrays.copyOfRange(hashedKeyBytes, 12, 32)).toLowerCase();
+    return recoveredAddress.equals(address.toLowerCase());
+  }
+
+}
@@ -0,0 +1,125 @@
+package jp.deftfitf.adnetwork.controller;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import jp.deftfitf.adnetwork.config.ModuleConfig.CustomClock;
+import jp.deftfitf.adnetwork.crypto.AdFormatDecryptor;
+import jp.deftfitf.adnetwork.interfaces.AdBatchRequest;
+import jp.deftfitf.adnetwork.interfaces.AdRequest;
+import jp.deftfitf.adnetwork.metrics.DeliveryMetrics;
+import jp.deftfitf.adnetwork.metrics.ReloadMetrics;
+import jp.deftfitf.adnetwork.repository.AdFormatCacheRepository;
+import jp.deftfitf.adnetwork.repository.InventoryCacheRepository;
+import jp.deftfitf.adnetwork.selection.PriceWeightedSelectionStrategy;
+import jp.deftfitf.adnetwork.setting.DeliverySetting;
+import jp.deftfitf.adnetwork.setting.EthRpcSetting;
+import jp.deftfitf.adnetwork.setting.InventoryCacheSetting;
+import jp.deftfitf.adnetwork.setting.MetricsSetting;
+import jp.deftfitf.adnetwork.setting.ShardSetting;
+import jp.deftfitf.adnetwork.shard.DeliveryForwarder;
+import jp.deftfitf.adnetwork.shard.InventoryShard;
+import jp.deftfitf.adnetwork.support.SyntheticAdNetwork;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * /delivery and /delivery/batch handlers over a warm cache of N inventories with M ads each,
+ * without the servlet stack. Selection is price weighted as configured by default.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(8)
+@Fork(1)
+public class DeliveryControllerBenchmark {
+
+  private static final long NOW = 1646112949;
+  private static final int SLOTS_PER_PAGE = 8;
+
+  @Param({"1000"})
+  public int inventoryCount;
+  @Param({"10", "100"})
+  public int adsPerInventory;
+
+  private ExecutorService rpcExecutor;
+  private AdFormatDecryptor adFormatDecryptor;
+  private InventoryCacheRepository inventoryCacheRepository;
+  private DeliveryController deliveryController;
+
+  @Setup(Level.Trial)
+  public void setUp() throws Exception {
+    final var network = SyntheticAdNetwork.generate(inventoryCount, adsPerInventory, NOW, 0);
+    // records delivery metrics as the application does
+    final var meterRegistry = new SimpleMeterRegistry();
+    rpcExecutor = Executors.newSingleThreadExecutor();
+    final var setting = new InventoryCacheSetting();
+    setting.setSnapshotEnabled(false);
+    final var ethRpcSetting = new EthRpcSetting();
+    ethRpcSetting.setBatchSize(100);
+    adFormatDecryptor = new AdFormatDecryptor(setting);
+    adFormatDecryptor.init();
+    final var adFormatCacheRepository = new AdFormatCacheRepository(setting);
+    // a single node, which owns every inventory
+    final var shardSetting = new ShardSetting();
+    final var inventoryShard = new InventoryShard(shardSetting);
+    inventoryCacheRepository = new InventoryCacheRepository(
+        Clock.fixed(Instant.ofEpochSecond(NOW), ZoneId.systemDefault()),
+        network.batchReader(rpcExecutor, 0), network.getDeliveryPrivateKeyRepository(),
+        network.storageRepository(), adFormatCacheRepository, adFormatDecryptor,
+        new PriceWeightedSelectionStrategy(), setting, ethRpcSetting,
+        new ReloadMetrics(meterRegistry), inventoryShard);
+    inventoryCacheRepository.init();
+    inventoryCacheRepository.reload();
+    final var deliveryMetrics = new DeliveryMetrics(meterRegistry, new MetricsSetting());
+    deliveryController = new DeliveryController(inventoryCacheRepository,
+        adFormatCacheRepository, new CustomClock(), new DeliverySetting(), deliveryMetrics,
+        inventoryShard, new DeliveryForwarder(shardSetting, deliveryMetrics), shardSetting);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    inventoryCacheRepository.shutdown();
+    adFormatDecryptor.shutdown();
+    rpcExecutor.shutdownNow();
+  }
+
+  @Benchmark
+  public byte[] delivery() {
+    return deliveryController.delivery(new AdRequest(randomInventoryId()), null).getBody();
+  }
+
+  @Benchmark
+  public byte[] deliveryBatch() {
+    final var slots = new ArrayList<AdRequest>(SLOTS_PER_PAGE);
+    for (int idx = 0; idx < SLOTS_PER_PAGE; idx++) {
+      slots.add(new AdRequest(randomInventoryId()));
+    }
+    return deliveryController.deliveryBatch(new AdBatchRequest(slots, true), null);
+  }
+
+  private long randomInventoryId() {
+    return ThreadLocalRandom.current().nextLong(1, inventoryCount + 1);
+  }
+
+}
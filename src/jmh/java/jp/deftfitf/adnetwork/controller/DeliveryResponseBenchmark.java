@@ -0,0 +1,81 @@
+package jp.deftfitf.adnetwork.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import jp.deftfitf.adnetwork.dto.AdFormatV1Dto;
+import jp.deftfitf.adnetwork.dto.DeliverableAd;
+import jp.deftfitf.adnetwork.interfaces.AdResponse;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Writes a chosen ad to the response stream by serializing {@link AdResponse} per request, as
+ * /delivery used to, and by copying the body encoded at reload time. Run with {@code -prof gc} to
+ * compare allocation rates; SampleTime reports the p99 per operation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(8)
+@Fork(1)
+public class DeliveryResponseBenchmark {
+
+  private static final int AD_COUNT = 100;
+
+  private final ObjectMapper objectMapper = new ObjectMapper();
+  private final List<DeliverableAd> ads = new ArrayList<>();
+
+  @State(Scope.Thread)
+  public static class Response {
+
+    // the servlet response buffer is reused between requests
+    final ByteArrayOutputStream outputStream = new ByteArrayOutputStream(1024);
+  }
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    for (long adId = 0; adId < AD_COUNT; adId++) {
+      ads.add(DeliverableAd.of(1, adId, new AdFormatV1Dto(1L,
+          "0x9F3868ce2fc5e535da82fa1cC3A779EACf75285E", 1646036100L, 1646727300L, 1500L,
+          "Test Ad " + adId, "This is test ads", "http://localhost:3000/ads/create",
+          "http://localhost:8080/public/images/0x9F3868ce2fc5e535da82fa1cC3A779EACf75285E-"
+              + adId + ".jpeg",
+          "Ysr0rDNlZBpO/poiWz4WyQ==")));
+    }
+  }
+
+  @Benchmark
+  public int jackson(Response response) throws IOException {
+    final var ad = ads.get(ThreadLocalRandom.current().nextInt(AD_COUNT));
+    response.outputStream.reset();
+    objectMapper.writeValue(response.outputStream,
+        AdResponse.of(true, ad.getAdId(), ad.getAdFormatV1Dto()));
+    return response.outputStream.size();
+  }
+
+  @Benchmark
+  public int preSerialized(Response response) throws IOException {
+    final var ad = ads.get(ThreadLocalRandom.current().nextInt(AD_COUNT));
+    response.outputStream.reset();
+    response.outputStream.write(ad.getResponseBody());
+    return response.outputStream.size();
+  }
+
+}
@@ -0,0 +1,126 @@
+package jp.deftfitf.adnetwork.controller;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import jp.deftfitf.adnetwork.image.ImageTranscoder;
+import jp.deftfitf.adnetwork.metrics.ImageMetrics;
+import jp.deftfitf.adnetwork.repository.StaticObjectRepository;
+import jp.deftfitf.adnetwork.repository.StorageRepository;
+import jp.deftfitf.adnetwork.setting.ImageSetting;
+import jp.deftfitf.adnetwork.setting.StorageSetting;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.mock.web.MockServletContext;
+import org.springframework.util.FileSystemUtils;
+import org.springframework.web.servlet.HandlerMapping;
+import org.springframework.web.servlet.resource.ResourceHttpRequestHandler;
+
+/**
+ * Uploaded objects served by {@link StorageController} against the generic resource handler which
+ * served them before, with and without a validator of the client. Responses are written to memory,
+ * so sendfile isn't exercised here; compare it over a real connector with wrk.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(4)
+@Fork(1)
+public class StorageControllerBenchmark {
+
+  private static final String NAME = "0x0-bench.png";
+
+  @Param({"4096", "262144"})
+  public int objectSize;
+  @Param({"false", "true"})
+  public boolean conditional;
+
+  private Path baseDirectory;
+  private StorageRepository storageRepository;
+  private StorageController storageController;
+  private ResourceHttpRequestHandler resourceHandler;
+  private String etag;
+  private long lastModified;
+
+  @Setup(Level.Trial)
+  public void setUp() throws Exception {
+    baseDirectory = Files.createTempDirectory("storage-controller-benchmark");
+    final var setting = new StorageSetting();
+    setting.setBaseDirectory(baseDirectory.toString());
+    storageRepository = new StorageRepository(setting);
+    storageRepository.init();
+    final var bytes = new byte[objectSize];
+    new Random(0).nextBytes(bytes);
+    Files.write(baseDirectory.resolve("images").resolve(NAME), bytes);
+
+    final var imageMetrics = new ImageMetrics(new SimpleMeterRegistry());
+    storageController = new StorageController(storageRepository,
+        new StaticObjectRepository(storageRepository, setting),
+        new ImageTranscoder(storageRepository, new ImageSetting(), imageMetrics), imageMetrics,
+        setting);
+    resourceHandler = new ResourceHttpRequestHandler();
+    resourceHandler.setLocations(List.of(new FileSystemResource(baseDirectory + "/")));
+    resourceHandler.setServletContext(new MockServletContext());
+    resourceHandler.afterPropertiesSet();
+
+    final var response = new MockHttpServletResponse();
+    storageController.serve("images", NAME, null, request(), response);
+    etag = response.getHeader("ETag");
+    lastModified = Files.getLastModifiedTime(baseDirectory.resolve("images").resolve(NAME))
+        .toMillis();
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    storageRepository.shutdown();
+    FileSystemUtils.deleteRecursively(baseDirectory);
+  }
+
+  @Benchmark
+  public MockHttpServletResponse storageController() throws Exception {
+    final var response = new MockHttpServletResponse();
+    storageController.serve("images", NAME, null, request(), response);
+    return response;
+  }
+
+  @Benchmark
+  public MockHttpServletResponse resourceHandler() throws Exception {
+    final var request = request();
+    request.setAttribute(HandlerMapping.PATH_WITHIN_HANDLER_MAPPING_ATTRIBUTE, "images/" + NAME);
+    final var response = new MockHttpServletResponse();
+    resourceHandler.handleRequest(request, response);
+    return response;
+  }
+
+  private MockHttpServletRequest request() {
+    final var request = new MockHttpServletRequest("GET", "/public/images/" + NAME);
+    if (conditional && etag != null) {
+      // the resource handler validates by Last-Modified only
+      request.addHeader("If-None-Match", etag);
+      request.addHeader("If-Modified-Since", lastModified);
+    }
+    return request;
+  }
+
+}
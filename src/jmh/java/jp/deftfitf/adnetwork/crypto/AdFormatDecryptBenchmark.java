@@ -0,0 +1,118 @@
+package jp.deftfitf.adnetwork.crypto;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.nio.charset.StandardCharsets;
+import java.security.PrivateKey;
+import java.security.spec.MGF1ParameterSpec;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.OAEPParameterSpec;
+import javax.crypto.spec.PSource;
+import javax.crypto.spec.SecretKeySpec;
+import jp.deftfitf.adnetwork.crypto.AdFormatDecryptor.Envelope;
+import jp.deftfitf.adnetwork.dto.AdFormatV1Dto;
+import jp.deftfitf.adnetwork.setting.InventoryCacheSetting;
+import jp.deftfitf.adnetwork.support.AdFormatV1Encoder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares {@link AdFormatDecryptor} with the former per-ad decode path of InventoryCacheRepository,
+ * which created ciphers for every ad and parsed the envelope through Strings.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AdFormatDecryptBenchmark {
+
+  private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+  private static final int GCM_IV_LENGTH = 12;
+  private static final int BULK_SIZE = 64;
+
+  private PrivateKey privateKey;
+  private String envelope;
+  private byte[] envelopeBytes;
+  private List<Envelope> envelopes;
+  private AdFormatDecryptor adFormatDecryptor;
+
+  @Setup(Level.Trial)
+  public void setUp() throws Exception {
+    final var keyPair = AdFormatV1Encoder.generateKeyPair();
+    privateKey = keyPair.getPrivate();
+    envelope = AdFormatV1Encoder.encode(keyPair.getPublic(), new AdFormatV1Dto(1L, "0x0",
+        1646036100L, 1646727300L, 1500L, "title", "description", "http://localhost/lp",
+        "http://localhost/image.png", "nonce"));
+    envelopeBytes = envelope.getBytes(StandardCharsets.UTF_8);
+    envelopes = new ArrayList<>();
+    for (int idx = 0; idx < BULK_SIZE; idx++) {
+      envelopes.add(Envelope.of(privateKey, envelopeBytes));
+    }
+
+    adFormatDecryptor = new AdFormatDecryptor(new InventoryCacheSetting());
+    adFormatDecryptor.init();
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    adFormatDecryptor.shutdown();
+  }
+
+  @Benchmark
+  public AdFormatV1Dto legacy() throws Exception {
+    return OBJECT_MAPPER.readValue(legacyDecode(privateKey, envelope), AdFormatV1Dto.class);
+  }
+
+  @Benchmark
+  public AdFormatV1Dto decryptor() throws Exception {
+    return adFormatDecryptor.decrypt(privateKey, envelopeBytes);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(BULK_SIZE)
+  public List<Optional<AdFormatV1Dto>> decryptorBulk() {
+    return adFormatDecryptor.decryptAll(envelopes);
+  }
+
+  private static String legacyDecode(PrivateKey privateKey, String formatV1Raw)
+      throws Exception {
+    final var elements = formatV1Raw.split(":");
+    final var decodedEncryptedKey =
+        Base64.getDecoder().decode(elements[1].getBytes(StandardCharsets.UTF_8));
+    final var ciphertext = Base64.getDecoder().decode(elements[2]);
+    final var iv = new GCMParameterSpec(128, ciphertext, 0, GCM_IV_LENGTH);
+
+    final var cipher = Cipher.getInstance("RSA/ECB/OAEPPadding");
+    cipher.init(Cipher.DECRYPT_MODE, privateKey, new OAEPParameterSpec(
+        "SHA-256", "MGF1",
+        new MGF1ParameterSpec("SHA-256"),
+        PSource.PSpecified.DEFAULT));
+    final var aesSecret = new SecretKeySpec(
+        Base64.getDecoder().decode(cipher.doFinal(decodedEncryptedKey)), "AES");
+
+    final var aesCipher = Cipher.getInstance("AES/GCM/NoPadding");
+    aesCipher.init(Cipher.DECRYPT_MODE, aesSecret, iv);
+    final var plainText =
+        aesCipher.doFinal(ciphertext, GCM_IV_LENGTH, ciphertext.length - GCM_IV_LENGTH);
+    return new String(plainText, StandardCharsets.UTF_8);
+  }
+
+}
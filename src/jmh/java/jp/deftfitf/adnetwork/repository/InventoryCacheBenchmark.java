@@ -0,0 +1,125 @@
+package jp.deftfitf.adnetwork.repository;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+import jp.deftfitf.adnetwork.crypto.AdFormatDecryptor;
+import jp.deftfitf.adnetwork.dto.DeliverableAd;
+import jp.deftfitf.adnetwork.metrics.ReloadMetrics;
+import jp.deftfitf.adnetwork.selection.UniformSelectionStrategy;
+import jp.deftfitf.adnetwork.setting.EthRpcSetting;
+import jp.deftfitf.adnetwork.setting.InventoryCacheSetting;
+import jp.deftfitf.adnetwork.setting.ShardSetting;
+import jp.deftfitf.adnetwork.shard.InventoryShard;
+import jp.deftfitf.adnetwork.support.SyntheticAdNetwork;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Reads of a warm cache holding N inventories with M ads each. {@code warmReload} reloads with
+ * every ad format already decrypted, so it measures the conversion of getAdsOf results and the
+ * swap rather than storage and decryption.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class InventoryCacheBenchmark {
+
+  private static final long NOW = 1646112949;
+  private static final int SLOTS_PER_PAGE = 8;
+
+  @Param({"1000"})
+  public int inventoryCount;
+  @Param({"10", "100"})
+  public int adsPerInventory;
+
+  private ExecutorService rpcExecutor;
+  private AdFormatDecryptor adFormatDecryptor;
+  private InventoryCacheRepository inventoryCacheRepository;
+
+  @Setup(Level.Trial)
+  public void setUp() throws Exception {
+    final var network = SyntheticAdNetwork.generate(inventoryCount, adsPerInventory, NOW, 0);
+    rpcExecutor = Executors.newSingleThreadExecutor();
+    final var setting = new InventoryCacheSetting();
+    setting.setSnapshotEnabled(false);
+    setting.setAdFormatCacheMaxEntries(inventoryCount * adsPerInventory);
+    final var ethRpcSetting = new EthRpcSetting();
+    ethRpcSetting.setBatchSize(100);
+    adFormatDecryptor = new AdFormatDecryptor(setting);
+    adFormatDecryptor.init();
+    inventoryCacheRepository = new InventoryCacheRepository(
+        Clock.fixed(Instant.ofEpochSecond(NOW), ZoneId.systemDefault()),
+        network.batchReader(rpcExecutor, 0), network.getDeliveryPrivateKeyRepository(),
+        network.storageRepository(), new AdFormatCacheRepository(setting), adFormatDecryptor,
+        new UniformSelectionStrategy(), setting, ethRpcSetting,
+        new ReloadMetrics(new SimpleMeterRegistry()),
+        new InventoryShard(new ShardSetting()));
+    inventoryCacheRepository.init();
+    // decrypts and caches every ad format
+    inventoryCacheRepository.reload();
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    inventoryCacheRepository.shutdown();
+    adFormatDecryptor.shutdown();
+    rpcExecutor.shutdownNow();
+  }
+
+  @Benchmark
+  public List<DeliverableAd> findBy() {
+    return inventoryCacheRepository.findBy(randomInventoryId());
+  }
+
+  @Benchmark
+  public Optional<DeliverableAd> select() {
+    return inventoryCacheRepository.select(randomInventoryId());
+  }
+
+  @Benchmark
+  public List<Optional<DeliverableAd>> selectAll() {
+    final var inventoryIds = LongStream.range(0, SLOTS_PER_PAGE)
+        .map(notUsed -> randomInventoryId())
+        .boxed()
+        .collect(Collectors.toList());
+    return inventoryCacheRepository.selectAll(inventoryIds, true);
+  }
+
+  @Benchmark
+  @BenchmarkMode(Mode.SingleShotTime)
+  @OutputTimeUnit(TimeUnit.MILLISECONDS)
+  @Warmup(iterations = 3)
+  @Measurement(iterations = 10)
+  public void warmReload() {
+    inventoryCacheRepository.reload();
+  }
+
+  private long randomInventoryId() {
+    return ThreadLocalRandom.current().nextLong(1, inventoryCount + 1);
+  }
+
+}
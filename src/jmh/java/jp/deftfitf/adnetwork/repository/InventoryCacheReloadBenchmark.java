@@ -0,0 +1,112 @@
+package jp.deftfitf.adnetwork.repository;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import jp.deftfitf.adnetwork.chain.AdNetworkBatchReader;
+import jp.deftfitf.adnetwork.crypto.AdFormatDecryptor;
+import jp.deftfitf.adnetwork.metrics.ReloadMetrics;
+import jp.deftfitf.adnetwork.selection.UniformSelectionStrategy;
+import jp.deftfitf.adnetwork.setting.EthRpcSetting;
+import jp.deftfitf.adnetwork.setting.InventoryCacheSetting;
+import jp.deftfitf.adnetwork.setting.ShardSetting;
+import jp.deftfitf.adnetwork.shard.InventoryShard;
+import jp.deftfitf.adnetwork.support.SyntheticAdNetwork;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cold reload time against the number of inventories. parallelism=1 and batchSize=1 corresponds to
+ * the former sequential reload.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class InventoryCacheReloadBenchmark {
+
+  private static final long NOW = 1646112949;
+
+  @Param({"100", "1000", "5000"})
+  public int inventoryCount;
+  @Param({"1"})
+  public int adsPerInventory;
+  @Param({"1", "16"})
+  public int parallelism;
+  @Param({"5"})
+  public long rpcLatencyMillis;
+  @Param({"1", "100"})
+  public int batchSize;
+
+  private final Clock clock = Clock.fixed(Instant.ofEpochSecond(NOW), ZoneId.systemDefault());
+  private SyntheticAdNetwork network;
+  private AdNetworkBatchReader adNetworkBatchReader;
+  private StorageRepository storageRepository;
+  private AdFormatDecryptor adFormatDecryptor;
+  private InventoryCacheRepository inventoryCacheRepository;
+  // stands in for the async executor of the rpc client
+  private ExecutorService rpcExecutor;
+
+  @Setup(Level.Trial)
+  public void setUpTrial() throws Exception {
+    rpcExecutor = Executors.newFixedThreadPool(parallelism);
+    network = SyntheticAdNetwork.generate(inventoryCount, adsPerInventory, NOW, 0);
+    // one round trip per JSON-RPC batch
+    adNetworkBatchReader = network.batchReader(rpcExecutor, rpcLatencyMillis);
+    storageRepository = network.storageRepository();
+  }
+
+  @Setup(Level.Invocation)
+  public void setUpInvocation() {
+    // start from an empty cache every time, so that every ad format is decrypted
+    final var setting = new InventoryCacheSetting();
+    setting.setReloadStorageParallelism(parallelism);
+    setting.setSnapshotEnabled(false);
+    setting.setReloadDecryptParallelism(parallelism);
+    setting.setReloadMaxInFlightInventories(parallelism * 4);
+    final var ethRpcSetting = new EthRpcSetting();
+    ethRpcSetting.setBatchSize(batchSize);
+    adFormatDecryptor = new AdFormatDecryptor(setting);
+    adFormatDecryptor.init();
+    inventoryCacheRepository = new InventoryCacheRepository(clock, adNetworkBatchReader,
+        network.getDeliveryPrivateKeyRepository(), storageRepository,
+        new AdFormatCacheRepository(setting), adFormatDecryptor, new UniformSelectionStrategy(),
+        setting, ethRpcSetting, new ReloadMetrics(new SimpleMeterRegistry()),
+        new InventoryShard(new ShardSetting()));
+    inventoryCacheRepository.init();
+  }
+
+  @TearDown(Level.Invocation)
+  public void tearDownInvocation() {
+    inventoryCacheRepository.shutdown();
+    adFormatDecryptor.shutdown();
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDownTrial() {
+    rpcExecutor.shutdownNow();
+  }
+
+  @Benchmark
+  public void reload() {
+    inventoryCacheRepository.reload();
+  }
+
+}
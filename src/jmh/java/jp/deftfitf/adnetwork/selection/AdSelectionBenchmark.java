@@ -0,0 +1,93 @@
+package jp.deftfitf.adnetwork.selection;
+
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import jp.deftfitf.adnetwork.dto.AdFormatV1Dto;
+import jp.deftfitf.adnetwork.dto.DeliverableAd;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Selection throughput under contention. {@code secureRandom} is the former selection through the
+ * shared SecureRandom bean. Thread counts can't be a JMH parameter, so {@link #main(String[])} runs
+ * the benchmark with 1 to 64 threads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AdSelectionBenchmark {
+
+  private static final int[] THREADS = {1, 4, 16, 64};
+
+  @Param({"10"})
+  public int adCount;
+
+  private final Random secureRandom = new SecureRandom();
+  private List<DeliverableAd> ads;
+  private AdSelector uniform;
+  private AdSelector priceWeighted;
+  private AdSelector roundRobin;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    ads = new ArrayList<>();
+    for (long adId = 0; adId < adCount; adId++) {
+      ads.add(DeliverableAd.of(1, adId, new AdFormatV1Dto(1L, "0x0", 0L, 0L, 100 * (adId + 1),
+          "title", "description", "http://localhost/lp", "http://localhost/image.png", "nonce")));
+    }
+    uniform = new UniformSelectionStrategy().prepare(ads);
+    priceWeighted = new PriceWeightedSelectionStrategy().prepare(ads);
+    roundRobin = new RoundRobinSelectionStrategy().prepare(ads);
+  }
+
+  @Benchmark
+  public DeliverableAd secureRandom() {
+    return ads.get(secureRandom.nextInt(ads.size()));
+  }
+
+  @Benchmark
+  public DeliverableAd uniform() {
+    return uniform.select();
+  }
+
+  @Benchmark
+  public DeliverableAd priceWeighted() {
+    return priceWeighted.select();
+  }
+
+  @Benchmark
+  public DeliverableAd roundRobin() {
+    return roundRobin.select();
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    for (final var threads : THREADS) {
+      new Runner(new OptionsBuilder()
+          .include(AdSelectionBenchmark.class.getSimpleName())
+          .threads(threads)
+          .output("build/results/jmh/ad-selection-" + threads + "-threads.txt")
+          .build())
+          .run();
+    }
+  }
+
+}
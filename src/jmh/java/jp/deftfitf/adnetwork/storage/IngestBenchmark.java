@@ -0,0 +1,122 @@
+package jp.deftfitf.adnetwork.storage;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import jp.deftfitf.adnetwork.repository.StorageRepository;
+import jp.deftfitf.adnetwork.setting.StorageSetting;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.BenchmarkParams;
+
+/**
+ * Uploads of images, a share of which repeat a few popular payloads. {@code ingest} stores them by
+ * content hash through {@link StorageRepository#ingest}, and {@code saveUnique} stores each upload
+ * under a new name as uploads were stored before. Each iteration uploads a fixed number of objects
+ * so that the disk doesn't fill up, and the bytes uploaded and stored are printed at the end.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, batchSize = 250)
+@Measurement(iterations = 5, batchSize = 250)
+@Threads(4)
+@Fork(1)
+public class IngestBenchmark {
+
+  private static final int POPULAR_PAYLOADS = 16;
+
+  @Param({"16384", "131072"})
+  public int objectSize;
+  /**
+   * Share of uploads repeating one of the popular payloads.
+   */
+  @Param({"0.0", "0.9"})
+  public double duplicateRatio;
+
+  private final AtomicLong uploadedBytes = new AtomicLong();
+  private final AtomicLong uniqueUploads = new AtomicLong();
+  private Path directory;
+  private StorageRepository storageRepository;
+  private byte[][] popularPayloads;
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+    directory = Files.createTempDirectory("ingest-benchmark");
+    final var setting = new StorageSetting();
+    setting.setBaseDirectory(directory.resolve("files").toString());
+    storageRepository = new StorageRepository(setting);
+    storageRepository.init();
+
+    final var random = new Random(0);
+    popularPayloads = new byte[POPULAR_PAYLOADS][objectSize];
+    for (final var payload : popularPayloads) {
+      random.nextBytes(payload);
+    }
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown(BenchmarkParams params) throws IOException {
+    storageRepository.shutdown();
+    try (final var paths = Files.walk(directory.resolve("files"))) {
+      final var storedBytes = paths
+          .filter(Files::isRegularFile)
+          .mapToLong(path -> path.toFile().length())
+          .sum();
+      System.out.printf("%n%s objectSize=%d duplicateRatio=%.1f: uploaded %d MB, stored %d MB"
+              + " (%.1f%% saved)%n",
+          params.getBenchmark(), objectSize, duplicateRatio,
+          uploadedBytes.get() >> 20, storedBytes >> 20,
+          100.0 * (uploadedBytes.get() - storedBytes) / uploadedBytes.get());
+    }
+    try (final var paths = Files.walk(directory)) {
+      paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+    }
+  }
+
+  @Benchmark
+  public String ingest() {
+    return storageRepository.ingest("images", "png", upload(), false).getKey();
+  }
+
+  @Benchmark
+  public String saveUnique() {
+    final var fileName = "images/" + UUID.randomUUID() + ".png";
+    storageRepository.save(fileName, upload());
+    return fileName;
+  }
+
+  private ByteArrayInputStream upload() {
+    final var random = ThreadLocalRandom.current();
+    uploadedBytes.addAndGet(objectSize);
+    if (random.nextDouble() < duplicateRatio) {
+      return new ByteArrayInputStream(popularPayloads[random.nextInt(POPULAR_PAYLOADS)]);
+    }
+    final var payload = popularPayloads[0].clone();
+    final var unique = uniqueUploads.incrementAndGet();
+    for (int idx = 0; idx < 8; idx++) {
+      payload[idx] = (byte) (unique >>> (8 * idx));
+    }
+    return new ByteArrayInputStream(payload);
+  }
+
+}
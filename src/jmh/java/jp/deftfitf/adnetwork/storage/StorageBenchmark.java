@@ -0,0 +1,123 @@
+package jp.deftfitf.adnetwork.storage;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import jp.deftfitf.adnetwork.repository.StorageRepository;
+import jp.deftfitf.adnetwork.setting.StorageSetting;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Random reads of small objects from one file per object and from packed segments.
+ * {@code repositoryLoad} reads files through {@link StorageRepository} as ad formats are read.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(8)
+@Fork(1)
+public class StorageBenchmark {
+
+  private static final int SEGMENT_SIZE = 64 * 1024 * 1024;
+
+  @Param({"10000"})
+  public int objectCount;
+  @Param({"1024", "65536"})
+  public int objectSize;
+
+  private Path directory;
+  private FileStorageEngine fileStorageEngine;
+  private SegmentStorageEngine segmentStorageEngine;
+  private StorageRepository storageRepository;
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+    directory = Files.createTempDirectory("storage-benchmark");
+    final var files = directory.resolve("files");
+    Files.createDirectories(files.resolve("ad-formats"));
+    fileStorageEngine = new FileStorageEngine(files);
+    segmentStorageEngine = new SegmentStorageEngine(directory.resolve("segments"),
+        SEGMENT_SIZE, 0.5);
+
+    final var random = new Random(0);
+    final var bytes = new byte[objectSize];
+    for (int idx = 0; idx < objectCount; idx++) {
+      random.nextBytes(bytes);
+      fileStorageEngine.save(keyOf(idx), new ByteArrayInputStream(bytes));
+      segmentStorageEngine.save(keyOf(idx), new ByteArrayInputStream(bytes));
+    }
+
+    final var storageSetting = new StorageSetting();
+    storageSetting.setBaseDirectory(files.toString());
+    storageRepository = new StorageRepository(storageSetting);
+    storageRepository.init();
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    segmentStorageEngine.close();
+    storageRepository.shutdown();
+    try (final var paths = Files.walk(directory)) {
+      paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+    }
+  }
+
+  @Benchmark
+  public long file() throws IOException {
+    return checksum(fileStorageEngine.read(randomKey()));
+  }
+
+  @Benchmark
+  public long segment() throws IOException {
+    return checksum(segmentStorageEngine.read(randomKey()));
+  }
+
+  /**
+   * StorageRepository#load over files, which also decodes the object into a String.
+   */
+  @Benchmark
+  public int repositoryLoad() {
+    return storageRepository.load(randomKey()).length();
+  }
+
+  private String randomKey() {
+    return keyOf(ThreadLocalRandom.current().nextInt(objectCount));
+  }
+
+  private static String keyOf(int idx) {
+    return "ad-formats/" + idx;
+  }
+
+  /**
+   * Touch every page of the object, as serving it would.
+   */
+  private static long checksum(ByteBuffer buffer) {
+    long sum = 0;
+    for (int idx = buffer.position(); idx < buffer.limit(); idx += 512) {
+      sum += buffer.get(idx);
+    }
+    return sum;
+  }
+
+}
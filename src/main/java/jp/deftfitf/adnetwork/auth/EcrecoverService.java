@@ -2,46 +2,242 @@ package jp.deftfitf.adnetwork.auth;
 
 import java.math.BigInteger;
 import java.nio.charset.StandardCharsets;
-import java.security.SignatureException;
+import java.security.MessageDigest;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import lombok.Value;
+import org.bouncycastle.jcajce.provider.digest.Keccak;
+import org.bouncycastle.math.ec.ECAlgorithms;
+import org.bouncycastle.math.ec.ECCurve;
+import org.bouncycastle.math.ec.ECPoint;
 import org.springframework.security.authentication.BadCredentialsException;
 import org.springframework.stereotype.Service;
-import org.web3j.crypto.Hash;
 import org.web3j.crypto.Sign;
-import org.web3j.utils.Numeric;
 
+/**
+ * Verifies personal_sign signatures by recovering the signer address. The recovery stays in byte
+ * arrays: the signature is decoded once, R is decoded from the r bytes, and the address is taken
+ * from the keccak256 of the raw public key and compared as 20 bytes.
+ *
+ * <p>secp256k1 has cofactor 1, so every point decoded on the curve has order n, and the check
+ * R * n = O done by {@link Sign#recoverFromSignature} is skipped. Bulk verification shares one
+ * modular inversion of r and one affine normalization over the whole batch.
+ */
 @Service
 public class EcrecoverService {
 
+  private static final ECCurve CURVE = Sign.CURVE.getCurve();
+  private static final ECPoint G = Sign.CURVE.getG();
+  private static final BigInteger N = Sign.CURVE.getN();
+  private static final BigInteger PRIME = CURVE.getField().getCharacteristic();
+  private static final byte[] MESSAGE_PREFIX =
+      "\u0019Ethereum Signed Message:\n".getBytes(StandardCharsets.UTF_8);
+  private static final int SIGNATURE_LENGTH = 65;
+  private static final int ADDRESS_LENGTH = 20;
+
   public void verify(String address, String message, String signature) {
-    final var signatureBytes = Numeric.hexStringToByteArray(signature);
-    if (signatureBytes.length != 65) {
+    final var signatureBytes = decodeHex(signature);
+    if (signatureBytes == null || signatureBytes.length != SIGNATURE_LENGTH) {
       throw new BadCredentialsException("Signature bytes you sent don't have length 65.");
     }
+    final var recovery = Recovery.of(message, signatureBytes);
+    if (recovery == null) {
+      throw new BadCredentialsException("Ecrecover process has failed");
+    }
+    final var rInverse = recovery.getR().modInverse(N);
+    final var q = recovery.publicKey(rInverse);
+    if (q == null) {
+      throw new BadCredentialsException("Ecrecover process has failed");
+    }
+    if (!matches(address, q)) {
+      throw new BadCredentialsException("Request addr doesn't match to recovered addr");
+    }
+  }
 
-    byte v = signatureBytes[64];
-    if (v < 27) {
-      v += 27;
+  /**
+   * @return whether each message has been signed by its address, in the order of the messages
+   */
+  public List<Boolean> verifyAll(List<SignedMessage> messages) {
+    final var recoveries = new Recovery[messages.size()];
+    final var valid = new ArrayList<Integer>(messages.size());
+    for (int idx = 0; idx < recoveries.length; idx++) {
+      final var message = messages.get(idx);
+      final var signatureBytes = decodeHex(message.getSignature());
+      if (signatureBytes != null && signatureBytes.length == SIGNATURE_LENGTH) {
+        recoveries[idx] = Recovery.of(message.getMessage(), signatureBytes);
+      }
+      if (recoveries[idx] != null) {
+        valid.add(idx);
+      }
     }
-    final var r = Arrays.copyOfRange(signatureBytes, 0, 32);
-    final var s = Arrays.copyOfRange(signatureBytes, 32, 64);
-    final var sig = new Sign.SignatureData(v, r, s);
 
-    final var msgBytes = message.getBytes(StandardCharsets.UTF_8);
-    final BigInteger recoveredKey;
-    try {
-      recoveredKey = Sign.signedPrefixedMessageToKey(msgBytes, sig);
-    } catch (SignatureException e) {
-      throw new BadCredentialsException("Ecrecover process has failed");
+    // Montgomery's trick: invert the product of all r once, then peel off each inverse
+    final var prefixes = new BigInteger[valid.size()];
+    var product = BigInteger.ONE;
+    for (int idx = 0; idx < valid.size(); idx++) {
+      prefixes[idx] = product;
+      product = product.multiply(recoveries[valid.get(idx)].getR()).mod(N);
+    }
+    var inverse = product.modInverse(N);
+    final var points = new ECPoint[valid.size()];
+    for (int idx = valid.size() - 1; idx >= 0; idx--) {
+      final var recovery = recoveries[valid.get(idx)];
+      final var rInverse = inverse.multiply(prefixes[idx]).mod(N);
+      inverse = inverse.multiply(recovery.getR()).mod(N);
+      points[idx] = recovery.publicKeyUnnormalized(rInverse);
+    }
+    final var finite = Arrays.stream(points)
+        .filter(point -> point != null && !point.isInfinity())
+        .toArray(ECPoint[]::new);
+    CURVE.normalizeAll(finite);
+    // normalizeAll replaces the elements with their normalized points
+    for (int idx = 0, finiteIdx = 0; idx < points.length; idx++) {
+      if (points[idx] != null && !points[idx].isInfinity()) {
+        points[idx] = finite[finiteIdx++];
+      }
     }
 
-    final var hashedKeyBytes = Numeric.hexStringToByteArray(
-        Hash.sha3(Numeric.toHexStringNoPrefix(recoveredKey)));
-    final var recoveredAddressBytes = Arrays.copyOfRange(hashedKeyBytes, 12, 32);
-    final var recoveredAddress =
-        "0x" + Numeric.toHexStringNoPrefix(recoveredAddressBytes).toLowerCase();
-    if (!address.toLowerCase().equals(recoveredAddress)) {
-      throw new BadCredentialsException("Request addr doesn't match to recovered addr");
+    final var results = new ArrayList<Boolean>(messages.size());
+    for (int idx = 0; idx < messages.size(); idx++) {
+      results.add(false);
+    }
+    for (int idx = 0; idx < valid.size(); idx++) {
+      final var point = points[idx];
+      final var messageIdx = valid.get(idx);
+      results.set(messageIdx, point != null && !point.isInfinity()
+          && matches(messages.get(messageIdx).getAddress(), point));
+    }
+    return results;
+  }
+
+  private static boolean matches(String address, ECPoint publicKey) {
+    final var expected = decodeHex(address);
+    if (expected == null || expected.length != ADDRESS_LENGTH) {
+      return false;
+    }
+    // uncompressed encoding without its 0x04 prefix
+    final var encoded = publicKey.getEncoded(false);
+    final var digest = new Keccak.Digest256();
+    digest.update(encoded, 1, encoded.length - 1);
+    final var hash = digest.digest();
+    return MessageDigest.isEqual(expected,
+        Arrays.copyOfRange(hash, hash.length - ADDRESS_LENGTH, hash.length));
+  }
+
+  /**
+   * Addresses accepted by {@link #verify} may omit the 0x prefix or write it as 0X.
+   *
+   * @return the address in lower case with the 0x prefix
+   */
+  public static String normalizeAddress(String address) {
+    final var lowerCase = address.toLowerCase();
+    return lowerCase.startsWith("0x") ? lowerCase : "0x" + lowerCase;
+  }
+
+  /**
+   * Decodes hex as {@link org.web3j.utils.Numeric#hexStringToByteArray} does: the 0x prefix is
+   * optional, and odd-length hex is read with a leading 0.
+   *
+   * @return bytes of the hex, or null if it has a non-hex digit
+   */
+  private static byte[] decodeHex(String hex) {
+    if (hex == null) {
+      return null;
+    }
+    final var start = hex.startsWith("0x") || hex.startsWith("0X") ? 2 : 0;
+    final var digits = hex.length() - start;
+    final var bytes = new byte[(digits + 1) / 2];
+    // an odd digit count leaves the first byte with its low nibble only
+    var position = start - digits % 2;
+    for (int idx = 0; idx < bytes.length; idx++, position += 2) {
+      final var high = position < start ? 0 : Character.digit(hex.charAt(position), 16);
+      final var low = Character.digit(hex.charAt(position + 1), 16);
+      if (high < 0 || low < 0) {
+        return null;
+      }
+      bytes[idx] = (byte) (high << 4 | low);
+    }
+    return bytes;
+  }
+
+  @Value(staticConstructor = "of")
+  public static class SignedMessage {
+
+    String address;
+    String message;
+    String signature;
+  }
+
+  /**
+   * Values of a signature to recover the public key from, Q = r^-1 (s R - e G).
+   */
+  @Value
+  private static class Recovery {
+
+    BigInteger r;
+    BigInteger s;
+    BigInteger e;
+    ECPoint point;
+
+    /**
+     * @return null if the signature can't be recovered
+     */
+    static Recovery of(String message, byte[] signature) {
+      var v = signature[64] & 0xff;
+      if (v < 27) {
+        v += 27;
+      }
+      final var recId = v - 27;
+      if (recId < 0 || recId > 3) {
+        return null;
+      }
+      final var r = new BigInteger(1, Arrays.copyOfRange(signature, 0, 32));
+      final var s = new BigInteger(1, Arrays.copyOfRange(signature, 32, 64));
+      if (r.signum() == 0 || r.compareTo(N) >= 0 || s.signum() == 0 || s.compareTo(N) >= 0) {
+        return null;
+      }
+
+      // x = r + (recId / 2) n, which is r itself except with a negligible probability
+      final var x = recId < 2 ? r : r.add(N);
+      if (x.compareTo(PRIME) >= 0) {
+        return null;
+      }
+      final var compressed = new byte[33];
+      compressed[0] = (byte) ((recId & 1) == 1 ? 0x03 : 0x02);
+      final var xBytes = x.toByteArray();
+      final var length = Math.min(xBytes.length, 32);
+      System.arraycopy(xBytes, xBytes.length - length, compressed, 33 - length, length);
+      final ECPoint point;
+      try {
+        point = CURVE.decodePoint(compressed);
+      } catch (IllegalArgumentException e) {
+        // x isn't on the curve
+        return null;
+      }
+
+      return new Recovery(r, s, new BigInteger(1, messageHash(message)), point);
+    }
+
+    ECPoint publicKey(BigInteger rInverse) {
+      final var q = publicKeyUnnormalized(rInverse);
+      return q.isInfinity() ? null : q.normalize();
+    }
+
+    ECPoint publicKeyUnnormalized(BigInteger rInverse) {
+      final var eInverse = N.subtract(e).mod(N);
+      return ECAlgorithms.sumOfTwoMultiplies(
+          G, rInverse.multiply(eInverse).mod(N),
+          point, rInverse.multiply(s).mod(N));
+    }
+
+    private static byte[] messageHash(String message) {
+      final var messageBytes = message.getBytes(StandardCharsets.UTF_8);
+      final var digest = new Keccak.Digest256();
+      digest.update(MESSAGE_PREFIX);
+      digest.update(Integer.toString(messageBytes.length).getBytes(StandardCharsets.US_ASCII));
+      digest.update(messageBytes);
+      return digest.digest();
     }
   }
 
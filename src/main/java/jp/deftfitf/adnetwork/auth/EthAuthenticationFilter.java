@@ -26,7 +26,7 @@ public class EthAuthenticationFilter extends AbstractAuthenticationProcessingFil
     final var address = obtainAddress(request);
     final var signature = obtainSignature(request);
     final var ethAuthenticationToken = new EthAuthenticationToken(new ArrayList<>(), address,
-        signature);
+        signature, obtainChallenge(request));
     return getAuthenticationManager().authenticate(ethAuthenticationToken);
   }
 
@@ -38,4 +38,8 @@ public class EthAuthenticationFilter extends AbstractAuthenticationProcessingFil
     return request.getHeader("X-AUTH-SIGNATURE");
   }
 
+  private String obtainChallenge(HttpServletRequest request) {
+    return request.getHeader("X-AUTH-CHALLENGE");
+  }
+
 }
@@ -28,7 +28,7 @@ public class EthAuthenticationProvider implements AuthenticationProvider {
         () -> this.messages.getMessage("EthAuthenticationProvider.onlySupports",
             "Only EthAuthenticationToken is supported"));
     final var token = (EthAuthenticationToken) authentication;
-    final var challenge = sessionRepository.getAttempt(token.getAddress())
+    final var challenge = sessionRepository.getAttempt(token.getAddress(), token.getChallenge())
         .orElseThrow(() -> new InsufficientAuthenticationException(
             "Any valid authentication challenge hasn't issued, please issue it firstly."));
 
@@ -37,7 +37,7 @@ public class EthAuthenticationProvider implements AuthenticationProvider {
 
     final var authenticated = new EthAuthenticationToken(
         List.of(new SimpleGrantedAuthority("ETH_USER")),
-        token.getAddress(),
+        EcrecoverService.normalizeAddress(token.getAddress()),
         token.getSignature()
     );
     authenticated.setAuthenticated(true);
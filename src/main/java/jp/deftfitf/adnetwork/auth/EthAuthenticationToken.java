@@ -1,11 +1,13 @@
 package jp.deftfitf.adnetwork.auth;
 
 import java.util.Collection;
+import java.util.List;
 import lombok.Getter;
 import lombok.NonNull;
 import lombok.Value;
 import org.springframework.security.authentication.AbstractAuthenticationToken;
 import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
 
 @Getter
 public final class EthAuthenticationToken extends AbstractAuthenticationToken {
@@ -13,16 +15,37 @@ public final class EthAuthenticationToken extends AbstractAuthenticationToken {
   public EthAuthenticationToken(
       Collection<? extends GrantedAuthority> authorities,
       @NonNull String address, @NonNull String signature) {
+    this(authorities, address, signature, null);
+  }
+
+  /**
+   * @param challenge signed challenge sent back by the client, which may be null
+   */
+  public EthAuthenticationToken(
+      Collection<? extends GrantedAuthority> authorities,
+      @NonNull String address, @NonNull String signature, String challenge) {
     super(authorities);
     this.address = address;
     this.signature = signature;
+    this.challenge = challenge;
     this.ethUserPrincipal = EthUserPrincipal.of(address);
   }
 
+  /**
+   * @return a token of a user who has already been verified, e.g. by a session token
+   */
+  public static EthAuthenticationToken authenticated(String address) {
+    final var token = new EthAuthenticationToken(
+        List.of(new SimpleGrantedAuthority("ETH_USER")), address, "");
+    token.setAuthenticated(true);
+    return token;
+  }
+
   @NonNull
   private final String address;
   @NonNull
   private final String signature;
+  private final String challenge;
   @NonNull
   private final EthUserPrincipal ethUserPrincipal;
 
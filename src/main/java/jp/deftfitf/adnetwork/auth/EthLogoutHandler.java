@@ -2,16 +2,29 @@ package jp.deftfitf.adnetwork.auth;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.web.authentication.logout.LogoutHandler;
 import org.springframework.stereotype.Component;
 
 @Component
+@RequiredArgsConstructor
 public class EthLogoutHandler implements LogoutHandler {
 
+  @NonNull
+  private final SessionTokenService sessionTokenService;
+
+  /**
+   * Revoke the session token if any. The servlet session is invalidated by Spring Security.
+   */
   @Override
   public void logout(HttpServletRequest request, HttpServletResponse response,
       Authentication authentication) {
+    sessionTokenService.tokenOf(request).ifPresent(token -> {
+      sessionTokenService.revoke(token);
+      sessionTokenService.clearCookie(response);
+    });
   }
 
 }
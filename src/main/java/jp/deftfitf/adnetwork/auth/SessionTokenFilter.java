@@ -0,0 +1,41 @@
+package jp.deftfitf.adnetwork.auth;
+
+import java.io.IOException;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+/**
+ * Authenticates requests by their session token cookie, without looking up any session.
+ */
+@RequiredArgsConstructor
+public class SessionTokenFilter extends OncePerRequestFilter {
+
+  @NonNull
+  private final SessionTokenService sessionTokenService;
+
+  @Override
+  protected void doFilterInternal(
+      HttpServletRequest request,
+      HttpServletResponse response,
+      FilterChain filterChain
+  ) throws ServletException, IOException {
+    if (SecurityContextHolder.getContext().getAuthentication() == null) {
+      sessionTokenService.tokenOf(request)
+          .flatMap(sessionTokenService::verify)
+          .ifPresent(principal -> {
+            final var context = SecurityContextHolder.createEmptyContext();
+            context.setAuthentication(
+                EthAuthenticationToken.authenticated(principal.getAddress()));
+            SecurityContextHolder.setContext(context);
+          });
+    }
+    filterChain.doFilter(request, response);
+  }
+
+}
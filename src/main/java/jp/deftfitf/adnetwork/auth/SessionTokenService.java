@@ -0,0 +1,181 @@
+package jp.deftfitf.adnetwork.auth;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.time.Clock;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import jp.deftfitf.adnetwork.auth.EthAuthenticationToken.EthUserPrincipal;
+import jp.deftfitf.adnetwork.crypto.HmacSigner;
+import jp.deftfitf.adnetwork.setting.SessionSetting;
+import lombok.NonNull;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseCookie;
+import org.springframework.stereotype.Service;
+import org.web3j.utils.Numeric;
+
+/**
+ * Issues and verifies stateless session tokens of the form `payload.hmac`, where the payload is
+ * `v1|address|expiresAt|tokenId` in base64url. Verification only recomputes the HMAC, except for
+ * a lookup in a bounded deny-list of tokens revoked by logout on this node.
+ */
+@Slf4j
+@Service
+public class SessionTokenService {
+
+  private static final String VERSION = "v1";
+  private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+  private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+  private final Clock clock;
+  private final SessionSetting setting;
+  private final SecureRandom secureRandom = new SecureRandom();
+  private final HmacSigner signer;
+  private final Map<String, Long> revokedTokenIdToExpiresAt = new ConcurrentHashMap<>();
+  // guarded by itself, revocations are rare compared to verifications
+  private final PriorityQueue<Revoked> revokedByExpiry =
+      new PriorityQueue<>(Comparator.comparingLong(Revoked::getExpiresAt));
+
+  public SessionTokenService(@NonNull Clock clock, @NonNull SessionSetting setting) {
+    this.clock = clock;
+    this.setting = setting;
+    if (setting.isStateless() && setting.getSecret().isEmpty()) {
+      // a random key per node would reject tokens issued by the other nodes
+      throw new IllegalStateException(
+          "adnetwork.session.secret is required when adnetwork.session.stateless is enabled");
+    }
+    this.signer = HmacSigner.of(setting.getSecret());
+  }
+
+  public String issue(String address) {
+    final var expiresAt = clock.millis() / 1000 + setting.getTtl().toSeconds();
+    final var payload = String.join("|", VERSION, address.toLowerCase(),
+        Long.toString(expiresAt), Numeric.toHexStringNoPrefix(randomBytes(8)));
+    final var encoded = ENCODER.encodeToString(payload.getBytes(StandardCharsets.UTF_8));
+    return encoded + "." + ENCODER.encodeToString(sign(encoded));
+  }
+
+  public Optional<EthUserPrincipal> verify(String token) {
+    return parse(token)
+        .filter(session -> session.getExpiresAt() >= clock.millis() / 1000)
+        .filter(session -> !revokedTokenIdToExpiresAt.containsKey(session.getTokenId()))
+        .map(session -> EthUserPrincipal.of(session.getAddress()));
+  }
+
+  /**
+   * Reject the token on this node until it expires.
+   */
+  public void revoke(String token) {
+    final var parsed = parse(token);
+    if (parsed.isEmpty()) {
+      return;
+    }
+    final var session = parsed.get();
+    final var now = clock.millis() / 1000;
+    synchronized (revokedByExpiry) {
+      while (!revokedByExpiry.isEmpty()
+          && (revokedByExpiry.peek().getExpiresAt() < now
+          || revokedByExpiry.size() >= setting.getDenyListMaxEntries())) {
+        final var dropped = revokedByExpiry.poll();
+        if (dropped.getExpiresAt() >= now) {
+          log.warn("Deny-list is full, a revoked session token is accepted again until {}",
+              dropped.getExpiresAt());
+        }
+        revokedTokenIdToExpiresAt.remove(dropped.getTokenId());
+      }
+      if (revokedTokenIdToExpiresAt.putIfAbsent(session.getTokenId(), session.getExpiresAt())
+          == null) {
+        revokedByExpiry.add(Revoked.of(session.getTokenId(), session.getExpiresAt()));
+      }
+    }
+  }
+
+  public Optional<String> tokenOf(HttpServletRequest request) {
+    final var cookies = request.getCookies();
+    if (cookies == null) {
+      return Optional.empty();
+    }
+    for (final Cookie cookie : cookies) {
+      if (setting.getCookieName().equals(cookie.getName())) {
+        return Optional.of(cookie.getValue());
+      }
+    }
+    return Optional.empty();
+  }
+
+  public void writeCookie(HttpServletResponse response, String token) {
+    addCookie(response, token, setting.getTtl().toSeconds());
+  }
+
+  public void clearCookie(HttpServletResponse response) {
+    addCookie(response, "", 0);
+  }
+
+  private void addCookie(HttpServletResponse response, String value, long maxAgeSeconds) {
+    final var cookie = ResponseCookie.from(setting.getCookieName(), value)
+        .httpOnly(true)
+        .secure(setting.isSecureCookie())
+        .sameSite("Lax")
+        .path("/")
+        .maxAge(maxAgeSeconds)
+        .build();
+    response.addHeader(HttpHeaders.SET_COOKIE, cookie.toString());
+  }
+
+  private Optional<Session> parse(String token) {
+    final var separator = token.indexOf('.');
+    if (separator < 0) {
+      return Optional.empty();
+    }
+    final var encoded = token.substring(0, separator);
+    try {
+      if (!MessageDigest.isEqual(sign(encoded), DECODER.decode(token.substring(separator + 1)))) {
+        return Optional.empty();
+      }
+      final var parts = new String(DECODER.decode(encoded), StandardCharsets.UTF_8).split("\\|");
+      if (parts.length != 4 || !VERSION.equals(parts[0])) {
+        return Optional.empty();
+      }
+      return Optional.of(Session.of(parts[1], Long.parseLong(parts[2]), parts[3]));
+    } catch (IllegalArgumentException e) {
+      // malformed base64 or number
+      return Optional.empty();
+    }
+  }
+
+  private byte[] sign(String encodedPayload) {
+    return signer.sign(encodedPayload.getBytes(StandardCharsets.US_ASCII));
+  }
+
+  private byte[] randomBytes(int length) {
+    final var bytes = new byte[length];
+    secureRandom.nextBytes(bytes);
+    return bytes;
+  }
+
+  @Value(staticConstructor = "of")
+  private static class Session {
+
+    String address;
+    long expiresAt;
+    String tokenId;
+  }
+
+  @Value(staticConstructor = "of")
+  private static class Revoked {
+
+    String tokenId;
+    long expiresAt;
+  }
+
+}
@@ -0,0 +1,257 @@
+package jp.deftfitf.adnetwork.chain;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import jp.deftfitf.adnetwork.setting.AdNetworkContractSetting;
+import jp.deftfitf.adnetwork.setting.EthRpcSetting;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.web3j.abi.FunctionEncoder;
+import org.web3j.abi.FunctionReturnDecoder;
+import org.web3j.abi.TypeReference;
+import org.web3j.abi.datatypes.Address;
+import org.web3j.abi.datatypes.Bool;
+import org.web3j.abi.datatypes.DynamicArray;
+import org.web3j.abi.datatypes.Type;
+import org.web3j.abi.datatypes.Utf8String;
+import org.web3j.abi.datatypes.generated.Bytes32;
+import org.web3j.abi.datatypes.generated.Uint256;
+import org.web3j.abi.datatypes.generated.Uint32;
+import org.web3j.adnetwork.AdNetwork;
+import org.web3j.crypto.Credentials;
+import org.web3j.protocol.Web3j;
+import org.web3j.protocol.core.DefaultBlockParameterName;
+import org.web3j.protocol.core.methods.request.Transaction;
+import org.web3j.protocol.core.methods.response.EthCall;
+import org.web3j.tuples.generated.Tuple6;
+import org.web3j.tuples.generated.Tuple7;
+
+/**
+ * Reads AdNetwork contract views for many inventories at once. Calls are packed into JSON-RPC batch
+ * requests of {@link EthRpcSetting#getBatchSize()} eth_call each, so that a reload costs tens of
+ * round trips instead of one per inventory, and the batches of one read are sent concurrently.
+ * Each batch is timed per contract function.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class AdNetworkBatchReader {
+
+  @NonNull
+  private final Web3j web3j;
+  @NonNull
+  private final Credentials credentials;
+  @NonNull
+  private final AdNetworkContractSetting adNetworkContractSetting;
+  @NonNull
+  private final EthRpcSetting ethRpcSetting;
+  @NonNull
+  private final MeterRegistry meterRegistry;
+
+  /**
+   * @return the latest block number, which views read afterwards reflect at least
+   */
+  public long blockNumber() throws IOException {
+    return web3j.ethBlockNumber().send().getBlockNumber().longValueExact();
+  }
+
+  /**
+   * @return results keyed by inventory id. Inventories whose call has failed are absent.
+   */
+  public Map<Long, Tuple7<
+      List<BigInteger>,
+      List<BigInteger>,
+      List<byte[]>,
+      List<byte[]>,
+      List<BigInteger>,
+      List<BigInteger>,
+      List<Boolean>>> getAdsOf(Collection<Long> inventoryIds) throws IOException {
+    return join(getAdsOfAsync(inventoryIds));
+  }
+
+  /**
+   * Batches are sent concurrently, as far as the RPC service lets them in flight.
+   *
+   * @return results keyed by inventory id. Inventories whose call has failed are absent.
+   */
+  public CompletableFuture<Map<Long, Tuple7<
+      List<BigInteger>,
+      List<BigInteger>,
+      List<byte[]>,
+      List<byte[]>,
+      List<BigInteger>,
+      List<BigInteger>,
+      List<Boolean>>>> getAdsOfAsync(Collection<Long> inventoryIds) {
+    return callAsync(inventoryIds, AdNetwork.FUNC_GETADSOF,
+        AdNetworkBatchReader::getAdsOfFunction, values -> new Tuple7<>(
+        nativeList(values.get(0), Uint256.class),
+        nativeList(values.get(1), Uint256.class),
+        nativeList(values.get(2), Bytes32.class),
+        nativeList(values.get(3), Bytes32.class),
+        nativeList(values.get(4), Uint32.class),
+        nativeList(values.get(5), Uint32.class),
+        nativeList(values.get(6), Bool.class)));
+  }
+
+  /**
+   * @return results keyed by inventory id. Inventories whose call has failed are absent.
+   */
+  public CompletableFuture<Map<Long, Tuple6<BigInteger, String, String, String, String,
+      BigInteger>>> getInventoryAsync(Collection<Long> inventoryIds) {
+    return callAsync(inventoryIds, AdNetwork.FUNC_GETINVENTORY,
+        AdNetworkBatchReader::getInventoryFunction,
+        values -> new Tuple6<>(
+            (BigInteger) values.get(0).getValue(),
+            (String) values.get(1).getValue(),
+            (String) values.get(2).getValue(),
+            (String) values.get(3).getValue(),
+            (String) values.get(4).getValue(),
+            (BigInteger) values.get(5).getValue()));
+  }
+
+  private <R> CompletableFuture<Map<Long, R>> callAsync(
+      Collection<Long> inventoryIds,
+      String functionName,
+      Function<Long, org.web3j.abi.datatypes.Function> functionOf,
+      Function<List<Type>, R> converter
+  ) {
+    final var results = new ConcurrentHashMap<Long, R>(inventoryIds.size() * 2);
+    final var ids = new ArrayList<>(inventoryIds);
+    final var batchSize = Math.max(1, ethRpcSetting.getBatchSize());
+    final var batches = new ArrayList<CompletableFuture<?>>();
+    final var batchTimer = Timer.builder("adnetwork.contract.calls")
+        .tag("function", functionName)
+        .publishPercentileHistogram()
+        .register(meterRegistry);
+    for (int from = 0; from < ids.size(); from += batchSize) {
+      final var chunk = ids.subList(from, Math.min(ids.size(), from + batchSize));
+      final var functions = chunk.stream()
+          .map(functionOf)
+          .collect(Collectors.toList());
+
+      final var batch = web3j.newBatch();
+      // responses of a batch may come in any order, so they're matched by the JSON-RPC id
+      final var requestIdToIndex = new HashMap<Long, Integer>(chunk.size() * 2);
+      for (int idx = 0; idx < functions.size(); idx++) {
+        final var request = web3j.ethCall(
+            Transaction.createEthCallTransaction(
+                credentials.getAddress(),
+                adNetworkContractSetting.getAddress(),
+                FunctionEncoder.encode(functions.get(idx))),
+            DefaultBlockParameterName.LATEST);
+        requestIdToIndex.put(request.getId(), idx);
+        batch.add(request);
+      }
+      final var sentAt = System.nanoTime();
+      final var sent = batch.sendAsync();
+      sent.whenComplete((notUsed, e) ->
+          batchTimer.record(System.nanoTime() - sentAt, TimeUnit.NANOSECONDS));
+      batches.add(sent.thenAccept(batchResponse -> {
+        final var answered = new boolean[chunk.size()];
+        for (final var response : batchResponse.getResponses()) {
+          final var idx = requestIdToIndex.get(response.getId());
+          if (idx == null || answered[idx]) {
+            log.warn("eth_call answered an unknown request: id={}", response.getId());
+            continue;
+          }
+          answered[idx] = true;
+          final var inventoryId = chunk.get(idx);
+          if (response.hasError()) {
+            log.warn("eth_call failed: inventoryId={}, error={}",
+                inventoryId, response.getError().getMessage());
+            continue;
+          }
+          final var values = FunctionReturnDecoder.decode(
+              ((EthCall) response).getValue(), functions.get(idx).getOutputParameters());
+          if (values.isEmpty()) {
+            // reverted, e.g. the inventory has been removed
+            continue;
+          }
+          results.put(inventoryId, converter.apply(values));
+        }
+        for (int idx = 0; idx < answered.length; idx++) {
+          if (!answered[idx]) {
+            log.warn("eth_call got no response in the batch: inventoryId={}", chunk.get(idx));
+          }
+        }
+      }));
+    }
+    return CompletableFuture.allOf(batches.toArray(CompletableFuture[]::new))
+        .thenApply(ignored -> results);
+  }
+
+  private static <R> R join(CompletableFuture<R> future) throws IOException {
+    try {
+      return future.join();
+    } catch (CompletionException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      throw e;
+    }
+  }
+
+  private static org.web3j.abi.datatypes.Function getAdsOfFunction(long inventoryId) {
+    return new org.web3j.abi.datatypes.Function(
+        AdNetwork.FUNC_GETADSOF,
+        Arrays.<Type>asList(new Uint256(inventoryId)),
+        Arrays.<TypeReference<?>>asList(
+            new TypeReference<DynamicArray<Uint256>>() {
+            },
+            new TypeReference<DynamicArray<Uint256>>() {
+            },
+            new TypeReference<DynamicArray<Bytes32>>() {
+            },
+            new TypeReference<DynamicArray<Bytes32>>() {
+            },
+            new TypeReference<DynamicArray<Uint32>>() {
+            },
+            new TypeReference<DynamicArray<Uint32>>() {
+            },
+            new TypeReference<DynamicArray<Bool>>() {
+            }));
+  }
+
+  private static org.web3j.abi.datatypes.Function getInventoryFunction(long inventoryId) {
+    return new org.web3j.abi.datatypes.Function(
+        AdNetwork.FUNC_GETINVENTORY,
+        Arrays.<Type>asList(new Uint256(inventoryId)),
+        Arrays.<TypeReference<?>>asList(
+            new TypeReference<Uint256>() {
+            },
+            new TypeReference<Address>() {
+            },
+            new TypeReference<Utf8String>() {
+            },
+            new TypeReference<Utf8String>() {
+            },
+            new TypeReference<Utf8String>() {
+            },
+            new TypeReference<Uint256>() {
+            }));
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <N, T extends Type<N>> List<N> nativeList(Type<?> array, Class<T> elementType) {
+    return ((DynamicArray<T>) array).getValue().stream()
+        .map(Type::getValue)
+        .collect(Collectors.toList());
+  }
+
+}
@@ -0,0 +1,26 @@
+package jp.deftfitf.adnetwork.chain;
+
+import lombok.NonNull;
+import lombok.Value;
+
+@Value(staticConstructor = "of")
+public class AdNetworkEvent {
+
+  @NonNull
+  Type type;
+  long blockNumber;
+  long logIndex;
+  long inventoryId;
+  /**
+   * always 0 for {@link Type#INVENTORY_CREATED}
+   */
+  long adId;
+
+  public enum Type {
+    AD_CREATED,
+    AD_APPROVED,
+    AD_REJECTED,
+    INVENTORY_CREATED
+  }
+
+}
@@ -0,0 +1,15 @@
+package jp.deftfitf.adnetwork.chain;
+
+import java.io.IOException;
+import java.util.List;
+
+public interface AdNetworkLogSource {
+
+  long latestBlockNumber() throws IOException;
+
+  /**
+   * @return events emitted in [fromBlock, toBlock], ordered by block number and log index
+   */
+  List<AdNetworkEvent> fetch(long fromBlock, long toBlock) throws IOException;
+
+}
@@ -0,0 +1,127 @@
+package jp.deftfitf.adnetwork.chain;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Optional;
+import jp.deftfitf.adnetwork.repository.InventoryCacheRepository;
+import jp.deftfitf.adnetwork.setting.InventoryCacheSetting;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Follows AdNetwork contract events from a checkpointed block and applies changed ads to {@link
+ * InventoryCacheRepository} incrementally.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class InventoryEventFollower {
+
+  private static final String EVENT_POLL_FIXED_DELAY =
+      "${adnetwork.cache.event-poll-fixed-delay:5000}";
+  private static final long NOT_STARTED = -1;
+
+  @NonNull
+  private final InventoryCacheSetting setting;
+  @NonNull
+  private final AdNetworkLogSource logSource;
+  @NonNull
+  private final InventoryCacheRepository inventoryCacheRepository;
+  private volatile long lastAppliedBlock = NOT_STARTED;
+
+  @Scheduled(fixedDelayString = EVENT_POLL_FIXED_DELAY)
+  public void scheduledPoll() {
+    if (!setting.isEventFollowEnabled() || !setting.isChainReader()) {
+      return;
+    }
+    try {
+      poll();
+    } catch (IOException e) {
+      log.warn("Failed to follow AdNetwork events from block {}", lastAppliedBlock + 1, e);
+    }
+  }
+
+  /**
+   * Apply events emitted after the checkpoint up to the confirmed chain head.
+   *
+   * @return the number of applied events
+   */
+  public synchronized int poll() throws IOException {
+    final var confirmedHead = logSource.latestBlockNumber() - setting.getEventConfirmations();
+    if (lastAppliedBlock == NOT_STARTED) {
+      // Without any checkpoint, history is covered by the full reload.
+      final var checkpoint = loadCheckpoint();
+      lastAppliedBlock = checkpoint.orElse(confirmedHead);
+      if (checkpoint.isEmpty()) {
+        saveCheckpoint(lastAppliedBlock);
+      }
+    }
+
+    var applied = 0;
+    while (lastAppliedBlock < confirmedHead) {
+      final var fromBlock = lastAppliedBlock + 1;
+      final var toBlock = Math.min(confirmedHead,
+          fromBlock + setting.getEventMaxBlockRange() - 1);
+      for (final var event : logSource.fetch(fromBlock, toBlock)) {
+        apply(event);
+        applied++;
+      }
+      lastAppliedBlock = toBlock;
+      saveCheckpoint(toBlock);
+    }
+    return applied;
+  }
+
+  public long getLastAppliedBlock() {
+    return lastAppliedBlock;
+  }
+
+  private void apply(AdNetworkEvent event) {
+    switch (event.getType()) {
+      case AD_APPROVED:
+        try {
+          inventoryCacheRepository.applyApproved(event.getInventoryId(), event.getAdId());
+        } catch (Exception e) {
+          // the next full reload will pick it up
+          log.error("Failed to apply approved ad: event={}", event, e);
+        }
+        break;
+      case AD_REJECTED:
+        inventoryCacheRepository.applyRemoved(event.getInventoryId(), event.getAdId());
+        break;
+      case AD_CREATED:
+      case INVENTORY_CREATED:
+        // Nothing deliverable until the ad is approved or the inventory key is registered.
+        log.debug("Skip event: {}", event);
+        break;
+      default:
+        throw new IllegalStateException("unexpected event type: " + event.getType());
+    }
+  }
+
+  private Optional<Long> loadCheckpoint() throws IOException {
+    final var path = Paths.get(setting.getEventCheckpointFile());
+    if (!Files.exists(path)) {
+      return Optional.empty();
+    }
+    return Optional.of(Long.parseLong(Files.readString(path).trim()));
+  }
+
+  private void saveCheckpoint(long blockNumber) throws IOException {
+    final var path = Paths.get(setting.getEventCheckpointFile());
+    final Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+    if (path.getParent() != null) {
+      Files.createDirectories(path.getParent());
+    }
+    Files.writeString(tmp, Long.toString(blockNumber), StandardCharsets.UTF_8);
+    Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+}
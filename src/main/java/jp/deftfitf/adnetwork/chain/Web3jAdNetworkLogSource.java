@@ -0,0 +1,108 @@
+package jp.deftfitf.adnetwork.chain;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import jp.deftfitf.adnetwork.chain.AdNetworkEvent.Type;
+import jp.deftfitf.adnetwork.setting.AdNetworkContractSetting;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import org.web3j.abi.EventEncoder;
+import org.web3j.abi.datatypes.Event;
+import org.web3j.adnetwork.AdNetwork;
+import org.web3j.protocol.Web3j;
+import org.web3j.protocol.core.DefaultBlockParameter;
+import org.web3j.protocol.core.methods.request.EthFilter;
+import org.web3j.protocol.core.methods.response.EthLog.LogResult;
+import org.web3j.protocol.core.methods.response.Log;
+import org.web3j.tx.Contract;
+
+@Component
+@RequiredArgsConstructor
+public class Web3jAdNetworkLogSource implements AdNetworkLogSource {
+
+  private static final Map<String, Type> TOPIC_TO_TYPE = Map.of(
+      EventEncoder.encode(AdNetwork.ADCREATED_EVENT), Type.AD_CREATED,
+      EventEncoder.encode(AdNetwork.ADAPPROVED_EVENT), Type.AD_APPROVED,
+      EventEncoder.encode(AdNetwork.ADREJECTED_EVENT), Type.AD_REJECTED,
+      EventEncoder.encode(AdNetwork.INVENTORYCREATED_EVENT), Type.INVENTORY_CREATED
+  );
+
+  @NonNull
+  private final Web3j web3j;
+  @NonNull
+  private final AdNetworkContractSetting adNetworkContractSetting;
+
+  @Override
+  public long latestBlockNumber() throws IOException {
+    return web3j.ethBlockNumber().send().getBlockNumber().longValueExact();
+  }
+
+  @Override
+  public List<AdNetworkEvent> fetch(long fromBlock, long toBlock) throws IOException {
+    final var filter = new EthFilter(
+        DefaultBlockParameter.valueOf(BigInteger.valueOf(fromBlock)),
+        DefaultBlockParameter.valueOf(BigInteger.valueOf(toBlock)),
+        adNetworkContractSetting.getAddress());
+    filter.addOptionalTopics(TOPIC_TO_TYPE.keySet().toArray(String[]::new));
+
+    final var response = web3j.ethGetLogs(filter).send();
+    if (response.hasError()) {
+      throw new IOException("eth_getLogs failed: " + response.getError().getMessage());
+    }
+
+    final var events = new ArrayList<AdNetworkEvent>();
+    for (final LogResult<?> logResult : response.getLogs()) {
+      final var log = (Log) logResult.get();
+      if (log.isRemoved() || log.getTopics().isEmpty()) {
+        continue;
+      }
+      final var type = TOPIC_TO_TYPE.get(log.getTopics().get(0));
+      if (type != null) {
+        events.add(decode(type, log));
+      }
+    }
+    events.sort(Comparator
+        .comparingLong(AdNetworkEvent::getBlockNumber)
+        .thenComparingLong(AdNetworkEvent::getLogIndex));
+    return events;
+  }
+
+  private AdNetworkEvent decode(Type type, Log log) {
+    final var blockNumber = log.getBlockNumber().longValueExact();
+    final var logIndex = log.getLogIndex().longValueExact();
+    switch (type) {
+      case AD_CREATED: {
+        final var values = Contract.staticExtractEventParameters(AdNetwork.ADCREATED_EVENT, log);
+        return AdNetworkEvent.of(type, blockNumber, logIndex,
+            uint(values.getIndexedValues().get(0)), uint(values.getNonIndexedValues().get(0)));
+      }
+      case AD_APPROVED:
+      case AD_REJECTED: {
+        final Event event = type == Type.AD_APPROVED
+            ? AdNetwork.ADAPPROVED_EVENT
+            : AdNetwork.ADREJECTED_EVENT;
+        final var values = Contract.staticExtractEventParameters(event, log);
+        return AdNetworkEvent.of(type, blockNumber, logIndex,
+            uint(values.getNonIndexedValues().get(0)), uint(values.getIndexedValues().get(0)));
+      }
+      case INVENTORY_CREATED: {
+        final var values =
+            Contract.staticExtractEventParameters(AdNetwork.INVENTORYCREATED_EVENT, log);
+        return AdNetworkEvent.of(type, blockNumber, logIndex,
+            uint(values.getNonIndexedValues().get(0)), 0);
+      }
+      default:
+        throw new IllegalArgumentException("unexpected event type: " + type);
+    }
+  }
+
+  private static long uint(org.web3j.abi.datatypes.Type<?> value) {
+    return ((BigInteger) value.getValue()).longValueExact();
+  }
+
+}
@@ -0,0 +1,72 @@
+package jp.deftfitf.adnetwork.chain.rpc;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounds calls in flight by a limit adjusted with AIMD: each success raises the limit by 1/limit,
+ * i.e. by one per round of calls, and each failure multiplies it by the backoff ratio. A slow or
+ * failing node so gets fewer concurrent calls instead of a growing queue.
+ */
+public class AdaptiveConcurrencyLimit {
+
+  private final int minLimit;
+  private final int maxLimit;
+  private final double backoffRatio;
+  private double limit;
+  private int inFlight;
+
+  public AdaptiveConcurrencyLimit(
+      int initialLimit,
+      int minLimit,
+      int maxLimit,
+      double backoffRatio
+  ) {
+    this.minLimit = minLimit;
+    this.maxLimit = maxLimit;
+    this.backoffRatio = backoffRatio;
+    this.limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+  }
+
+  /**
+   * @return false if no slot became free within the timeout
+   */
+  public synchronized boolean acquire(long timeout, TimeUnit unit) throws InterruptedException {
+    final var deadline = System.nanoTime() + unit.toNanos(timeout);
+    while (inFlight >= (int) limit) {
+      final var remaining = deadline - System.nanoTime();
+      if (remaining <= 0) {
+        return false;
+      }
+      TimeUnit.NANOSECONDS.timedWait(this, remaining);
+    }
+    inFlight++;
+    return true;
+  }
+
+  public synchronized void release(boolean success) {
+    inFlight--;
+    if (success) {
+      limit = Math.min(maxLimit, limit + 1.0 / limit);
+    } else {
+      limit = Math.max(minLimit, limit * backoffRatio);
+    }
+    notifyAll();
+  }
+
+  /**
+   * Give back a slot whose call never reached the node, without adjusting the limit.
+   */
+  public synchronized void cancel() {
+    inFlight--;
+    notifyAll();
+  }
+
+  public synchronized int getLimit() {
+    return (int) limit;
+  }
+
+  public synchronized int getInFlight() {
+    return inFlight;
+  }
+
+}
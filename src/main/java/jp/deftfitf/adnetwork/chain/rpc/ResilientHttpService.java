@@ -0,0 +1,219 @@
+package jp.deftfitf.adnetwork.chain.rpc;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import jp.deftfitf.adnetwork.setting.EthRpcSetting;
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.OkHttpClient;
+import org.web3j.protocol.core.BatchRequest;
+import org.web3j.protocol.core.BatchResponse;
+import org.web3j.protocol.core.Request;
+import org.web3j.protocol.core.Response;
+import org.web3j.protocol.http.HttpService;
+
+/**
+ * {@link HttpService} which guards every JSON-RPC round trip, single or batch, with a deadline, an
+ * adaptive concurrency limit and a circuit breaker, and retries failures with jittered exponential
+ * backoff. Async calls run on a bounded executor instead of the shared web3j one.
+ *
+ * <p>eth_sendRawTransaction is never retried, as a retry of an accepted transaction would be
+ * reported as a failure.
+ *
+ * <p>Calls are timed per JSON-RPC method including their retries, batches as method=batch.
+ */
+@Slf4j
+public class ResilientHttpService extends HttpService {
+
+  private static final String SEND_RAW_TRANSACTION = "\"eth_sendRawTransaction\"";
+  private static final String METHOD_FIELD = "\"method\":\"";
+  private static final String CALL_TIMER = "eth.rpc.calls";
+
+  private final EthRpcSetting setting;
+  private final ExecutorService asyncExecutor;
+  private final CircuitBreaker circuitBreaker;
+  private final AdaptiveConcurrencyLimit concurrencyLimit;
+  private final MeterRegistry meterRegistry;
+  private final Counter retries;
+
+  public ResilientHttpService(
+      String url,
+      OkHttpClient httpClient,
+      EthRpcSetting setting,
+      ExecutorService asyncExecutor,
+      MeterRegistry meterRegistry
+  ) {
+    super(url, httpClient);
+    this.setting = setting;
+    this.asyncExecutor = asyncExecutor;
+    this.circuitBreaker = new CircuitBreaker(
+        setting.getCircuitFailureThreshold(), setting.getCircuitOpenDuration());
+    this.concurrencyLimit = new AdaptiveConcurrencyLimit(
+        setting.getInitialConcurrency(), setting.getMinConcurrency(),
+        setting.getMaxConcurrency(), setting.getConcurrencyBackoffRatio());
+    this.meterRegistry = meterRegistry;
+    this.retries = Counter.builder("eth.rpc.retries").register(meterRegistry);
+    Gauge.builder("eth.rpc.concurrency.limit", concurrencyLimit, AdaptiveConcurrencyLimit::getLimit)
+        .register(meterRegistry);
+    Gauge.builder("eth.rpc.circuit.open", circuitBreaker,
+            breaker -> breaker.getState() == CircuitBreaker.State.OPEN ? 1 : 0)
+        .register(meterRegistry);
+  }
+
+  @Override
+  protected InputStream performIO(String payload) throws IOException {
+    final var startedAt = System.nanoTime();
+    var outcome = "failure";
+    try {
+      final var inputStream = performWithRetries(payload);
+      outcome = "success";
+      return inputStream;
+    } finally {
+      Timer.builder(CALL_TIMER)
+          .tag("method", methodOf(payload))
+          .tag("outcome", outcome)
+          .publishPercentileHistogram()
+          .register(meterRegistry)
+          .record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
+    }
+  }
+
+  private InputStream performWithRetries(String payload) throws IOException {
+    final var deadline = System.nanoTime() + setting.getDeadline().toNanos();
+    final var retryable = !payload.contains(SEND_RAW_TRANSACTION);
+    for (int attempt = 1; ; attempt++) {
+      try {
+        return attempt(payload, deadline);
+      } catch (RpcUnavailableException e) {
+        throw e;
+      } catch (IOException e) {
+        final var backoffNanos = backoffNanos(attempt);
+        if (!retryable
+            || attempt >= setting.getMaxAttempts()
+            || System.nanoTime() + backoffNanos >= deadline) {
+          throw e;
+        }
+        log.debug("Retry eth rpc after {} ms: attempt={}",
+            TimeUnit.NANOSECONDS.toMillis(backoffNanos), attempt, e);
+        retries.increment();
+        sleep(backoffNanos);
+      }
+    }
+  }
+
+  private InputStream attempt(String payload, long deadline) throws IOException {
+    try {
+      if (!concurrencyLimit.acquire(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+        throw new RpcUnavailableException("no eth rpc slot became free before the deadline");
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("interrupted while waiting for an eth rpc slot");
+    }
+
+    if (!circuitBreaker.tryAcquire()) {
+      // a call which never reached the node says nothing about its capacity
+      concurrencyLimit.cancel();
+      throw new RpcUnavailableException("eth rpc circuit breaker is open");
+    }
+    var success = false;
+    try {
+      // read the whole body here, so that a broken response is retried like other failures
+      final byte[] body;
+      try (final var inputStream = super.performIO(payload)) {
+        body = inputStream == null ? new byte[0] : inputStream.readAllBytes();
+      }
+      circuitBreaker.onSuccess();
+      success = true;
+      return new ByteArrayInputStream(body);
+    } catch (IOException | RuntimeException e) {
+      circuitBreaker.onFailure();
+      throw e;
+    } finally {
+      concurrencyLimit.release(success);
+    }
+  }
+
+  /**
+   * @return the JSON-RPC method of a single request, which web3j serializes without spaces
+   */
+  private static String methodOf(String payload) {
+    if (payload.startsWith("[")) {
+      return "batch";
+    }
+    final var from = payload.indexOf(METHOD_FIELD);
+    if (from < 0) {
+      return "unknown";
+    }
+    final var start = from + METHOD_FIELD.length();
+    final var end = payload.indexOf('"', start);
+    return end < 0 ? "unknown" : payload.substring(start, end);
+  }
+
+  private long backoffNanos(int attempt) {
+    final var base = setting.getBackoffBase().toNanos();
+    final var cap = setting.getBackoffMax().toNanos();
+    final var exponential = Math.min(cap, base << Math.min(attempt - 1, 30));
+    // full jitter spreads retries of concurrent callers
+    return ThreadLocalRandom.current().nextLong(exponential + 1);
+  }
+
+  private static void sleep(long nanos) throws InterruptedIOException {
+    try {
+      TimeUnit.NANOSECONDS.sleep(nanos);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("interrupted while backing off");
+    }
+  }
+
+  @Override
+  public <T extends Response> CompletableFuture<T> sendAsync(
+      Request request,
+      Class<T> responseType
+  ) {
+    return CompletableFuture.supplyAsync(() -> {
+      try {
+        return send(request, responseType);
+      } catch (IOException e) {
+        throw new CompletionException(e);
+      }
+    }, asyncExecutor);
+  }
+
+  @Override
+  public CompletableFuture<BatchResponse> sendBatchAsync(BatchRequest batchRequest) {
+    return CompletableFuture.supplyAsync(() -> {
+      try {
+        return sendBatch(batchRequest);
+      } catch (IOException e) {
+        throw new CompletionException(e);
+      }
+    }, asyncExecutor);
+  }
+
+  @Override
+  public void close() throws IOException {
+    asyncExecutor.shutdownNow();
+    super.close();
+  }
+
+  public CircuitBreaker.State getCircuitState() {
+    return circuitBreaker.getState();
+  }
+
+  public int getConcurrencyLimit() {
+    return concurrencyLimit.getLimit();
+  }
+
+}
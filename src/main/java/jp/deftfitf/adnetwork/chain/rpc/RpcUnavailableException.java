@@ -0,0 +1,15 @@
+package jp.deftfitf.adnetwork.chain.rpc;
+
+import java.io.IOException;
+
+/**
+ * Thrown without calling the node, when the circuit breaker is open or no concurrency slot becomes
+ * free before the deadline.
+ */
+public class RpcUnavailableException extends IOException {
+
+  public RpcUnavailableException(String message) {
+    super(message);
+  }
+
+}
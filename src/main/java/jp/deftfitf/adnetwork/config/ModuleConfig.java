@@ -1,14 +1,37 @@
 package jp.deftfitf.adnetwork.config;
 
-import java.security.SecureRandom;
 import java.time.Clock;
-import java.util.Random;
+import jp.deftfitf.adnetwork.selection.AdSelectionStrategy;
+import jp.deftfitf.adnetwork.selection.PriceWeightedSelectionStrategy;
+import jp.deftfitf.adnetwork.selection.RoundRobinSelectionStrategy;
+import jp.deftfitf.adnetwork.selection.UniformSelectionStrategy;
+import jp.deftfitf.adnetwork.setting.ChallengeSetting;
+import jp.deftfitf.adnetwork.setting.DeliverySetting;
+import jp.deftfitf.adnetwork.setting.ImageSetting;
+import jp.deftfitf.adnetwork.setting.InventoryCacheSetting;
+import jp.deftfitf.adnetwork.setting.KeyStoreSetting;
+import jp.deftfitf.adnetwork.setting.MetricsSetting;
+import jp.deftfitf.adnetwork.setting.SessionSetting;
+import jp.deftfitf.adnetwork.setting.ShardSetting;
+import jp.deftfitf.adnetwork.setting.StorageSetting;
 import lombok.Setter;
 import lombok.experimental.Delegate;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
 @Configuration
+@EnableConfigurationProperties({
+    InventoryCacheSetting.class,
+    DeliverySetting.class,
+    StorageSetting.class,
+    KeyStoreSetting.class,
+    ChallengeSetting.class,
+    SessionSetting.class,
+    MetricsSetting.class,
+    ImageSetting.class,
+    ShardSetting.class
+})
 public class ModuleConfig {
 
   @Bean
@@ -22,8 +45,18 @@ public class ModuleConfig {
   }
 
   @Bean
-  public Random random() {
-    return new SecureRandom();
+  public AdSelectionStrategy adSelectionStrategy(DeliverySetting deliverySetting) {
+    switch (deliverySetting.getSelectionStrategy()) {
+      case PRICE_WEIGHTED:
+        return new PriceWeightedSelectionStrategy();
+      case UNIFORM:
+        return new UniformSelectionStrategy();
+      case ROUND_ROBIN:
+        return new RoundRobinSelectionStrategy();
+      default:
+        throw new IllegalStateException(
+            "unexpected selection strategy: " + deliverySetting.getSelectionStrategy());
+    }
   }
 
   public static class CustomClock extends Clock implements ClockMillis {
@@ -1,34 +1,58 @@
 package jp.deftfitf.adnetwork.config;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import java.io.IOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import jp.deftfitf.adnetwork.chain.rpc.ResilientHttpService;
 import jp.deftfitf.adnetwork.setting.AdNetworkContractSetting;
 import jp.deftfitf.adnetwork.setting.EthNetworkSetting;
+import jp.deftfitf.adnetwork.setting.EthRpcSetting;
+import jp.deftfitf.adnetwork.setting.InventoryCacheSetting;
 import jp.deftfitf.adnetwork.setting.WalletSetting;
 import lombok.extern.slf4j.Slf4j;
+import okhttp3.ConnectionPool;
+import okhttp3.OkHttpClient;
 import org.jetbrains.annotations.NotNull;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.web3j.adnetwork.AdNetwork;
 import org.web3j.crypto.CipherException;
 import org.web3j.crypto.Credentials;
 import org.web3j.crypto.WalletUtils;
 import org.web3j.protocol.Web3j;
-import org.web3j.protocol.http.HttpService;
 import org.web3j.tx.gas.DefaultGasProvider;
 
 @Slf4j
 @Configuration
 @EnableConfigurationProperties({
     EthNetworkSetting.class,
+    EthRpcSetting.class,
     AdNetworkContractSetting.class,
     WalletSetting.class
 })
 public class Web3jConfiguration {
 
   @Bean
-  public Web3j web3j(@NotNull EthNetworkSetting networkSetting) {
-    final var web3jService = new HttpService(networkSetting.getUri());
+  public Web3j web3j(
+      @NotNull EthNetworkSetting networkSetting,
+      @NotNull EthRpcSetting rpcSetting,
+      @NotNull MeterRegistry meterRegistry
+  ) {
+    final var httpClient = new OkHttpClient.Builder()
+        .connectionPool(new ConnectionPool(rpcSetting.getMaxIdleConnections(),
+            rpcSetting.getKeepAlive().toMillis(), TimeUnit.MILLISECONDS))
+        .connectTimeout(rpcSetting.getConnectTimeout())
+        .callTimeout(rpcSetting.getCallTimeout())
+        .retryOnConnectionFailure(false) // retried by ResilientHttpService
+        .build();
+    final var threadFactory = new CustomizableThreadFactory("eth-rpc-");
+    threadFactory.setDaemon(true);
+    final var web3jService = new ResilientHttpService(networkSetting.getUri(), httpClient,
+        rpcSetting, Executors.newFixedThreadPool(rpcSetting.getAsyncParallelism(), threadFactory),
+        meterRegistry);
     return Web3j.build(web3jService);
   }
 
@@ -46,11 +70,16 @@ public class Web3jConfiguration {
   public AdNetwork adNetworkContract(
       Web3j web3j,
       Credentials credentials,
-      AdNetworkContractSetting setting
+      AdNetworkContractSetting setting,
+      InventoryCacheSetting inventoryCacheSetting
   ) {
     final var adNetworkContract = AdNetwork.load(
         setting.getAddress(), web3j, credentials,
         new DefaultGasProvider());
+    if (!inventoryCacheSetting.isChainReader()) {
+      // replicas don't call the contract, and may not reach the node at all
+      return adNetworkContract;
+    }
     try {
       adNetworkContract.isValid();
     } catch (IOException e) {
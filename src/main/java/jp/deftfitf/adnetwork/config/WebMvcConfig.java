@@ -1,5 +1,6 @@
 package jp.deftfitf.adnetwork.config;
 
+import jp.deftfitf.adnetwork.controller.StorageController;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.web.servlet.config.annotation.EnableWebMvc;
 import org.springframework.web.servlet.config.annotation.ResourceHandlerRegistry;
@@ -15,10 +16,12 @@ public class WebMvcConfig implements WebMvcConfigurer {
           "classpath:/resources/",
           "classpath:/static/",
           "classpath:/public/",
-          "classpath:/custom/",
-          "file:./uploaded/"
+          "classpath:/custom/"
       };
 
+  /**
+   * Uploaded images and ad formats are served by {@link StorageController}.
+   */
   @Override
   public void addResourceHandlers(ResourceHandlerRegistry registry) {
     registry
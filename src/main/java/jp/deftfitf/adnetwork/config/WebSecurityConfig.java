@@ -3,8 +3,14 @@ package jp.deftfitf.adnetwork.config;
 import jp.deftfitf.adnetwork.auth.EcrecoverService;
 import jp.deftfitf.adnetwork.auth.EthAuthenticationFilter;
 import jp.deftfitf.adnetwork.auth.EthAuthenticationProvider;
+import jp.deftfitf.adnetwork.auth.EthAuthenticationToken.EthUserPrincipal;
 import jp.deftfitf.adnetwork.auth.EthLogoutHandler;
+import jp.deftfitf.adnetwork.auth.SessionTokenFilter;
+import jp.deftfitf.adnetwork.auth.SessionTokenService;
 import jp.deftfitf.adnetwork.repository.ChallengeRepository;
+import jp.deftfitf.adnetwork.setting.InventoryCacheSetting;
+import jp.deftfitf.adnetwork.setting.SessionSetting;
+import jp.deftfitf.adnetwork.setting.ShardSetting;
 import lombok.NonNull;
 import lombok.RequiredArgsConstructor;
 import org.springframework.context.annotation.Configuration;
@@ -14,6 +20,7 @@ import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.builders.WebSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
 import org.springframework.security.config.annotation.web.configuration.WebSecurityConfigurerAdapter;
+import org.springframework.security.config.http.SessionCreationPolicy;
 import org.springframework.security.web.authentication.UsernamePasswordAuthenticationFilter;
 import org.springframework.security.web.authentication.logout.HttpStatusReturningLogoutSuccessHandler;
 import org.springframework.security.web.csrf.CookieCsrfTokenRepository;
@@ -34,6 +41,14 @@ public class WebSecurityConfig extends WebSecurityConfigurerAdapter {
   private final EcrecoverService ecrecoverService;
   @NonNull
   private final EthLogoutHandler ethLogoutHandler;
+  @NonNull
+  private final SessionTokenService sessionTokenService;
+  @NonNull
+  private final SessionSetting sessionSetting;
+  @NonNull
+  private final ShardSetting shardSetting;
+  @NonNull
+  private final InventoryCacheSetting inventoryCacheSetting;
 
   @Override
   public void configure(WebSecurity web) throws Exception {
@@ -51,7 +66,11 @@ public class WebSecurityConfig extends WebSecurityConfigurerAdapter {
         new AntPathRequestMatcher("/api/login", "POST"),
         this.authenticationManager());
     ethAuthFilter.setAuthenticationSuccessHandler((request, response, authentication) -> {
-      // do not anything
+      if (sessionSetting.isStateless()) {
+        final var principal = (EthUserPrincipal) authentication.getPrincipal();
+        sessionTokenService.writeCookie(response,
+            sessionTokenService.issue(principal.getAddress()));
+      }
     });
     ethAuthFilter.setAuthenticationFailureHandler((request, response, authentication) -> {
       // do not anything
@@ -66,9 +85,19 @@ public class WebSecurityConfig extends WebSecurityConfigurerAdapter {
 
   @Override
   protected void configure(HttpSecurity http) throws Exception {
+    // registryInventory is redirected to the owner of the inventory, or to the loader by a
+    // replica, where a servlet session of this node doesn't exist
+    if (shardSetting.isEnabled() && !sessionSetting.isStateless()) {
+      throw new IllegalStateException(
+          "adnetwork.session.stateless is required when adnetwork.shard.enabled is set");
+    }
+    if (!inventoryCacheSetting.isChainReader() && !sessionSetting.isStateless()) {
+      throw new IllegalStateException(
+          "adnetwork.session.stateless is required when adnetwork.cache.role is replica");
+    }
     http
         .cors().configurationSource(corsConfiguration()).and()
-        .csrf().ignoringAntMatchers("/delivery").csrfTokenRepository(csrfTokenRepository()).and()
+        .csrf().ignoringAntMatchers("/delivery", "/delivery/batch").csrfTokenRepository(csrfTokenRepository()).and()
         .authorizeRequests()
         .antMatchers("/api/login/challenge").permitAll()
         .antMatchers("/api/**").hasAuthority("ETH_USER")
@@ -78,6 +107,14 @@ public class WebSecurityConfig extends WebSecurityConfigurerAdapter {
         .addLogoutHandler(ethLogoutHandler)
         .logoutSuccessHandler(new HttpStatusReturningLogoutSuccessHandler(HttpStatus.OK))
         .permitAll();
+
+    if (sessionSetting.isStateless()) {
+      // the security context is neither saved to nor loaded from the servlet session
+      http
+          .sessionManagement().sessionCreationPolicy(SessionCreationPolicy.STATELESS).and()
+          .addFilterBefore(new SessionTokenFilter(sessionTokenService),
+              UsernamePasswordAuthenticationFilter.class);
+    }
   }
 
   private CsrfTokenRepository csrfTokenRepository() {
@@ -105,7 +142,10 @@ public class WebSecurityConfig extends WebSecurityConfigurerAdapter {
     forDeliveryConf.addAllowedHeader("*");
     forDeliveryConf.addExposedHeader("*");
     forDeliveryConf.addAllowedMethod("POST");
+    // let browsers reuse the preflight of JSON requests
+    forDeliveryConf.setMaxAge(3600L);
     corsSource.registerCorsConfiguration("/delivery", forDeliveryConf);
+    corsSource.registerCorsConfiguration("/delivery/batch", forDeliveryConf);
 
     return corsSource;
   }
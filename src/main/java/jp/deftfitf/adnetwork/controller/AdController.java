@@ -2,7 +2,7 @@ package jp.deftfitf.adnetwork.controller;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.math.BigInteger;
+import java.net.URI;
 import java.nio.charset.StandardCharsets;
 import java.security.KeyFactory;
 import java.security.NoSuchAlgorithmException;
@@ -10,15 +10,24 @@ import java.security.PrivateKey;
 import java.security.spec.InvalidKeySpecException;
 import java.security.spec.PKCS8EncodedKeySpec;
 import java.util.Base64;
+import java.util.List;
+import java.util.Locale;
 import java.util.Set;
-import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.regex.Pattern;
 import jp.deftfitf.adnetwork.auth.EthAuthenticationToken.EthUserPrincipal;
+import jp.deftfitf.adnetwork.chain.AdNetworkBatchReader;
+import jp.deftfitf.adnetwork.image.ImageTranscoder;
 import jp.deftfitf.adnetwork.interfaces.AdFormatV1Request;
 import jp.deftfitf.adnetwork.interfaces.RegistryInventoryRequest;
 import jp.deftfitf.adnetwork.repository.DeliveryPrivateKeyRepository;
 import jp.deftfitf.adnetwork.repository.StorageRepository;
+import jp.deftfitf.adnetwork.setting.InventoryCacheSetting;
+import jp.deftfitf.adnetwork.shard.InventoryShard;
 import lombok.NonNull;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.util.StringUtils;
 import org.springframework.web.bind.annotation.PostMapping;
@@ -27,9 +36,6 @@ import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.multipart.MultipartFile;
-import org.web3j.adnetwork.AdNetwork;
-import org.web3j.crypto.Hash;
-import org.web3j.utils.Numeric;
 
 @RestController
 @RequestMapping("/api/ad")
@@ -41,20 +47,44 @@ public class AdController {
       "image/png",
       "image/jpeg"
   );
+  private static final Pattern FILE_EXTENSION = Pattern.compile("[a-z0-9]{1,5}");
 
   @NonNull
   private final StorageRepository storageRepository;
   @NonNull
   private final DeliveryPrivateKeyRepository deliveryPrivateKeyRepository;
   @NonNull
-  private final AdNetwork adNetwork;
+  private final AdNetworkBatchReader adNetworkBatchReader;
+  @NonNull
+  private final ImageTranscoder imageTranscoder;
+  @NonNull
+  private final InventoryShard inventoryShard;
+  @NonNull
+  private final InventoryCacheSetting inventoryCacheSetting;
 
+  /**
+   * The key of an inventory of another member is redirected to it, as only the owner loads the
+   * inventory. A replica redirects every key to its loader, as it holds no keys. The owner is read
+   * through the async rpc client, so no request thread waits on the node.
+   */
   @PostMapping("/registryInventory")
-  public void registryInventory(
+  public CompletableFuture<ResponseEntity<Void>> registryInventory(
       @AuthenticationPrincipal EthUserPrincipal principal,
       @RequestBody RegistryInventoryRequest registryInventoryRequest
   ) {
-    validateInventory(principal.getAddress(), registryInventoryRequest.getInventoryId());
+    final long inventoryId = registryInventoryRequest.getInventoryId();
+    if (!inventoryCacheSetting.isChainReader()) {
+      return CompletableFuture.completedFuture(ResponseEntity
+          .status(HttpStatus.TEMPORARY_REDIRECT)
+          .location(URI.create(inventoryCacheSetting.getLoaderUrl() + "/api/ad/registryInventory"))
+          .build());
+    }
+    if (!inventoryShard.owns(inventoryId)) {
+      return CompletableFuture.completedFuture(ResponseEntity
+          .status(HttpStatus.TEMPORARY_REDIRECT)
+          .location(URI.create(inventoryShard.ownerOf(inventoryId) + "/api/ad/registryInventory"))
+          .build());
+    }
 
     final var privateKeyBytes = Base64
         .getDecoder()
@@ -74,27 +104,25 @@ public class AdController {
       throw new RuntimeException(e);
     }
 
-    deliveryPrivateKeyRepository.save(
-        registryInventoryRequest.getInventoryId(),
-        privateKey
-    );
+    return validateInventory(principal.getAddress(), inventoryId)
+        .thenApply(validated -> {
+          deliveryPrivateKeyRepository.save(inventoryId, privateKey);
+          return ResponseEntity.ok().<Void>build();
+        });
   }
 
-  private void validateInventory(String owner, long inventoryId) {
-    final String targetOwner;
-    try {
-      final var inventory = adNetwork
-          .getInventory(BigInteger.valueOf(inventoryId))
-          .send();
-
-      targetOwner = inventory.component2().toLowerCase();
-    } catch (Exception e) {
-      throw new RuntimeException(e);
-    }
-
-    if (!targetOwner.equals(owner.toLowerCase())) {
-      throw new IllegalArgumentException("Requested inventory isn't owned by requested address");
-    }
+  private CompletableFuture<Void> validateInventory(String owner, long inventoryId) {
+    return adNetworkBatchReader.getInventoryAsync(List.of(inventoryId))
+        .thenAccept(inventories -> {
+          final var inventory = inventories.get(inventoryId);
+          if (inventory == null) {
+            throw new RuntimeException("Failed to read inventory: inventoryId=" + inventoryId);
+          }
+          if (!inventory.component2().equalsIgnoreCase(owner)) {
+            throw new IllegalArgumentException(
+                "Requested inventory isn't owned by requested address");
+          }
+        });
   }
 
   @PostMapping("/image")
@@ -114,22 +142,21 @@ public class AdController {
     if (elems.length < 1) {
       throw new RuntimeException("Your uploaded ad image name is invalid");
     }
-    final var fileExtension = elems[elems.length - 1];
-
-    final var fileName =
-        String.format(
-            "images/%s-%s.%s",
-            principal.getAddress(),
-            UUID.randomUUID(),
-            fileExtension);
+    final var fileExtension = elems[elems.length - 1].toLowerCase(Locale.ROOT);
+    if (!FILE_EXTENSION.matcher(fileExtension).matches()) {
+      throw new RuntimeException("Your uploaded ad image name is invalid");
+    }
 
+    // the same image uploaded again gets the same name, and its variants are already made
     try (final var is = multipartFile.getInputStream()) {
-      storageRepository.save(fileName, is);
+      final var ingested = storageRepository.ingest("images", fileExtension, is, false);
+      if (ingested.isCreated()) {
+        imageTranscoder.submit(ingested.getKey());
+      }
+      return ingested.getKey();
     } catch (IOException e) {
       throw new RuntimeException(e);
     }
-
-    return fileName;
   }
 
   @PostMapping("/create")
@@ -137,18 +164,12 @@ public class AdController {
       @AuthenticationPrincipal EthUserPrincipal principal,
       @RequestBody AdFormatV1Request adFormatV1Request
   ) {
-    final var sha3Hash = Numeric.toHexStringNoPrefix(
-        Hash.sha3(adFormatV1Request
+    // the hash is the name of the ad format on chain
+    return storageRepository.ingest("ad-formats", "",
+        new ByteArrayInputStream(adFormatV1Request
             .getEncodedAdFormatV1()
-            .getBytes(StandardCharsets.UTF_8)));
-
-    storageRepository.save("ad-formats/" + sha3Hash,
-        new ByteArrayInputStream(
-            adFormatV1Request
-                .getEncodedAdFormatV1()
-                .getBytes(StandardCharsets.UTF_8)));
-
-    return sha3Hash;
+            .getBytes(StandardCharsets.UTF_8)),
+        true).getHash();
   }
 
 }
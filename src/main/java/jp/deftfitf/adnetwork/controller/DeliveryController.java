@@ -1,43 +1,185 @@
 package jp.deftfitf.adnetwork.controller;
 
+import java.io.ByteArrayOutputStream;
+import java.net.URI;
 import java.time.Clock;
 import java.time.Instant;
 import java.time.ZoneId;
-import java.util.Random;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
 import jp.deftfitf.adnetwork.config.ModuleConfig.CustomClock;
+import jp.deftfitf.adnetwork.dto.DeliverableAd;
+import jp.deftfitf.adnetwork.interfaces.AdBatchRequest;
 import jp.deftfitf.adnetwork.interfaces.AdRequest;
-import jp.deftfitf.adnetwork.interfaces.AdResponse;
+import jp.deftfitf.adnetwork.metrics.DeliveryMetrics;
+import jp.deftfitf.adnetwork.repository.AdFormatCacheRepository;
 import jp.deftfitf.adnetwork.repository.InventoryCacheRepository;
+import jp.deftfitf.adnetwork.setting.DeliverySetting;
+import jp.deftfitf.adnetwork.setting.ShardSetting;
+import jp.deftfitf.adnetwork.setting.ShardSetting.ForeignInventory;
+import jp.deftfitf.adnetwork.shard.DeliveryForwarder;
+import jp.deftfitf.adnetwork.shard.InventoryShard;
 import lombok.NonNull;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
 
 @RestController
 @RequiredArgsConstructor
 public class DeliveryController {
 
+  private static final int BATCH_RESPONSE_INITIAL_SIZE = 512;
+
   @NonNull
   private final InventoryCacheRepository inventoryCacheRepository;
   @NonNull
-  private final Random random;
+  private final AdFormatCacheRepository adFormatCacheRepository;
   @NonNull
   private final CustomClock customClock;
+  @NonNull
+  private final DeliverySetting deliverySetting;
+  @NonNull
+  private final DeliveryMetrics deliveryMetrics;
+  @NonNull
+  private final InventoryShard inventoryShard;
+  @NonNull
+  private final DeliveryForwarder deliveryForwarder;
+  @NonNull
+  private final ShardSetting shardSetting;
+
+  /**
+   * Writes the response body of {@link jp.deftfitf.adnetwork.interfaces.AdResponse} encoded at
+   * reload time. An inventory of another member is forwarded or redirected to it.
+   *
+   * @param forwardedBy set by the member which forwarded the request
+   */
+  @PostMapping(value = "/delivery", produces = MediaType.APPLICATION_JSON_VALUE)
+  public ResponseEntity<byte[]> delivery(
+      @RequestBody AdRequest adRequest,
+      @RequestHeader(value = InventoryShard.FORWARDED_HEADER, required = false) String forwardedBy
+  ) {
+    final long inventoryId = adRequest.getInventoryId();
+    if (forwardedBy == null && !inventoryShard.owns(inventoryId)) {
+      final var owner = inventoryShard.ownerOf(inventoryId);
+      if (shardSetting.getForeignInventory() == ForeignInventory.REDIRECT) {
+        return ResponseEntity.status(HttpStatus.TEMPORARY_REDIRECT)
+            .location(URI.create(owner + "/delivery"))
+            .build();
+      }
+      // blocks this servlet thread, while the event-loop server forwards without blocking
+      return ResponseEntity.ok(deliveryForwarder.forward(owner, inventoryId).block());
+    }
+
+    final var startedAt = System.nanoTime();
+    final var ad = inventoryCacheRepository.select(inventoryId);
+    deliveryMetrics.record(inventoryId, ad.isPresent(), System.nanoTime() - startedAt);
+    return ResponseEntity.ok(ad
+        .map(DeliverableAd::getResponseBody)
+        .orElse(DeliverableAd.NOT_FOUND_RESPONSE_BODY));
+  }
 
-  @PostMapping("/delivery")
-  public AdResponse delivery(
-      @RequestBody AdRequest adRequest
+  /**
+   * Deliver ads to every slot of a page at once. The response is a JSON array of {@link
+   * jp.deftfitf.adnetwork.interfaces.AdResponse} in the order of the slots. Slots of inventories of
+   * other members are forwarded to them in a batch per member. An ad belongs to a single inventory,
+   * so distinctAds holds across members.
+   */
+  @PostMapping(value = "/delivery/batch", produces = MediaType.APPLICATION_JSON_VALUE)
+  public byte[] deliveryBatch(
+      @RequestBody AdBatchRequest adBatchRequest,
+      @RequestHeader(value = InventoryShard.FORWARDED_HEADER, required = false) String forwardedBy
   ) {
-    final var ads = inventoryCacheRepository.findBy(adRequest.getInventoryId());
-    if (ads.isEmpty()) {
-      return AdResponse.of(false, null, null);
+    final var slots = adBatchRequest.getSlots();
+    if (slots.size() > deliverySetting.getBatchMaxSlots()) {
+      throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+          "Too many slots: " + slots.size());
     }
 
-    final var chosen = random.nextInt(ads.size());
-    final var ad = ads.get(chosen);
-    return AdResponse.of(true, ad.getKey(), ad.getValue());
+    final var inventoryIds = slots.stream()
+        .map(AdRequest::getInventoryId)
+        .collect(Collectors.toList());
+    if (forwardedBy == null && inventoryShard.isEnabled()) {
+      return shardedBatch(inventoryIds, adBatchRequest.isDistinctAds());
+    }
+    return arrayOf(selectAll(inventoryIds, adBatchRequest.isDistinctAds()));
+  }
+
+  private byte[] shardedBatch(List<Long> inventoryIds, boolean distinctAds) {
+    final var ownedSlots = new ArrayList<Integer>();
+    final var ownerToSlots = new HashMap<String, List<Integer>>();
+    for (int idx = 0; idx < inventoryIds.size(); idx++) {
+      final var inventoryId = inventoryIds.get(idx);
+      if (inventoryShard.owns(inventoryId)) {
+        ownedSlots.add(idx);
+      } else {
+        ownerToSlots.computeIfAbsent(inventoryShard.ownerOf(inventoryId),
+            notUsed -> new ArrayList<>()).add(idx);
+      }
+    }
+
+    // other members are asked first, so that they choose their ads while this node does
+    final var forwarded = new HashMap<String, CompletableFuture<List<byte[]>>>();
+    ownerToSlots.forEach((owner, ownerSlots) -> forwarded.put(owner, deliveryForwarder
+        .forwardBatch(owner, idsOf(inventoryIds, ownerSlots), distinctAds)
+        .toFuture()));
+    final var bodies = Arrays.asList(new byte[inventoryIds.size()][]);
+    final var owned = selectAll(idsOf(inventoryIds, ownedSlots), distinctAds);
+    for (int idx = 0; idx < ownedSlots.size(); idx++) {
+      bodies.set(ownedSlots.get(idx), owned.get(idx));
+    }
+    ownerToSlots.forEach((owner, ownerSlots) -> {
+      final var ownerBodies = forwarded.get(owner).join();
+      for (int idx = 0; idx < ownerSlots.size(); idx++) {
+        bodies.set(ownerSlots.get(idx), ownerBodies.get(idx));
+      }
+    });
+    return arrayOf(bodies);
+  }
+
+  private static List<Long> idsOf(List<Long> inventoryIds, List<Integer> slots) {
+    return slots.stream().map(inventoryIds::get).collect(Collectors.toList());
+  }
+
+  /**
+   * @return response bodies in the order of the inventory ids
+   */
+  private List<byte[]> selectAll(List<Long> inventoryIds, boolean distinctAds) {
+    final var startedAt = System.nanoTime();
+    final var ads = inventoryCacheRepository.selectAll(inventoryIds, distinctAds);
+    deliveryMetrics.recordBatch(System.nanoTime() - startedAt);
+    final var bodies = new ArrayList<byte[]>(ads.size());
+    for (int idx = 0; idx < ads.size(); idx++) {
+      deliveryMetrics.countSlot(inventoryIds.get(idx), ads.get(idx).isPresent());
+      bodies.add(ads.get(idx)
+          .map(DeliverableAd::getResponseBody)
+          .orElse(DeliverableAd.NOT_FOUND_RESPONSE_BODY));
+    }
+    return bodies;
+  }
+
+  private static byte[] arrayOf(List<byte[]> bodies) {
+    final var body = new ByteArrayOutputStream(BATCH_RESPONSE_INITIAL_SIZE * bodies.size() + 2);
+    body.write('[');
+    for (int idx = 0; idx < bodies.size(); idx++) {
+      if (idx > 0) {
+        body.write(',');
+      }
+      body.writeBytes(bodies.get(idx));
+    }
+    body.write(']');
+    return body.toByteArray();
   }
 
   @PostMapping("/admin/clock")
@@ -46,6 +188,8 @@ public class DeliveryController {
   ) {
     final var newClock = Clock.fixed(Instant.ofEpochMilli(millis), ZoneId.systemDefault());
     customClock.setOverride(newClock);
+    // switch ads on and off right away; moving the clock backwards needs a reload
+    inventoryCacheRepository.advance();
   }
 
   @PostMapping("/admin/reload")
@@ -53,4 +197,9 @@ public class DeliveryController {
     inventoryCacheRepository.reload();
   }
 
+  @GetMapping("/admin/ad-format-cache")
+  public AdFormatCacheRepository.Stats adFormatCacheStats() {
+    return adFormatCacheRepository.stats();
+  }
+
 }
@@ -1,22 +1,28 @@
 package jp.deftfitf.adnetwork.controller;
 
+import java.util.regex.Pattern;
 import jp.deftfitf.adnetwork.auth.EthAuthenticationToken.EthUserPrincipal;
 import jp.deftfitf.adnetwork.interfaces.ChallengeRequest;
 import jp.deftfitf.adnetwork.interfaces.ChallengeResponse;
 import jp.deftfitf.adnetwork.repository.ChallengeRepository;
 import lombok.NonNull;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
 
 @RestController
 @RequestMapping("/api")
 @RequiredArgsConstructor
 public class EthUserController {
 
+  // the forms EcrecoverService accepts: the 0x prefix is optional and case insensitive
+  private static final Pattern ADDRESS = Pattern.compile("(0[xX])?[0-9a-fA-F]{40}");
+
   @NonNull
   private final ChallengeRepository sessionRepository;
 
@@ -24,7 +30,12 @@ public class EthUserController {
   public ChallengeResponse challenge(
       @RequestBody ChallengeRequest challengeRequest
   ) {
-    return new ChallengeResponse(sessionRepository.attempt(challengeRequest.getAddress()));
+    final var address = challengeRequest.getAddress();
+    // keeps arbitrary keys out of the challenge store
+    if (address == null || !ADDRESS.matcher(address).matches()) {
+      throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "invalid address");
+    }
+    return new ChallengeResponse(sessionRepository.attempt(address));
   }
 
   @PostMapping("/login")
@@ -0,0 +1,43 @@
+package jp.deftfitf.adnetwork.controller;
+
+import jp.deftfitf.adnetwork.repository.DeliveryCacheDelta;
+import jp.deftfitf.adnetwork.repository.InventoryCacheRepository;
+import jp.deftfitf.adnetwork.setting.InventoryCacheSetting;
+import jp.deftfitf.adnetwork.setting.InventoryCacheSetting.Role;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * Publishes the delivery cache of a loader to replicas. It holds only ads which have started, which
+ * anyone can get from /delivery as well.
+ */
+@RestController
+@RequiredArgsConstructor
+public class ReplicationController {
+
+  @NonNull
+  private final InventoryCacheRepository inventoryCacheRepository;
+  @NonNull
+  private final InventoryCacheSetting setting;
+
+  /**
+   * @param epoch   epoch of the version the replica has applied, 0 if it has applied none
+   * @return {@link DeliveryCacheDelta} since the version
+   */
+  @GetMapping(value = "/replication/delta", produces = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+  public ResponseEntity<byte[]> delta(
+      @RequestParam(value = "epoch", defaultValue = "0") long epoch,
+      @RequestParam(value = "version", defaultValue = "0") long version
+  ) {
+    if (setting.getRole() != Role.LOADER) {
+      return ResponseEntity.notFound().build();
+    }
+    return ResponseEntity.ok(inventoryCacheRepository.deltaSince(epoch, version).encode());
+  }
+
+}
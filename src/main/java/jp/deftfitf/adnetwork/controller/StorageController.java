@@ -0,0 +1,233 @@
+package jp.deftfitf.adnetwork.controller;
+
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Optional;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import jp.deftfitf.adnetwork.image.ImageTranscoder;
+import jp.deftfitf.adnetwork.metrics.ImageMetrics;
+import jp.deftfitf.adnetwork.repository.StaticObjectRepository;
+import jp.deftfitf.adnetwork.repository.StaticObjectRepository.StaticObject;
+import jp.deftfitf.adnetwork.repository.StaticObjectRepository.Variant;
+import jp.deftfitf.adnetwork.repository.StorageRepository;
+import jp.deftfitf.adnetwork.setting.StorageSetting;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import org.apache.catalina.Globals;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpRange;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.ServletWebRequest;
+
+/**
+ * Serves uploaded objects under /public. Uploaded objects are named by their content hash, so
+ * responses can be cached forever, and validators are looked up once per object by {@link StaticObjectRepository}.
+ * Files are sent with sendfile when the connector supports it, and mapped segments are written
+ * without copying. Precompressed variants are served to clients accepting them, and a single byte
+ * range is served of the identity. Images are served in the size variant for the width given by
+ * {@code w}, once {@link ImageTranscoder} has made it.
+ */
+@RestController
+@RequiredArgsConstructor
+public class StorageController {
+
+  static final String CACHE_CONTROL = "public, max-age=31536000, immutable";
+  static final String CACHE_CONTROL_PENDING_VARIANT = "public, max-age=60";
+
+  @NonNull
+  private final StorageRepository storageRepository;
+  @NonNull
+  private final StaticObjectRepository staticObjectRepository;
+  @NonNull
+  private final ImageTranscoder imageTranscoder;
+  @NonNull
+  private final ImageMetrics imageMetrics;
+  @NonNull
+  private final StorageSetting setting;
+
+  @GetMapping("/public/{directory:images|ad-formats}/{name:.+}")
+  public void serve(
+      @PathVariable("directory") String directory,
+      @PathVariable("name") String name,
+      @RequestParam(value = "w", required = false) Integer width,
+      HttpServletRequest request,
+      HttpServletResponse response
+  ) throws IOException {
+    final var key = directory + "/" + name;
+    final var image = directory.equals("images");
+    Optional<StaticObject> found = Optional.empty();
+    var cacheControl = CACHE_CONTROL;
+    if (image && width != null) {
+      found = staticObjectRepository.find(imageTranscoder.variantOf(key, width));
+      if (found.isEmpty()) {
+        // the variant may be made later, so the original isn't cached for long at this URL
+        cacheControl = CACHE_CONTROL_PENDING_VARIANT;
+      }
+    }
+    final var resized = found.isPresent();
+    if (!resized) {
+      found = staticObjectRepository.find(key);
+    }
+    if (found.isEmpty()) {
+      response.sendError(HttpServletResponse.SC_NOT_FOUND);
+      return;
+    }
+
+    final var sent = respond(found.get(), cacheControl, request, response);
+    if (image) {
+      imageMetrics.recordResponse(resized, sent);
+    }
+  }
+
+  /**
+   * @return bytes of the body
+   */
+  private long respond(
+      StaticObject object,
+      String cacheControl,
+      HttpServletRequest request,
+      HttpServletResponse response
+  ) throws IOException {
+    final var rangeHeader = request.getHeader(HttpHeaders.RANGE);
+    // ranges are served of the identity only
+    final var variant = rangeHeader == null ? negotiate(object, request) : object.getIdentity();
+
+    response.setHeader(HttpHeaders.CACHE_CONTROL, cacheControl);
+    response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+    if (object.hasVariants()) {
+      response.setHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+    }
+    if (new ServletWebRequest(request, response)
+        .checkNotModified(variant.getEtag(), object.getLastModified())) {
+      return 0;
+    }
+    response.setContentType(object.getContentType().toString());
+    if (variant == object.getGzip()) {
+      response.setHeader(HttpHeaders.CONTENT_ENCODING, "gzip");
+    } else if (variant == object.getBrotli()) {
+      response.setHeader(HttpHeaders.CONTENT_ENCODING, "br");
+    }
+
+    var start = 0L;
+    var end = variant.getLength();
+    if (rangeHeader != null && isRangeApplicable(request, variant)) {
+      final List<HttpRange> ranges;
+      try {
+        ranges = HttpRange.parseRanges(rangeHeader);
+        if (ranges.size() == 1) {
+          start = ranges.get(0).getRangeStart(variant.getLength());
+          end = ranges.get(0).getRangeEnd(variant.getLength()) + 1;
+        }
+      } catch (IllegalArgumentException e) {
+        response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + variant.getLength());
+        response.sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+        return 0;
+      }
+      // several ranges are answered with the whole object
+      if (ranges.size() == 1) {
+        response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+        response.setHeader(HttpHeaders.CONTENT_RANGE,
+            "bytes " + start + "-" + (end - 1) + "/" + variant.getLength());
+      }
+    }
+    response.setContentLengthLong(end - start);
+    if (HttpMethod.HEAD.matches(request.getMethod())) {
+      return 0;
+    }
+    write(variant, start, end, request, response);
+    return end - start;
+  }
+
+  private static Variant negotiate(StaticObject object, HttpServletRequest request) {
+    final var acceptEncoding = request.getHeader(HttpHeaders.ACCEPT_ENCODING);
+    if (acceptEncoding == null) {
+      return object.getIdentity();
+    }
+    if (object.getBrotli() != null && accepts(acceptEncoding, "br")) {
+      return object.getBrotli();
+    }
+    if (object.getGzip() != null && accepts(acceptEncoding, "gzip")) {
+      return object.getGzip();
+    }
+    return object.getIdentity();
+  }
+
+  static boolean accepts(String acceptEncoding, String coding) {
+    for (final var element : acceptEncoding.split(",")) {
+      final var parameters = element.split(";");
+      final var token = parameters[0].trim();
+      if (!token.equalsIgnoreCase(coding) && !token.equals("*")) {
+        continue;
+      }
+      for (int idx = 1; idx < parameters.length; idx++) {
+        final var parameter = parameters[idx].trim();
+        if (parameter.startsWith("q=") && isZero(parameter.substring(2))) {
+          return false;
+        }
+      }
+      return true;
+    }
+    return false;
+  }
+
+  private static boolean isZero(String qvalue) {
+    try {
+      return Double.parseDouble(qvalue) == 0;
+    } catch (NumberFormatException e) {
+      return false;
+    }
+  }
+
+  /**
+   * A range is applied only when If-Range, if any, still matches the object.
+   */
+  private static boolean isRangeApplicable(HttpServletRequest request, Variant variant) {
+    final var ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+    return ifRange == null || ifRange.equals(variant.getEtag());
+  }
+
+  /**
+   * @param end exclusive
+   */
+  private void write(
+      Variant variant,
+      long start,
+      long end,
+      HttpServletRequest request,
+      HttpServletResponse response
+  ) throws IOException {
+    if (variant.getFile() == null) {
+      final var buffer = storageRepository.loadBuffer(variant.getKey());
+      buffer.limit((int) end).position((int) start);
+      final var channel = Channels.newChannel(response.getOutputStream());
+      while (buffer.hasRemaining()) {
+        channel.write(buffer);
+      }
+      return;
+    }
+
+    if (end - start >= setting.getSendfileMinSize()
+        && Boolean.TRUE.equals(request.getAttribute(Globals.SENDFILE_SUPPORTED_ATTR))) {
+      // Tomcat sends the file after this method has returned
+      request.setAttribute(Globals.SENDFILE_FILENAME_ATTR, variant.getFile().toString());
+      request.setAttribute(Globals.SENDFILE_FILE_START_ATTR, start);
+      request.setAttribute(Globals.SENDFILE_FILE_END_ATTR, end);
+      return;
+    }
+    try (final var file = FileChannel.open(variant.getFile(), StandardOpenOption.READ)) {
+      final var channel = Channels.newChannel(response.getOutputStream());
+      for (var position = start; position < end; ) {
+        position += file.transferTo(position, end - position, channel);
+      }
+    }
+  }
+
+}
@@ -0,0 +1,189 @@
+package jp.deftfitf.adnetwork.crypto;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.NoSuchAlgorithmException;
+import java.security.PrivateKey;
+import java.security.spec.MGF1ParameterSpec;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.crypto.Cipher;
+import javax.crypto.NoSuchPaddingException;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.OAEPParameterSpec;
+import javax.crypto.spec.PSource;
+import javax.crypto.spec.SecretKeySpec;
+import jp.deftfitf.adnetwork.dto.AdFormatV1Dto;
+import jp.deftfitf.adnetwork.setting.InventoryCacheSetting;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+/**
+ * Decrypts `v1:key:ciphertext` ad format envelopes. Cipher instances are confined to each thread
+ * and reused, and the envelope is parsed from bytes without intermediate Strings. RSA decryption
+ * dominates the cost, so bulk decryption is spread over a dedicated worker pool.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class AdFormatDecryptor {
+
+  private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+  private static final byte SEPARATOR = ':';
+  private static final int GCM_IV_LENGTH = 12;
+  private static final int GCM_TAG_LENGTH = 128;
+  private static final OAEPParameterSpec OAEP_PARAMS = new OAEPParameterSpec(
+      "SHA-256", "MGF1",
+      MGF1ParameterSpec.SHA256,
+      PSource.PSpecified.DEFAULT);
+  private static final ThreadLocal<Cipher> RSA_CIPHER =
+      ThreadLocal.withInitial(() -> cipherOf("RSA/ECB/OAEPPadding"));
+  private static final ThreadLocal<Cipher> AES_CIPHER =
+      ThreadLocal.withInitial(() -> cipherOf("AES/GCM/NoPadding"));
+
+  @NonNull
+  private final InventoryCacheSetting setting;
+  private ExecutorService executor;
+
+  @PostConstruct
+  public void init() {
+    final var parallelism = setting.getReloadDecryptParallelism() > 0
+        ? setting.getReloadDecryptParallelism()
+        : Runtime.getRuntime().availableProcessors();
+    final var threadFactory = new CustomizableThreadFactory("ad-format-decrypt-");
+    threadFactory.setDaemon(true);
+    executor = Executors.newFixedThreadPool(parallelism, threadFactory);
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    executor.shutdownNow();
+  }
+
+  public AdFormatV1Dto decrypt(PrivateKey privateKey, byte[] envelope)
+      throws GeneralSecurityException, IOException {
+    return decrypt(privateKey, ByteBuffer.wrap(envelope));
+  }
+
+  /**
+   * Decrypt an envelope between its position and limit, e.g. a mapped storage slice, without
+   * copying it first. The position of the given buffer is not changed.
+   */
+  public AdFormatV1Dto decrypt(PrivateKey privateKey, ByteBuffer envelope)
+      throws GeneralSecurityException, IOException {
+    final var end = envelope.limit();
+    final var keySeparator = indexOf(envelope, envelope.position());
+    final var ciphertextSeparator = keySeparator < 0 ? -1 : indexOf(envelope, keySeparator + 1);
+    if (ciphertextSeparator < 0 || indexOf(envelope, ciphertextSeparator + 1) >= 0) {
+      throw new IllegalArgumentException("unexpected ad format");
+    }
+    final var encryptedKey = decodeBase64(envelope, keySeparator + 1, ciphertextSeparator);
+    final var ciphertext = decodeBase64(envelope, ciphertextSeparator + 1, end);
+    if (ciphertext.remaining() < GCM_IV_LENGTH) {
+      throw new IllegalArgumentException("unexpected ad format");
+    }
+
+    final var rsaCipher = RSA_CIPHER.get();
+    rsaCipher.init(Cipher.DECRYPT_MODE, privateKey, OAEP_PARAMS);
+    final var aesKey = Base64.getDecoder().decode(rsaCipher.doFinal(
+        encryptedKey.array(), encryptedKey.arrayOffset(), encryptedKey.remaining()));
+
+    final var aesCipher = AES_CIPHER.get();
+    final var offset = ciphertext.arrayOffset();
+    aesCipher.init(Cipher.DECRYPT_MODE,
+        new SecretKeySpec(aesKey, "AES"),
+        new GCMParameterSpec(GCM_TAG_LENGTH, ciphertext.array(), offset, GCM_IV_LENGTH));
+    final var plainText = aesCipher.doFinal(
+        ciphertext.array(), offset + GCM_IV_LENGTH, ciphertext.remaining() - GCM_IV_LENGTH);
+
+    return OBJECT_MAPPER.readValue(plainText, AdFormatV1Dto.class);
+  }
+
+  public CompletableFuture<AdFormatV1Dto> decryptAsync(PrivateKey privateKey, byte[] envelope) {
+    return decryptAsync(privateKey, ByteBuffer.wrap(envelope));
+  }
+
+  public CompletableFuture<AdFormatV1Dto> decryptAsync(
+      PrivateKey privateKey,
+      ByteBuffer envelope
+  ) {
+    return CompletableFuture.supplyAsync(() -> {
+      try {
+        return decrypt(privateKey, envelope);
+      } catch (GeneralSecurityException | IOException e) {
+        throw new CompletionException(e);
+      }
+    }, executor);
+  }
+
+  /**
+   * Decrypt envelopes in parallel on the worker pool.
+   *
+   * @return results in the same order, empty where decryption has failed
+   */
+  public List<Optional<AdFormatV1Dto>> decryptAll(List<Envelope> envelopes) {
+    final var futures = new ArrayList<CompletableFuture<AdFormatV1Dto>>(envelopes.size());
+    for (final var envelope : envelopes) {
+      futures.add(decryptAsync(envelope.getPrivateKey(), envelope.getBytes()));
+    }
+
+    final var results = new ArrayList<Optional<AdFormatV1Dto>>(futures.size());
+    for (final var future : futures) {
+      try {
+        results.add(Optional.of(future.join()));
+      } catch (CompletionException e) {
+        log.error("decrypt failed", e.getCause());
+        results.add(Optional.empty());
+      }
+    }
+    return results;
+  }
+
+  private static int indexOf(ByteBuffer bytes, int from) {
+    for (int idx = from; idx < bytes.limit(); idx++) {
+      if (bytes.get(idx) == SEPARATOR) {
+        return idx;
+      }
+    }
+    return -1;
+  }
+
+  private static ByteBuffer decodeBase64(ByteBuffer bytes, int from, int to) {
+    final var range = bytes.duplicate();
+    range.position(from);
+    range.limit(to);
+    return Base64.getDecoder().decode(range);
+  }
+
+  private static Cipher cipherOf(String transformation) {
+    try {
+      return Cipher.getInstance(transformation);
+    } catch (NoSuchAlgorithmException | NoSuchPaddingException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  @Value(staticConstructor = "of")
+  public static class Envelope {
+
+    @NonNull
+    PrivateKey privateKey;
+    @NonNull
+    byte[] bytes;
+  }
+
+}
@@ -0,0 +1,49 @@
+package jp.deftfitf.adnetwork.crypto;
+
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Base64;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * HmacSHA256 of stateless challenges and session tokens. A Mac is kept per thread, as it isn't
+ * thread safe and creating one per call costs more than the HMAC itself.
+ */
+public class HmacSigner {
+
+  private static final String ALGORITHM = "HmacSHA256";
+
+  private final ThreadLocal<Mac> mac;
+
+  private HmacSigner(byte[] secret) {
+    final var key = new SecretKeySpec(secret, ALGORITHM);
+    this.mac = ThreadLocal.withInitial(() -> {
+      try {
+        final var instance = Mac.getInstance(ALGORITHM);
+        instance.init(key);
+        return instance;
+      } catch (GeneralSecurityException e) {
+        throw new RuntimeException(e);
+      }
+    });
+  }
+
+  /**
+   * @param secret base64 encoded key. When it's empty, a random key is generated, so only this
+   *               instance accepts what it has signed.
+   */
+  public static HmacSigner of(String secret) {
+    if (secret.isEmpty()) {
+      final var random = new byte[32];
+      new SecureRandom().nextBytes(random);
+      return new HmacSigner(random);
+    }
+    return new HmacSigner(Base64.getDecoder().decode(secret));
+  }
+
+  public byte[] sign(byte[] message) {
+    return mac.get().doFinal(message);
+  }
+
+}
@@ -0,0 +1,144 @@
+package jp.deftfitf.adnetwork.delivery;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpHeaderValues;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import java.io.IOException;
+import java.util.function.Function;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import jp.deftfitf.adnetwork.dto.DeliverableAd;
+import jp.deftfitf.adnetwork.interfaces.AdRequest;
+import jp.deftfitf.adnetwork.metrics.DeliveryMetrics;
+import jp.deftfitf.adnetwork.repository.InventoryCacheRepository;
+import jp.deftfitf.adnetwork.setting.DeliverySetting;
+import jp.deftfitf.adnetwork.setting.ShardSetting;
+import jp.deftfitf.adnetwork.setting.ShardSetting.ForeignInventory;
+import jp.deftfitf.adnetwork.shard.DeliveryForwarder;
+import jp.deftfitf.adnetwork.shard.InventoryShard;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.reactivestreams.Publisher;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+import reactor.netty.http.server.HttpServerRequest;
+import reactor.netty.http.server.HttpServerResponse;
+
+/**
+ * Serves /delivery on a Reactor Netty event loop. Requests are answered from the in-memory
+ * inventory cache on the I/O threads, so connections are not bound to servlet threads. There is no
+ * session, CSRF or authentication, as /delivery is public, and CORS is answered as in
+ * WebSecurityConfig. Inventories of other members are forwarded without blocking the I/O thread, or
+ * redirected.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(prefix = "adnetwork.delivery", name = "event-loop-enabled",
+    havingValue = "true")
+public class EventLoopDeliveryServer {
+
+  private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+  private static final String PREFLIGHT_MAX_AGE = "3600";
+
+  @NonNull
+  private final InventoryCacheRepository inventoryCacheRepository;
+  @NonNull
+  private final DeliverySetting setting;
+  @NonNull
+  private final DeliveryMetrics deliveryMetrics;
+  @NonNull
+  private final InventoryShard inventoryShard;
+  @NonNull
+  private final DeliveryForwarder deliveryForwarder;
+  @NonNull
+  private final ShardSetting shardSetting;
+  private DisposableServer server;
+
+  @PostConstruct
+  public void start() {
+    server = HttpServer.create()
+        .port(setting.getEventLoopPort())
+        .route(routes -> routes
+            .post("/delivery", this::delivery)
+            .options("/delivery", this::preflight))
+        .bindNow();
+    log.info("Event-loop delivery server started on port {}", server.port());
+  }
+
+  @PreDestroy
+  public void stop() {
+    server.disposeNow();
+  }
+
+  private Publisher<Void> delivery(HttpServerRequest request, HttpServerResponse response) {
+    final var forwarded = request.requestHeaders().contains(InventoryShard.FORWARDED_HEADER);
+    return request.receive()
+        .aggregate()
+        .asByteArray()
+        .flatMap(requestBody -> Mono.fromCallable(() ->
+            OBJECT_MAPPER.readValue(requestBody, AdRequest.class)))
+        .map(adRequest -> answer(adRequest.getInventoryId(), forwarded, response))
+        // an empty or malformed request body is answered with 400
+        .onErrorResume(IOException.class, e -> Mono.empty())
+        .defaultIfEmpty(Mono.defer(() -> withCors(response)
+            .status(HttpResponseStatus.BAD_REQUEST)
+            .send()
+            .then()))
+        .flatMap(Function.identity());
+  }
+
+  private Mono<Void> answer(long inventoryId, boolean forwarded, HttpServerResponse response) {
+    if (forwarded || inventoryShard.owns(inventoryId)) {
+      return send(response, respond(inventoryId));
+    }
+    final var owner = inventoryShard.ownerOf(inventoryId);
+    if (shardSetting.getForeignInventory() == ForeignInventory.REDIRECT) {
+      return withCors(response)
+          .status(HttpResponseStatus.TEMPORARY_REDIRECT)
+          .header(HttpHeaderNames.LOCATION, owner + "/delivery")
+          .send()
+          .then();
+    }
+    return deliveryForwarder.forward(owner, inventoryId)
+        .flatMap(body -> send(response, body));
+  }
+
+  private static Mono<Void> send(HttpServerResponse response, byte[] body) {
+    return withCors(response)
+        .header(HttpHeaderNames.CONTENT_TYPE, HttpHeaderValues.APPLICATION_JSON)
+        .sendByteArray(Mono.just(body))
+        .then();
+  }
+
+  private byte[] respond(long inventoryId) {
+    final var startedAt = System.nanoTime();
+    final var ad = inventoryCacheRepository.select(inventoryId);
+    deliveryMetrics.record(inventoryId, ad.isPresent(), System.nanoTime() - startedAt);
+    return ad
+        .map(DeliverableAd::getResponseBody)
+        .orElse(DeliverableAd.NOT_FOUND_RESPONSE_BODY);
+  }
+
+  private Publisher<Void> preflight(HttpServerRequest request, HttpServerResponse response) {
+    final var requestHeaders =
+        request.requestHeaders().get(HttpHeaderNames.ACCESS_CONTROL_REQUEST_HEADERS);
+    if (requestHeaders != null) {
+      response.header(HttpHeaderNames.ACCESS_CONTROL_ALLOW_HEADERS, requestHeaders);
+    }
+    return withCors(response)
+        .header(HttpHeaderNames.ACCESS_CONTROL_ALLOW_METHODS, "POST")
+        .header(HttpHeaderNames.ACCESS_CONTROL_MAX_AGE, PREFLIGHT_MAX_AGE)
+        .send();
+  }
+
+  private static HttpServerResponse withCors(HttpServerResponse response) {
+    return response.header(HttpHeaderNames.ACCESS_CONTROL_ALLOW_ORIGIN, "*");
+  }
+
+}
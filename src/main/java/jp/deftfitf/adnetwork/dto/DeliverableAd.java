@@ -0,0 +1,63 @@
+package jp.deftfitf.adnetwork.dto;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jp.deftfitf.adnetwork.interfaces.AdResponse;
+import lombok.NonNull;
+import lombok.Value;
+
+/**
+ * An ad in the delivery cache. Its /delivery response body is encoded once when the ad is cached,
+ * so that delivery writes the same bytes every time without mapping objects.
+ */
+@Value
+public class DeliverableAd {
+
+  private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+  public static final byte[] NOT_FOUND_RESPONSE_BODY = encode(AdResponse.of(false, null, null));
+
+  /**
+   * Inventory the ad has been approved on in the contract, which ads are delivered for. The one in
+   * the ad format is written by the advertiser, and isn't trusted.
+   */
+  long inventoryId;
+  long adId;
+  /**
+   * Delivery period in epoch seconds, both inclusive, as registered on the contract.
+   */
+  long startTime;
+  long endTime;
+  @NonNull
+  AdFormatV1Dto adFormatV1Dto;
+  @NonNull
+  byte[] responseBody;
+
+  public static DeliverableAd of(long inventoryId, long adId, AdFormatV1Dto adFormatV1Dto) {
+    return of(inventoryId, adId, adFormatV1Dto.getStartTime(), adFormatV1Dto.getEndTime(),
+        adFormatV1Dto);
+  }
+
+  public static DeliverableAd of(
+      long inventoryId,
+      long adId,
+      long startTime,
+      long endTime,
+      AdFormatV1Dto adFormatV1Dto
+  ) {
+    return new DeliverableAd(inventoryId, adId, startTime, endTime, adFormatV1Dto,
+        encode(AdResponse.of(true, adId, adFormatV1Dto)));
+  }
+
+  public boolean isDeliverableAt(long epochSecond) {
+    return epochSecond >= startTime && epochSecond <= endTime;
+  }
+
+  private static byte[] encode(AdResponse adResponse) {
+    try {
+      return OBJECT_MAPPER.writeValueAsBytes(adResponse);
+    } catch (JsonProcessingException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+}
@@ -0,0 +1,196 @@
+package jp.deftfitf.adnetwork.image;
+
+import java.awt.Color;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import jp.deftfitf.adnetwork.metrics.ImageMetrics;
+import jp.deftfitf.adnetwork.metrics.ImageMetrics.Result;
+import jp.deftfitf.adnetwork.repository.StorageRepository;
+import jp.deftfitf.adnetwork.setting.ImageSetting;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+/**
+ * Makes size variants of uploaded images on a bounded worker pool. Variants are decoded and
+ * encoded again by ImageIO, which leaves out metadata such as EXIF. PNG and GIF images get PNG
+ * variants, which keep transparency, and others get JPEG variants. Animated GIFs are left as they
+ * are. The original is kept untouched, as its name is already in the ad format.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ImageTranscoder {
+
+  @NonNull
+  private final StorageRepository storageRepository;
+  @NonNull
+  private final ImageSetting setting;
+  @NonNull
+  private final ImageMetrics imageMetrics;
+  private ThreadPoolExecutor executor;
+
+  @PostConstruct
+  public void init() {
+    final var threadFactory = new CustomizableThreadFactory("image-transcode-");
+    threadFactory.setDaemon(true);
+    executor = new ThreadPoolExecutor(setting.getWorkers(), setting.getWorkers(),
+        0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(setting.getQueueCapacity()),
+        threadFactory);
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    executor.shutdownNow();
+  }
+
+  /**
+   * Make the variants of the uploaded image in the background. Until they're made, or when the
+   * queue is full, the original is served instead.
+   */
+  public void submit(String fileName) {
+    try {
+      executor.execute(() -> transcode(fileName));
+    } catch (RejectedExecutionException e) {
+      imageMetrics.countTranscode(Result.REJECTED);
+      log.warn("Image transcoding queue is full, {} is served as uploaded", fileName);
+    }
+  }
+
+  /**
+   * @return name of the narrowest variant at least as wide as the width, or of the widest one
+   */
+  public String variantOf(String fileName, int width) {
+    var narrowestFitting = Integer.MAX_VALUE;
+    var widest = 0;
+    for (final int variantWidth : setting.getVariantWidths()) {
+      if (variantWidth >= width) {
+        narrowestFitting = Math.min(narrowestFitting, variantWidth);
+      }
+      widest = Math.max(widest, variantWidth);
+    }
+    return variantName(fileName,
+        narrowestFitting == Integer.MAX_VALUE ? widest : narrowestFitting);
+  }
+
+  static String variantName(String fileName, int width) {
+    final var dot = fileName.lastIndexOf('.');
+    final var base = dot < fileName.lastIndexOf('/') + 1 ? fileName : fileName.substring(0, dot);
+    return base + "-w" + width + "." + (isPngVariant(fileName) ? "png" : "jpg");
+  }
+
+  private static boolean isPngVariant(String fileName) {
+    final var lowerCase = fileName.toLowerCase(Locale.ROOT);
+    return lowerCase.endsWith(".png") || lowerCase.endsWith(".gif");
+  }
+
+  void transcode(String fileName) {
+    try {
+      final var original = storageRepository.loadBytes(fileName);
+      final var image = decode(original);
+      if (image == null) {
+        imageMetrics.countTranscode(Result.SKIPPED);
+        return;
+      }
+      final var png = isPngVariant(fileName);
+      for (final int width : setting.getVariantWidths()) {
+        final var encoded = encode(scale(image, Math.min(width, image.getWidth()), png), png);
+        storageRepository.save(variantName(fileName, width), new ByteArrayInputStream(encoded));
+      }
+      imageMetrics.countTranscode(Result.SUCCESS);
+    } catch (IOException | RuntimeException e) {
+      imageMetrics.countTranscode(Result.FAILURE);
+      log.warn("Failed to transcode {}, it's served as uploaded", fileName, e);
+    }
+  }
+
+  /**
+   * @return null when the image is animated or has too many pixels
+   */
+  private BufferedImage decode(byte[] bytes) throws IOException {
+    try (final var input = ImageIO.createImageInputStream(new ByteArrayInputStream(bytes))) {
+      final var readers = ImageIO.getImageReaders(input);
+      if (!readers.hasNext()) {
+        throw new IOException("unsupported image format");
+      }
+      final var reader = readers.next();
+      try {
+        reader.setInput(input);
+        if ((long) reader.getWidth(0) * reader.getHeight(0) > setting.getMaxPixels()
+            || reader.getNumImages(true) > 1) {
+          return null;
+        }
+        return reader.read(0);
+      } finally {
+        reader.dispose();
+      }
+    }
+  }
+
+  /**
+   * Halve the image until the next step reaches the width, as a single bilinear step skips pixels
+   * and aliases when shrinking a lot.
+   */
+  private static BufferedImage scale(BufferedImage image, int width, boolean png) {
+    final var height = Math.max(1,
+        (int) Math.round((double) image.getHeight() * width / image.getWidth()));
+    var current = image;
+    do {
+      final var nextWidth = Math.max(width, current.getWidth() / 2);
+      final var nextHeight = nextWidth == width
+          ? height
+          : Math.max(height, current.getHeight() / 2);
+      final var next = new BufferedImage(nextWidth, nextHeight,
+          png ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+      final var graphics = next.createGraphics();
+      try {
+        if (!png) {
+          // JPEG has no alpha, so transparent pixels become white instead of black
+          graphics.setColor(Color.WHITE);
+          graphics.fillRect(0, 0, nextWidth, nextHeight);
+        }
+        graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+            RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        graphics.drawImage(current, 0, 0, nextWidth, nextHeight, null);
+      } finally {
+        graphics.dispose();
+      }
+      current = next;
+    } while (current.getWidth() != width);
+    return current;
+  }
+
+  private byte[] encode(BufferedImage image, boolean png) throws IOException {
+    final var writer = ImageIO.getImageWritersByFormatName(png ? "png" : "jpeg").next();
+    final var bytes = new ByteArrayOutputStream();
+    try (final var output = ImageIO.createImageOutputStream(bytes)) {
+      writer.setOutput(output);
+      final var param = writer.getDefaultWriteParam();
+      if (!png) {
+        param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+        param.setCompressionQuality(setting.getJpegQuality());
+      }
+      // no metadata is written
+      writer.write(null, new IIOImage(image, null, null), param);
+    } finally {
+      writer.dispose();
+    }
+    return bytes.toByteArray();
+  }
+
+}
@@ -0,0 +1,19 @@
+package jp.deftfitf.adnetwork.interfaces;
+
+import java.util.List;
+import lombok.NonNull;
+import lombok.Value;
+
+@Value
+public class AdBatchRequest {
+
+  /**
+   * One request per ad slot of the page, answered in the same order.
+   */
+  @NonNull
+  List<AdRequest> slots;
+  /**
+   * Don't deliver the same ad to more than one slot.
+   */
+  boolean distinctAds;
+}
@@ -0,0 +1,71 @@
+package jp.deftfitf.adnetwork.metrics;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import javax.annotation.PostConstruct;
+import jp.deftfitf.adnetwork.repository.AdFormatCacheRepository;
+import jp.deftfitf.adnetwork.repository.InventoryCacheRepository;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+/**
+ * Gauges of the inventory cache and the ad format cache. They are computed when scraped, not
+ * maintained on the delivery path.
+ *
+ * <p>This isn't a MeterBinder, since the registry would then depend on the caches, which record
+ * their own metrics to it.
+ */
+@Component
+@RequiredArgsConstructor
+public class CacheMetrics {
+
+  @NonNull
+  private final MeterRegistry registry;
+  @NonNull
+  private final InventoryCacheRepository inventoryCacheRepository;
+  @NonNull
+  private final AdFormatCacheRepository adFormatCacheRepository;
+
+  @PostConstruct
+  public void bind() {
+    Gauge.builder("adnetwork.cache.inventories", inventoryCacheRepository,
+            repository -> repository.stats().getInventories())
+        .description("Inventories with at least one deliverable ad")
+        .register(registry);
+    Gauge.builder("adnetwork.cache.ads", inventoryCacheRepository,
+            repository -> repository.stats().getDeliverableAds())
+        .description("Ads which can be delivered now")
+        .register(registry);
+    Gauge.builder("adnetwork.cache.response.bytes", inventoryCacheRepository,
+            repository -> repository.stats().getResponseBytes())
+        .description("Encoded response bodies held by deliverable ads")
+        .baseUnit("bytes")
+        .register(registry);
+    Gauge.builder("adnetwork.cache.source.block", inventoryCacheRepository,
+            repository -> repository.stats().getSourceBlockNumber())
+        .description("Block number the cache has been reloaded at, -1 if unknown")
+        .register(registry);
+
+    Gauge.builder("adnetwork.ad-format-cache.size", adFormatCacheRepository,
+            repository -> repository.stats().getSize())
+        .register(registry);
+    FunctionCounter.builder("adnetwork.ad-format-cache.requests", adFormatCacheRepository,
+            repository -> repository.stats().getMemoryHits())
+        .tag("result", "memory-hit")
+        .register(registry);
+    FunctionCounter.builder("adnetwork.ad-format-cache.requests", adFormatCacheRepository,
+            repository -> repository.stats().getDiskHits())
+        .tag("result", "disk-hit")
+        .register(registry);
+    FunctionCounter.builder("adnetwork.ad-format-cache.requests", adFormatCacheRepository,
+            repository -> repository.stats().getMisses())
+        .tag("result", "miss")
+        .register(registry);
+    FunctionCounter.builder("adnetwork.ad-format-cache.evictions", adFormatCacheRepository,
+            repository -> repository.stats().getEvictions())
+        .register(registry);
+  }
+
+}
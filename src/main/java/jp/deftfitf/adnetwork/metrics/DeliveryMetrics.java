@@ -0,0 +1,201 @@
+package jp.deftfitf.adnetwork.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.util.concurrent.TimeUnit;
+import jp.deftfitf.adnetwork.setting.MetricsSetting;
+import org.springframework.stereotype.Component;
+
+/**
+ * Hits, misses and latency of /delivery, in total and per inventory. Only the first
+ * {@link MetricsSetting#getDeliveryTrackedInventories()} inventories with a hit are tagged by their
+ * id, so that a scan of inventory ids can't blow up the number of series nor take the tracked
+ * slots. Others are counted as {@code inventory=other} without taking a lock.
+ *
+ * <p>Recording doesn't allocate: meters of an inventory are looked up by its primitive id in an
+ * open addressing table, which is copied only when an inventory is tracked for the first time.
+ */
+@Component
+public class DeliveryMetrics {
+
+  private static final String OTHER = "other";
+
+  private final MeterRegistry meterRegistry;
+  private final int maxTracked;
+  private final InventoryMeters total;
+  private final InventoryMeters other;
+  private final Timer batchTimer;
+  private final Counter forwarded;
+  private final Counter forwardFailures;
+  private volatile InventoryTable tracked;
+
+  public DeliveryMetrics(MeterRegistry meterRegistry, MetricsSetting setting) {
+    this.meterRegistry = meterRegistry;
+    this.maxTracked = Math.max(0, setting.getDeliveryTrackedInventories());
+    this.total = new InventoryMeters(meterRegistry, null, true);
+    this.other = new InventoryMeters(meterRegistry, OTHER, false);
+    this.batchTimer = Timer.builder("adnetwork.delivery.batch.latency")
+        .description("Selection time of /delivery/batch requests")
+        .publishPercentileHistogram()
+        .register(meterRegistry);
+    this.forwarded = Counter.builder("adnetwork.delivery.forwarded")
+        .description("Requests forwarded to the member owning the inventory")
+        .tag("result", "success")
+        .register(meterRegistry);
+    this.forwardFailures = Counter.builder("adnetwork.delivery.forwarded")
+        .tag("result", "failure")
+        .register(meterRegistry);
+    this.tracked = new InventoryTable(Integer.highestOneBit(Math.max(1, maxTracked) * 2) * 2);
+  }
+
+  /**
+   * @param nanos time taken to choose the ad
+   */
+  public void record(long inventoryId, boolean hit, long nanos) {
+    total.record(hit, nanos);
+    metersOf(inventoryId, hit).record(hit, nanos);
+  }
+
+  /**
+   * Count a slot of a batch request. Its latency is recorded once by {@link #recordBatch(long)}.
+   */
+  public void countSlot(long inventoryId, boolean hit) {
+    total.count(hit);
+    metersOf(inventoryId, hit).count(hit);
+  }
+
+  public void recordBatch(long nanos) {
+    batchTimer.record(nanos, TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * Count a request forwarded to another member, which records the ad served by itself.
+   */
+  public void countForwarded(boolean success) {
+    (success ? forwarded : forwardFailures).increment();
+  }
+
+  /**
+   * @param hit whether the inventory is in the cache, as only those start being tracked
+   */
+  private InventoryMeters metersOf(long inventoryId, boolean hit) {
+    final var table = tracked;
+    final var meters = table.get(inventoryId);
+    if (meters != null) {
+      return meters;
+    }
+    if (!hit || table.size >= maxTracked) {
+      return other;
+    }
+    return track(inventoryId);
+  }
+
+  private synchronized InventoryMeters track(long inventoryId) {
+    final var table = tracked;
+    final var meters = table.get(inventoryId);
+    if (meters != null) {
+      return meters;
+    }
+    if (table.size >= maxTracked) {
+      return other;
+    }
+    final var newMeters =
+        new InventoryMeters(meterRegistry, Long.toString(inventoryId), false);
+    tracked = table.with(inventoryId, newMeters);
+    return newMeters;
+  }
+
+  private static final class InventoryMeters {
+
+    final Counter hits;
+    final Counter misses;
+    final Timer latency;
+
+    /**
+     * @param inventory tag value, or null for the total of every inventory
+     */
+    InventoryMeters(MeterRegistry meterRegistry, String inventory, boolean histogram) {
+      final var prefix = inventory == null ? "adnetwork.delivery" : "adnetwork.delivery.inventory";
+      final var hitsBuilder = Counter.builder(prefix + ".requests").tag("result", "hit");
+      final var missesBuilder = Counter.builder(prefix + ".requests").tag("result", "miss");
+      final var latencyBuilder = Timer.builder(prefix + ".latency")
+          .description("Time taken to choose an ad for /delivery");
+      if (inventory != null) {
+        hitsBuilder.tag("inventory", inventory);
+        missesBuilder.tag("inventory", inventory);
+        latencyBuilder.tag("inventory", inventory);
+      }
+      if (histogram) {
+        latencyBuilder.publishPercentileHistogram();
+      } else {
+        // a few precomputed percentiles instead of a histogram for each inventory
+        latencyBuilder.publishPercentiles(0.5, 0.99);
+      }
+      this.hits = hitsBuilder.register(meterRegistry);
+      this.misses = missesBuilder.register(meterRegistry);
+      this.latency = latencyBuilder.register(meterRegistry);
+    }
+
+    void record(boolean hit, long nanos) {
+      count(hit);
+      latency.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    void count(boolean hit) {
+      (hit ? hits : misses).increment();
+    }
+  }
+
+  /**
+   * Immutable open addressing table from inventory ids to meters, with linear probing.
+   */
+  private static final class InventoryTable {
+
+    final long[] keys;
+    final InventoryMeters[] values;
+    final int size;
+
+    InventoryTable(int capacity) {
+      this(new long[capacity], new InventoryMeters[capacity], 0);
+    }
+
+    private InventoryTable(long[] keys, InventoryMeters[] values, int size) {
+      this.keys = keys;
+      this.values = values;
+      this.size = size;
+    }
+
+    InventoryMeters get(long inventoryId) {
+      final var mask = keys.length - 1;
+      for (int idx = indexOf(inventoryId, mask); ; idx = (idx + 1) & mask) {
+        final var meters = values[idx];
+        if (meters == null || keys[idx] == inventoryId) {
+          return meters;
+        }
+      }
+    }
+
+    /**
+     * The capacity is at least twice the number of tracked inventories, so probing always ends.
+     */
+    InventoryTable with(long inventoryId, InventoryMeters meters) {
+      final var newKeys = keys.clone();
+      final var newValues = values.clone();
+      final var mask = keys.length - 1;
+      var idx = indexOf(inventoryId, mask);
+      while (newValues[idx] != null) {
+        idx = (idx + 1) & mask;
+      }
+      newKeys[idx] = inventoryId;
+      newValues[idx] = meters;
+      return new InventoryTable(newKeys, newValues, size + 1);
+    }
+
+    private static int indexOf(long inventoryId, int mask) {
+      final var hash = inventoryId * 0x9E3779B97F4A7C15L;
+      return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+  }
+
+}
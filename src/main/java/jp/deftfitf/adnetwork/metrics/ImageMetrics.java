@@ -0,0 +1,65 @@
+package jp.deftfitf.adnetwork.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.EnumMap;
+import java.util.Map;
+import org.springframework.stereotype.Component;
+
+/**
+ * Bytes of ad images per response, by whether a size variant or the original was served, and
+ * counters of upload-time transcoding.
+ */
+@Component
+public class ImageMetrics {
+
+  private final DistributionSummary originalBytes;
+  private final DistributionSummary variantBytes;
+  private final Map<Result, Counter> transcodeCounters = new EnumMap<>(Result.class);
+
+  public ImageMetrics(MeterRegistry meterRegistry) {
+    originalBytes = DistributionSummary.builder("adnetwork.image.response")
+        .baseUnit("bytes")
+        .tag("variant", "original")
+        .description("Body bytes of an image response, 0 when it wasn't modified")
+        .register(meterRegistry);
+    variantBytes = DistributionSummary.builder("adnetwork.image.response")
+        .baseUnit("bytes")
+        .tag("variant", "resized")
+        .register(meterRegistry);
+    for (final var result : Result.values()) {
+      transcodeCounters.put(result, Counter.builder("adnetwork.image.transcode")
+          .tag("result", result.tag)
+          .register(meterRegistry));
+    }
+  }
+
+  public void recordResponse(boolean resized, long bytes) {
+    (resized ? variantBytes : originalBytes).record(bytes);
+  }
+
+  public void countTranscode(Result result) {
+    transcodeCounters.get(result).increment();
+  }
+
+  public enum Result {
+    SUCCESS("success"),
+    FAILURE("failure"),
+    /**
+     * Left as uploaded, as it's animated or too large to decode.
+     */
+    SKIPPED("skipped"),
+    /**
+     * Left as uploaded, as the queue was full.
+     */
+    REJECTED("rejected");
+
+    private final String tag;
+
+    Result(String tag) {
+      this.tag = tag;
+    }
+  }
+
+}
@@ -0,0 +1,104 @@
+package jp.deftfitf.adnetwork.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.springframework.stereotype.Component;
+
+/**
+ * Timers of the inventory cache reload and its stages, and counters of inventories and ad formats
+ * which failed on the way, and of pulls of replicas.
+ */
+@Component
+public class ReloadMetrics {
+
+  private final Timer reloadTimer;
+  private final Map<Stage, Timer> stageTimers = new EnumMap<>(Stage.class);
+  private final Counter inventorySuccesses;
+  private final Counter inventoryFailures;
+  private final Counter decodeSuccesses;
+  private final Counter decodeFailures;
+  private final Counter pullSuccesses;
+  private final Counter pullFailures;
+
+  public ReloadMetrics(MeterRegistry meterRegistry) {
+    reloadTimer = Timer.builder("adnetwork.reload.duration")
+        .description("Time taken by a full reload of the inventory cache")
+        .register(meterRegistry);
+    for (final var stage : Stage.values()) {
+      stageTimers.put(stage, Timer.builder("adnetwork.reload.stage")
+          .tag("stage", stage.tag)
+          .publishPercentileHistogram()
+          .register(meterRegistry));
+    }
+    inventorySuccesses = Counter.builder("adnetwork.reload.inventories")
+        .tag("result", "success")
+        .register(meterRegistry);
+    inventoryFailures = Counter.builder("adnetwork.reload.inventories")
+        .tag("result", "failure")
+        .description("Inventories which couldn't be fetched and are left out of the cache")
+        .register(meterRegistry);
+    decodeSuccesses = Counter.builder("adnetwork.ad-format.decode")
+        .tag("result", "success")
+        .register(meterRegistry);
+    decodeFailures = Counter.builder("adnetwork.ad-format.decode")
+        .tag("result", "failure")
+        .register(meterRegistry);
+    pullSuccesses = Counter.builder("adnetwork.replica.pulls")
+        .tag("result", "success")
+        .register(meterRegistry);
+    pullFailures = Counter.builder("adnetwork.replica.pulls")
+        .tag("result", "failure")
+        .description("Pulls of a replica which failed, leaving its cache as it was")
+        .register(meterRegistry);
+  }
+
+  public void recordReload(long nanos) {
+    reloadTimer.record(nanos, TimeUnit.NANOSECONDS);
+  }
+
+  public void recordStage(Stage stage, long nanos) {
+    stageTimers.get(stage).record(nanos, TimeUnit.NANOSECONDS);
+  }
+
+  public void countInventory(boolean success) {
+    (success ? inventorySuccesses : inventoryFailures).increment();
+  }
+
+  public void countDecode(boolean success) {
+    (success ? decodeSuccesses : decodeFailures).increment();
+  }
+
+  public void countPull(boolean success) {
+    (success ? pullSuccesses : pullFailures).increment();
+  }
+
+  public enum Stage {
+    /**
+     * A getAdsOf batch, from being sent until its response has been decoded.
+     */
+    RPC("rpc"),
+    /**
+     * Read of an encrypted ad format.
+     */
+    STORAGE("storage"),
+    /**
+     * Decryption of an ad format, including the wait for a decrypt worker.
+     */
+    DECRYPT("decrypt"),
+    /**
+     * Build and swap in the new cache.
+     */
+    SWAP("swap");
+
+    private final String tag;
+
+    Stage(String tag) {
+      this.tag = tag;
+    }
+  }
+
+}
@@ -0,0 +1,114 @@
+package jp.deftfitf.adnetwork.replication;
+
+import io.netty.handler.codec.http.HttpResponseStatus;
+import java.io.IOException;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import jp.deftfitf.adnetwork.metrics.ReloadMetrics;
+import jp.deftfitf.adnetwork.repository.DeliveryCacheDelta;
+import jp.deftfitf.adnetwork.repository.InventoryCacheRepository;
+import jp.deftfitf.adnetwork.setting.InventoryCacheSetting;
+import jp.deftfitf.adnetwork.setting.InventoryCacheSetting.Role;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import reactor.core.Exceptions;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+/**
+ * Keeps the delivery cache of a replica up to date with its loader. The first pull gets every
+ * inventory, and later ones only the inventories changed since the version applied last. When the
+ * loader restarts, its versions start over in a new epoch and every inventory is pulled again. The
+ * cache is left as it is while the loader can't be reached.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class DeliveryCacheReplica {
+
+  private static final String PULL_FIXED_DELAY =
+      "${adnetwork.cache.replica-pull-fixed-delay:1000}";
+
+  @NonNull
+  private final InventoryCacheSetting setting;
+  @NonNull
+  private final InventoryCacheRepository inventoryCacheRepository;
+  @NonNull
+  private final ReloadMetrics reloadMetrics;
+  private ConnectionProvider connectionProvider;
+  private HttpClient httpClient;
+  private long epoch = 0;
+  private long version = 0;
+
+  @PostConstruct
+  public void init() {
+    if (setting.getRole() != Role.REPLICA) {
+      return;
+    }
+    connectionProvider = ConnectionProvider.create("replica-pull", 1);
+    httpClient = HttpClient.create(connectionProvider)
+        .responseTimeout(setting.getReplicaPullTimeout());
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    if (connectionProvider != null) {
+      connectionProvider.dispose();
+    }
+  }
+
+  @Scheduled(fixedDelayString = PULL_FIXED_DELAY)
+  public void scheduledPull() {
+    if (setting.getRole() != Role.REPLICA) {
+      return;
+    }
+    try {
+      pull();
+    } catch (IOException e) {
+      log.warn("Failed to pull the delivery cache from {}", setting.getLoaderUrl(), e);
+    }
+  }
+
+  /**
+   * Pull and apply the inventories changed since the version applied last.
+   *
+   * @return the number of applied inventories
+   */
+  public synchronized int pull() throws IOException {
+    final var uri = setting.getLoaderUrl()
+        + "/replication/delta?epoch=" + epoch + "&version=" + version;
+    final DeliveryCacheDelta delta;
+    try {
+      final var body = httpClient.get()
+          .uri(uri)
+          .responseSingle((response, content) -> response.status().equals(HttpResponseStatus.OK)
+              ? content.asByteArray()
+              : Mono.error(new IOException(uri + " answered " + response.status())))
+          .block(setting.getReplicaPullTimeout());
+      if (body == null) {
+        throw new IOException(uri + " answered no body");
+      }
+      delta = DeliveryCacheDelta.decode(body);
+    } catch (IOException | RuntimeException e) {
+      reloadMetrics.countPull(false);
+      throw e instanceof IOException
+          ? (IOException) e
+          : new IOException("Failed to pull " + uri, Exceptions.unwrap(e));
+    }
+
+    inventoryCacheRepository.applyDelta(delta);
+    reloadMetrics.countPull(true);
+    if (delta.isFull()) {
+      log.info("Pulled {} inventories of epoch {} at version {}",
+          delta.getInventories().size(), delta.getEpoch(), delta.getVersion());
+    }
+    epoch = delta.getEpoch();
+    version = delta.getVersion();
+    return delta.getInventories().size();
+  }
+
+}
@@ -0,0 +1,167 @@
+package jp.deftfitf.adnetwork.repository;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.LongAdder;
+import javax.annotation.PostConstruct;
+import jp.deftfitf.adnetwork.dto.AdFormatV1Dto;
+import jp.deftfitf.adnetwork.setting.InventoryCacheSetting;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Repository;
+import org.web3j.utils.Numeric;
+
+/**
+ * Decrypted ad formats keyed by the inventory and adHashForDelivery of the ad. The hash addresses
+ * immutable content, so an entry never has to be invalidated and each creative is decrypted once.
+ * The hash is public, so an entry is only found for the inventory whose key decrypted it. The memory tier is bounded
+ * by LRU eviction. When persistence is enabled, decrypted ad formats of ads which have started are
+ * also written to local disk so they survive restarts. Those which start later stay in memory, as
+ * their content is confidential until then.
+ */
+@Slf4j
+@Repository
+@RequiredArgsConstructor
+public class AdFormatCacheRepository {
+
+  private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+  @NonNull
+  private final InventoryCacheSetting setting;
+  private final LongAdder memoryHits = new LongAdder();
+  private final LongAdder diskHits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final LongAdder evictions = new LongAdder();
+  private final Map<String, AdFormatV1Dto> hashToAdFormat =
+      new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, AdFormatV1Dto> eldest) {
+          final var evict = size() > setting.getAdFormatCacheMaxEntries();
+          if (evict) {
+            evictions.increment();
+          }
+          return evict;
+        }
+      };
+
+  @PostConstruct
+  public void init() {
+    if (!setting.isAdFormatCachePersistenceEnabled()) {
+      return;
+    }
+    try {
+      Files.createDirectories(Paths.get(setting.getAdFormatCacheDirectory()));
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  public Optional<AdFormatV1Dto> find(long inventoryId, byte[] adHashForDelivery) {
+    final var key = keyOf(inventoryId, adHashForDelivery);
+    synchronized (hashToAdFormat) {
+      final var cached = hashToAdFormat.get(key);
+      if (cached != null) {
+        memoryHits.increment();
+        return Optional.of(cached);
+      }
+    }
+
+    final var persisted = loadPersisted(key);
+    if (persisted.isPresent()) {
+      diskHits.increment();
+      synchronized (hashToAdFormat) {
+        hashToAdFormat.put(key, persisted.get());
+      }
+      return persisted;
+    }
+
+    misses.increment();
+    return Optional.empty();
+  }
+
+  /**
+   * @param inventoryId inventory whose key has decrypted the ad format
+   * @param started     whether the ad has started, by its start time in the contract
+   */
+  public void save(
+      long inventoryId,
+      byte[] adHashForDelivery,
+      AdFormatV1Dto adFormatV1Dto,
+      boolean started
+  ) {
+    final var key = keyOf(inventoryId, adHashForDelivery);
+    synchronized (hashToAdFormat) {
+      hashToAdFormat.put(key, adFormatV1Dto);
+    }
+    if (started) {
+      persist(key, adFormatV1Dto);
+    }
+  }
+
+  public Stats stats() {
+    final int size;
+    synchronized (hashToAdFormat) {
+      size = hashToAdFormat.size();
+    }
+    return Stats.of(size, memoryHits.sum(), diskHits.sum(), misses.sum(), evictions.sum());
+  }
+
+  private Optional<AdFormatV1Dto> loadPersisted(String key) {
+    if (!setting.isAdFormatCachePersistenceEnabled()) {
+      return Optional.empty();
+    }
+    final var path = pathOf(key);
+    if (!Files.exists(path)) {
+      return Optional.empty();
+    }
+    try {
+      return Optional.of(OBJECT_MAPPER.readValue(path.toFile(), AdFormatV1Dto.class));
+    } catch (IOException e) {
+      log.warn("Broken persisted ad format is ignored: path={}", path, e);
+      return Optional.empty();
+    }
+  }
+
+  private void persist(String key, AdFormatV1Dto adFormatV1Dto) {
+    if (!setting.isAdFormatCachePersistenceEnabled()) {
+      return;
+    }
+    final var path = pathOf(key);
+    final var tmp = path.resolveSibling(key + ".tmp");
+    try {
+      OBJECT_MAPPER.writeValue(tmp.toFile(), adFormatV1Dto);
+      Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException e) {
+      // only costs another decryption after restart
+      log.warn("Failed to persist decrypted ad format: path={}", path, e);
+    }
+  }
+
+  private static String keyOf(long inventoryId, byte[] adHashForDelivery) {
+    return inventoryId + "-" + Numeric.toHexStringNoPrefix(adHashForDelivery);
+  }
+
+  private Path pathOf(String key) {
+    return Paths.get(setting.getAdFormatCacheDirectory(), key + ".json");
+  }
+
+  @Value(staticConstructor = "of")
+  public static class Stats {
+
+    int size;
+    long memoryHits;
+    long diskHits;
+    long misses;
+    long evictions;
+  }
+
+}
@@ -1,26 +1,158 @@
 package jp.deftfitf.adnetwork.repository;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.time.Clock;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Queue;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import jp.deftfitf.adnetwork.auth.EcrecoverService;
+import jp.deftfitf.adnetwork.crypto.HmacSigner;
+import jp.deftfitf.adnetwork.setting.ChallengeSetting;
+import jp.deftfitf.adnetwork.setting.ChallengeSetting.Mode;
+import lombok.NonNull;
+import lombok.Value;
 import org.springframework.stereotype.Repository;
+import org.web3j.utils.Numeric;
 
+/**
+ * Login challenges per address. Stored challenges are taken at most once and expire after the TTL.
+ * As every entry lives for the same TTL, a FIFO queue of entries is also their expiry order, so
+ * expired and excess entries are evicted from its head without any lock. Stateless challenges
+ * carry an HMAC instead, see {@link Mode#STATELESS}.
+ */
 @Repository
 public class ChallengeRepository {
 
-  private final Map<String, String> addressToChallenge = new ConcurrentHashMap<>();
+  private static final String STATELESS_PREFIX = "v1.";
 
-  public synchronized String attempt(String address) {
-    final var challenge = UUID.randomUUID().toString();
-    addressToChallenge.put(address, challenge);
-    return challenge;
+  private final Clock clock;
+  private final ChallengeSetting setting;
+  private final Map<String, Challenge> addressToChallenge = new ConcurrentHashMap<>();
+  private final Queue<Challenge> issueOrder = new ConcurrentLinkedQueue<>();
+  private final AtomicInteger issueOrderSize = new AtomicInteger();
+  private final SecureRandom secureRandom = new SecureRandom();
+  private final HmacSigner signer;
+
+  public ChallengeRepository(@NonNull Clock clock, @NonNull ChallengeSetting setting) {
+    this.clock = clock;
+    this.setting = setting;
+    this.signer = HmacSigner.of(setting.getSecret());
+  }
+
+  public String attempt(String address) {
+    final var normalized = EcrecoverService.normalizeAddress(address);
+    final var now = clock.millis();
+    if (setting.getMode() == Mode.STATELESS) {
+      return statelessChallengeOf(normalized, now / 1000,
+          Numeric.toHexStringNoPrefix(randomBytes(8)));
+    }
+
+    final var challenge = Challenge.of(normalized, UUID.randomUUID().toString(),
+        now + setting.getTtl().toMillis());
+    addressToChallenge.put(normalized, challenge);
+    issueOrder.add(challenge);
+    issueOrderSize.incrementAndGet();
+    evict(now);
+    return challenge.getValue();
+  }
+
+  /**
+   * Take the challenge issued to the address. A stored challenge can't be taken again.
+   *
+   * @param presented challenge sent back by the client. It's required by stateless challenges and
+   *                  compared with the stored one if present.
+   */
+  public Optional<String> getAttempt(String address, String presented) {
+    final var normalized = EcrecoverService.normalizeAddress(address);
+    final var now = clock.millis();
+    if (setting.getMode() == Mode.STATELESS) {
+      return Optional.ofNullable(presented)
+          .filter(challenge -> isValidStatelessChallenge(normalized, challenge, now / 1000));
+    }
+
+    final var challenge = addressToChallenge.remove(normalized);
+    if (challenge == null || challenge.getExpiresAt() < now) {
+      return Optional.empty();
+    }
+    if (presented != null && !presented.equals(challenge.getValue())) {
+      return Optional.empty();
+    }
+    return Optional.of(challenge.getValue());
+  }
+
+  /**
+   * @return the number of stored challenges, including expired ones not evicted yet
+   */
+  public int size() {
+    return addressToChallenge.size();
+  }
+
+  /**
+   * Drop expired entries, and the oldest ones while the queue exceeds the cap. The queue holds
+   * every live entry, and entries which have been taken or replaced until they reach its head, so
+   * bounding it bounds the map as well.
+   */
+  private void evict(long now) {
+    while (true) {
+      final var head = issueOrder.peek();
+      if (head == null
+          || (head.getExpiresAt() >= now && issueOrderSize.get() <= setting.getMaxEntries())) {
+        return;
+      }
+      if (issueOrder.remove(head)) {
+        issueOrderSize.decrementAndGet();
+        addressToChallenge.remove(head.getAddress(), head);
+      }
+    }
+  }
+
+  private String statelessChallengeOf(String address, long issuedAt, String nonce) {
+    final var payload = STATELESS_PREFIX + issuedAt + "." + nonce;
+    return payload + "." + Numeric.toHexStringNoPrefix(sign(address, payload));
+  }
+
+  private boolean isValidStatelessChallenge(String address, String challenge, long nowSeconds) {
+    final var parts = challenge.split("\\.");
+    if (parts.length != 4 || !challenge.startsWith(STATELESS_PREFIX)) {
+      return false;
+    }
+    final long issuedAt;
+    try {
+      issuedAt = Long.parseLong(parts[1]);
+    } catch (NumberFormatException e) {
+      return false;
+    }
+    if (issuedAt > nowSeconds || nowSeconds - issuedAt > setting.getTtl().toSeconds()) {
+      return false;
+    }
+    final var payload = challenge.substring(0, challenge.lastIndexOf('.'));
+    final var expected = sign(address, payload);
+    final var actual = Numeric.hexStringToByteArray(parts[3]);
+    return MessageDigest.isEqual(expected, actual);
   }
 
-  public synchronized Optional<String> getAttempt(String address) {
-    final var challengeOpt = Optional.ofNullable(addressToChallenge.get(address));
-    challengeOpt.ifPresent(notUsed -> addressToChallenge.remove(address));
-    return challengeOpt;
+  private byte[] randomBytes(int length) {
+    final var bytes = new byte[length];
+    secureRandom.nextBytes(bytes);
+    return bytes;
+  }
+
+  private byte[] sign(String address, String payload) {
+    return signer.sign((address + "|" + payload).getBytes(StandardCharsets.UTF_8));
+  }
+
+  @Value(staticConstructor = "of")
+  private static class Challenge {
+
+    String address;
+    String value;
+    long expiresAt;
   }
 
 }
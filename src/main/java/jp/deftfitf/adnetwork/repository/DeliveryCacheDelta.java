@@ -0,0 +1,104 @@
+package jp.deftfitf.adnetwork.repository;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import jp.deftfitf.adnetwork.dto.DeliverableAd;
+import lombok.Value;
+
+/**
+ * Deliverable ads of the inventories changed on a loader since a version, which replicas apply to
+ * their cache. An inventory without ads has none to deliver anymore. A full delta holds every
+ * inventory and replaces the cache of the replica. Response bodies aren't sent, as replicas encode
+ * them again from the ad formats.
+ *
+ * <p>Layout: magic(4) version(4) epoch(8) cacheVersion(8) full(1) blockNumber(8) count(4), then
+ * inventoryId(8) adCount(4) and ads of adId(8) startTime(8) endTime(8) and the ad format per
+ * inventory, encoded as in {@link DeliveryCacheSnapshot}.
+ */
+@Value(staticConstructor = "of")
+public class DeliveryCacheDelta {
+
+  private static final int MAGIC = 0x4144444c;
+  private static final int FORMAT_VERSION = 1;
+
+  /**
+   * Chosen at random when the loader starts, versions of another epoch can't be compared.
+   */
+  long epoch;
+  long version;
+  boolean full;
+  /**
+   * Block the ads of the loader were read at, or -1 if it's unknown.
+   */
+  long blockNumber;
+  Map<Long, List<DeliverableAd>> inventories;
+
+  public byte[] encode() {
+    final var bytes = new ByteArrayOutputStream();
+    try (final var os = new DataOutputStream(bytes)) {
+      os.writeInt(MAGIC);
+      os.writeInt(FORMAT_VERSION);
+      os.writeLong(epoch);
+      os.writeLong(version);
+      os.writeBoolean(full);
+      os.writeLong(blockNumber);
+      os.writeInt(inventories.size());
+      for (final var entry : inventories.entrySet()) {
+        os.writeLong(entry.getKey());
+        os.writeInt(entry.getValue().size());
+        for (final var ad : entry.getValue()) {
+          os.writeLong(ad.getAdId());
+          os.writeLong(ad.getStartTime());
+          os.writeLong(ad.getEndTime());
+          DeliveryCacheSnapshot.writeAdFormat(os, ad.getAdFormatV1Dto());
+        }
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return bytes.toByteArray();
+  }
+
+  /**
+   * @throws IOException if the delta is truncated or of another format
+   */
+  public static DeliveryCacheDelta decode(byte[] bytes) throws IOException {
+    final var buffer = ByteBuffer.wrap(bytes);
+    try {
+      if (buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION) {
+        throw new IOException("Unknown delta format");
+      }
+      final var epoch = buffer.getLong();
+      final var version = buffer.getLong();
+      final var full = buffer.get() != 0;
+      final var blockNumber = buffer.getLong();
+      final var count = buffer.getInt();
+      final var inventories = new LinkedHashMap<Long, List<DeliverableAd>>();
+      for (int idx = 0; idx < count; idx++) {
+        final var inventoryId = buffer.getLong();
+        final var adCount = buffer.getInt();
+        final var ads = new ArrayList<DeliverableAd>(Math.min(adCount, buffer.remaining()));
+        for (int adIdx = 0; adIdx < adCount; adIdx++) {
+          final var adId = buffer.getLong();
+          final var startTime = buffer.getLong();
+          final var endTime = buffer.getLong();
+          ads.add(DeliverableAd.of(inventoryId, adId, startTime, endTime,
+              DeliveryCacheSnapshot.readAdFormat(buffer)));
+        }
+        inventories.put(inventoryId, ads);
+      }
+      return of(epoch, version, full, blockNumber, inventories);
+    } catch (BufferUnderflowException | IllegalArgumentException e) {
+      throw new IOException("Delta is truncated", e);
+    }
+  }
+
+}
@@ -0,0 +1,75 @@
+package jp.deftfitf.adnetwork.repository;
+
+import java.security.SecureRandom;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import jp.deftfitf.adnetwork.dto.DeliverableAd;
+
+/**
+ * Deliverable ads per inventory, versioned by a counter which is bumped whenever those of an
+ * inventory change. Only the last version of an inventory is kept, so a delta since any version
+ * costs the inventories changed since then, and the journal never holds more entries than
+ * inventories. Not thread-safe.
+ */
+class DeliveryCacheJournal {
+
+  private final long epoch;
+  private long version = 0;
+  private final Map<Long, List<DeliverableAd>> inventoryIdToAds = new HashMap<>();
+  private final Map<Long, Long> inventoryIdToVersion = new HashMap<>();
+  private final TreeMap<Long, Long> versionToInventoryId = new TreeMap<>();
+
+  DeliveryCacheJournal() {
+    final var random = new SecureRandom();
+    var epoch = 0L;
+    while (epoch == 0) {
+      // 0 is left to replicas which haven't pulled anything yet
+      epoch = random.nextLong();
+    }
+    this.epoch = epoch;
+  }
+
+  /**
+   * @param ads deliverable ads of the inventory, empty if it has none anymore
+   */
+  void record(long inventoryId, List<DeliverableAd> ads) {
+    if (ads.equals(inventoryIdToAds.getOrDefault(inventoryId, List.of()))) {
+      return;
+    }
+    version++;
+    final var replaced = inventoryIdToVersion.put(inventoryId, version);
+    if (replaced != null) {
+      versionToInventoryId.remove(replaced);
+    }
+    versionToInventoryId.put(version, inventoryId);
+    // an inventory without ads is kept with its version, so that replicas learn it has gone
+    inventoryIdToAds.put(inventoryId, List.copyOf(ads));
+  }
+
+  /**
+   * @return inventories recorded so far, including those which have none anymore
+   */
+  Iterable<Long> inventoryIds() {
+    return List.copyOf(inventoryIdToAds.keySet());
+  }
+
+  /**
+   * @return inventories changed after the version, or every inventory if the version is of another
+   *     epoch
+   */
+  DeliveryCacheDelta since(long epoch, long version, long blockNumber) {
+    final var full = epoch != this.epoch || version > this.version;
+    final var inventories = new LinkedHashMap<Long, List<DeliverableAd>>();
+    for (final var inventoryId : versionToInventoryId.tailMap(full ? 0 : version, false).values()) {
+      final var ads = inventoryIdToAds.get(inventoryId);
+      if (!full || !ads.isEmpty()) {
+        inventories.put(inventoryId, ads);
+      }
+    }
+    return DeliveryCacheDelta.of(this.epoch, this.version, full, blockNumber, inventories);
+  }
+
+}
@@ -0,0 +1,178 @@
+package jp.deftfitf.adnetwork.repository;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+import jp.deftfitf.adnetwork.dto.AdFormatV1Dto;
+import jp.deftfitf.adnetwork.dto.DeliverableAd;
+import lombok.Value;
+
+/**
+ * Ads of the delivery cache on local disk, so that a restarted node serves them before its first
+ * reload. Records hold the encoded response body as well, so loading only copies bytes out of the
+ * mapped file.
+ *
+ * <p>Layout: magic(4) version(4) blockNumber(8) createdAt(8) count(4) records crc32(4), where
+ * strings and byte arrays are prefixed by their length.
+ */
+@Value(staticConstructor = "of")
+class DeliveryCacheSnapshot {
+
+  private static final int MAGIC = 0x41445350;
+  private static final int VERSION = 2;
+  private static final int TRAILER_LENGTH = 4;
+
+  /**
+   * Block the ads were read at, or -1 if it's unknown.
+   */
+  long blockNumber;
+  /**
+   * Epoch second the snapshot was taken at.
+   */
+  long createdAt;
+  List<DeliverableAd> ads;
+
+  /**
+   * Write to a temporary file and move it over the path, so that a crash never leaves a partial
+   * snapshot behind.
+   */
+  void write(Path path) throws IOException {
+    final var absolutePath = path.toAbsolutePath();
+    Files.createDirectories(absolutePath.getParent());
+    final var temporary = absolutePath.resolveSibling(absolutePath.getFileName() + ".tmp");
+    final var crc = new CRC32();
+    try (final var os = new DataOutputStream(new CheckedOutputStream(
+        new BufferedOutputStream(Files.newOutputStream(temporary)), crc))) {
+      os.writeInt(MAGIC);
+      os.writeInt(VERSION);
+      os.writeLong(blockNumber);
+      os.writeLong(createdAt);
+      os.writeInt(ads.size());
+      for (final var ad : ads) {
+        writeAd(os, ad);
+      }
+      os.writeInt((int) crc.getValue());
+    }
+    Files.move(temporary, absolutePath,
+        StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  /**
+   * @return the snapshot, or empty if none has been written
+   * @throws IOException if the snapshot is truncated, corrupted or of another format
+   */
+  static Optional<DeliveryCacheSnapshot> read(Path path) throws IOException {
+    if (!Files.exists(path)) {
+      return Optional.empty();
+    }
+    try (final var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      final var buffer = channel.map(MapMode.READ_ONLY, 0, channel.size());
+      if (buffer.limit() < TRAILER_LENGTH) {
+        throw new IOException("Snapshot is truncated: " + path);
+      }
+      final var body = buffer.duplicate().limit(buffer.limit() - TRAILER_LENGTH);
+      final var crc = new CRC32();
+      crc.update(body.duplicate());
+      if (buffer.getInt(body.limit()) != (int) crc.getValue()) {
+        throw new IOException("Snapshot is corrupted: " + path);
+      }
+
+      if (body.getInt() != MAGIC || body.getInt() != VERSION) {
+        throw new IOException("Unknown snapshot format: " + path);
+      }
+      final var blockNumber = body.getLong();
+      final var createdAt = body.getLong();
+      final var count = body.getInt();
+      final var ads = new ArrayList<DeliverableAd>(count);
+      for (int idx = 0; idx < count; idx++) {
+        ads.add(readAd(body));
+      }
+      return Optional.of(of(blockNumber, createdAt, ads));
+    } catch (BufferUnderflowException | IllegalArgumentException e) {
+      throw new IOException("Snapshot is truncated: " + path, e);
+    }
+  }
+
+  private static void writeAd(DataOutputStream os, DeliverableAd ad) throws IOException {
+    os.writeLong(ad.getInventoryId());
+    os.writeLong(ad.getAdId());
+    os.writeLong(ad.getStartTime());
+    os.writeLong(ad.getEndTime());
+    writeAdFormat(os, ad.getAdFormatV1Dto());
+    writeBytes(os, ad.getResponseBody());
+  }
+
+  private static DeliverableAd readAd(ByteBuffer buffer) {
+    final var inventoryId = buffer.getLong();
+    final var adId = buffer.getLong();
+    final var startTime = buffer.getLong();
+    final var endTime = buffer.getLong();
+    final var dto = readAdFormat(buffer);
+    return new DeliverableAd(inventoryId, adId, startTime, endTime, dto, readBytes(buffer));
+  }
+
+  static void writeAdFormat(DataOutputStream os, AdFormatV1Dto dto) throws IOException {
+    os.writeLong(dto.getInventoryId());
+    writeString(os, dto.getOwnerAddress());
+    os.writeLong(dto.getStartTime());
+    os.writeLong(dto.getEndTime());
+    os.writeLong(dto.getAdPrice());
+    writeString(os, dto.getAdTitle());
+    writeString(os, dto.getAdDescription());
+    writeString(os, dto.getLandingPageUrl());
+    writeString(os, dto.getDisplayImageUrl());
+    writeString(os, dto.getNonce());
+  }
+
+  static AdFormatV1Dto readAdFormat(ByteBuffer buffer) {
+    return new AdFormatV1Dto(
+        buffer.getLong(),
+        readString(buffer),
+        buffer.getLong(),
+        buffer.getLong(),
+        buffer.getLong(),
+        readString(buffer),
+        readString(buffer),
+        readString(buffer),
+        readString(buffer),
+        readString(buffer));
+  }
+
+  private static void writeString(DataOutputStream os, String value) throws IOException {
+    writeBytes(os, value.getBytes(StandardCharsets.UTF_8));
+  }
+
+  private static void writeBytes(DataOutputStream os, byte[] value) throws IOException {
+    os.writeInt(value.length);
+    os.write(value);
+  }
+
+  private static String readString(ByteBuffer buffer) {
+    return new String(readBytes(buffer), StandardCharsets.UTF_8);
+  }
+
+  private static byte[] readBytes(ByteBuffer buffer) {
+    final var length = buffer.getInt();
+    if (length < 0 || length > buffer.remaining()) {
+      throw new BufferUnderflowException();
+    }
+    final var value = new byte[length];
+    buffer.get(value);
+    return value;
+  }
+
+}
@@ -1,28 +1,237 @@
 package jp.deftfitf.adnetwork.repository;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
 import java.security.PrivateKey;
+import java.security.SecureRandom;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.util.Base64;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.LongConsumer;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.crypto.AEADBadTagException;
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import jp.deftfitf.adnetwork.setting.KeyStoreSetting;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Repository;
 
+/**
+ * Delivery private keys of inventories. Reads are lock-free. When a master key is configured, each
+ * saved key is appended to a journal encrypted with AES-GCM, and the journal is loaded in bulk at
+ * startup, so that publishers don't have to register their keys again after a restart.
+ *
+ * <p>Journal layout: magic(4) version(4), then records of length(4) inventoryId(8) iv(12)
+ * ciphertext. The inventory id is authenticated as additional data, so a record can't be moved to
+ * another inventory.
+ */
+@Slf4j
 @Repository
+@RequiredArgsConstructor
 public class DeliveryPrivateKeyRepository {
 
+  private static final int MAGIC = 0x41444b53;
+  private static final int VERSION = 1;
+  private static final int HEADER_LENGTH = 4 + 4;
+  private static final int IV_LENGTH = 12;
+  private static final int TAG_LENGTH = 128;
+  private static final int MIN_RECORD_LENGTH = 8 + IV_LENGTH + TAG_LENGTH / 8;
+  private static final String KEY_ALGORITHM = "RSA";
+
+  @NonNull
+  private final KeyStoreSetting setting;
   private final Map<Long, PrivateKey> inventoryIdToDeliveryPrivateKey =
       new ConcurrentHashMap<>();
+  private final List<LongConsumer> listeners = new CopyOnWriteArrayList<>();
+  private final SecureRandom secureRandom = new SecureRandom();
+  private SecretKey masterKey;
+  private FileChannel journal;
+
+  @PostConstruct
+  public void init() {
+    if (setting.getMasterKey().isEmpty()) {
+      log.warn("No key store master key is configured, delivery keys are kept in memory only");
+      return;
+    }
+    masterKey = new SecretKeySpec(Base64.getDecoder().decode(setting.getMasterKey()), "AES");
+    try {
+      open(Paths.get(setting.getFile()).toAbsolutePath());
+    } catch (IOException | GeneralSecurityException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  @PreDestroy
+  public synchronized void close() throws IOException {
+    if (journal != null) {
+      journal.close();
+      journal = null;
+    }
+  }
+
+  public void save(long inventoryId, PrivateKey privateKey) {
+    synchronized (this) {
+      if (journal != null) {
+        try {
+          final var record = encrypt(inventoryId, privateKey);
+          while (record.hasRemaining()) {
+            journal.write(record);
+          }
+          journal.force(false);
+        } catch (IOException | GeneralSecurityException e) {
+          throw new RuntimeException(e);
+        }
+      }
+      inventoryIdToDeliveryPrivateKey.put(inventoryId, privateKey);
+    }
 
-  public synchronized void save(long inventoryId, PrivateKey privateKey) {
-    inventoryIdToDeliveryPrivateKey.put(inventoryId, privateKey);
+    for (final var listener : listeners) {
+      try {
+        listener.accept(inventoryId);
+      } catch (RuntimeException e) {
+        log.warn("Key registration listener failed: inventoryId={}", inventoryId, e);
+      }
+    }
   }
 
-  public synchronized Optional<PrivateKey> findBy(long inventoryId) {
+  public Optional<PrivateKey> findBy(long inventoryId) {
     return Optional.ofNullable(inventoryIdToDeliveryPrivateKey.get(inventoryId));
   }
 
-  public synchronized Set<Long> activeInventoryIds() {
-    return inventoryIdToDeliveryPrivateKey.keySet();
+  public Set<Long> activeInventoryIds() {
+    return Set.copyOf(inventoryIdToDeliveryPrivateKey.keySet());
+  }
+
+  /**
+   * @param listener called on the saving thread with the inventory id, after its key has been saved
+   */
+  public void subscribe(LongConsumer listener) {
+    listeners.add(listener);
+  }
+
+  public void unsubscribe(LongConsumer listener) {
+    listeners.remove(listener);
+  }
+
+  private void open(Path path) throws IOException, GeneralSecurityException {
+    Files.createDirectories(path.getParent());
+    final var records = Files.exists(path) ? load(path) : 0;
+    // re-registered keys leave older records behind
+    if (records > 2 * inventoryIdToDeliveryPrivateKey.size() || records == 0) {
+      rewrite(path);
+    }
+    journal = FileChannel.open(path, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    log.info("Loaded {} delivery keys from {} records", inventoryIdToDeliveryPrivateKey.size(),
+        records);
+  }
+
+  /**
+   * @return the number of records read. A torn record at the tail, e.g. by a crash while
+   *     appending, is dropped.
+   */
+  private int load(Path path) throws IOException, GeneralSecurityException {
+    final var buffer = ByteBuffer.wrap(Files.readAllBytes(path));
+    if (buffer.remaining() < HEADER_LENGTH) {
+      return 0;
+    }
+    if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+      throw new IOException("Unknown key store format: " + path);
+    }
+
+    final var keyFactory = KeyFactory.getInstance(KEY_ALGORITHM);
+    var records = 0;
+    while (buffer.remaining() >= 4) {
+      final var length = buffer.getInt();
+      if (length < MIN_RECORD_LENGTH || length > buffer.remaining()) {
+        buffer.position(buffer.position() - 4);
+        break;
+      }
+      final var inventoryId = buffer.getLong();
+      final var iv = new byte[IV_LENGTH];
+      buffer.get(iv);
+      final var ciphertext = new byte[length - 8 - IV_LENGTH];
+      buffer.get(ciphertext);
+      final var encoded = decrypt(inventoryId, iv, ciphertext);
+      inventoryIdToDeliveryPrivateKey.put(inventoryId,
+          keyFactory.generatePrivate(new PKCS8EncodedKeySpec(encoded)));
+      records++;
+    }
+
+    if (buffer.hasRemaining()) {
+      log.warn("Dropped a torn record at the tail of {}", path);
+      try (final var channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+        channel.truncate(buffer.position());
+      }
+    }
+    return records;
+  }
+
+  /**
+   * Write the current keys to a new journal and move it over the old one.
+   */
+  private void rewrite(Path path) throws IOException, GeneralSecurityException {
+    final var temporary = path.resolveSibling(path.getFileName() + ".tmp");
+    try (final var channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+      final var header = ByteBuffer.allocate(HEADER_LENGTH).putInt(MAGIC).putInt(VERSION).flip();
+      channel.write(header);
+      for (final var entry : inventoryIdToDeliveryPrivateKey.entrySet()) {
+        final var record = encrypt(entry.getKey(), entry.getValue());
+        while (record.hasRemaining()) {
+          channel.write(record);
+        }
+      }
+      channel.force(true);
+    }
+    Files.move(temporary, path,
+        StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  private ByteBuffer encrypt(long inventoryId, PrivateKey privateKey)
+      throws GeneralSecurityException {
+    final var iv = new byte[IV_LENGTH];
+    secureRandom.nextBytes(iv);
+    final var cipher = Cipher.getInstance("AES/GCM/NoPadding");
+    cipher.init(Cipher.ENCRYPT_MODE, masterKey, new GCMParameterSpec(TAG_LENGTH, iv));
+    cipher.updateAAD(ByteBuffer.allocate(8).putLong(inventoryId).array());
+    final var ciphertext = cipher.doFinal(privateKey.getEncoded());
+    return ByteBuffer.allocate(4 + 8 + IV_LENGTH + ciphertext.length)
+        .putInt(8 + IV_LENGTH + ciphertext.length)
+        .putLong(inventoryId)
+        .put(iv)
+        .put(ciphertext)
+        .flip();
+  }
+
+  private byte[] decrypt(long inventoryId, byte[] iv, byte[] ciphertext)
+      throws GeneralSecurityException, IOException {
+    final var cipher = Cipher.getInstance("AES/GCM/NoPadding");
+    cipher.init(Cipher.DECRYPT_MODE, masterKey, new GCMParameterSpec(TAG_LENGTH, iv));
+    cipher.updateAAD(ByteBuffer.allocate(8).putLong(inventoryId).array());
+    try {
+      return cipher.doFinal(ciphertext);
+    } catch (AEADBadTagException e) {
+      throw new IOException("Delivery key of inventory " + inventoryId
+          + " can't be decrypted, the master key may be wrong", e);
+    }
   }
 
 }
@@ -0,0 +1,98 @@
+package jp.deftfitf.adnetwork.repository;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import jp.deftfitf.adnetwork.dto.DeliverableAd;
+import lombok.Value;
+
+/**
+ * Decoded ads which haven't ended yet, indexed by the seconds when they start and stop being
+ * deliverable. Boundaries are kept in a priority queue, so advancing the time only costs the
+ * boundaries passed. Not thread-safe.
+ */
+class DeliverySchedule {
+
+  private final Map<Long, Map<Long, DeliverableAd>> inventoryIdToAds = new HashMap<>();
+  private final PriorityQueue<Boundary> boundaries =
+      new PriorityQueue<>(Comparator.comparingLong(Boundary::getEpochSecond));
+
+  void put(DeliverableAd ad) {
+    inventoryIdToAds
+        .computeIfAbsent(ad.getInventoryId(), k -> new HashMap<>())
+        .put(ad.getAdId(), ad);
+    boundaries.add(Boundary.of(ad.getStartTime(), ad.getInventoryId()));
+    if (ad.getEndTime() < Long.MAX_VALUE) {
+      boundaries.add(Boundary.of(ad.getEndTime() + 1, ad.getInventoryId()));
+    }
+  }
+
+  void remove(long inventoryId, long adId) {
+    final var ads = inventoryIdToAds.get(inventoryId);
+    if (ads == null) {
+      return;
+    }
+    // its boundaries are left in the queue, they only cause a needless refresh of the inventory
+    ads.remove(adId);
+    if (ads.isEmpty()) {
+      inventoryIdToAds.remove(inventoryId);
+    }
+  }
+
+  Set<Long> inventoryIds() {
+    return inventoryIdToAds.keySet();
+  }
+
+  /**
+   * @return all ads of the inventory which haven't ended, including ones which start later
+   */
+  List<DeliverableAd> ads(long inventoryId) {
+    return new ArrayList<>(inventoryIdToAds.getOrDefault(inventoryId, Map.of()).values());
+  }
+
+  List<DeliverableAd> deliverableAds(long inventoryId, long epochSecond) {
+    final var deliverable = new ArrayList<DeliverableAd>();
+    for (final var ad : inventoryIdToAds.getOrDefault(inventoryId, Map.of()).values()) {
+      if (ad.isDeliverableAt(epochSecond)) {
+        deliverable.add(ad);
+      }
+    }
+    return deliverable;
+  }
+
+  /**
+   * Pass boundaries up to the given time, and forget ads which have ended by then.
+   *
+   * @return inventories whose deliverable ads may have changed
+   */
+  Set<Long> advance(long epochSecond) {
+    final var changed = new HashSet<Long>();
+    while (!boundaries.isEmpty() && boundaries.peek().getEpochSecond() <= epochSecond) {
+      changed.add(boundaries.poll().getInventoryId());
+    }
+    for (final var inventoryId : changed) {
+      final var ads = inventoryIdToAds.get(inventoryId);
+      if (ads == null) {
+        continue;
+      }
+      ads.values().removeIf(ad -> ad.getEndTime() < epochSecond);
+      if (ads.isEmpty()) {
+        inventoryIdToAds.remove(inventoryId);
+      }
+    }
+    return changed;
+  }
+
+  @Value(staticConstructor = "of")
+  private static class Boundary {
+
+    long epochSecond;
+    long inventoryId;
+  }
+
+}
@@ -1,37 +1,47 @@
 package jp.deftfitf.adnetwork.repository;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
 import java.math.BigInteger;
-import java.nio.charset.StandardCharsets;
-import java.security.InvalidKeyException;
-import java.security.NoSuchAlgorithmException;
+import java.nio.ByteBuffer;
+import java.nio.file.Paths;
 import java.security.PrivateKey;
-import java.security.spec.MGF1ParameterSpec;
 import java.time.Clock;
 import java.util.ArrayList;
-import java.util.Base64;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongConsumer;
 import java.util.stream.Collectors;
-import javax.crypto.BadPaddingException;
-import javax.crypto.Cipher;
-import javax.crypto.IllegalBlockSizeException;
-import javax.crypto.NoSuchPaddingException;
-import javax.crypto.SecretKey;
-import javax.crypto.spec.GCMParameterSpec;
-import javax.crypto.spec.OAEPParameterSpec;
-import javax.crypto.spec.PSource;
-import javax.crypto.spec.SecretKeySpec;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import jp.deftfitf.adnetwork.chain.AdNetworkBatchReader;
+import jp.deftfitf.adnetwork.crypto.AdFormatDecryptor;
 import jp.deftfitf.adnetwork.dto.AdFormatV1Dto;
-import lombok.NonNull;
+import jp.deftfitf.adnetwork.dto.DeliverableAd;
+import jp.deftfitf.adnetwork.metrics.ReloadMetrics;
+import jp.deftfitf.adnetwork.metrics.ReloadMetrics.Stage;
+import jp.deftfitf.adnetwork.selection.AdSelectionStrategy;
+import jp.deftfitf.adnetwork.selection.AdSelector;
+import jp.deftfitf.adnetwork.setting.EthRpcSetting;
+import jp.deftfitf.adnetwork.setting.InventoryCacheSetting;
+import jp.deftfitf.adnetwork.shard.InventoryShard;
 import lombok.RequiredArgsConstructor;
 import lombok.Value;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.stereotype.Repository;
-import org.web3j.adnetwork.AdNetwork;
 import org.web3j.tuples.generated.Tuple7;
 import org.web3j.utils.Numeric;
 
@@ -40,182 +50,677 @@ import org.web3j.utils.Numeric;
 @RequiredArgsConstructor
 public class InventoryCacheRepository {
 
-  // every 5 minutes
-  private static final long CACHE_LOAD_FIXED_RATE = 5 * 60 * 1000;
-  private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
-  private static final int GCM_IV_LENGTH = 12;
+  // every 5 minutes by default, can be lowered when following contract events
+  private static final String CACHE_LOAD_FIXED_RATE =
+      "${adnetwork.cache.full-reload-fixed-rate:300000}";
+  private static final String ACTIVATION_TICK_FIXED_DELAY =
+      "${adnetwork.cache.activation-tick-fixed-delay:100}";
+  private static final String SNAPSHOT_FIXED_DELAY =
+      "${adnetwork.cache.snapshot-fixed-delay:60000}";
+  private static final int DISTINCT_SELECT_ATTEMPTS = 4;
 
   private final Clock clock;
-  private final AdNetwork adNetwork;
+  private final AdNetworkBatchReader adNetworkBatchReader;
   private final DeliveryPrivateKeyRepository deliveryPrivateKeyRepository;
   private final StorageRepository storageRepository;
-  private volatile Map<Long, AdFormatV1Dto> adIdToAdDto = new ConcurrentHashMap<>();
-  private volatile Map<Long, List<Pair<Long, AdFormatV1Dto>>> inventoryIdToAds = new ConcurrentHashMap<>();
+  private final AdFormatCacheRepository adFormatCacheRepository;
+  private final AdFormatDecryptor adFormatDecryptor;
+  private final AdSelectionStrategy adSelectionStrategy;
+  private final InventoryCacheSetting setting;
+  private final EthRpcSetting ethRpcSetting;
+  private final ReloadMetrics reloadMetrics;
+  private final InventoryShard inventoryShard;
+  private ExecutorService storageExecutor;
+  private ExecutorService registrationExecutor;
+  private final LongConsumer keyRegistrationListener =
+      inventoryId -> registrationExecutor.execute(() -> applyRegistered(inventoryId));
+  private volatile Map<Long, AdSelector> inventoryIdToAds = new ConcurrentHashMap<>();
+  // guards schedule and the updates of inventoryIdToAds, while reload() fetches without it
+  private final Object scheduleLock = new Object();
+  private DeliverySchedule schedule = new DeliverySchedule();
+  // inventories restored from the snapshot whose key hasn't been registered since the restart
+  private Set<Long> restoredInventoryIds = new HashSet<>();
+  private volatile long sourceBlockNumber = -1;
+  private final Object snapshotWriteLock = new Object();
+  // changes of deliverable ads for replicas, guarded by scheduleLock
+  private final DeliveryCacheJournal journal = new DeliveryCacheJournal();
 
-  @Scheduled(fixedRate = CACHE_LOAD_FIXED_RATE)
+  @PostConstruct
+  public void init() {
+    storageExecutor = newStageExecutor("reload-storage-", setting.getReloadStorageParallelism());
+    registrationExecutor = newStageExecutor("key-registered-", 1);
+    if (setting.isSnapshotEnabled()) {
+      restoreSnapshot();
+    }
+    if (setting.isChainReader()) {
+      deliveryPrivateKeyRepository.subscribe(keyRegistrationListener);
+    }
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    if (setting.isChainReader()) {
+      deliveryPrivateKeyRepository.unsubscribe(keyRegistrationListener);
+    }
+    writeSnapshot();
+    registrationExecutor.shutdownNow();
+    storageExecutor.shutdownNow();
+  }
+
+  private static ExecutorService newStageExecutor(String threadNamePrefix, int parallelism) {
+    final var threadFactory = new CustomizableThreadFactory(threadNamePrefix);
+    threadFactory.setDaemon(true);
+    return Executors.newFixedThreadPool(parallelism, threadFactory);
+  }
+
+  /**
+   * Reload active inventories of this node's shard through the rpc, storage-read and decrypt
+   * stages. getAdsOf calls
+   * are sent in JSON-RPC batches through the async rpc client, which bounds their concurrency. The
+   * number of inventories in flight is bounded, so stage queues can't grow beyond it. The new cache
+   * is swapped in at once after every inventory has been fetched or has timed out. Replicas don't
+   * reload, they pull the cache of the loader instead.
+   */
+  @Scheduled(fixedRateString = CACHE_LOAD_FIXED_RATE)
   public synchronized void reload() {
-    final var activeInventoryIds = deliveryPrivateKeyRepository.activeInventoryIds();
-    final var newDto = activeInventoryIds.stream()
-        .map(inventoryId -> {
-          final var privateKey = deliveryPrivateKeyRepository.findBy(inventoryId);
-          if (privateKey.isEmpty()) {
-            return FetchResult.of(false, null);
-          }
-          try {
-            final var result = adNetwork
-                .getAdsOf(BigInteger.valueOf(inventoryId))
-                .send();
+    if (!setting.isChainReader()) {
+      return;
+    }
+    final var startedAt = System.nanoTime();
+    final var blockNumber = currentBlockNumber();
+    final var privateKeys = new HashMap<Long, PrivateKey>();
+    for (final var inventoryId : deliveryPrivateKeyRepository.activeInventoryIds()) {
+      if (!inventoryShard.owns(inventoryId)) {
+        continue;
+      }
+      deliveryPrivateKeyRepository.findBy(inventoryId)
+          .ifPresent(privateKey -> privateKeys.put(inventoryId, privateKey));
+    }
 
-            return FetchResult.of(true, convert(privateKey.get(), result));
-          } catch (Exception e) {
-            return FetchResult.of(false, null);
-          }
-        })
+    final var inventoryIds = new ArrayList<>(privateKeys.keySet());
+    final var batchSize = Math.max(1, ethRpcSetting.getBatchSize());
+    final var inFlight = new Semaphore(
+        Math.max(setting.getReloadMaxInFlightInventories(), batchSize));
+    final var fetches = new ArrayList<CompletableFuture<FetchResult>>(inventoryIds.size());
+    for (int from = 0; from < inventoryIds.size(); from += batchSize) {
+      final var chunk = List.copyOf(
+          inventoryIds.subList(from, Math.min(inventoryIds.size(), from + batchSize)));
+      inFlight.acquireUninterruptibly(chunk.size());
+      final var sentAt = System.nanoTime();
+      final var batch = adNetworkBatchReader.getAdsOfAsync(chunk);
+      batch.whenComplete((notUsed, e) ->
+          reloadMetrics.recordStage(Stage.RPC, System.nanoTime() - sentAt));
+      for (final var inventoryId : chunk) {
+        final var fetch = fetchAsync(inventoryId, privateKeys.get(inventoryId), batch);
+        fetch.whenComplete((notUsed, e) -> inFlight.release());
+        fetches.add(fetch);
+      }
+    }
+
+    final var ads = fetches.stream()
+        .map(CompletableFuture::join)
         .filter(FetchResult::isSuccess)
-        .flatMap(result -> result.getAdDto().stream())
-        .collect(Collectors.toConcurrentMap(
-            Pair::getKey,
-            Pair::getValue,
-            (l, r) -> r
-        ));
-
-    final var newMap = new ConcurrentHashMap<Long, List<Pair<Long, AdFormatV1Dto>>>();
-    newDto.forEach((key, value) -> {
-      final var lst = newMap
-          .computeIfAbsent(value.getInventoryId(), k -> new ArrayList<>());
-      lst.add(Pair.of(key, value));
-    });
-
-    adIdToAdDto = newDto;
+        .flatMap(result -> result.getAds().stream())
+        .collect(Collectors.toList());
+
+    // Ads which start later are decoded now and switched on by advance().
+    final var newSchedule = new DeliverySchedule();
+    ads.forEach(newSchedule::put);
+    synchronized (scheduleLock) {
+      final var swapStartedAt = System.nanoTime();
+      // restored ads are served until the key of their inventory is registered again
+      restoredInventoryIds.removeAll(privateKeys.keySet());
+      for (final var inventoryId : restoredInventoryIds) {
+        schedule.ads(inventoryId).forEach(newSchedule::put);
+      }
+      swap(newSchedule, currentEpochSecond());
+      sourceBlockNumber = blockNumber;
+      reloadMetrics.recordStage(Stage.SWAP, System.nanoTime() - swapStartedAt);
+    }
+    reloadMetrics.recordReload(System.nanoTime() - startedAt);
+  }
+
+  /**
+   * Replace the cache with the schedule. Selectors precompute what they need, e.g. alias tables,
+   * once here.
+   */
+  private void swap(DeliverySchedule newSchedule, long now) {
+    newSchedule.advance(now);
+    final var newMap = new ConcurrentHashMap<Long, AdSelector>();
+    for (final var inventoryId : newSchedule.inventoryIds()) {
+      final var deliverable = newSchedule.deliverableAds(inventoryId, now);
+      if (!deliverable.isEmpty()) {
+        newMap.put(inventoryId, adSelectionStrategy.prepare(deliverable));
+      }
+      journal.record(inventoryId, deliverable);
+    }
+    for (final var inventoryId : journal.inventoryIds()) {
+      if (!newSchedule.inventoryIds().contains(inventoryId)) {
+        journal.record(inventoryId, List.of());
+      }
+    }
+
+    schedule = newSchedule;
     inventoryIdToAds = newMap;
   }
 
-  public List<Pair<Long, AdFormatV1Dto>> findBy(long inventoryId) {
-    return Optional.ofNullable(inventoryIdToAds.get(inventoryId))
-        .orElse(List.of());
+  private long currentBlockNumber() {
+    try {
+      return adNetworkBatchReader.blockNumber();
+    } catch (Exception e) {
+      log.warn("Failed to get the block number", e);
+      return -1;
+    }
+  }
+
+  /**
+   * Serve ads of the last snapshot right away. The scheduled reload reconciles them with the chain
+   * in the background.
+   */
+  private void restoreSnapshot() {
+    final var startedAt = System.nanoTime();
+    final Optional<DeliveryCacheSnapshot> restored;
+    try {
+      restored = DeliveryCacheSnapshot.read(Paths.get(setting.getSnapshotFile()));
+    } catch (IOException e) {
+      log.warn("Ignored the delivery cache snapshot", e);
+      return;
+    }
+    if (restored.isEmpty()) {
+      return;
+    }
+
+    final var snapshot = restored.get();
+    synchronized (scheduleLock) {
+      final var now = currentEpochSecond();
+      final var restoredSchedule = new DeliverySchedule();
+      // the snapshot may have been taken with other members
+      snapshot.getAds().stream()
+          .filter(ad -> ad.getEndTime() >= now)
+          .filter(ad -> inventoryShard.owns(ad.getInventoryId()))
+          .forEach(restoredSchedule::put);
+      swap(restoredSchedule, now);
+      restoredInventoryIds = new HashSet<>(restoredSchedule.inventoryIds());
+      sourceBlockNumber = snapshot.getBlockNumber();
+    }
+    log.info("Restored {} ads of block {} taken {} seconds ago in {} ms",
+        snapshot.getAds().size(), snapshot.getBlockNumber(),
+        currentEpochSecond() - snapshot.getCreatedAt(),
+        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt));
   }
 
-  private List<Pair<Long, AdFormatV1Dto>> convert(
+  /**
+   * Write the ads which have started to the snapshot. Ads which start later are left out, as their
+   * content is confidential until then.
+   */
+  @Scheduled(fixedDelayString = SNAPSHOT_FIXED_DELAY, initialDelayString = SNAPSHOT_FIXED_DELAY)
+  public void writeSnapshot() {
+    if (!setting.isSnapshotEnabled()) {
+      return;
+    }
+    final DeliveryCacheSnapshot snapshot;
+    synchronized (scheduleLock) {
+      final var now = currentEpochSecond();
+      final var ads = new ArrayList<DeliverableAd>();
+      for (final var inventoryId : schedule.inventoryIds()) {
+        ads.addAll(schedule.deliverableAds(inventoryId, now));
+      }
+      snapshot = DeliveryCacheSnapshot.of(sourceBlockNumber, now, ads);
+    }
+    synchronized (snapshotWriteLock) {
+      try {
+        snapshot.write(Paths.get(setting.getSnapshotFile()));
+      } catch (IOException e) {
+        log.warn("Failed to write the delivery cache snapshot", e);
+      }
+    }
+  }
+
+  /**
+   * Switch ads on and off when the clock passes their start and end time, without a reload.
+   */
+  @Scheduled(fixedDelayString = ACTIVATION_TICK_FIXED_DELAY)
+  public void advance() {
+    synchronized (scheduleLock) {
+      final var now = currentEpochSecond();
+      for (final var inventoryId : schedule.advance(now)) {
+        refresh(inventoryId, now);
+      }
+    }
+  }
+
+  private void refresh(long inventoryId, long now) {
+    final var deliverable = schedule.deliverableAds(inventoryId, now);
+    if (deliverable.isEmpty()) {
+      inventoryIdToAds.remove(inventoryId);
+    } else {
+      inventoryIdToAds.put(inventoryId, adSelectionStrategy.prepare(deliverable));
+    }
+    journal.record(inventoryId, deliverable);
+  }
+
+  /**
+   * Deliverable ads changed since a version of the cache, for replicas to pull. Like the snapshot,
+   * ads which start later are left out until they start.
+   *
+   * @param epoch   epoch of the version, a delta of every inventory is returned for another one
+   * @param version version the replica has applied
+   */
+  public DeliveryCacheDelta deltaSince(long epoch, long version) {
+    synchronized (scheduleLock) {
+      return journal.since(epoch, version, sourceBlockNumber);
+    }
+  }
+
+  /**
+   * Apply a delta pulled from the loader. A full delta replaces the cache, others replace the ads
+   * of the inventories they hold.
+   */
+  public void applyDelta(DeliveryCacheDelta delta) {
+    synchronized (scheduleLock) {
+      final var now = currentEpochSecond();
+      if (delta.isFull()) {
+        final var newSchedule = new DeliverySchedule();
+        delta.getInventories().values().forEach(ads -> ads.forEach(newSchedule::put));
+        swap(newSchedule, now);
+      } else {
+        for (final var entry : delta.getInventories().entrySet()) {
+          final long inventoryId = entry.getKey();
+          for (final var ad : schedule.ads(inventoryId)) {
+            schedule.remove(inventoryId, ad.getAdId());
+          }
+          entry.getValue().forEach(schedule::put);
+          refresh(inventoryId, now);
+        }
+      }
+      sourceBlockNumber = delta.getBlockNumber();
+    }
+  }
+
+  private CompletableFuture<FetchResult> fetchAsync(
+      long inventoryId,
       PrivateKey privateKey,
-      Tuple7<
+      CompletableFuture<Map<Long, Tuple7<
           List<BigInteger>,
           List<BigInteger>,
           List<byte[]>,
           List<byte[]>,
           List<BigInteger>,
           List<BigInteger>,
-          List<Boolean>> result
+          List<Boolean>>>> batch
   ) {
-    final var length = result.component1().size();
-    final var ads = new ArrayList<Pair<Long, AdFormatV1Dto>>();
-    for (int idx = 0; idx < length; idx++) {
-      final var approved = result.component7().get(idx);
-      // Not approved ads can't be delivered
-      if (!approved) {
-        continue;
+    final var stages = new Stages();
+    return batch
+        .thenCompose(results -> {
+          final var result = results.get(inventoryId);
+          if (result == null) {
+            return CompletableFuture.<List<DeliverableAd>>failedFuture(
+                new IllegalStateException("getAdsOf failed in the batch"));
+          }
+          return convertAsync(inventoryId, privateKey, result, stages);
+        })
+        .orTimeout(setting.getReloadInventoryTimeout().toMillis(), TimeUnit.MILLISECONDS)
+        .handle((ads, e) -> {
+          reloadMetrics.countInventory(e == null);
+          if (e != null) {
+            // the permit is released with this result, so drop the work still queued for it
+            stages.cancel();
+            log.warn("Failed to fetch ads: inventoryId={}", inventoryId, e);
+            return FetchResult.of(false, null);
+          }
+          return FetchResult.of(true, ads);
+        });
+  }
+
+  /**
+   * Walks every deliverable ad, so it's meant for metrics scrapes and not for the delivery path.
+   */
+  public Stats stats() {
+    final var selectors = inventoryIdToAds;
+    var ads = 0;
+    var responseBytes = 0L;
+    for (final var selector : selectors.values()) {
+      for (final var ad : selector.getAds()) {
+        ads++;
+        responseBytes += ad.getResponseBody().length;
       }
+    }
+    return Stats.of(selectors.size(), ads, responseBytes, sourceBlockNumber);
+  }
 
-      final var adId = result.component1().get(idx).longValue();
-      final var cachedAdFormatV1Dto = adIdToAdDto.get(adId);
-      if (
-          cachedAdFormatV1Dto != null &&
-              isInDeliveryPeriod(cachedAdFormatV1Dto.getStartTime(),
-                  cachedAdFormatV1Dto.getEndTime())
-      ) {
-        ads.add(Pair.of(adId, cachedAdFormatV1Dto));
+  public List<DeliverableAd> findBy(long inventoryId) {
+    return Optional.ofNullable(inventoryIdToAds.get(inventoryId))
+        .map(AdSelector::getAds)
+        .orElse(List.of());
+  }
+
+  /**
+   * @return an ad of the inventory chosen by the configured {@link AdSelectionStrategy}
+   */
+  public Optional<DeliverableAd> select(long inventoryId) {
+    return Optional.ofNullable(inventoryIdToAds.get(inventoryId))
+        .map(AdSelector::select);
+  }
+
+  /**
+   * Select ads for the slots of a page. The cache is read once, so that all slots are resolved
+   * against the same reload, even if another reload is swapped in meanwhile.
+   *
+   * @param distinctAds skip ads already chosen for a former slot, leaving a slot empty if every
+   *                    ad of its inventory is already on the page
+   * @return results in the same order as the inventory ids
+   */
+  public List<Optional<DeliverableAd>> selectAll(List<Long> inventoryIds, boolean distinctAds) {
+    final var selectors = inventoryIdToAds;
+    final var chosenAdIds = new HashSet<Long>();
+    final var results = new ArrayList<Optional<DeliverableAd>>(inventoryIds.size());
+    for (final var inventoryId : inventoryIds) {
+      final var selector = selectors.get(inventoryId);
+      if (selector == null) {
+        results.add(Optional.empty());
         continue;
       }
 
-      final var startTime = result.component5().get(idx).longValue();
-      final var endTime = result.component6().get(idx).longValue();
-      if (!isInDeliveryPeriod(startTime, endTime)) {
-        continue;
+      final var ad = distinctAds
+          ? selectDistinct(selector, chosenAdIds)
+          : Optional.of(selector.select());
+      ad.ifPresent(chosen -> chosenAdIds.add(chosen.getAdId()));
+      results.add(ad);
+    }
+    return results;
+  }
+
+  private static Optional<DeliverableAd> selectDistinct(
+      AdSelector selector,
+      Set<Long> chosenAdIds
+  ) {
+    for (int attempt = 0; attempt < DISTINCT_SELECT_ATTEMPTS; attempt++) {
+      final var ad = selector.select();
+      if (!chosenAdIds.contains(ad.getAdId())) {
+        return Optional.of(ad);
       }
+    }
+    // the strategy keeps choosing ads on the page, so take any other one
+    return selector.getAds().stream()
+        .filter(ad -> !chosenAdIds.contains(ad.getAdId()))
+        .findFirst();
+  }
 
-      final var adHash = result.component4().get(idx);
-      final var loaded = storageRepository
-          .load("ad-formats/" + Numeric.toHexStringNoPrefix(adHash));
+  /**
+   * Apply a single approved ad without reloading the whole cache. Only the approved ad is decoded,
+   * other ads of the inventory are kept as they are. The contract is read through the batch reader
+   * like a reload, and the caller waits for it as for {@link #applyRegistered}, so that events are
+   * applied in their order and never interleave with a reload.
+   */
+  public synchronized void applyApproved(long inventoryId, long adId) {
+    final var privateKey = deliveryPrivateKeyRepository.findBy(inventoryId);
+    if (privateKey.isEmpty() || !inventoryShard.owns(inventoryId)) {
+      return;
+    }
 
-      final AdFormatV1Dto adFormatV1Dto;
-      try {
-        final var decoded = decodeAdFormatV1(privateKey, loaded);
-        adFormatV1Dto = OBJECT_MAPPER.readValue(decoded, AdFormatV1Dto.class);
-      } catch (Exception e) {
-        log.error("decode failed: loaded={}", loaded, e);
-        continue;
+    final var converted = adNetworkBatchReader.getAdsOfAsync(List.of(inventoryId))
+        .thenCompose(results -> {
+          final var result = results.get(inventoryId);
+          if (result == null) {
+            return CompletableFuture.<Optional<DeliverableAd>>failedFuture(
+                new IllegalStateException("getAdsOf failed: inventoryId=" + inventoryId));
+          }
+          final var idx = result.component1().indexOf(BigInteger.valueOf(adId));
+          return idx < 0
+              ? CompletableFuture.completedFuture(Optional.<DeliverableAd>empty())
+              : convertAsync(inventoryId, privateKey.get(), result, idx, new Stages());
+        })
+        .join();
+    if (converted.isEmpty()) {
+      return;
+    }
+    synchronized (scheduleLock) {
+      schedule.put(converted.get());
+      refresh(inventoryId, currentEpochSecond());
+    }
+  }
+
+  /**
+   * Load the ads of an inventory whose key has just been registered, without waiting for the next
+   * reload. Ads of the inventory in the cache are replaced.
+   */
+  public synchronized void applyRegistered(long inventoryId) {
+    final var privateKey = deliveryPrivateKeyRepository.findBy(inventoryId);
+    if (privateKey.isEmpty() || !inventoryShard.owns(inventoryId)) {
+      return;
+    }
+
+    final var fetched = fetchAsync(inventoryId, privateKey.get(),
+        adNetworkBatchReader.getAdsOfAsync(List.of(inventoryId))).join();
+    if (!fetched.isSuccess()) {
+      return;
+    }
+    synchronized (scheduleLock) {
+      restoredInventoryIds.remove(inventoryId);
+      for (final var ad : schedule.ads(inventoryId)) {
+        schedule.remove(inventoryId, ad.getAdId());
       }
+      fetched.getAds().forEach(schedule::put);
+      refresh(inventoryId, currentEpochSecond());
+    }
+  }
+
+  /**
+   * Remove a single ad from the cache, e.g. when it has been rejected.
+   */
+  public synchronized void applyRemoved(long inventoryId, long adId) {
+    synchronized (scheduleLock) {
+      schedule.remove(inventoryId, adId);
+      refresh(inventoryId, currentEpochSecond());
+    }
+  }
 
-      ads.add(Pair.of(adId, adFormatV1Dto));
+  private CompletableFuture<List<DeliverableAd>> convertAsync(
+      long inventoryId,
+      PrivateKey privateKey,
+      Tuple7<
+          List<BigInteger>,
+          List<BigInteger>,
+          List<byte[]>,
+          List<byte[]>,
+          List<BigInteger>,
+          List<BigInteger>,
+          List<Boolean>> result,
+      Stages stages
+  ) {
+    final var length = result.component1().size();
+    final var ads = new ArrayList<CompletableFuture<Optional<DeliverableAd>>>();
+    for (int idx = 0; idx < length; idx++) {
+      ads.add(convertAsync(inventoryId, privateKey, result, idx, stages));
     }
 
-    return ads;
+    return CompletableFuture
+        .allOf(ads.toArray(CompletableFuture[]::new))
+        .thenApply(notUsed -> ads.stream()
+            .map(CompletableFuture::join)
+            .flatMap(Optional::stream)
+            .collect(Collectors.toList()));
   }
 
-  private String decodeAdFormatV1(PrivateKey privateKey, String formatV1Raw) throws Exception {
-    final var elements = formatV1Raw.split(":");
-    if (elements.length != 3) {
-      throw new RuntimeException("unexpected ad format");
+  /**
+   * Storage reads and decryption run on their own executors, not on the calling thread. Their
+   * tasks are added to the stages, so that they can be cancelled before they run.
+   */
+  private CompletableFuture<Optional<DeliverableAd>> convertAsync(
+      long inventoryId,
+      PrivateKey privateKey,
+      Tuple7<
+          List<BigInteger>,
+          List<BigInteger>,
+          List<byte[]>,
+          List<byte[]>,
+          List<BigInteger>,
+          List<BigInteger>,
+          List<Boolean>> result,
+      int idx,
+      Stages stages
+  ) {
+    final var candidate = candidateOf(inventoryId, result, idx);
+    if (candidate.isEmpty()) {
+      return CompletableFuture.completedFuture(Optional.empty());
     }
-    final var decodedEncryptedKey =
-        Base64.getDecoder().decode(elements[1].getBytes(StandardCharsets.UTF_8));
-    final var ciphertext = Base64.getDecoder().decode(elements[2]);
-    final var iv = new GCMParameterSpec(128, ciphertext, 0, GCM_IV_LENGTH);
 
-    final Cipher cipher;
-    try {
-      cipher = Cipher.getInstance("RSA/ECB/OAEPPadding");
-      final var oaepParams = new OAEPParameterSpec(
-          "SHA-256", "MGF1",
-          new MGF1ParameterSpec("SHA-256"),
-          PSource.PSpecified.DEFAULT);
-      cipher.init(Cipher.DECRYPT_MODE, privateKey, oaepParams);
-    } catch (NoSuchAlgorithmException | NoSuchPaddingException | InvalidKeyException e) {
-      throw new RuntimeException(e);
+    final var target = candidate.get();
+    if (target.getCached() != null) {
+      return CompletableFuture.completedFuture(deliverableAdOf(target, target.getCached()));
     }
+    return stages.add(CompletableFuture.supplyAsync(() -> load(target), storageExecutor))
+        .thenCompose(loaded -> {
+          final var decryptStartedAt = System.nanoTime();
+          return stages.add(adFormatDecryptor.decryptAsync(privateKey, loaded))
+              .handle((adFormatV1Dto, e) -> {
+                reloadMetrics.recordStage(Stage.DECRYPT, System.nanoTime() - decryptStartedAt);
+                return decoded(target, adFormatV1Dto, e);
+              });
+        });
+  }
 
-    final SecretKey aesSecret;
-    try {
-      final var decryptedAesKey = cipher.doFinal(decodedEncryptedKey);
-      aesSecret = new SecretKeySpec(Base64.getDecoder().decode(decryptedAesKey), "AES");
-    } catch (IllegalBlockSizeException | BadPaddingException e) {
-      throw new RuntimeException(e);
+  /**
+   * @return an ad which can be delivered now or later, holding the decrypted ad format if it's
+   *     cached
+   */
+  private Optional<Candidate> candidateOf(
+      long inventoryId,
+      Tuple7<
+          List<BigInteger>,
+          List<BigInteger>,
+          List<byte[]>,
+          List<byte[]>,
+          List<BigInteger>,
+          List<BigInteger>,
+          List<Boolean>> result,
+      int idx
+  ) {
+    final var approved = result.component7().get(idx);
+    // Not approved ads can't be delivered
+    if (!approved) {
+      return Optional.empty();
     }
 
-    final Cipher aesCipher;
-    try {
-      aesCipher = Cipher.getInstance("AES/GCM/NoPadding");
-    } catch (NoSuchAlgorithmException | NoSuchPaddingException e) {
-      throw new RuntimeException(e);
+    final var adId = result.component1().get(idx).longValue();
+    if (result.component2().get(idx).longValue() != inventoryId) {
+      log.warn("getAdsOf returned an ad of another inventory: inventoryId={}, adId={}",
+          inventoryId, adId);
+      return Optional.empty();
+    }
+    final var startTime = result.component5().get(idx).longValue();
+    final var endTime = result.component6().get(idx).longValue();
+    if (endTime < currentEpochSecond()) {
+      return Optional.empty();
     }
 
-    final byte[] plainText;
+    final var adHash = result.component4().get(idx);
+    final var cachedAdFormatV1Dto = adFormatCacheRepository.find(inventoryId, adHash);
+    return Optional.of(Candidate.of(inventoryId, adId, startTime, endTime, adHash,
+        cachedAdFormatV1Dto.orElse(null)));
+  }
+
+  private ByteBuffer load(Candidate candidate) {
+    final var startedAt = System.nanoTime();
     try {
-      aesCipher.init(Cipher.DECRYPT_MODE, aesSecret, iv);
-      plainText = aesCipher.doFinal(ciphertext, GCM_IV_LENGTH, ciphertext.length - GCM_IV_LENGTH);
-    } catch (IllegalBlockSizeException | BadPaddingException e) {
-      throw new RuntimeException(e);
+      return storageRepository
+          .loadBuffer("ad-formats/" + Numeric.toHexStringNoPrefix(candidate.getAdHash()));
+    } finally {
+      reloadMetrics.recordStage(Stage.STORAGE, System.nanoTime() - startedAt);
     }
+  }
+
+  private Optional<DeliverableAd> decoded(
+      Candidate candidate,
+      AdFormatV1Dto adFormatV1Dto,
+      Throwable e
+  ) {
+    reloadMetrics.countDecode(e == null);
+    if (e != null) {
+      log.error("decode failed: adId={}, adHash={}",
+          candidate.getAdId(), Numeric.toHexStringNoPrefix(candidate.getAdHash()), e);
+      return Optional.empty();
+    }
+    final var ad = deliverableAdOf(candidate, adFormatV1Dto);
+    if (ad.isPresent()) {
+      adFormatCacheRepository.save(candidate.getInventoryId(), candidate.getAdHash(),
+          adFormatV1Dto, candidate.getStartTime() <= currentEpochSecond());
+    }
+    return ad;
+  }
+
+  /**
+   * The response body is encoded here once on a reload worker, not on every delivery.
+   *
+   * @return empty if the ad format names another inventory than the ad has been approved on, as
+   *     the owner of that inventory hasn't approved it
+   */
+  private static Optional<DeliverableAd> deliverableAdOf(
+      Candidate candidate,
+      AdFormatV1Dto adFormatV1Dto
+  ) {
+    if (adFormatV1Dto.getInventoryId() != candidate.getInventoryId()) {
+      log.warn("Ad format names another inventory: inventoryId={}, adId={}, named={}",
+          candidate.getInventoryId(), candidate.getAdId(), adFormatV1Dto.getInventoryId());
+      return Optional.empty();
+    }
+    return Optional.of(DeliverableAd.of(candidate.getInventoryId(), candidate.getAdId(),
+        candidate.getStartTime(), candidate.getEndTime(), adFormatV1Dto));
+  }
 
-    return new String(plainText, StandardCharsets.UTF_8);
+  private long currentEpochSecond() {
+    return clock.millis() / 1000;
   }
 
-  private boolean isInDeliveryPeriod(long startTime, long endTime) {
-    final var currentTime = clock.millis() / 1000;
-    return currentTime >= startTime && currentTime <= endTime;
+  @Value(staticConstructor = "of")
+  public static class Stats {
+
+    int inventories;
+    int deliverableAds;
+    long responseBytes;
+    long sourceBlockNumber;
   }
 
   @Value(staticConstructor = "of")
   public static class FetchResult {
 
     boolean success;
-    List<Pair<Long, AdFormatV1Dto>> adDto;
+    List<DeliverableAd> ads;
+  }
+
+  /**
+   * Executor tasks of an inventory fetch. Cancelling a task which hasn't started yet skips it, one
+   * already running finishes, so at most the executors' threads keep working for a timed out fetch.
+   */
+  private static class Stages {
+
+    private final Queue<CompletableFuture<?>> tasks = new ConcurrentLinkedQueue<>();
+    private volatile boolean cancelled;
+
+    <T> CompletableFuture<T> add(CompletableFuture<T> task) {
+      tasks.add(task);
+      // a task added while cancel() runs is cancelled by either of them
+      if (cancelled) {
+        task.cancel(false);
+      }
+      return task;
+    }
+
+    void cancel() {
+      cancelled = true;
+      tasks.forEach(task -> task.cancel(false));
+    }
   }
 
   @Value(staticConstructor = "of")
-  public static class Pair<K, V> {
+  private static class Candidate {
 
-    @NonNull K key;
-    @NonNull V value;
+    long inventoryId;
+    long adId;
+    long startTime;
+    long endTime;
+    byte[] adHash;
+    AdFormatV1Dto cached;
   }
 
 }
@@ -0,0 +1,126 @@
+package jp.deftfitf.adnetwork.repository;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import jp.deftfitf.adnetwork.setting.StorageSetting;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import lombok.Value;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
+import org.springframework.stereotype.Repository;
+
+/**
+ * Validators and precompressed variants of objects served under /public, looked up once per
+ * object. Uploaded objects are named by the Keccak-256 hash of their content and never
+ * overwritten, so the name itself is a strong ETag and an entry never has to be invalidated.
+ */
+@Repository
+@RequiredArgsConstructor
+public class StaticObjectRepository {
+
+  @NonNull
+  private final StorageRepository storageRepository;
+  @NonNull
+  private final StorageSetting setting;
+  private final Map<String, StaticObject> keyToObject =
+      new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, StaticObject> eldest) {
+          return size() > setting.getStaticObjectCacheMaxEntries();
+        }
+      };
+
+  public Optional<StaticObject> find(String key) {
+    synchronized (keyToObject) {
+      final var cached = keyToObject.get(key);
+      if (cached != null) {
+        return Optional.of(cached);
+      }
+    }
+
+    final var identity = variantOf(key, "");
+    if (identity.isEmpty()) {
+      return Optional.empty();
+    }
+    final var object = StaticObject.of(
+        MediaTypeFactory.getMediaType(key).orElse(MediaType.APPLICATION_OCTET_STREAM),
+        lastModifiedOf(identity.get()),
+        identity.get(),
+        variantOf(key, StorageRepository.GZIP_SUFFIX).orElse(null),
+        variantOf(key, StorageRepository.BROTLI_SUFFIX).orElse(null));
+    synchronized (keyToObject) {
+      keyToObject.put(key, object);
+    }
+    return Optional.of(object);
+  }
+
+  private Optional<Variant> variantOf(String key, String suffix) {
+    final var variantKey = key + suffix;
+    final var etag = "\"" + variantKey.substring(variantKey.lastIndexOf('/') + 1) + "\"";
+    try {
+      final var file = storageRepository.file(variantKey);
+      if (file.isPresent()) {
+        return Optional.of(Variant.of(variantKey, etag, Files.size(file.get()), file.get()));
+      }
+      return Optional.of(Variant.of(variantKey, etag,
+          storageRepository.loadBuffer(variantKey).remaining(), null));
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    } catch (RuntimeException e) {
+      if (e.getCause() instanceof NoSuchFileException) {
+        return Optional.empty();
+      }
+      throw e;
+    }
+  }
+
+  private static long lastModifiedOf(Variant variant) {
+    if (variant.getFile() == null) {
+      return -1;
+    }
+    try {
+      return Files.getLastModifiedTime(variant.getFile()).toMillis();
+    } catch (IOException e) {
+      return -1;
+    }
+  }
+
+  @Value(staticConstructor = "of")
+  public static class StaticObject {
+
+    MediaType contentType;
+    /**
+     * -1 when the engine doesn't keep it
+     */
+    long lastModified;
+    Variant identity;
+    /**
+     * null when there is no such variant
+     */
+    Variant gzip;
+    Variant brotli;
+
+    public boolean hasVariants() {
+      return gzip != null || brotli != null;
+    }
+  }
+
+  @Value(staticConstructor = "of")
+  public static class Variant {
+
+    String key;
+    String etag;
+    long length;
+    /**
+     * null when the object isn't kept in a file of its own
+     */
+    Path file;
+  }
+
+}
@@ -2,22 +2,85 @@ package jp.deftfitf.adnetwork.repository;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.security.DigestOutputStream;
+import java.util.Optional;
+import java.util.zip.GZIPOutputStream;
 import javax.annotation.PostConstruct;
-import org.apache.tomcat.util.http.fileupload.IOUtils;
+import javax.annotation.PreDestroy;
+import jp.deftfitf.adnetwork.setting.StorageSetting;
+import jp.deftfitf.adnetwork.storage.FileStorageEngine;
+import jp.deftfitf.adnetwork.storage.SegmentStorageEngine;
+import jp.deftfitf.adnetwork.storage.StorageEngine;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.bouncycastle.jcajce.provider.digest.Keccak;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Repository;
+import org.web3j.utils.Numeric;
 
+@Slf4j
 @Repository
+@RequiredArgsConstructor
 public class StorageRepository {
 
-  private static final String BASE_DIRECTORY = "./uploaded";
+  /**
+   * Suffixes of precompressed variants, which are stored next to the object.
+   */
+  public static final String GZIP_SUFFIX = ".gz";
+  public static final String BROTLI_SUFFIX = ".br";
+
+  private static final String COMPACTION_FIXED_DELAY =
+      "${adnetwork.storage.compaction-fixed-delay:600000}";
+  private static final int LOCK_STRIPES = 64;
+
+  @NonNull
+  private final StorageSetting setting;
+  /**
+   * Ingesting a key is serialized by the stripe of the key.
+   */
+  private final Object[] locks = newLocks();
+  private StorageEngine engine;
 
   @PostConstruct
-  public void init() {
-    createDirectorySilently(Paths.get(BASE_DIRECTORY + "/images"));
-    createDirectorySilently(Paths.get(BASE_DIRECTORY + "/ad-formats"));
+  public void init() throws IOException {
+    switch (setting.getEngine()) {
+      case FILE:
+        createDirectorySilently(Paths.get(setting.getBaseDirectory()));
+        createDirectorySilently(Paths.get(setting.getBaseDirectory(), "images"));
+        createDirectorySilently(Paths.get(setting.getBaseDirectory(), "ad-formats"));
+        engine = new FileStorageEngine(Paths.get(setting.getBaseDirectory()));
+        break;
+      case SEGMENT:
+        engine = new SegmentStorageEngine(Paths.get(setting.getSegmentDirectory()),
+            setting.getSegmentSize(), setting.getCompactionDeadRatio());
+        break;
+      default:
+        throw new IllegalStateException("unexpected storage engine: " + setting.getEngine());
+    }
+  }
+
+  @PreDestroy
+  public void shutdown() throws IOException {
+    engine.close();
+  }
+
+  private static Object[] newLocks() {
+    final var locks = new Object[LOCK_STRIPES];
+    for (int idx = 0; idx < locks.length; idx++) {
+      locks[idx] = new Object();
+    }
+    return locks;
+  }
+
+  private Object lockOf(String key) {
+    return locks[Math.floorMod(key.hashCode(), locks.length)];
   }
 
   private void createDirectorySilently(Path directoryPath) {
@@ -32,23 +95,109 @@ public class StorageRepository {
   }
 
   public void save(String fileName, InputStream inputStream) {
-    final Path path;
     try {
-      path = Files.createFile(Paths.get(BASE_DIRECTORY, fileName));
+      engine.save(fileName, inputStream);
     } catch (IOException e) {
       throw new RuntimeException(e);
     }
+  }
 
-    try (final var os = Files.newOutputStream(path)) {
-      IOUtils.copy(inputStream, os);
+  /**
+   * Store the content as {@code <directory>/<Keccak-256 hash>[.<extension>]}. The content is
+   * hashed while it's written to a temporary file, so it's never held in memory, and the file is
+   * then moved in as the object. Content which is already stored isn't stored again, so ingesting
+   * the same content again is harmless.
+   *
+   * @param extension without the dot, or empty
+   * @param precompress also store the gzip variant when it's smaller, so that the variant is
+   *     served to clients accepting gzip without compressing on every request
+   */
+  public Ingested ingest(
+      String directory,
+      String extension,
+      InputStream inputStream,
+      boolean precompress
+  ) {
+    Path temporary = null;
+    try {
+      temporary = engine.createTemporaryFile();
+      final var digest = new Keccak.Digest256();
+      try (final var os = new DigestOutputStream(Files.newOutputStream(temporary), digest)) {
+        inputStream.transferTo(os);
+      }
+      final var hash = Numeric.toHexStringNoPrefix(digest.digest());
+      final var key = directory + "/" + hash + (extension.isEmpty() ? "" : "." + extension);
+
+      synchronized (lockOf(key)) {
+        if (engine.exists(key)) {
+          return Ingested.of(key, hash, false);
+        }
+        if (precompress) {
+          // before the object, so that it's never served without its variant
+          precompress(key, temporary);
+        }
+        return Ingested.of(key, hash, engine.moveIn(key, temporary));
+      }
     } catch (IOException e) {
       throw new RuntimeException(e);
+    } finally {
+      deleteSilently(temporary);
+    }
+  }
+
+  private void precompress(String key, Path file) throws IOException {
+    final var gzipped = engine.createTemporaryFile();
+    try {
+      try (final var gzip = new GZIPOutputStream(Files.newOutputStream(gzipped))) {
+        Files.copy(file, gzip);
+      }
+      if (Files.size(gzipped) < Files.size(file)) {
+        engine.moveIn(key + GZIP_SUFFIX, gzipped);
+      }
+    } finally {
+      deleteSilently(gzipped);
+    }
+  }
+
+  private static void deleteSilently(Path path) {
+    if (path == null) {
+      return;
+    }
+    try {
+      Files.deleteIfExists(path);
+    } catch (IOException e) {
+      log.warn("Failed to delete {}", path, e);
     }
   }
 
   public String load(String fileName) {
+    return StandardCharsets.UTF_8.decode(loadBuffer(fileName)).toString();
+  }
+
+  public byte[] loadBytes(String fileName) {
+    final var buffer = loadBuffer(fileName);
+    final var bytes = new byte[buffer.remaining()];
+    buffer.get(bytes);
+    return bytes;
+  }
+
+  /**
+   * @return a read-only view of the stored bytes, which the segment engine serves without copying
+   */
+  public ByteBuffer loadBuffer(String fileName) {
+    try {
+      return engine.read(fileName);
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * @return the file holding the object, or empty when the engine doesn't keep one file per object
+   */
+  public Optional<Path> file(String fileName) {
     try {
-      return Files.readString(Paths.get(BASE_DIRECTORY, fileName));
+      return engine.file(fileName);
     } catch (IOException e) {
       throw new RuntimeException(e);
     }
@@ -56,10 +205,33 @@ public class StorageRepository {
 
   public void delete(String fileName) {
     try {
-      Files.deleteIfExists(Paths.get(BASE_DIRECTORY, fileName));
+      engine.delete(fileName);
     } catch (IOException e) {
       throw new RuntimeException(e);
     }
   }
 
+  @Scheduled(fixedDelayString = COMPACTION_FIXED_DELAY)
+  public void compact() {
+    try {
+      engine.compact();
+    } catch (IOException e) {
+      log.warn("Failed to compact storage", e);
+    }
+  }
+
+  @Value(staticConstructor = "of")
+  public static class Ingested {
+
+    String key;
+    /**
+     * Keccak-256 of the content in hex without prefix, the same as web3j's Hash#sha3
+     */
+    String hash;
+    /**
+     * false when the content was already stored
+     */
+    boolean created;
+  }
+
 }
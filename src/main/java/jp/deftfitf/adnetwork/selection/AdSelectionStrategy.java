@@ -0,0 +1,16 @@
+package jp.deftfitf.adnetwork.selection;
+
+import java.util.List;
+import jp.deftfitf.adnetwork.dto.DeliverableAd;
+
+public interface AdSelectionStrategy {
+
+  /**
+   * Prepare a selector for the ads of one inventory. Any precomputation happens here, so that
+   * selection stays cheap on the delivery path.
+   *
+   * @param ads not empty
+   */
+  AdSelector prepare(List<DeliverableAd> ads);
+
+}
@@ -0,0 +1,19 @@
+package jp.deftfitf.adnetwork.selection;
+
+import java.util.List;
+import jp.deftfitf.adnetwork.dto.DeliverableAd;
+
+/**
+ * Chooses an ad of a single inventory. Selectors are built at reload time and shared by request
+ * threads, so {@link #select()} must be thread-safe and should not block.
+ */
+public interface AdSelector {
+
+  List<DeliverableAd> getAds();
+
+  /**
+   * @return one of {@link #getAds()}, which is never empty
+   */
+  DeliverableAd select();
+
+}
@@ -0,0 +1,85 @@
+package jp.deftfitf.adnetwork.selection;
+
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import jp.deftfitf.adnetwork.dto.DeliverableAd;
+
+/**
+ * Ads are chosen in proportion to their {@code adPrice}, in O(1) per selection through an alias
+ * table built by Vose's method. Inventories whose ads are all free fall back to uniform sampling.
+ *
+ * <p>{@code adPrice} is written by the advertiser into the ad format, while the price actually
+ * paid isn't returned by getAdsOf. Nothing compares the two, so an advertiser paying the floor price
+ * can declare any price.
+ */
+public class PriceWeightedSelectionStrategy implements AdSelectionStrategy {
+
+  @Override
+  public AdSelector prepare(List<DeliverableAd> ads) {
+    final var weights = new double[ads.size()];
+    for (int idx = 0; idx < weights.length; idx++) {
+      weights[idx] = Math.max(0, ads.get(idx).getAdFormatV1Dto().getAdPrice());
+    }
+    return new AliasTableSelector(List.copyOf(ads), weights);
+  }
+
+  static class AliasTableSelector implements AdSelector {
+
+    private final List<DeliverableAd> ads;
+    private final double[] probabilities;
+    private final int[] aliases;
+
+    AliasTableSelector(List<DeliverableAd> ads, double[] weights) {
+      this.ads = ads;
+      final var size = weights.length;
+      probabilities = new double[size];
+      aliases = new int[size];
+
+      var total = 0.0;
+      for (final var weight : weights) {
+        total += weight;
+      }
+
+      final var small = new ArrayDeque<Integer>();
+      final var large = new ArrayDeque<Integer>();
+      final var scaled = new double[size];
+      for (int idx = 0; idx < size; idx++) {
+        scaled[idx] = total > 0 ? weights[idx] * size / total : 1.0;
+        (scaled[idx] < 1.0 ? small : large).add(idx);
+      }
+      while (!small.isEmpty() && !large.isEmpty()) {
+        final int less = small.poll();
+        final int more = large.poll();
+        probabilities[less] = scaled[less];
+        aliases[less] = more;
+        scaled[more] = scaled[more] + scaled[less] - 1.0;
+        (scaled[more] < 1.0 ? small : large).add(more);
+      }
+      // the rest is 1.0 apart from rounding errors
+      while (!large.isEmpty()) {
+        probabilities[large.poll()] = 1.0;
+      }
+      while (!small.isEmpty()) {
+        probabilities[small.poll()] = 1.0;
+      }
+    }
+
+    @Override
+    public List<DeliverableAd> getAds() {
+      return ads;
+    }
+
+    @Override
+    public DeliverableAd select() {
+      return ads.get(selectIndex());
+    }
+
+    int selectIndex() {
+      final var random = ThreadLocalRandom.current();
+      final var column = random.nextInt(probabilities.length);
+      return random.nextDouble() < probabilities[column] ? column : aliases[column];
+    }
+  }
+
+}
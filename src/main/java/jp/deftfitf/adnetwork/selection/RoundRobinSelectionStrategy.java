@@ -0,0 +1,39 @@
+package jp.deftfitf.adnetwork.selection;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import jp.deftfitf.adnetwork.dto.DeliverableAd;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Ads are chosen in turn. The position is advanced by an atomic increment without locks, and restarts
+ * whenever the inventory is prepared again.
+ */
+public class RoundRobinSelectionStrategy implements AdSelectionStrategy {
+
+  @Override
+  public AdSelector prepare(List<DeliverableAd> ads) {
+    return new RoundRobinSelector(List.copyOf(ads));
+  }
+
+  @RequiredArgsConstructor
+  private static class RoundRobinSelector implements AdSelector {
+
+    @NonNull
+    private final List<DeliverableAd> ads;
+    private final AtomicInteger position = new AtomicInteger();
+
+    @Override
+    public List<DeliverableAd> getAds() {
+      return ads;
+    }
+
+    @Override
+    public DeliverableAd select() {
+      // floorMod keeps the order stable when the counter overflows
+      return ads.get(Math.floorMod(position.getAndIncrement(), ads.size()));
+    }
+  }
+
+}
@@ -0,0 +1,36 @@
+package jp.deftfitf.adnetwork.selection;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import jp.deftfitf.adnetwork.dto.DeliverableAd;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Every ad is chosen with the same probability.
+ */
+public class UniformSelectionStrategy implements AdSelectionStrategy {
+
+  @Override
+  public AdSelector prepare(List<DeliverableAd> ads) {
+    return new UniformSelector(List.copyOf(ads));
+  }
+
+  @RequiredArgsConstructor
+  private static class UniformSelector implements AdSelector {
+
+    @NonNull
+    private final List<DeliverableAd> ads;
+
+    @Override
+    public List<DeliverableAd> getAds() {
+      return ads;
+    }
+
+    @Override
+    public DeliverableAd select() {
+      return ads.get(ThreadLocalRandom.current().nextInt(ads.size()));
+    }
+  }
+
+}
@@ -0,0 +1,44 @@
+package jp.deftfitf.adnetwork.setting;
+
+import java.time.Duration;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.NonNull;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@ConfigurationProperties(prefix = "adnetwork.challenge")
+@Data
+@NoArgsConstructor
+public class ChallengeSetting {
+
+  @NonNull
+  private Mode mode = Mode.STORED;
+  /**
+   * Challenges which aren't used within this time are rejected.
+   */
+  @NonNull
+  private Duration ttl = Duration.ofMinutes(5);
+  /**
+   * Upper bound of stored challenges. The oldest ones are evicted beyond this.
+   */
+  private int maxEntries = 100_000;
+  /**
+   * Base64 encoded HMAC key of {@link Mode#STATELESS} challenges. Nodes behind a load balancer must
+   * share it. When it's empty, a random key is generated on startup.
+   */
+  @NonNull
+  private String secret = "";
+
+  public enum Mode {
+    /**
+     * A random challenge per address is kept on the server and can be used once.
+     */
+    STORED,
+    /**
+     * Challenges carry their issue time and an HMAC bound to the address, so that no server state
+     * is kept. A challenge can be used any number of times until it expires.
+     */
+    STATELESS
+  }
+
+}
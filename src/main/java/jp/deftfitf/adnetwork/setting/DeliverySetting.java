@@ -0,0 +1,36 @@
+package jp.deftfitf.adnetwork.setting;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.NonNull;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@ConfigurationProperties(prefix = "adnetwork.delivery")
+@Data
+@NoArgsConstructor
+public class DeliverySetting {
+
+  @NonNull
+  private SelectionStrategy selectionStrategy = SelectionStrategy.UNIFORM;
+  /**
+   * Upper bound of slots in a single /delivery/batch request.
+   */
+  private int batchMaxSlots = 32;
+  /**
+   * Also serve /delivery from an event-loop server on {@link #eventLoopPort}, which reads the
+   * inventory cache directly without the servlet and security filter chains.
+   */
+  private boolean eventLoopEnabled = false;
+  private int eventLoopPort = 8081;
+
+  public enum SelectionStrategy {
+    /**
+     * In proportion to adPrice. It's declared by the advertiser in the ad format and isn't checked
+     * against the price paid to the contract, so only use it among trusted advertisers.
+     */
+    PRICE_WEIGHTED,
+    UNIFORM,
+    ROUND_ROBIN
+  }
+
+}
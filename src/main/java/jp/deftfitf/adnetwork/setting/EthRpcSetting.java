@@ -0,0 +1,62 @@
+package jp.deftfitf.adnetwork.setting;
+
+import java.time.Duration;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.NonNull;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@ConfigurationProperties(prefix = "eth.rpc")
+@Data
+@NoArgsConstructor
+public class EthRpcSetting {
+
+  /**
+   * Number of eth_call packed into one JSON-RPC batch request.
+   */
+  private int batchSize = 100;
+  @NonNull
+  private Duration connectTimeout = Duration.ofSeconds(3);
+  /**
+   * Timeout of a single attempt, from sending the request to reading the whole response.
+   */
+  @NonNull
+  private Duration callTimeout = Duration.ofSeconds(10);
+  /**
+   * Deadline of a call including waiting for a concurrency slot. No retry starts after it.
+   */
+  @NonNull
+  private Duration deadline = Duration.ofSeconds(30);
+  private int maxIdleConnections = 16;
+  @NonNull
+  private Duration keepAlive = Duration.ofMinutes(5);
+  /**
+   * Attempts of a call including the first one. eth_sendRawTransaction is never retried.
+   */
+  private int maxAttempts = 3;
+  /**
+   * Retries wait a random time up to backoffBase * 2^(attempt - 1), capped by backoffMax.
+   */
+  @NonNull
+  private Duration backoffBase = Duration.ofMillis(100);
+  @NonNull
+  private Duration backoffMax = Duration.ofSeconds(2);
+  /**
+   * Consecutive failed attempts which open the circuit breaker.
+   */
+  private int circuitFailureThreshold = 5;
+  @NonNull
+  private Duration circuitOpenDuration = Duration.ofSeconds(10);
+  /**
+   * Calls in flight start at the initial concurrency, grow by one per round of successful calls
+   * and shrink by the backoff ratio on each failure.
+   */
+  private int initialConcurrency = 16;
+  private int minConcurrency = 1;
+  private int maxConcurrency = 64;
+  private double concurrencyBackoffRatio = 0.7;
+  /**
+   * Threads running async calls, e.g. getAdsOf batches during a reload.
+   */
+  private int asyncParallelism = 8;
+}
@@ -0,0 +1,33 @@
+package jp.deftfitf.adnetwork.setting;
+
+import java.util.List;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.NonNull;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@ConfigurationProperties(prefix = "adnetwork.image")
+@Data
+@NoArgsConstructor
+public class ImageSetting {
+
+  /**
+   * Widths of the variants made of every uploaded image. Images are never scaled up, so a variant
+   * wider than its original is only recompressed.
+   */
+  @NonNull
+  private List<Integer> variantWidths = List.of(320, 640, 1280);
+  /**
+   * Quality of JPEG variants, from 0 to 1.
+   */
+  private float jpegQuality = 0.8f;
+  private int workers = 2;
+  /**
+   * Uploads waiting for a worker beyond this are left as they are, and their original is served.
+   */
+  private int queueCapacity = 100;
+  /**
+   * Images of more pixels than this aren't decoded, so that a small file can't exhaust memory.
+   */
+  private long maxPixels = 25_000_000;
+}
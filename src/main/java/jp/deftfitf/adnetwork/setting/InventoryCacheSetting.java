@@ -0,0 +1,100 @@
+package jp.deftfitf.adnetwork.setting;
+
+import java.time.Duration;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.NonNull;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@ConfigurationProperties(prefix = "adnetwork.cache")
+@Data
+@NoArgsConstructor
+public class InventoryCacheSetting {
+
+  /**
+   * Follow AdNetwork contract events and apply changed ads incrementally. When enabled, the full
+   * reload only works as a consistency sweep and its rate can be lowered.
+   */
+  private boolean eventFollowEnabled = false;
+  /**
+   * Blocks behind the chain head to wait before applying events, to avoid reorged logs.
+   */
+  private long eventConfirmations = 0;
+  /**
+   * Upper bound of blocks requested by a single eth_getLogs call.
+   */
+  private long eventMaxBlockRange = 5000;
+  /**
+   * File which holds the last applied block number across restarts.
+   */
+  @NonNull
+  private String eventCheckpointFile = "./cache/event-checkpoint";
+  /**
+   * Threads reading encrypted ad formats from storage during a full reload.
+   */
+  private int reloadStorageParallelism = 4;
+  /**
+   * Threads decrypting ad formats during a full reload, 0 means the number of processors.
+   */
+  private int reloadDecryptParallelism = 0;
+  /**
+   * Inventories fetched concurrently. Reload blocks submitting more until one of them completes.
+   * An inventory which times out gives its slot back at once, and its storage reads and
+   * decryptions which haven't started are cancelled.
+   */
+  private int reloadMaxInFlightInventories = 64;
+  /**
+   * Inventories which can't be fetched within this time are skipped until the next reload.
+   */
+  @NonNull
+  private Duration reloadInventoryTimeout = Duration.ofSeconds(30);
+  /**
+   * Decrypted ad formats kept in memory, least recently used ones are evicted beyond this.
+   */
+  private int adFormatCacheMaxEntries = 100_000;
+  /**
+   * Persist decrypted ad formats to local disk, so that they aren't decrypted again after restart.
+   * Note that the persisted files are plain text, so ads which haven't started are left out.
+   */
+  private boolean adFormatCachePersistenceEnabled = false;
+  @NonNull
+  private String adFormatCacheDirectory = "./cache/decoded-ad-formats";
+  /**
+   * Write deliverable ads to local disk periodically, and serve them right after a restart until
+   * the first reload has reconciled them with the chain. Ads which haven't started are left out.
+   */
+  private boolean snapshotEnabled = true;
+  @NonNull
+  private String snapshotFile = "./cache/delivery-snapshot";
+  @NonNull
+  private Role role = Role.STANDALONE;
+  /**
+   * Base URL of the loader which a replica pulls the cache from.
+   */
+  @NonNull
+  private String loaderUrl = "";
+  @NonNull
+  private Duration replicaPullTimeout = Duration.ofSeconds(5);
+
+  /**
+   * @return whether this node reads the contract and holds delivery keys, i.e. isn't a replica
+   */
+  public boolean isChainReader() {
+    return role != Role.REPLICA;
+  }
+
+  public enum Role {
+    /**
+     * Reads the contract and decrypts ads for its own delivery.
+     */
+    STANDALONE,
+    /**
+     * Reads the contract and decrypts ads, and publishes the cache under /replication to replicas.
+     */
+    LOADER,
+    /**
+     * Pulls the cache from {@link #loaderUrl}, without RPC access or delivery keys.
+     */
+    REPLICA
+  }
+}
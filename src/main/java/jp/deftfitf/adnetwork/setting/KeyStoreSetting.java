@@ -0,0 +1,24 @@
+package jp.deftfitf.adnetwork.setting;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.NonNull;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@ConfigurationProperties(prefix = "adnetwork.key-store")
+@Data
+@NoArgsConstructor
+public class KeyStoreSetting {
+
+  /**
+   * Base64 encoded 256 bit AES key which encrypts delivery private keys at rest. When it's empty,
+   * keys are kept in memory only and have to be registered again after a restart.
+   */
+  @NonNull
+  private String masterKey = "";
+  /**
+   * Append-only journal of encrypted delivery private keys.
+   */
+  @NonNull
+  private String file = "./cache/delivery-keys";
+}
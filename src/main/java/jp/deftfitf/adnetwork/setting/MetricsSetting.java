@@ -0,0 +1,17 @@
+package jp.deftfitf.adnetwork.setting;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@ConfigurationProperties(prefix = "adnetwork.metrics")
+@Data
+@NoArgsConstructor
+public class MetricsSetting {
+
+  /**
+   * Inventories which get their own delivery meters, in the order they're requested first. Other
+   * inventories are counted together under inventory=other.
+   */
+  private int deliveryTrackedInventories = 100;
+}
@@ -0,0 +1,39 @@
+package jp.deftfitf.adnetwork.setting;
+
+import java.time.Duration;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.NonNull;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@ConfigurationProperties(prefix = "adnetwork.session")
+@Data
+@NoArgsConstructor
+public class SessionSetting {
+
+  /**
+   * Keep the logged in user in an HMAC signed cookie instead of the servlet session, so that any
+   * node can authenticate requests without sticky routing.
+   */
+  private boolean stateless = false;
+  @NonNull
+  private Duration ttl = Duration.ofHours(12);
+  /**
+   * Base64 encoded HMAC key of session tokens, shared by all nodes. It's required when
+   * {@link #stateless} is enabled, so that the startup fails instead of each node generating its
+   * own key.
+   */
+  @NonNull
+  private String secret = "";
+  @NonNull
+  private String cookieName = "ADNETWORK_SESSION";
+  /**
+   * Send the cookie over HTTPS only.
+   */
+  private boolean secureCookie = false;
+  /**
+   * Upper bound of revoked tokens kept until they expire. The ones expiring first are dropped
+   * beyond this.
+   */
+  private int denyListMaxEntries = 10_000;
+}
@@ -0,0 +1,60 @@
+package jp.deftfitf.adnetwork.setting;
+
+import java.time.Duration;
+import java.util.List;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.NonNull;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@ConfigurationProperties(prefix = "adnetwork.shard")
+@Data
+@NoArgsConstructor
+public class ShardSetting {
+
+  /**
+   * Load and serve only the inventories assigned to {@link #self} among {@link #members}.
+   */
+  private boolean enabled = false;
+  /**
+   * Base URLs of every node of the fleet, where /delivery is served, e.g. http://delivery-1:8080.
+   * Every node must be configured with the same list.
+   */
+  @NonNull
+  private List<String> members = List.of();
+  /**
+   * Base URL of this node, one of {@link #members}.
+   */
+  @NonNull
+  private String self = "";
+  /**
+   * Points of each member on the hash ring. More points spread inventories more evenly.
+   */
+  private int virtualNodes = 128;
+  @NonNull
+  private ForeignInventory foreignInventory = ForeignInventory.FORWARD;
+  /**
+   * A forwarded request not answered in time is answered as not found.
+   */
+  @NonNull
+  private Duration forwardTimeout = Duration.ofMillis(200);
+  /**
+   * Upper bound of connections to the other members, per member.
+   */
+  private int forwardMaxConnections = 64;
+
+  /**
+   * How /delivery for an inventory of another member is answered.
+   */
+  public enum ForeignInventory {
+    /**
+     * Ask the owner and answer with its response.
+     */
+    FORWARD,
+    /**
+     * Answer 307 to the /delivery of the owner, which the client posts the request to again.
+     */
+    REDIRECT
+  }
+
+}
@@ -0,0 +1,54 @@
+package jp.deftfitf.adnetwork.setting;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.NonNull;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@ConfigurationProperties(prefix = "adnetwork.storage")
+@Data
+@NoArgsConstructor
+public class StorageSetting {
+
+  @NonNull
+  private Engine engine = Engine.FILE;
+  /**
+   * Base directory of {@link Engine#FILE}, which is also served under /public.
+   */
+  @NonNull
+  private String baseDirectory = "./uploaded";
+  /**
+   * Directory of segment files of {@link Engine#SEGMENT}.
+   */
+  @NonNull
+  private String segmentDirectory = "./segments";
+  /**
+   * Size of each segment file in bytes. A single object must fit into one segment.
+   */
+  private int segmentSize = 64 * 1024 * 1024;
+  /**
+   * Segments whose dead bytes exceed this ratio are rewritten by compaction.
+   */
+  private double compactionDeadRatio = 0.5;
+  /**
+   * Objects under /public of at least this size are sent with sendfile, when the connector supports
+   * it. Smaller ones are copied, which is cheaper for them.
+   */
+  private int sendfileMinSize = 48 * 1024;
+  /**
+   * Upper bound of objects whose validators and variants are cached.
+   */
+  private int staticObjectCacheMaxEntries = 100_000;
+
+  public enum Engine {
+    /**
+     * One file per object under {@link #baseDirectory}.
+     */
+    FILE,
+    /**
+     * Objects are appended to memory-mapped segment files with an in-memory index.
+     */
+    SEGMENT
+  }
+
+}
@@ -0,0 +1,127 @@
+package jp.deftfitf.adnetwork.shard;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.netty.buffer.Unpooled;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpHeaderValues;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import jp.deftfitf.adnetwork.dto.DeliverableAd;
+import jp.deftfitf.adnetwork.metrics.DeliveryMetrics;
+import jp.deftfitf.adnetwork.setting.ShardSetting;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+/**
+ * Forwards /delivery requests for inventories of other members over pooled, non-blocking
+ * connections. Slots of a member which fails or doesn't answer in time are answered as not found,
+ * as an empty slot is better than a late page.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class DeliveryForwarder {
+
+  private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+  @NonNull
+  private final ShardSetting setting;
+  @NonNull
+  private final DeliveryMetrics deliveryMetrics;
+  private ConnectionProvider connectionProvider;
+  private HttpClient httpClient;
+
+  @PostConstruct
+  public void init() {
+    connectionProvider = ConnectionProvider.builder("delivery-forward")
+        .maxConnections(setting.getForwardMaxConnections())
+        .build();
+    httpClient = HttpClient.create(connectionProvider)
+        .responseTimeout(setting.getForwardTimeout())
+        .headers(headers -> headers
+            .set(HttpHeaderNames.CONTENT_TYPE, HttpHeaderValues.APPLICATION_JSON)
+            .set(InventoryShard.FORWARDED_HEADER, setting.getSelf()));
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    connectionProvider.dispose();
+  }
+
+  /**
+   * @param owner base URL of the member
+   * @return the response body of the owner
+   */
+  public Mono<byte[]> forward(String owner, long inventoryId) {
+    return post(owner + "/delivery", "{\"inventoryId\":" + inventoryId + "}")
+        .onErrorResume(e -> {
+          log.debug("Failed to forward: inventoryId={}, owner={}", inventoryId, owner, e);
+          return Mono.just(DeliverableAd.NOT_FOUND_RESPONSE_BODY);
+        });
+  }
+
+  /**
+   * @return response bodies of the slots, in the order of the inventory ids
+   */
+  public Mono<List<byte[]>> forwardBatch(
+      String owner,
+      List<Long> inventoryIds,
+      boolean distinctAds
+  ) {
+    final var body = new StringBuilder("{\"slots\":[");
+    for (int idx = 0; idx < inventoryIds.size(); idx++) {
+      body.append(idx == 0 ? "" : ",").append("{\"inventoryId\":")
+          .append(inventoryIds.get(idx)).append('}');
+    }
+    body.append("],\"distinctAds\":").append(distinctAds).append('}');
+
+    return post(owner + "/delivery/batch", body.toString())
+        .map(DeliveryForwarder::elementsOf)
+        .filter(elements -> elements.size() == inventoryIds.size())
+        .switchIfEmpty(Mono.error(() -> new IOException("unexpected number of slots")))
+        .onErrorResume(e -> {
+          log.debug("Failed to forward: inventoryIds={}, owner={}", inventoryIds, owner, e);
+          return Mono.just(
+              Collections.nCopies(inventoryIds.size(), DeliverableAd.NOT_FOUND_RESPONSE_BODY));
+        });
+  }
+
+  private Mono<byte[]> post(String uri, String body) {
+    return httpClient.post()
+        .uri(uri)
+        .send(Mono.fromSupplier(() ->
+            Unpooled.wrappedBuffer(body.getBytes(StandardCharsets.UTF_8))))
+        .responseSingle((response, content) -> response.status().equals(HttpResponseStatus.OK)
+            ? content.asByteArray()
+            : Mono.error(new IOException(uri + " answered " + response.status())))
+        .switchIfEmpty(Mono.error(() -> new IOException(uri + " answered no body")))
+        .timeout(setting.getForwardTimeout())
+        .doOnNext(notUsed -> deliveryMetrics.countForwarded(true))
+        .doOnError(e -> deliveryMetrics.countForwarded(false));
+  }
+
+  private static List<byte[]> elementsOf(byte[] array) {
+    try {
+      final var elements = new ArrayList<byte[]>();
+      for (final var element : OBJECT_MAPPER.readTree(array)) {
+        elements.add(OBJECT_MAPPER.writeValueAsBytes(element));
+      }
+      return elements;
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+}
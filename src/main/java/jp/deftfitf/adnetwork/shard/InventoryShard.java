@@ -0,0 +1,102 @@
+package jp.deftfitf.adnetwork.shard;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.TreeMap;
+import jp.deftfitf.adnetwork.setting.ShardSetting;
+import org.springframework.stereotype.Component;
+
+/**
+ * Assigns inventories to the members of a statically configured fleet by consistent hashing. Each
+ * member is placed at {@link ShardSetting#getVirtualNodes()} points of a ring, and an inventory
+ * belongs to the member of the first point at or after its hash, so adding or removing a member
+ * moves only the inventories next to its points. When sharding is disabled, this node owns every
+ * inventory. The ring is kept in sorted arrays, so a lookup on the delivery path doesn't allocate.
+ */
+@Component
+public class InventoryShard {
+
+  /**
+   * Set on forwarded requests, which are served by the receiving node whoever owns the inventory,
+   * so that members configured differently can't forward a request around forever.
+   */
+  public static final String FORWARDED_HEADER = "X-Adnetwork-Forwarded";
+
+  private final boolean enabled;
+  private final String self;
+  private final String[] members;
+  private final int selfIndex;
+  /**
+   * Hashes of the points in ascending order, and the index of the member of each point.
+   */
+  private final long[] points;
+  private final int[] pointMembers;
+
+  public InventoryShard(ShardSetting setting) {
+    this.enabled = setting.isEnabled();
+    this.self = setting.getSelf();
+    this.members = setting.getMembers().toArray(String[]::new);
+    this.selfIndex = setting.getMembers().indexOf(self);
+    if (enabled && selfIndex < 0) {
+      throw new IllegalStateException(
+          "adnetwork.shard.self isn't one of the members: " + self);
+    }
+
+    final var ring = new TreeMap<Long, Integer>();
+    if (enabled) {
+      for (int member = 0; member < members.length; member++) {
+        for (int point = 0; point < setting.getVirtualNodes(); point++) {
+          ring.put(pointOf(members[member], point), member);
+        }
+      }
+    }
+    this.points = ring.keySet().stream().mapToLong(Long::longValue).toArray();
+    this.pointMembers = ring.values().stream().mapToInt(Integer::intValue).toArray();
+  }
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  public boolean owns(long inventoryId) {
+    return !enabled || memberOf(inventoryId) == selfIndex;
+  }
+
+  /**
+   * @return base URL of the member the inventory is assigned to
+   */
+  public String ownerOf(long inventoryId) {
+    return enabled ? members[memberOf(inventoryId)] : self;
+  }
+
+  private int memberOf(long inventoryId) {
+    final var found = Arrays.binarySearch(points, mix(inventoryId));
+    final var point = found >= 0 ? found : -found - 1;
+    // past the last point, the ring wraps around to the first one
+    return pointMembers[point == points.length ? 0 : point];
+  }
+
+  private static long pointOf(String member, int point) {
+    try {
+      final var digest = MessageDigest.getInstance("SHA-256")
+          .digest((member + "#" + point).getBytes(StandardCharsets.UTF_8));
+      return ByteBuffer.wrap(digest).getLong();
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * Spread consecutive ids over the ring, with the finalizer of SplitMix64.
+   */
+  private static long mix(long inventoryId) {
+    var hash = inventoryId;
+    hash = (hash ^ (hash >>> 30)) * 0xBF58476D1CE4E5B9L;
+    hash = (hash ^ (hash >>> 27)) * 0x94D049BB133111EBL;
+    return hash ^ (hash >>> 31);
+  }
+
+}
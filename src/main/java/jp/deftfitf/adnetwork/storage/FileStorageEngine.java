@@ -0,0 +1,93 @@
+package jp.deftfitf.adnetwork.storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Optional;
+import lombok.NonNull;
+import org.apache.tomcat.util.http.fileupload.IOUtils;
+
+/**
+ * Stores each object as its own file under the base directory. Temporary files are written under
+ * {@link #TEMPORARY_DIRECTORY} of the base directory, so that they're renamed into place
+ * atomically, and the ones left by a crash are removed on startup.
+ */
+public class FileStorageEngine implements StorageEngine {
+
+  public static final String TEMPORARY_DIRECTORY = ".ingest";
+
+  private final Path baseDirectory;
+  private final Path temporaryDirectory;
+
+  public FileStorageEngine(@NonNull Path baseDirectory) throws IOException {
+    this.baseDirectory = baseDirectory;
+    this.temporaryDirectory = baseDirectory.resolve(TEMPORARY_DIRECTORY);
+    deleteTemporaryFiles(temporaryDirectory);
+  }
+
+  static void deleteTemporaryFiles(Path temporaryDirectory) throws IOException {
+    Files.createDirectories(temporaryDirectory);
+    try (final var paths = Files.list(temporaryDirectory)) {
+      for (final var path : (Iterable<Path>) paths::iterator) {
+        Files.deleteIfExists(path);
+      }
+    }
+  }
+
+  @Override
+  public void save(String key, InputStream inputStream) throws IOException {
+    final var path = Files.createFile(baseDirectory.resolve(key));
+    try (final var os = Files.newOutputStream(path)) {
+      IOUtils.copy(inputStream, os);
+    }
+  }
+
+  @Override
+  public boolean exists(String key) {
+    return Files.exists(baseDirectory.resolve(key));
+  }
+
+  @Override
+  public ByteBuffer read(String key) throws IOException {
+    return ByteBuffer.wrap(Files.readAllBytes(baseDirectory.resolve(key))).asReadOnlyBuffer();
+  }
+
+  @Override
+  public Optional<Path> file(String key) throws IOException {
+    final var path = baseDirectory.resolve(key);
+    if (!Files.isRegularFile(path)) {
+      throw new NoSuchFileException(key);
+    }
+    return Optional.of(path.toRealPath());
+  }
+
+  @Override
+  public void delete(String key) throws IOException {
+    Files.deleteIfExists(baseDirectory.resolve(key));
+  }
+
+  @Override
+  public Path createTemporaryFile() throws IOException {
+    return Files.createTempFile(temporaryDirectory, "ingest-", ".tmp");
+  }
+
+  @Override
+  public boolean moveIn(String key, Path file) throws IOException {
+    final var path = baseDirectory.resolve(key);
+    try {
+      if (Files.exists(path)) {
+        return false;
+      }
+      // readers see either no file or the whole of it
+      Files.move(file, path, StandardCopyOption.ATOMIC_MOVE);
+      return true;
+    } finally {
+      Files.deleteIfExists(file);
+    }
+  }
+
+}
@@ -0,0 +1,350 @@
+package jp.deftfitf.adnetwork.storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.zip.CRC32;
+
+/**
+ * Appends objects to fixed-size, memory-mapped segment files and keeps an in-memory index from key
+ * to record location. Reads return slices of the mapped segment without copying.
+ *
+ * <p>Record layout: type(1) keyLength(4) valueLength(4) key value crc32(4). A zero type marks the
+ * end of written records. Keys are content hashes or unique names, so saving an existing key is a
+ * no-op. Deletion appends a tombstone, and compaction rewrites live records of mostly dead segments
+ * into the active segment before removing them. Temporary files are written under the ingest
+ * directory of the segment directory, and copied into the segment from the page cache.
+ */
+public class SegmentStorageEngine implements StorageEngine {
+
+  private static final Pattern SEGMENT_FILE_NAME = Pattern.compile("segment-(\\d+)\\.dat");
+  private static final byte PUT = 1;
+  private static final byte DELETE = 2;
+  private static final int HEADER_LENGTH = 1 + 4 + 4;
+  private static final int TRAILER_LENGTH = 4;
+  private static final ByteBuffer EMPTY = ByteBuffer.allocate(0).asReadOnlyBuffer();
+
+  private final Path directory;
+  private final Path temporaryDirectory;
+  private final int segmentSize;
+  private final double compactionDeadRatio;
+  private final Map<String, Location> index = new ConcurrentHashMap<>();
+  private final NavigableMap<Integer, Segment> segments = new ConcurrentSkipListMap<>();
+  private Segment active;
+
+  public SegmentStorageEngine(Path directory, int segmentSize, double compactionDeadRatio)
+      throws IOException {
+    this.directory = directory;
+    this.segmentSize = segmentSize;
+    this.compactionDeadRatio = compactionDeadRatio;
+    this.temporaryDirectory = directory.resolve("ingest");
+    Files.createDirectories(directory);
+    FileStorageEngine.deleteTemporaryFiles(temporaryDirectory);
+    recover();
+  }
+
+  @Override
+  public void save(String key, InputStream inputStream) throws IOException {
+    put(key, ByteBuffer.wrap(inputStream.readAllBytes()));
+  }
+
+  @Override
+  public Path createTemporaryFile() throws IOException {
+    return Files.createTempFile(temporaryDirectory, "ingest-", ".tmp");
+  }
+
+  @Override
+  public boolean moveIn(String key, Path file) throws IOException {
+    try (final var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      if (channel.size() >= segmentSize) {
+        throw new IOException("Object is too large for a segment: " + channel.size() + " bytes");
+      }
+      return put(key, channel.map(MapMode.READ_ONLY, 0, channel.size()));
+    } finally {
+      Files.deleteIfExists(file);
+    }
+  }
+
+  private synchronized boolean put(String key, ByteBuffer value) throws IOException {
+    if (index.containsKey(key)) {
+      return false;
+    }
+    final var location = append(PUT, key.getBytes(StandardCharsets.UTF_8), value);
+    index.put(key, location);
+    active.liveBytes += location.recordLength;
+    return true;
+  }
+
+  @Override
+  public boolean exists(String key) {
+    return index.containsKey(key);
+  }
+
+  @Override
+  public ByteBuffer read(String key) throws IOException {
+    // a concurrent compaction may remove the segment after the index has been read, so retry once
+    for (int attempt = 0; attempt < 2; attempt++) {
+      final var location = index.get(key);
+      if (location == null) {
+        break;
+      }
+      final var segment = segments.get(location.segmentId);
+      if (segment != null) {
+        return segment.slice(location.valueOffset, location.valueLength);
+      }
+    }
+    throw new NoSuchFileException(key);
+  }
+
+  @Override
+  public synchronized void delete(String key) throws IOException {
+    final var location = index.remove(key);
+    if (location == null) {
+      return;
+    }
+    segments.get(location.segmentId).liveBytes -= location.recordLength;
+    append(DELETE, key.getBytes(StandardCharsets.UTF_8), EMPTY);
+  }
+
+  @Override
+  public synchronized void compact() throws IOException {
+    final var sealed = new ArrayList<>(segments.headMap(active.id, false).values());
+    for (final var segment : sealed) {
+      if (segment.deadRatio() < compactionDeadRatio) {
+        continue;
+      }
+      // Tombstones only matter while an older segment may hold the record they shadow.
+      final var keepTombstones = segments.firstKey() < segment.id;
+      final var records = segment.scan();
+      for (final var record : records) {
+        if (record.type == DELETE) {
+          // a key saved again after this tombstone must not be shadowed by a moved copy
+          if (keepTombstones && !index.containsKey(record.key)) {
+            append(DELETE, record.key.getBytes(StandardCharsets.UTF_8), EMPTY);
+          }
+          continue;
+        }
+        final var location = index.get(record.key);
+        if (location == null || !location.equals(record.location)) {
+          continue;
+        }
+        final var moved = append(PUT, record.key.getBytes(StandardCharsets.UTF_8),
+            segment.slice(location.valueOffset, location.valueLength));
+        index.put(record.key, moved);
+        active.liveBytes += moved.recordLength;
+      }
+      active.force();
+      segments.remove(segment.id);
+      Files.deleteIfExists(segment.path);
+    }
+  }
+
+  @Override
+  public synchronized void close() {
+    active.force();
+  }
+
+  public int segmentCount() {
+    return segments.size();
+  }
+
+  private Location append(byte type, byte[] key, ByteBuffer value) throws IOException {
+    final var valueLength = value.remaining();
+    final var recordLength = HEADER_LENGTH + key.length + valueLength + TRAILER_LENGTH;
+    // keep at least one byte for the end marker
+    if (recordLength >= segmentSize) {
+      throw new IOException("Object is too large for a segment: " + recordLength + " bytes");
+    }
+    if (segmentSize - active.writePosition <= recordLength) {
+      active.force();
+      active = openSegment(active.id + 1);
+    }
+
+    final var offset = active.writePosition;
+    final var crc = new CRC32();
+    crc.update(key);
+    crc.update(value.duplicate());
+    final var buffer = active.buffer.duplicate();
+    buffer.position(offset);
+    buffer.put(type).putInt(key.length).putInt(valueLength).put(key).put(value.duplicate())
+        .putInt((int) crc.getValue());
+    active.writePosition += recordLength;
+    active.force();
+
+    return new Location(active.id, offset, recordLength, offset + HEADER_LENGTH + key.length,
+        valueLength);
+  }
+
+  private void recover() throws IOException {
+    final List<Integer> segmentIds;
+    try (final var paths = Files.list(directory)) {
+      segmentIds = paths
+          .map(path -> SEGMENT_FILE_NAME.matcher(path.getFileName().toString()))
+          .filter(matcher -> matcher.matches())
+          .map(matcher -> Integer.parseInt(matcher.group(1)))
+          .sorted()
+          .collect(Collectors.toList());
+    }
+
+    for (final var segmentId : segmentIds) {
+      final var segment = openSegment(segmentId);
+      for (final var record : segment.scan()) {
+        if (record.type == PUT) {
+          index.put(record.key, record.location);
+        } else {
+          index.remove(record.key);
+        }
+      }
+    }
+    for (final var location : index.values()) {
+      segments.get(location.segmentId).liveBytes += location.recordLength;
+    }
+
+    active = segments.isEmpty() ? openSegment(1) : segments.lastEntry().getValue();
+  }
+
+  private Segment openSegment(int segmentId) throws IOException {
+    final var path = directory.resolve(String.format("segment-%08d.dat", segmentId));
+    try (final var channel = FileChannel.open(path,
+        StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+      // the mapping outlives the channel
+      final var segment = new Segment(segmentId, path,
+          channel.map(MapMode.READ_WRITE, 0, segmentSize));
+      segments.put(segmentId, segment);
+      return segment;
+    }
+  }
+
+  private static final class Location {
+
+    final int segmentId;
+    final int recordOffset;
+    final int recordLength;
+    final int valueOffset;
+    final int valueLength;
+
+    Location(int segmentId, int recordOffset, int recordLength, int valueOffset,
+        int valueLength) {
+      this.segmentId = segmentId;
+      this.recordOffset = recordOffset;
+      this.recordLength = recordLength;
+      this.valueOffset = valueOffset;
+      this.valueLength = valueLength;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof Location)) {
+        return false;
+      }
+      final var other = (Location) o;
+      return segmentId == other.segmentId && recordOffset == other.recordOffset;
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * segmentId + recordOffset;
+    }
+  }
+
+  private static final class Record {
+
+    final byte type;
+    final String key;
+    final Location location;
+
+    Record(byte type, String key, Location location) {
+      this.type = type;
+      this.key = key;
+      this.location = location;
+    }
+  }
+
+  private final class Segment {
+
+    final int id;
+    final Path path;
+    final MappedByteBuffer buffer;
+    int writePosition;
+    long liveBytes;
+
+    Segment(int id, Path path, MappedByteBuffer buffer) {
+      this.id = id;
+      this.path = path;
+      this.buffer = buffer;
+    }
+
+    ByteBuffer slice(int offset, int length) {
+      final var view = buffer.duplicate();
+      view.position(offset);
+      view.limit(offset + length);
+      return view.slice().asReadOnlyBuffer();
+    }
+
+    double deadRatio() {
+      return writePosition == 0 ? 0 : 1 - (double) liveBytes / writePosition;
+    }
+
+    void force() {
+      buffer.force();
+    }
+
+    /**
+     * Read records until the end marker or a torn record, and set the write position after them.
+     */
+    List<Record> scan() {
+      final var records = new ArrayList<Record>();
+      final var view = buffer.duplicate();
+      var offset = 0;
+      while (segmentSize - offset > HEADER_LENGTH + TRAILER_LENGTH) {
+        view.position(offset);
+        final var type = view.get();
+        if (type != PUT && type != DELETE) {
+          break;
+        }
+        final var keyLength = view.getInt();
+        final var valueLength = view.getInt();
+        if (keyLength < 0 || valueLength < 0
+            || segmentSize - offset - HEADER_LENGTH - TRAILER_LENGTH < keyLength + valueLength) {
+          break;
+        }
+        final var key = new byte[keyLength];
+        view.get(key);
+        final var valueOffset = view.position();
+        final var crc = new CRC32();
+        crc.update(key);
+        crc.update(slice(valueOffset, valueLength));
+        view.position(valueOffset + valueLength);
+        if (view.getInt() != (int) crc.getValue()) {
+          break;
+        }
+
+        final var recordLength = HEADER_LENGTH + keyLength + valueLength + TRAILER_LENGTH;
+        records.add(new Record(type, new String(key, StandardCharsets.UTF_8),
+            new Location(id, offset, recordLength, valueOffset, valueLength)));
+        offset += recordLength;
+      }
+      if (writePosition < offset) {
+        writePosition = offset;
+      }
+      return records;
+    }
+  }
+
+}
@@ -0,0 +1,52 @@
+package jp.deftfitf.adnetwork.storage;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.stream.Collectors;
+import jp.deftfitf.adnetwork.setting.StorageSetting;
+
+/**
+ * Packs the files of {@link FileStorageEngine} into segments, keeping their relative paths as
+ * keys. Run it while the application is stopped, then switch adnetwork.storage.engine to segment.
+ *
+ * <pre>
+ * java -cp app.jar -Dloader.main=jp.deftfitf.adnetwork.storage.SegmentStoreMigration \
+ *   org.springframework.boot.loader.PropertiesLauncher ./uploaded ./segments
+ * </pre>
+ */
+public class SegmentStoreMigration {
+
+  public static void main(String[] args) throws IOException {
+    if (args.length != 2) {
+      System.err.println("usage: SegmentStoreMigration <source directory> <segment directory>");
+      System.exit(1);
+    }
+
+    final var source = Paths.get(args[0]);
+    final var setting = new StorageSetting();
+    final var migrated = migrate(source, new SegmentStorageEngine(Paths.get(args[1]),
+        setting.getSegmentSize(), setting.getCompactionDeadRatio()));
+    System.out.printf("migrated %d files from %s%n", migrated, source);
+  }
+
+  public static int migrate(Path source, SegmentStorageEngine target) throws IOException {
+    final var temporaryDirectory = source.resolve(FileStorageEngine.TEMPORARY_DIRECTORY);
+    final var files = Files.walk(source)
+        .filter(Files::isRegularFile)
+        .filter(file -> !file.startsWith(temporaryDirectory))
+        .sorted()
+        .collect(Collectors.toList());
+    try (target) {
+      for (final var file : files) {
+        final var key = source.relativize(file).toString().replace('\\', '/');
+        try (final var is = Files.newInputStream(file)) {
+          target.save(key, is);
+        }
+      }
+    }
+    return files.size();
+  }
+
+}
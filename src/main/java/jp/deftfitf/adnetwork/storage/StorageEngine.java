@@ -0,0 +1,57 @@
+package jp.deftfitf.adnetwork.storage;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.Optional;
+
+public interface StorageEngine extends Closeable {
+
+  void save(String key, InputStream inputStream) throws IOException;
+
+  /**
+   * @return a read-only view of the stored bytes
+   * @throws java.nio.file.NoSuchFileException when the key doesn't exist
+   */
+  ByteBuffer read(String key) throws IOException;
+
+  void delete(String key) throws IOException;
+
+  boolean exists(String key) throws IOException;
+
+  /**
+   * @return a new empty file on the same file system as the objects, to be written and then moved
+   *     in by {@link #moveIn}
+   */
+  Path createTemporaryFile() throws IOException;
+
+  /**
+   * Make the file the object of the key, unless the key already exists. The file is gone afterwards
+   * either way.
+   *
+   * @return whether the object has been added
+   */
+  boolean moveIn(String key, Path file) throws IOException;
+
+  /**
+   * @return the file holding the object, which can be sent with sendfile, or empty when the engine
+   *     doesn't keep one file per object
+   * @throws java.nio.file.NoSuchFileException when the key doesn't exist
+   */
+  default Optional<Path> file(String key) throws IOException {
+    return Optional.empty();
+  }
+
+  /**
+   * Reclaim space of deleted objects, if the engine needs it.
+   */
+  default void compact() throws IOException {
+  }
+
+  @Override
+  default void close() throws IOException {
+  }
+
+}
@@ -0,0 +1,53 @@
+/*
+ * Fills every ad slot of the page with a single request to /delivery/batch.
+ *
+ * <div data-adnetwork-inventory-id="1"></div>
+ * <script src="http://localhost:8080/public/adnetwork-tag.js" data-distinct-ads="true"></script>
+ */
+(function (script) {
+  const endpoint = new URL('/delivery/batch', script.src).href;
+  const slots = Array.from(document.querySelectorAll('[data-adnetwork-inventory-id]'));
+  if (slots.length === 0) {
+    return;
+  }
+
+  const requestBody = {
+    slots: slots.map(slot => ({
+      inventoryId: Number(slot.dataset.adnetworkInventoryId)
+    })),
+    distinctAds: script.dataset.distinctAds === 'true'
+  };
+
+  // images uploaded to the ad network are served in the size variant for the slot width
+  const imageUrlFor = (displayImageUrl, slot) => {
+    const url = new URL(displayImageUrl, script.src);
+    const width = Math.ceil(slot.clientWidth * (window.devicePixelRatio || 1));
+    if (width > 0 && url.pathname.startsWith('/public/images/')) {
+      url.searchParams.set('w', String(width));
+    }
+    return url.href;
+  };
+
+  const xhr = new XMLHttpRequest();
+  xhr.open('POST', endpoint, true);
+  xhr.setRequestHeader('Content-Type', 'application/json;charset=UTF-8');
+  xhr.onreadystatechange = function () {
+    if (this.readyState !== XMLHttpRequest.DONE || this.status !== 200) {
+      return;
+    }
+
+    JSON.parse(this.responseText).forEach((adResponse, idx) => {
+      if (!adResponse.found) {
+        return;
+      }
+
+      const imgTag = document.createElement('img');
+      imgTag.src = imageUrlFor(adResponse.adFormatV1Dto.displayImageUrl, slots[idx]);
+      const linkTag = document.createElement('a');
+      linkTag.href = adResponse.adFormatV1Dto.landingPageUrl;
+      linkTag.append(imgTag);
+      slots[idx].append(linkTag);
+    });
+  };
+  xhr.send(JSON.stringify(requestBody));
+})(document.currentScript);
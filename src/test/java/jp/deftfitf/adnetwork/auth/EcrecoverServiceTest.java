@@ -1,6 +1,21 @@
 package jp.deftfitf.adnetwork.auth;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import jp.deftfitf.adnetwork.auth.EcrecoverService.SignedMessage;
 import org.junit.jupiter.api.Test;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.web3j.crypto.ECKeyPair;
+import org.web3j.crypto.Keys;
+import org.web3j.crypto.Sign;
+import org.web3j.crypto.Sign.SignatureData;
+import org.web3j.utils.Numeric;
 
 public class EcrecoverServiceTest {
 
@@ -15,4 +30,112 @@ public class EcrecoverServiceTest {
     ecrecoverService.verify(address, challenge, signature);
   }
 
-}
\ No newline at end of file
+  @Test
+  public void verifyUnprefixedHex() {
+    final var challenge = "f398a234-eb36-4fa5-99f9-14c08847420b";
+    final var signature = "2958bdb4ae0e68629d2edb2e6a59011fe38dcd39581273f996a3e255d7191fba33d71ca93c8a09e70ea98657a4fa66574c6a8c604f074830b205d354c03ac99c1b";
+    final var address = "D5a561f8a0f7F37C38ea85CaE5C4f17C7744b21C";
+
+    ecrecoverService.verify(address, challenge, signature);
+    ecrecoverService.verify("0X" + address, challenge, "0X" + signature);
+  }
+
+  @Test
+  public void agreesWithWeb3jOnRandomKeys() throws Exception {
+    final var random = new Random(0);
+    var leadingZeroKeys = 0;
+    // keep going until public keys with a leading zero byte are covered
+    for (int idx = 0; idx < 500 || (leadingZeroKeys == 0 && idx < 20000); idx++) {
+      final var keyPair = keyPair(random);
+      final var message = "challenge-" + idx;
+      final var signatureData =
+          Sign.signPrefixedMessage(message.getBytes(StandardCharsets.UTF_8), keyPair);
+      final var signature = toHex(signatureData);
+      final var expected = "0x" + Keys.getAddress(Sign.signedPrefixedMessageToKey(
+          message.getBytes(StandardCharsets.UTF_8), signatureData));
+
+      ecrecoverService.verify(expected, message, signature);
+      ecrecoverService.verify(expected.toUpperCase().replace("0X", "0x"), message, signature);
+      if (Numeric.toBytesPadded(keyPair.getPublicKey(), 64)[0] == 0) {
+        leadingZeroKeys++;
+      }
+    }
+    assertTrue(leadingZeroKeys > 0);
+  }
+
+  @Test
+  public void rejectsWrongAddressAndCorruptedSignature() {
+    final var keyPair = keyPair(new Random(1));
+    final var signature = sign(keyPair, "challenge");
+    final var address = "0x" + Keys.getAddress(keyPair);
+    final var otherAddress = "0x" + Keys.getAddress(keyPair(new Random(2)));
+
+    assertThrows(BadCredentialsException.class,
+        () -> ecrecoverService.verify(otherAddress, "challenge", signature));
+    assertThrows(BadCredentialsException.class,
+        () -> ecrecoverService.verify(address, "another challenge", signature));
+    assertThrows(BadCredentialsException.class,
+        () -> ecrecoverService.verify(address, "challenge", signature.substring(0, 130)));
+    assertThrows(BadCredentialsException.class,
+        () -> ecrecoverService.verify(address, "challenge", signature.replace("0x", "0z")));
+    // v out of range
+    assertThrows(BadCredentialsException.class, () -> ecrecoverService.verify(address,
+        "challenge", signature.substring(0, 130) + "21"));
+    // s = 0
+    assertThrows(BadCredentialsException.class, () -> ecrecoverService.verify(address,
+        "challenge", signature.substring(0, 66) + "0".repeat(64) + signature.substring(130)));
+    assertThrows(BadCredentialsException.class,
+        () -> ecrecoverService.verify("0x1234", "challenge", signature));
+  }
+
+  @Test
+  public void verifyAllMatchesVerify() {
+    final var random = new Random(3);
+    final var messages = new ArrayList<SignedMessage>();
+    final var expected = new ArrayList<Boolean>();
+    for (int idx = 0; idx < 64; idx++) {
+      final var keyPair = keyPair(random);
+      final var message = "challenge-" + idx;
+      var signature = sign(keyPair, message);
+      var address = "0x" + Keys.getAddress(keyPair);
+      switch (idx % 4) {
+        case 1:
+          address = "0x" + Keys.getAddress(keyPair(random));
+          break;
+        case 2:
+          signature = signature.substring(0, 10);
+          break;
+        case 3:
+          signature = signature.substring(0, 66) + "0".repeat(64) + signature.substring(130);
+          break;
+        default:
+      }
+      messages.add(SignedMessage.of(address, message, signature));
+      expected.add(idx % 4 == 0);
+    }
+
+    assertEquals(expected, ecrecoverService.verifyAll(messages));
+    assertEquals(List.of(), ecrecoverService.verifyAll(List.of()));
+  }
+
+  private static ECKeyPair keyPair(Random random) {
+    final var privateKey = new byte[32];
+    random.nextBytes(privateKey);
+    privateKey[0] &= 0x7f;
+    privateKey[0] |= 0x01;
+    return ECKeyPair.create(privateKey);
+  }
+
+  private static String sign(ECKeyPair keyPair, String message) {
+    return toHex(Sign.signPrefixedMessage(message.getBytes(StandardCharsets.UTF_8), keyPair));
+  }
+
+  private static String toHex(SignatureData data) {
+    final var bytes = new byte[65];
+    System.arraycopy(data.getR(), 0, bytes, 0, 32);
+    System.arraycopy(data.getS(), 0, bytes, 32, 32);
+    bytes[64] = data.getV()[0];
+    return Numeric.toHexString(bytes);
+  }
+
+}
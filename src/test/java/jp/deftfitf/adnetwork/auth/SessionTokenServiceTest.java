@@ -0,0 +1,73 @@
+package jp.deftfitf.adnetwork.auth;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.Optional;
+import jp.deftfitf.adnetwork.auth.EthAuthenticationToken.EthUserPrincipal;
+import jp.deftfitf.adnetwork.config.ModuleConfig.CustomClock;
+import jp.deftfitf.adnetwork.setting.SessionSetting;
+import org.junit.jupiter.api.Test;
+
+public class SessionTokenServiceTest {
+
+  private static final String ADDRESS = "0x1111111111111111111111111111111111111111";
+  private static final long NOW = 1646112949;
+
+  private final CustomClock clock = new CustomClock();
+  private final SessionSetting setting = new SessionSetting();
+
+  @Test
+  public void tokenIsVerifiedUntilItExpires() {
+    clock.setOverride(fixedAt(NOW));
+    final var service = new SessionTokenService(clock, setting);
+    final var token = service.issue(ADDRESS.toUpperCase());
+
+    assertEquals(Optional.of(EthUserPrincipal.of(ADDRESS)), service.verify(token));
+    // nodes which don't share the secret reject it
+    assertTrue(new SessionTokenService(clock, setting).verify(token).isEmpty());
+    final var tampered = (token.charAt(0) == 'A' ? "B" : "A") + token.substring(1);
+    assertTrue(service.verify(tampered).isEmpty());
+    assertTrue(service.verify("garbage").isEmpty());
+
+    clock.setOverride(fixedAt(NOW + setting.getTtl().toSeconds() + 1));
+    assertTrue(service.verify(token).isEmpty());
+  }
+
+  @Test
+  public void revokedTokensAreBounded() {
+    clock.setOverride(fixedAt(NOW));
+    setting.setSecret("c2VjcmV0LXNoYXJlZC1ieS1hbGwtbm9kZXMtb2YtdGhlLWNsdXN0ZXI=");
+    setting.setDenyListMaxEntries(2);
+    final var service = new SessionTokenService(clock, setting);
+    final var first = service.issue(ADDRESS);
+    final var second = service.issue(ADDRESS);
+    final var third = service.issue(ADDRESS);
+    assertTrue(new SessionTokenService(clock, setting).verify(first).isPresent());
+
+    service.revoke(first);
+    service.revoke(second);
+    assertTrue(service.verify(first).isEmpty());
+    assertTrue(service.verify(second).isEmpty());
+    assertTrue(service.verify(third).isPresent());
+
+    // the deny-list drops the token expiring first to keep its bound
+    service.revoke(third);
+    assertTrue(service.verify(third).isEmpty());
+  }
+
+  @Test
+  public void statelessSessionsRequireSharedSecret() {
+    setting.setStateless(true);
+    assertThrows(IllegalStateException.class, () -> new SessionTokenService(clock, setting));
+  }
+
+  private static Clock fixedAt(long epochSecond) {
+    return Clock.fixed(Instant.ofEpochSecond(epochSecond), ZoneId.systemDefault());
+  }
+
+}
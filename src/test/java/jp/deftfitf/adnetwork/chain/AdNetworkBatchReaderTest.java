@@ -0,0 +1,113 @@
+package jp.deftfitf.adnetwork.chain;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+import jp.deftfitf.adnetwork.setting.AdNetworkContractSetting;
+import jp.deftfitf.adnetwork.setting.EthRpcSetting;
+import jp.deftfitf.adnetwork.support.StubJsonRpcServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.web3j.abi.FunctionEncoder;
+import org.web3j.abi.datatypes.Bool;
+import org.web3j.abi.datatypes.DynamicArray;
+import org.web3j.abi.datatypes.Type;
+import org.web3j.abi.datatypes.generated.Bytes32;
+import org.web3j.abi.datatypes.generated.Uint256;
+import org.web3j.abi.datatypes.generated.Uint32;
+import org.web3j.crypto.Credentials;
+import org.web3j.protocol.Web3j;
+import org.web3j.protocol.http.HttpService;
+
+public class AdNetworkBatchReaderTest {
+
+  private static final long FAILING_INVENTORY_ID = 13;
+
+  private StubJsonRpcServer server;
+  private Web3j web3j;
+  private AdNetworkBatchReader reader;
+
+  @BeforeEach
+  public void setUp() throws Exception {
+    server = new StubJsonRpcServer().on("eth_call", params -> {
+      final var data = params.get(0).get("data").asText();
+      final var inventoryId = new BigInteger(data.substring(data.length() - 64), 16).longValue();
+      if (inventoryId == FAILING_INVENTORY_ID) {
+        throw new IllegalStateException("execution reverted");
+      }
+      return "0x" + FunctionEncoder.encodeConstructor(Arrays.<Type>asList(
+          new DynamicArray<>(Uint256.class, new Uint256(inventoryId * 10)),
+          new DynamicArray<>(Uint256.class, new Uint256(inventoryId)),
+          new DynamicArray<>(Bytes32.class, new Bytes32(new byte[32])),
+          new DynamicArray<>(Bytes32.class, new Bytes32(new byte[32])),
+          new DynamicArray<>(Uint32.class, new Uint32(100)),
+          new DynamicArray<>(Uint32.class, new Uint32(200)),
+          new DynamicArray<>(Bool.class, new Bool(true))));
+    });
+    web3j = Web3j.build(new HttpService(server.url()));
+
+    final var contractSetting = new AdNetworkContractSetting();
+    contractSetting.setAddress("0x0000000000000000000000000000000000000001");
+    final var rpcSetting = new EthRpcSetting();
+    rpcSetting.setBatchSize(100);
+    reader = new AdNetworkBatchReader(
+        web3j,
+        Credentials.create("0x8f2a55949038a9610f50fb23b5883af3b4ecb3c3bb792cbcefbd1542c692be63"),
+        contractSetting,
+        rpcSetting,
+        new SimpleMeterRegistry());
+  }
+
+  @AfterEach
+  public void tearDown() {
+    web3j.shutdown();
+    server.close();
+  }
+
+  @Test
+  public void getAdsOfIsSentInBatches() throws Exception {
+    final List<Long> inventoryIds = LongStream.rangeClosed(1, 250)
+        .boxed()
+        .collect(Collectors.toList());
+
+    final var results = reader.getAdsOf(inventoryIds);
+
+    assertEquals(3, server.httpRequestCount());
+    assertEquals(250, server.callCount());
+    assertEquals(249, results.size());
+    assertFalse(results.containsKey(FAILING_INVENTORY_ID));
+
+    final var ads = results.get(42L);
+    assertEquals(List.of(BigInteger.valueOf(420)), ads.component1());
+    assertEquals(List.of(BigInteger.valueOf(42)), ads.component2());
+    assertEquals(List.of(BigInteger.valueOf(100)), ads.component5());
+    assertEquals(List.of(BigInteger.valueOf(200)), ads.component6());
+    assertEquals(List.of(true), ads.component7());
+  }
+
+  @Test
+  public void matchesBatchResponsesById() throws Exception {
+    server.reverseBatches(true);
+    final List<Long> inventoryIds = LongStream.rangeClosed(1, 150)
+        .boxed()
+        .collect(Collectors.toList());
+
+    final var results = reader.getAdsOf(inventoryIds);
+
+    assertEquals(149, results.size());
+    assertFalse(results.containsKey(FAILING_INVENTORY_ID));
+    for (final var entry : results.entrySet()) {
+      assertEquals(List.of(BigInteger.valueOf(entry.getKey())), entry.getValue().component2());
+      assertEquals(List.of(BigInteger.valueOf(entry.getKey() * 10)),
+          entry.getValue().component1());
+    }
+  }
+
+}
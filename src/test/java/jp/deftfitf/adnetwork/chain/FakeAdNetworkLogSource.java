@@ -0,0 +1,38 @@
+package jp.deftfitf.adnetwork.chain;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import jp.deftfitf.adnetwork.chain.AdNetworkEvent.Type;
+
+/**
+ * In-process log source. Every emitted event is mined into its own block.
+ */
+public class FakeAdNetworkLogSource implements AdNetworkLogSource {
+
+  private final List<AdNetworkEvent> events = new ArrayList<>();
+  private long head = 0;
+
+  public synchronized long mine() {
+    return ++head;
+  }
+
+  public synchronized long emit(Type type, long inventoryId, long adId) {
+    final var blockNumber = mine();
+    events.add(AdNetworkEvent.of(type, blockNumber, 0, inventoryId, adId));
+    return blockNumber;
+  }
+
+  @Override
+  public synchronized long latestBlockNumber() {
+    return head;
+  }
+
+  @Override
+  public synchronized List<AdNetworkEvent> fetch(long fromBlock, long toBlock) {
+    return events.stream()
+        .filter(event -> event.getBlockNumber() >= fromBlock && event.getBlockNumber() <= toBlock)
+        .collect(Collectors.toList());
+  }
+
+}
@@ -0,0 +1,178 @@
+package jp.deftfitf.adnetwork.chain;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.security.KeyPair;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import jp.deftfitf.adnetwork.chain.AdNetworkEvent.Type;
+import jp.deftfitf.adnetwork.crypto.AdFormatDecryptor;
+import jp.deftfitf.adnetwork.dto.AdFormatV1Dto;
+import jp.deftfitf.adnetwork.metrics.ReloadMetrics;
+import jp.deftfitf.adnetwork.repository.AdFormatCacheRepository;
+import jp.deftfitf.adnetwork.repository.DeliveryPrivateKeyRepository;
+import jp.deftfitf.adnetwork.repository.InventoryCacheRepository;
+import jp.deftfitf.adnetwork.repository.StorageRepository;
+import jp.deftfitf.adnetwork.selection.UniformSelectionStrategy;
+import jp.deftfitf.adnetwork.setting.EthRpcSetting;
+import jp.deftfitf.adnetwork.setting.InventoryCacheSetting;
+import jp.deftfitf.adnetwork.setting.KeyStoreSetting;
+import jp.deftfitf.adnetwork.setting.ShardSetting;
+import jp.deftfitf.adnetwork.shard.InventoryShard;
+import jp.deftfitf.adnetwork.support.AdFormatV1Encoder;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.web3j.crypto.Hash;
+import org.web3j.tuples.generated.Tuple7;
+import org.web3j.utils.Numeric;
+
+public class InventoryEventFollowerTest {
+
+  private static final long INVENTORY_ID = 1;
+  private static final long AD_ID = 10;
+  // approved on INVENTORY_ID, but its ad format names OTHER_INVENTORY_ID
+  private static final long FOREIGN_AD_ID = 11;
+  private static final long OTHER_INVENTORY_ID = 2;
+  private static final long NOW = 1646112949;
+
+  @TempDir
+  Path tempDir;
+
+  private final FakeAdNetworkLogSource logSource = new FakeAdNetworkLogSource();
+  private final AdNetworkBatchReader adNetworkBatchReader = mock(AdNetworkBatchReader.class);
+  private final StorageRepository storageRepository = mock(StorageRepository.class);
+  private final DeliveryPrivateKeyRepository deliveryPrivateKeyRepository =
+      new DeliveryPrivateKeyRepository(new KeyStoreSetting());
+  private AdFormatDecryptor adFormatDecryptor;
+  private InventoryCacheRepository inventoryCacheRepository;
+  private InventoryEventFollower follower;
+
+  @BeforeEach
+  public void setUp() throws Exception {
+    final KeyPair keyPair = AdFormatV1Encoder.generateKeyPair();
+    deliveryPrivateKeyRepository.save(INVENTORY_ID, keyPair.getPrivate());
+
+    final var adHash = storeAdFormat(keyPair, INVENTORY_ID);
+    final var foreignAdHash = storeAdFormat(keyPair, OTHER_INVENTORY_ID);
+
+    final Tuple7<List<BigInteger>, List<BigInteger>, List<byte[]>, List<byte[]>,
+        List<BigInteger>, List<BigInteger>, List<Boolean>> adsOf = new Tuple7<>(
+        List.of(BigInteger.valueOf(AD_ID), BigInteger.valueOf(FOREIGN_AD_ID)),
+        List.of(BigInteger.valueOf(INVENTORY_ID), BigInteger.valueOf(INVENTORY_ID)),
+        List.of(adHash, foreignAdHash),
+        List.of(adHash, foreignAdHash),
+        List.of(BigInteger.valueOf(NOW - 60), BigInteger.valueOf(NOW - 60)),
+        List.of(BigInteger.valueOf(NOW + 3600), BigInteger.valueOf(NOW + 3600)),
+        List.of(true, true));
+    when(adNetworkBatchReader.getAdsOfAsync(List.of(INVENTORY_ID)))
+        .thenReturn(CompletableFuture.completedFuture(Map.of(INVENTORY_ID, adsOf)));
+
+    final var clock = Clock.fixed(Instant.ofEpochSecond(NOW), ZoneId.systemDefault());
+    final var setting = new InventoryCacheSetting();
+    setting.setSnapshotEnabled(false);
+    adFormatDecryptor = new AdFormatDecryptor(setting);
+    inventoryCacheRepository = new InventoryCacheRepository(clock, adNetworkBatchReader,
+        deliveryPrivateKeyRepository, storageRepository, new AdFormatCacheRepository(setting),
+        adFormatDecryptor, new UniformSelectionStrategy(), setting, new EthRpcSetting(),
+        new ReloadMetrics(new SimpleMeterRegistry()),
+        new InventoryShard(new ShardSetting()));
+    adFormatDecryptor.init();
+    inventoryCacheRepository.init();
+
+    setting.setEventFollowEnabled(true);
+    setting.setEventCheckpointFile(tempDir.resolve("event-checkpoint").toString());
+    follower = new InventoryEventFollower(setting, logSource, inventoryCacheRepository);
+  }
+
+  @AfterEach
+  public void tearDown() {
+    inventoryCacheRepository.shutdown();
+    adFormatDecryptor.shutdown();
+  }
+
+  @Test
+  public void approvedAdIsServedAfterSinglePoll() throws Exception {
+    logSource.mine();
+    follower.poll();
+    assertTrue(inventoryCacheRepository.findBy(INVENTORY_ID).isEmpty());
+
+    final var emittedAt = System.nanoTime();
+    final var blockNumber = logSource.emit(Type.AD_APPROVED, INVENTORY_ID, AD_ID);
+    assertEquals(1, follower.poll());
+    final var served = inventoryCacheRepository.findBy(INVENTORY_ID);
+    final var blockToServe = Duration.ofNanos(System.nanoTime() - emittedAt);
+
+    assertEquals(1, served.size());
+    assertEquals(AD_ID, served.get(0).getAdId());
+    assertEquals(blockNumber, follower.getLastAppliedBlock());
+    // a single poll, not the reload interval, stands between the block and serving its ad
+    assertTrue(blockToServe.compareTo(Duration.ofSeconds(1)) < 0, "block-to-serve " + blockToServe);
+  }
+
+  @Test
+  public void rejectedAdIsRemoved() throws Exception {
+    logSource.mine();
+    follower.poll();
+    logSource.emit(Type.AD_APPROVED, INVENTORY_ID, AD_ID);
+    follower.poll();
+    assertEquals(1, inventoryCacheRepository.findBy(INVENTORY_ID).size());
+
+    logSource.emit(Type.AD_REJECTED, INVENTORY_ID, AD_ID);
+    follower.poll();
+    assertTrue(inventoryCacheRepository.findBy(INVENTORY_ID).isEmpty());
+  }
+
+  @Test
+  public void adNamingAnotherInventoryIsNotServed() throws Exception {
+    logSource.mine();
+    follower.poll();
+    logSource.emit(Type.AD_APPROVED, INVENTORY_ID, FOREIGN_AD_ID);
+    follower.poll();
+
+    assertTrue(inventoryCacheRepository.findBy(INVENTORY_ID).isEmpty());
+    assertTrue(inventoryCacheRepository.findBy(OTHER_INVENTORY_ID).isEmpty());
+  }
+
+  @Test
+  public void resumesFromCheckpoint() throws Exception {
+    logSource.mine();
+    follower.poll();
+    final var checkpoint = follower.getLastAppliedBlock();
+
+    logSource.emit(Type.AD_APPROVED, INVENTORY_ID, AD_ID);
+    final var setting = new InventoryCacheSetting();
+    setting.setEventCheckpointFile(tempDir.resolve("event-checkpoint").toString());
+    final var restarted =
+        new InventoryEventFollower(setting, logSource, inventoryCacheRepository);
+
+    assertEquals(1, restarted.poll());
+    assertEquals(checkpoint + 1, restarted.getLastAppliedBlock());
+  }
+
+  private byte[] storeAdFormat(KeyPair keyPair, long namedInventoryId) throws Exception {
+    final var adFormatV1Dto = new AdFormatV1Dto(namedInventoryId, "0x0", NOW - 60, NOW + 3600,
+        1500L, "title", "description", "http://localhost/lp", "http://localhost/image.png",
+        "nonce");
+    final var encoded = AdFormatV1Encoder.encode(keyPair.getPublic(), adFormatV1Dto);
+    final var adHash = Hash.sha3(encoded.getBytes(StandardCharsets.UTF_8));
+    when(storageRepository.loadBuffer("ad-formats/" + Numeric.toHexStringNoPrefix(adHash)))
+        .thenAnswer(invocation -> ByteBuffer.wrap(encoded.getBytes(StandardCharsets.UTF_8)));
+    return adHash;
+  }
+
+}
@@ -0,0 +1,43 @@
+package jp.deftfitf.adnetwork.chain.rpc;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.Test;
+
+public class CircuitBreakerTest {
+
+  private final AtomicLong now = new AtomicLong();
+  private final CircuitBreaker circuitBreaker =
+      new CircuitBreaker(2, Duration.ofSeconds(10), now::get);
+
+  @Test
+  public void opensAfterConsecutiveFailuresAndRecoversThroughTrial() {
+    fail();
+    assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+    fail();
+    assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+    assertFalse(circuitBreaker.tryAcquire());
+
+    now.addAndGet(Duration.ofSeconds(10).toNanos());
+    assertTrue(circuitBreaker.tryAcquire());
+    // only one trial call at a time
+    assertFalse(circuitBreaker.tryAcquire());
+    circuitBreaker.onFailure();
+    assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+
+    now.addAndGet(Duration.ofSeconds(10).toNanos());
+    assertTrue(circuitBreaker.tryAcquire());
+    circuitBreaker.onSuccess();
+    assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+  }
+
+  private void fail() {
+    assertTrue(circuitBreaker.tryAcquire());
+    circuitBreaker.onFailure();
+  }
+
+}
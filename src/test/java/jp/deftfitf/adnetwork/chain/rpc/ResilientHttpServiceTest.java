@@ -0,0 +1,112 @@
+package jp.deftfitf.adnetwork.chain.rpc;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.time.Duration;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import jp.deftfitf.adnetwork.setting.EthRpcSetting;
+import jp.deftfitf.adnetwork.support.StubJsonRpcServer;
+import okhttp3.OkHttpClient;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.web3j.protocol.Web3j;
+
+public class ResilientHttpServiceTest {
+
+  private StubJsonRpcServer server;
+  private EthRpcSetting setting;
+  private ResilientHttpService service;
+  private Web3j web3j;
+
+  @BeforeEach
+  public void setUp() throws Exception {
+    server = new StubJsonRpcServer().on("eth_blockNumber", params -> "0x10");
+    setting = new EthRpcSetting();
+    setting.setMaxAttempts(3);
+    setting.setBackoffBase(Duration.ofMillis(1));
+    setting.setBackoffMax(Duration.ofMillis(10));
+    setting.setCircuitFailureThreshold(3);
+    setting.setCircuitOpenDuration(Duration.ofMinutes(1));
+  }
+
+  @AfterEach
+  public void tearDown() {
+    if (web3j != null) {
+      web3j.shutdown();
+    }
+    server.close();
+  }
+
+  @Test
+  public void retriesTransientFailures() throws Exception {
+    start(Duration.ofSeconds(5));
+    server.failNext(2, 503);
+
+    assertEquals(BigInteger.valueOf(16), web3j.ethBlockNumber().send().getBlockNumber());
+    assertEquals(3, server.httpRequestCount());
+    assertEquals(CircuitBreaker.State.CLOSED, service.getCircuitState());
+  }
+
+  @Test
+  public void openCircuitFailsFast() throws Exception {
+    start(Duration.ofSeconds(5));
+    server.failNext(Integer.MAX_VALUE, 500);
+
+    assertThrows(IOException.class, () -> web3j.ethBlockNumber().send());
+    assertEquals(CircuitBreaker.State.OPEN, service.getCircuitState());
+    final var requests = server.httpRequestCount();
+
+    final var e = assertThrows(CompletionException.class,
+        () -> web3j.ethBlockNumber().sendAsync().join());
+    assertTrue(e.getCause() instanceof RpcUnavailableException);
+    assertEquals(requests, server.httpRequestCount());
+  }
+
+  @Test
+  public void fastFailsKeepConcurrencyLimit() throws Exception {
+    start(Duration.ofSeconds(5));
+    server.failNext(Integer.MAX_VALUE, 500);
+    assertThrows(IOException.class, () -> web3j.ethBlockNumber().send());
+    assertEquals(CircuitBreaker.State.OPEN, service.getCircuitState());
+    final var limit = service.getConcurrencyLimit();
+
+    for (int idx = 0; idx < 20; idx++) {
+      assertThrows(RpcUnavailableException.class, () -> web3j.ethBlockNumber().send());
+    }
+    assertEquals(limit, service.getConcurrencyLimit());
+  }
+
+  @Test
+  public void slowNodeIsCutOffByTimeouts() throws Exception {
+    start(Duration.ofMillis(500));
+    server.latency(Duration.ofSeconds(2));
+
+    final var startedAt = System.nanoTime();
+    assertThrows(IOException.class, () -> web3j.ethBlockNumber().send());
+    final var elapsed = Duration.ofNanos(System.nanoTime() - startedAt);
+
+    assertTrue(elapsed.compareTo(Duration.ofMillis(1500)) < 0, elapsed::toString);
+    assertTrue(service.getConcurrencyLimit() < setting.getInitialConcurrency());
+  }
+
+  private void start(Duration deadline) {
+    setting.setDeadline(deadline);
+    setting.setCallTimeout(Duration.ofMillis(200));
+    final var httpClient = new OkHttpClient.Builder()
+        .callTimeout(setting.getCallTimeout().toMillis(), TimeUnit.MILLISECONDS)
+        .retryOnConnectionFailure(false)
+        .build();
+    service = new ResilientHttpService(server.url(), httpClient, setting,
+        Executors.newFixedThreadPool(2), new SimpleMeterRegistry());
+    web3j = Web3j.build(service);
+  }
+
+}
@@ -0,0 +1,148 @@
+package jp.deftfitf.adnetwork.controller;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+import jp.deftfitf.adnetwork.image.ImageTranscoder;
+import jp.deftfitf.adnetwork.metrics.ImageMetrics;
+import jp.deftfitf.adnetwork.repository.StaticObjectRepository;
+import jp.deftfitf.adnetwork.repository.StorageRepository;
+import jp.deftfitf.adnetwork.setting.ImageSetting;
+import jp.deftfitf.adnetwork.setting.StorageSetting;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+public class StorageControllerTest {
+
+  private static final byte[] AD_FORMAT =
+      "AQ==".repeat(256).getBytes(StandardCharsets.UTF_8);
+
+  @TempDir
+  Path tempDir;
+
+  private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+  private final ImageMetrics imageMetrics = new ImageMetrics(meterRegistry);
+  private StorageRepository storageRepository;
+  private StorageController controller;
+  private String hash;
+
+  @BeforeEach
+  public void setUp() throws Exception {
+    final var setting = new StorageSetting();
+    setting.setBaseDirectory(tempDir.toString());
+    storageRepository = new StorageRepository(setting);
+    storageRepository.init();
+    hash = storageRepository.ingest("ad-formats", "", new ByteArrayInputStream(AD_FORMAT), true)
+        .getHash();
+    controller = new StorageController(storageRepository,
+        new StaticObjectRepository(storageRepository, setting),
+        new ImageTranscoder(storageRepository, new ImageSetting(), imageMetrics), imageMetrics,
+        setting);
+  }
+
+  @Test
+  public void servesImmutableObjectWithValidators() throws Exception {
+    final var response = get(new MockHttpServletRequest());
+
+    assertEquals(200, response.getStatus());
+    assertArrayEquals(AD_FORMAT, response.getContentAsByteArray());
+    assertEquals(StorageController.CACHE_CONTROL, response.getHeader("Cache-Control"));
+    assertEquals("\"" + hash + "\"", response.getHeader("ETag"));
+    assertEquals("Accept-Encoding", response.getHeader("Vary"));
+
+    final var conditional = new MockHttpServletRequest();
+    conditional.addHeader("If-None-Match", "\"" + hash + "\"");
+    final var notModified = get(conditional);
+    assertEquals(304, notModified.getStatus());
+    assertEquals(0, notModified.getContentAsByteArray().length);
+  }
+
+  @Test
+  public void servesPrecompressedVariant() throws Exception {
+    final var request = new MockHttpServletRequest();
+    request.addHeader("Accept-Encoding", "br;q=0.9, gzip");
+    final var response = get(request);
+
+    assertEquals("gzip", response.getHeader("Content-Encoding"));
+    assertEquals("\"" + hash + ".gz\"", response.getHeader("ETag"));
+    assertTrue(response.getContentAsByteArray().length < AD_FORMAT.length);
+    try (final var gzip = new GZIPInputStream(
+        new ByteArrayInputStream(response.getContentAsByteArray()))) {
+      assertArrayEquals(AD_FORMAT, gzip.readAllBytes());
+    }
+
+    final var refused = new MockHttpServletRequest();
+    refused.addHeader("Accept-Encoding", "gzip;q=0");
+    assertNull(get(refused).getHeader("Content-Encoding"));
+  }
+
+  @Test
+  public void servesSingleRangeOfIdentity() throws Exception {
+    final var request = new MockHttpServletRequest();
+    request.addHeader("Range", "bytes=4-11");
+    request.addHeader("Accept-Encoding", "gzip");
+    final var response = get(request);
+
+    assertEquals(206, response.getStatus());
+    assertEquals("bytes 4-11/" + AD_FORMAT.length, response.getHeader("Content-Range"));
+    assertNull(response.getHeader("Content-Encoding"));
+    assertArrayEquals(Arrays.copyOfRange(AD_FORMAT, 4, 12), response.getContentAsByteArray());
+
+    final var unsatisfiable = new MockHttpServletRequest();
+    unsatisfiable.addHeader("Range", "bytes=" + AD_FORMAT.length + "-");
+    assertEquals(416, get(unsatisfiable).getStatus());
+
+    final var stale = new MockHttpServletRequest();
+    stale.addHeader("Range", "bytes=4-11");
+    stale.addHeader("If-Range", "\"other\"");
+    assertEquals(200, get(stale).getStatus());
+  }
+
+  @Test
+  public void servesSizeVariantOfImageOnceMade() throws Exception {
+    storageRepository.save("images/0x0-ad.png", new ByteArrayInputStream(new byte[1000]));
+    final var request = new MockHttpServletRequest();
+    request.setParameter("w", "300");
+    final var pending = new MockHttpServletResponse();
+    controller.serve("images", "0x0-ad.png", 300, request, pending);
+    assertEquals(1000, pending.getContentAsByteArray().length);
+    assertEquals(StorageController.CACHE_CONTROL_PENDING_VARIANT,
+        pending.getHeader("Cache-Control"));
+
+    storageRepository.save("images/0x0-ad-w320.png", new ByteArrayInputStream(new byte[100]));
+    final var resized = new MockHttpServletResponse();
+    controller.serve("images", "0x0-ad.png", 300, request, resized);
+    assertEquals(100, resized.getContentAsByteArray().length);
+    assertEquals(StorageController.CACHE_CONTROL, resized.getHeader("Cache-Control"));
+    assertEquals(100, meterRegistry.get("adnetwork.image.response")
+        .tag("variant", "resized").summary().totalAmount());
+  }
+
+  @Test
+  public void answersNotFound() throws Exception {
+    final var response = new MockHttpServletResponse();
+    controller.serve("images", "missing.png", null, new MockHttpServletRequest(), response);
+    assertEquals(404, response.getStatus());
+    assertFalse(StorageController.accepts("identity", "gzip"));
+  }
+
+  private MockHttpServletResponse get(MockHttpServletRequest request) throws Exception {
+    request.setMethod("GET");
+    final var response = new MockHttpServletResponse();
+    controller.serve("ad-formats", hash, null, request, response);
+    return response;
+  }
+
+}
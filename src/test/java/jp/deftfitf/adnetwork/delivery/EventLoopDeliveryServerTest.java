@@ -0,0 +1,88 @@
+package jp.deftfitf.adnetwork.delivery;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpRequest.BodyPublishers;
+import java.net.http.HttpResponse;
+import java.net.http.HttpResponse.BodyHandlers;
+import java.util.Optional;
+import jp.deftfitf.adnetwork.dto.AdFormatV1Dto;
+import jp.deftfitf.adnetwork.dto.DeliverableAd;
+import jp.deftfitf.adnetwork.metrics.DeliveryMetrics;
+import jp.deftfitf.adnetwork.repository.InventoryCacheRepository;
+import jp.deftfitf.adnetwork.setting.DeliverySetting;
+import jp.deftfitf.adnetwork.setting.MetricsSetting;
+import jp.deftfitf.adnetwork.setting.ShardSetting;
+import jp.deftfitf.adnetwork.shard.DeliveryForwarder;
+import jp.deftfitf.adnetwork.shard.InventoryShard;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class EventLoopDeliveryServerTest {
+
+  private final InventoryCacheRepository inventoryCacheRepository =
+      mock(InventoryCacheRepository.class);
+  private final HttpClient httpClient = HttpClient.newHttpClient();
+  private EventLoopDeliveryServer server;
+  private URI deliveryUri;
+
+  @BeforeEach
+  public void setUp() throws Exception {
+    final var setting = new DeliverySetting();
+    try (final var socket = new ServerSocket(0)) {
+      setting.setEventLoopPort(socket.getLocalPort());
+    }
+    final var deliveryMetrics =
+        new DeliveryMetrics(new SimpleMeterRegistry(), new MetricsSetting());
+    final var shardSetting = new ShardSetting();
+    server = new EventLoopDeliveryServer(inventoryCacheRepository, setting, deliveryMetrics,
+        new InventoryShard(shardSetting), new DeliveryForwarder(shardSetting, deliveryMetrics),
+        shardSetting);
+    server.start();
+    deliveryUri = URI.create("http://localhost:" + setting.getEventLoopPort() + "/delivery");
+  }
+
+  @AfterEach
+  public void tearDown() {
+    server.stop();
+  }
+
+  @Test
+  public void deliversCachedResponseBody() throws Exception {
+    final var ad = DeliverableAd.of(1, 10, new AdFormatV1Dto(1L, "0x0", 0L, 0L, 1500L,
+        "title", "description", "http://localhost/lp", "http://localhost/image.png", "nonce"));
+    when(inventoryCacheRepository.select(1)).thenReturn(Optional.of(ad));
+
+    final var found = post("{\"inventoryId\":1}");
+    final var notFound = post("{\"inventoryId\":2}");
+
+    assertEquals(200, found.statusCode());
+    assertArrayEquals(ad.getResponseBody(), found.body());
+    assertEquals("*", found.headers().firstValue("Access-Control-Allow-Origin").orElse(null));
+    assertArrayEquals(DeliverableAd.NOT_FOUND_RESPONSE_BODY, notFound.body());
+  }
+
+  @Test
+  public void rejectsMalformedRequest() throws Exception {
+    assertEquals(400, post("{").statusCode());
+    assertEquals(400, post("{}").statusCode());
+  }
+
+  private HttpResponse<byte[]> post(String body) throws Exception {
+    return httpClient.send(HttpRequest.newBuilder(deliveryUri)
+            .header("Content-Type", "application/json")
+            .POST(BodyPublishers.ofString(body))
+            .build(),
+        BodyHandlers.ofByteArray());
+  }
+
+}
@@ -0,0 +1,28 @@
+package jp.deftfitf.adnetwork.dto;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.nio.charset.StandardCharsets;
+import jp.deftfitf.adnetwork.interfaces.AdResponse;
+import org.junit.jupiter.api.Test;
+
+public class DeliverableAdTest {
+
+  private final ObjectMapper objectMapper = new ObjectMapper();
+
+  @Test
+  public void responseBodyIsSameAsSerializedAdResponse() throws Exception {
+    final var adFormatV1Dto = new AdFormatV1Dto(1L, "0x0", 1646036100L, 1646727300L, 1500L,
+        "title", "description", "http://localhost/lp", "http://localhost/image.png", "nonce");
+    final var ad = DeliverableAd.of(1, 10, adFormatV1Dto);
+
+    assertEquals(
+        objectMapper.writeValueAsString(AdResponse.of(true, 10L, adFormatV1Dto)),
+        new String(ad.getResponseBody(), StandardCharsets.UTF_8));
+    assertEquals(
+        objectMapper.writeValueAsString(AdResponse.of(false, null, null)),
+        new String(DeliverableAd.NOT_FOUND_RESPONSE_BODY, StandardCharsets.UTF_8));
+  }
+
+}
@@ -0,0 +1,89 @@
+package jp.deftfitf.adnetwork.image;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+import javax.imageio.ImageIO;
+import jp.deftfitf.adnetwork.metrics.ImageMetrics;
+import jp.deftfitf.adnetwork.repository.StorageRepository;
+import jp.deftfitf.adnetwork.setting.ImageSetting;
+import jp.deftfitf.adnetwork.setting.StorageSetting;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class ImageTranscoderTest {
+
+  @TempDir
+  Path tempDir;
+
+  private StorageRepository storageRepository;
+  private ImageTranscoder imageTranscoder;
+
+  @BeforeEach
+  public void setUp() throws Exception {
+    final var storageSetting = new StorageSetting();
+    storageSetting.setBaseDirectory(tempDir.toString());
+    storageRepository = new StorageRepository(storageSetting);
+    storageRepository.init();
+    final var setting = new ImageSetting();
+    setting.setVariantWidths(List.of(320, 640, 1280));
+    imageTranscoder = new ImageTranscoder(storageRepository, setting,
+        new ImageMetrics(new SimpleMeterRegistry()));
+  }
+
+  @Test
+  public void makesSmallerVariantsOfEveryWidth() throws Exception {
+    final var original = photo(1000, 600);
+    storageRepository.save("images/0x0-ad.jpeg", new ByteArrayInputStream(original));
+
+    imageTranscoder.transcode("images/0x0-ad.jpeg");
+
+    assertEquals(320, widthOf("images/0x0-ad-w320.jpg"));
+    assertEquals(640, widthOf("images/0x0-ad-w640.jpg"));
+    // never scaled up
+    assertEquals(1000, widthOf("images/0x0-ad-w1280.jpg"));
+    final var variant = storageRepository.loadBytes("images/0x0-ad-w320.jpg");
+    // bytes per impression of a 300px slot
+    assertTrue(variant.length * 4 < original.length,
+        () -> original.length + " -> " + variant.length + " bytes");
+  }
+
+  @Test
+  public void choosesNarrowestVariantWhichFits() {
+    assertEquals("images/a-w320.jpg", imageTranscoder.variantOf("images/a.jpeg", 300));
+    assertEquals("images/a-w640.jpg", imageTranscoder.variantOf("images/a.jpeg", 321));
+    assertEquals("images/a-w1280.png", imageTranscoder.variantOf("images/a.gif", 4000));
+  }
+
+  private int widthOf(String fileName) throws Exception {
+    return ImageIO.read(new ByteArrayInputStream(storageRepository.loadBytes(fileName)))
+        .getWidth();
+  }
+
+  /**
+   * Gradients with noise, which compress about as well as a photo.
+   */
+  private static byte[] photo(int width, int height) throws Exception {
+    final var random = new Random(0);
+    final var image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+    for (int y = 0; y < height; y++) {
+      for (int x = 0; x < width; x++) {
+        final var noise = random.nextInt(16);
+        image.setRGB(x, y, (Math.min(255, x * 255 / width + noise) << 16)
+            | ((y * 255 / height) << 8) | (128 + noise));
+      }
+    }
+    final var bytes = new ByteArrayOutputStream();
+    ImageIO.write(image, "jpeg", bytes);
+    return bytes.toByteArray();
+  }
+
+}
@@ -0,0 +1,98 @@
+package jp.deftfitf.adnetwork.metrics;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.Set;
+import java.util.stream.Collectors;
+import jp.deftfitf.adnetwork.setting.MetricsSetting;
+import org.junit.jupiter.api.Test;
+
+public class DeliveryMetricsTest {
+
+  private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+  @Test
+  public void tracksFirstInventoriesAndCountsOthersTogether() {
+    final var setting = new MetricsSetting();
+    setting.setDeliveryTrackedInventories(2);
+    final var metrics = new DeliveryMetrics(meterRegistry, setting);
+
+    metrics.record(10, true, 1000);
+    metrics.record(20, true, 1000);
+    metrics.record(20, false, 1000);
+    metrics.record(10, true, 1000);
+    for (long inventoryId = 30; inventoryId < 1030; inventoryId++) {
+      metrics.record(inventoryId, true, 1000);
+    }
+    metrics.countSlot(20, true);
+    metrics.countSlot(30, false);
+
+    final var inventories = meterRegistry.find("adnetwork.delivery.inventory.latency").timers()
+        .stream()
+        .map(timer -> timer.getId().getTag("inventory"))
+        .collect(Collectors.toSet());
+    assertEquals(Set.of("10", "20", "other"), inventories);
+    assertEquals(2, hits("10"));
+    assertEquals(2, hits("20"));
+    assertEquals(1000, hits("other"));
+    assertEquals(1, misses("other"));
+    assertEquals(1, misses("20"));
+    assertEquals(1004, meterRegistry.get("adnetwork.delivery.requests")
+        .tag("result", "hit").counter().count());
+    assertEquals(1004, meterRegistry.get("adnetwork.delivery.latency").timer().count());
+  }
+
+  @Test
+  public void tracksManyInventories() {
+    final var setting = new MetricsSetting();
+    setting.setDeliveryTrackedInventories(500);
+    final var metrics = new DeliveryMetrics(meterRegistry, setting);
+
+    // ids colliding in the table are probed to their own meters
+    for (long inventoryId = 0; inventoryId < 500; inventoryId++) {
+      metrics.record(inventoryId * 1024, true, 1000);
+      metrics.record(inventoryId * 1024, true, 1000);
+    }
+
+    for (long inventoryId = 0; inventoryId < 500; inventoryId++) {
+      assertEquals(2, hits(Long.toString(inventoryId * 1024)));
+    }
+    assertEquals(0, hits("other"));
+  }
+
+  @Test
+  public void missesOfUnknownInventoriesDontTakeTrackedSlots() {
+    final var setting = new MetricsSetting();
+    setting.setDeliveryTrackedInventories(2);
+    final var metrics = new DeliveryMetrics(meterRegistry, setting);
+
+    // a scan of ids which aren't in the cache
+    for (long inventoryId = 1000; inventoryId < 2000; inventoryId++) {
+      metrics.record(inventoryId, false, 1000);
+    }
+    metrics.record(10, true, 1000);
+    metrics.record(20, true, 1000);
+    metrics.record(20, false, 1000);
+
+    assertEquals(1000, misses("other"));
+    assertEquals(1, hits("10"));
+    assertEquals(1, hits("20"));
+    assertEquals(1, misses("20"));
+  }
+
+  private double misses(String inventory) {
+    return meterRegistry.get("adnetwork.delivery.inventory.requests")
+        .tags("inventory", inventory, "result", "miss")
+        .counter()
+        .count();
+  }
+
+  private double hits(String inventory) {
+    return meterRegistry.get("adnetwork.delivery.inventory.requests")
+        .tags("inventory", inventory, "result", "hit")
+        .counter()
+        .count();
+  }
+
+}
@@ -0,0 +1,242 @@
+package jp.deftfitf.adnetwork.replication;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.netty.handler.codec.http.QueryStringDecoder;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpRequest.BodyPublishers;
+import java.net.http.HttpResponse.BodyHandlers;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import jp.deftfitf.adnetwork.chain.AdNetworkBatchReader;
+import jp.deftfitf.adnetwork.controller.ReplicationController;
+import jp.deftfitf.adnetwork.crypto.AdFormatDecryptor;
+import jp.deftfitf.adnetwork.delivery.EventLoopDeliveryServer;
+import jp.deftfitf.adnetwork.dto.DeliverableAd;
+import jp.deftfitf.adnetwork.metrics.DeliveryMetrics;
+import jp.deftfitf.adnetwork.metrics.ReloadMetrics;
+import jp.deftfitf.adnetwork.repository.AdFormatCacheRepository;
+import jp.deftfitf.adnetwork.repository.InventoryCacheRepository;
+import jp.deftfitf.adnetwork.repository.StorageRepository;
+import jp.deftfitf.adnetwork.selection.UniformSelectionStrategy;
+import jp.deftfitf.adnetwork.setting.AdNetworkContractSetting;
+import jp.deftfitf.adnetwork.setting.DeliverySetting;
+import jp.deftfitf.adnetwork.setting.EthRpcSetting;
+import jp.deftfitf.adnetwork.setting.InventoryCacheSetting;
+import jp.deftfitf.adnetwork.setting.InventoryCacheSetting.Role;
+import jp.deftfitf.adnetwork.setting.MetricsSetting;
+import jp.deftfitf.adnetwork.setting.ShardSetting;
+import jp.deftfitf.adnetwork.setting.StorageSetting;
+import jp.deftfitf.adnetwork.shard.DeliveryForwarder;
+import jp.deftfitf.adnetwork.shard.InventoryShard;
+import jp.deftfitf.adnetwork.support.AdNetworkSimulator;
+import jp.deftfitf.adnetwork.support.SyntheticAdNetwork;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.web3j.crypto.Credentials;
+import org.web3j.protocol.Web3j;
+import org.web3j.protocol.http.HttpService;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+
+/**
+ * Runs a loader reading a simulated contract, and replicas which pull its cache and serve
+ * /delivery from event-loop servers on their own ports. Replicas are given neither RPC clients nor
+ * delivery keys.
+ */
+public class DeliveryCacheReplicationTest {
+
+  private static final long NOW = 1646112949;
+  private static final int INVENTORIES = 8;
+  private static final int REPLICAS = 3;
+
+  @TempDir
+  Path tempDir;
+
+  private final Clock clock = Clock.fixed(Instant.ofEpochSecond(NOW), ZoneId.systemDefault());
+  private final Credentials credentials =
+      Credentials.create("0x8f2a55949038a9610f50fb23b5883af3b4ecb3c3bb792cbcefbd1542c692be63");
+  private final HttpClient httpClient = HttpClient.newHttpClient();
+  private final List<InventoryCacheRepository> loaders = new ArrayList<>();
+  private final List<InventoryCacheRepository> replicaRepositories = new ArrayList<>();
+  private final List<DeliveryCacheReplica> replicas = new ArrayList<>();
+  private final List<EventLoopDeliveryServer> servers = new ArrayList<>();
+  private final List<Integer> ports = new ArrayList<>();
+  private SyntheticAdNetwork network;
+  private AdNetworkSimulator simulator;
+  private Web3j web3j;
+  private StorageRepository storageRepository;
+  private AdFormatDecryptor adFormatDecryptor;
+  private volatile ReplicationController loaderController;
+  private DisposableServer loaderServer;
+
+  @BeforeEach
+  public void setUp() throws Exception {
+    network = SyntheticAdNetwork.generate(INVENTORIES, 3, NOW, 0);
+    simulator = new AdNetworkSimulator();
+    network.deploy(simulator);
+    web3j = Web3j.build(new HttpService(simulator.url()));
+
+    final var storageSetting = new StorageSetting();
+    storageSetting.setBaseDirectory(tempDir.toString());
+    storageRepository = new StorageRepository(storageSetting);
+    storageRepository.init();
+    network.store(storageRepository);
+
+    final var loaderSetting = new InventoryCacheSetting();
+    loaderSetting.setSnapshotEnabled(false);
+    loaderSetting.setRole(Role.LOADER);
+    adFormatDecryptor = new AdFormatDecryptor(loaderSetting);
+    adFormatDecryptor.init();
+    loaderController = new ReplicationController(startLoader(loaderSetting), loaderSetting);
+    // stands in for the servlet container of the loader
+    loaderServer = HttpServer.create()
+        .port(0)
+        .route(routes -> routes.get("/replication/delta", (request, response) -> {
+          final var parameters = new QueryStringDecoder(request.uri()).parameters();
+          final var answer = loaderController.delta(
+              Long.parseLong(parameters.get("epoch").get(0)),
+              Long.parseLong(parameters.get("version").get(0)));
+          return response.status(answer.getStatusCodeValue())
+              .sendByteArray(Mono.justOrEmpty(answer.getBody()));
+        }))
+        .bindNow();
+
+    for (int idx = 0; idx < REPLICAS; idx++) {
+      final var setting = new InventoryCacheSetting();
+      setting.setSnapshotEnabled(false);
+      setting.setRole(Role.REPLICA);
+      setting.setLoaderUrl("http://localhost:" + loaderServer.port());
+      final var reloadMetrics = new ReloadMetrics(new SimpleMeterRegistry());
+      final var shardSetting = new ShardSetting();
+      final var repository = new InventoryCacheRepository(clock, null, null, null, null, null,
+          new UniformSelectionStrategy(), setting, new EthRpcSetting(), reloadMetrics,
+          new InventoryShard(shardSetting));
+      repository.init();
+      replicaRepositories.add(repository);
+      final var replica = new DeliveryCacheReplica(setting, repository, reloadMetrics);
+      replica.init();
+      replicas.add(replica);
+
+      final var deliverySetting = new DeliverySetting();
+      try (final var socket = new ServerSocket(0)) {
+        deliverySetting.setEventLoopPort(socket.getLocalPort());
+      }
+      ports.add(deliverySetting.getEventLoopPort());
+      final var deliveryMetrics =
+          new DeliveryMetrics(new SimpleMeterRegistry(), new MetricsSetting());
+      final var server = new EventLoopDeliveryServer(repository, deliverySetting, deliveryMetrics,
+          new InventoryShard(shardSetting), new DeliveryForwarder(shardSetting, deliveryMetrics),
+          shardSetting);
+      server.start();
+      servers.add(server);
+    }
+  }
+
+  @AfterEach
+  public void tearDown() {
+    servers.forEach(EventLoopDeliveryServer::stop);
+    replicas.forEach(DeliveryCacheReplica::shutdown);
+    replicaRepositories.forEach(InventoryCacheRepository::shutdown);
+    loaderServer.disposeNow();
+    loaders.forEach(InventoryCacheRepository::shutdown);
+    adFormatDecryptor.shutdown();
+    storageRepository.shutdown();
+    web3j.shutdown();
+    simulator.close();
+  }
+
+  @Test
+  public void replicasServeAdsOfLoader() throws Exception {
+    final var loader = loaders.get(0);
+    for (int idx = 0; idx < REPLICAS; idx++) {
+      assertEquals(INVENTORIES, replicas.get(idx).pull());
+      final var repository = replicaRepositories.get(idx);
+      assertEquals(loader.stats(), repository.stats());
+      for (long inventoryId = 1; inventoryId <= INVENTORIES; inventoryId++) {
+        assertEquals(adIdsOf(loader.findBy(inventoryId)), adIdsOf(repository.findBy(inventoryId)));
+
+        final var request = HttpRequest.newBuilder(
+                URI.create("http://localhost:" + ports.get(idx) + "/delivery"))
+            .header("Content-Type", "application/json")
+            .POST(BodyPublishers.ofString("{\"inventoryId\":" + inventoryId + "}"))
+            .build();
+        final var response = httpClient.send(request, BodyHandlers.ofByteArray());
+        assertEquals(200, response.statusCode());
+        assertFalse(Arrays.equals(DeliverableAd.NOT_FOUND_RESPONSE_BODY, response.body()));
+      }
+    }
+  }
+
+  @Test
+  public void replicasPullOnlyChangedInventories() throws Exception {
+    final var replica = replicas.get(0);
+    final var repository = replicaRepositories.get(0);
+    replica.pull();
+    assertEquals(0, replica.pull());
+
+    final var removedAdId = loaders.get(0).findBy(2).get(0).getAdId();
+    loaders.get(0).applyRemoved(2, removedAdId);
+    assertEquals(1, replica.pull());
+    assertEquals(adIdsOf(loaders.get(0).findBy(2)), adIdsOf(repository.findBy(2)));
+    assertFalse(adIdsOf(repository.findBy(2)).contains(removedAdId));
+
+    for (final var ad : loaders.get(0).findBy(2)) {
+      loaders.get(0).applyRemoved(2, ad.getAdId());
+    }
+    assertEquals(1, replica.pull());
+    assertTrue(repository.findBy(2).isEmpty());
+    assertEquals(INVENTORIES - 1, repository.stats().getInventories());
+  }
+
+  @Test
+  public void replicasPullEveryInventoryFromRestartedLoader() throws Exception {
+    final var replica = replicas.get(0);
+    replica.pull();
+
+    final var setting = new InventoryCacheSetting();
+    setting.setSnapshotEnabled(false);
+    setting.setRole(Role.LOADER);
+    loaderController = new ReplicationController(startLoader(setting), setting);
+    assertEquals(INVENTORIES, replica.pull());
+    assertEquals(0, replica.pull());
+    assertEquals(loaders.get(1).stats(), replicaRepositories.get(0).stats());
+  }
+
+  private InventoryCacheRepository startLoader(InventoryCacheSetting setting) {
+    final var contractSetting = new AdNetworkContractSetting();
+    contractSetting.setAddress(AdNetworkSimulator.CONTRACT_ADDRESS);
+    final var loader = new InventoryCacheRepository(clock,
+        new AdNetworkBatchReader(web3j, credentials, contractSetting, new EthRpcSetting(),
+            new SimpleMeterRegistry()),
+        network.getDeliveryPrivateKeyRepository(), storageRepository,
+        new AdFormatCacheRepository(setting), adFormatDecryptor,
+        new UniformSelectionStrategy(), setting, new EthRpcSetting(),
+        new ReloadMetrics(new SimpleMeterRegistry()),
+        new InventoryShard(new ShardSetting()));
+    loader.init();
+    loader.reload();
+    loaders.add(loader);
+    return loader;
+  }
+
+  private static List<Long> adIdsOf(List<DeliverableAd> ads) {
+    return ads.stream().map(DeliverableAd::getAdId).sorted().collect(Collectors.toList());
+  }
+
+}
@@ -0,0 +1,60 @@
+package jp.deftfitf.adnetwork.repository;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Collectors;
+import jp.deftfitf.adnetwork.dto.AdFormatV1Dto;
+import jp.deftfitf.adnetwork.setting.InventoryCacheSetting;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class AdFormatCacheRepositoryTest {
+
+  private static final long INVENTORY_ID = 1;
+  private static final long NOW = 1646112949;
+  private static final byte[] AD_HASH = new byte[32];
+
+  @TempDir
+  Path tempDir;
+
+  private final InventoryCacheSetting setting = new InventoryCacheSetting();
+
+  @Test
+  public void adFormatIsFoundOnlyForInventoryWhichDecryptedIt() {
+    final var repository = new AdFormatCacheRepository(setting);
+    final var adFormatV1Dto = adFormat(NOW - 60);
+    repository.save(INVENTORY_ID, AD_HASH, adFormatV1Dto, true);
+
+    assertEquals(adFormatV1Dto, repository.find(INVENTORY_ID, AD_HASH).orElseThrow());
+    // an ad of another inventory reusing the public hash
+    assertTrue(repository.find(2, AD_HASH).isEmpty());
+  }
+
+  @Test
+  public void onlyStartedAdsArePersisted() throws Exception {
+    setting.setAdFormatCachePersistenceEnabled(true);
+    setting.setAdFormatCacheDirectory(tempDir.toString());
+    final var repository = new AdFormatCacheRepository(setting);
+    repository.init();
+    final var upcomingHash = new byte[32];
+    upcomingHash[0] = 1;
+    repository.save(INVENTORY_ID, AD_HASH, adFormat(NOW - 60), true);
+    repository.save(INVENTORY_ID, upcomingHash, adFormat(NOW + 60), false);
+
+    try (final var files = Files.list(tempDir)) {
+      assertEquals(1, files.collect(Collectors.toList()).size());
+    }
+    final var restarted = new AdFormatCacheRepository(setting);
+    assertTrue(restarted.find(INVENTORY_ID, AD_HASH).isPresent());
+    assertTrue(restarted.find(INVENTORY_ID, upcomingHash).isEmpty());
+  }
+
+  private static AdFormatV1Dto adFormat(long startTime) {
+    return new AdFormatV1Dto(INVENTORY_ID, "0x0", startTime, NOW + 3600, 1500L, "title",
+        "description", "http://localhost/lp", "http://localhost/image.png", "nonce");
+  }
+
+}
@@ -0,0 +1,103 @@
+package jp.deftfitf.adnetwork.repository;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import jp.deftfitf.adnetwork.config.ModuleConfig.CustomClock;
+import jp.deftfitf.adnetwork.setting.ChallengeSetting;
+import jp.deftfitf.adnetwork.setting.ChallengeSetting.Mode;
+import org.junit.jupiter.api.Test;
+import org.web3j.utils.Numeric;
+
+public class ChallengeRepositoryTest {
+
+  private static final String ADDRESS = "0x1111111111111111111111111111111111111111";
+  private static final long NOW = 1646112949;
+
+  private final CustomClock clock = new CustomClock();
+  private final ChallengeSetting setting = new ChallengeSetting();
+
+  @Test
+  public void storedChallengeIsTakenOnceWithinTtl() {
+    clock.setOverride(fixedAt(NOW));
+    final var repository = new ChallengeRepository(clock, setting);
+
+    final var challenge = repository.attempt(ADDRESS);
+    assertEquals(Optional.of(challenge), repository.getAttempt(ADDRESS.toUpperCase(), null));
+    assertEquals(Optional.empty(), repository.getAttempt(ADDRESS, null));
+
+    // the 0x prefix is optional, as in signature verification
+    final var unprefixed = repository.attempt(ADDRESS.substring(2));
+    assertEquals(Optional.of(unprefixed),
+        repository.getAttempt("0X" + ADDRESS.substring(2).toUpperCase(), null));
+
+    final var expiring = repository.attempt(ADDRESS);
+    clock.setOverride(fixedAt(NOW + setting.getTtl().toSeconds() + 1));
+    assertEquals(Optional.empty(), repository.getAttempt(ADDRESS, expiring));
+  }
+
+  @Test
+  public void statelessChallengeIsBoundToAddressAndExpires() {
+    clock.setOverride(fixedAt(NOW));
+    setting.setMode(Mode.STATELESS);
+    final var repository = new ChallengeRepository(clock, setting);
+
+    final var challenge = repository.attempt(ADDRESS);
+    assertEquals(Optional.of(challenge), repository.getAttempt(ADDRESS, challenge));
+    assertEquals(Optional.empty(),
+        repository.getAttempt("0x2222222222222222222222222222222222222222", challenge));
+    assertEquals(Optional.empty(), repository.getAttempt(ADDRESS, challenge.replace("v1." + NOW,
+        "v1." + (NOW - 1))));
+    assertEquals(0, repository.size());
+
+    clock.setOverride(fixedAt(NOW + setting.getTtl().toSeconds() + 1));
+    assertEquals(Optional.empty(), repository.getAttempt(ADDRESS, challenge));
+  }
+
+  @Test
+  public void storedChallengesStayBoundedUnderFlood() throws Exception {
+    setting.setMaxEntries(1_000);
+    final var repository = new ChallengeRepository(clock, setting);
+    final var threads = 8;
+    final var challengesPerThread = 5_000;
+
+    final var executor = Executors.newFixedThreadPool(threads);
+    final var results = new ArrayList<Future<?>>();
+    for (int thread = 0; thread < threads; thread++) {
+      results.add(executor.submit(() -> {
+        final var random = ThreadLocalRandom.current();
+        final var address = new byte[20];
+        for (int idx = 0; idx < challengesPerThread; idx++) {
+          random.nextBytes(address);
+          final var hex = Numeric.toHexString(address);
+          repository.attempt(hex);
+          if (idx % 16 == 0) {
+            repository.getAttempt(hex, null);
+          }
+        }
+      }));
+    }
+    for (final var result : results) {
+      result.get();
+    }
+    executor.shutdown();
+    executor.awaitTermination(10, TimeUnit.SECONDS);
+
+    assertTrue(repository.size() <= setting.getMaxEntries(),
+        () -> "stored challenges: " + repository.size());
+  }
+
+  private static Clock fixedAt(long epochSecond) {
+    return Clock.fixed(Instant.ofEpochSecond(epochSecond), ZoneId.systemDefault());
+  }
+
+}
@@ -0,0 +1,126 @@
+package jp.deftfitf.adnetwork.repository;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+import jp.deftfitf.adnetwork.chain.AdNetworkBatchReader;
+import jp.deftfitf.adnetwork.crypto.AdFormatDecryptor;
+import jp.deftfitf.adnetwork.dto.AdFormatV1Dto;
+import jp.deftfitf.adnetwork.dto.DeliverableAd;
+import jp.deftfitf.adnetwork.metrics.ReloadMetrics;
+import jp.deftfitf.adnetwork.selection.UniformSelectionStrategy;
+import jp.deftfitf.adnetwork.setting.EthRpcSetting;
+import jp.deftfitf.adnetwork.setting.InventoryCacheSetting;
+import jp.deftfitf.adnetwork.setting.KeyStoreSetting;
+import jp.deftfitf.adnetwork.setting.ShardSetting;
+import jp.deftfitf.adnetwork.shard.InventoryShard;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class DeliveryCacheSnapshotTest {
+
+  private static final long INVENTORY_ID = 1;
+  private static final long NOW = 1646112949;
+  private static final int AD_COUNT = 10_000;
+
+  @TempDir
+  Path tempDir;
+
+  @Test
+  public void roundTrip() throws Exception {
+    final var ads = List.of(ad(10, INVENTORY_ID), ad(11, 2));
+    final var path = tempDir.resolve("snapshot");
+    DeliveryCacheSnapshot.of(1234, NOW, ads).write(path);
+
+    final var restored = DeliveryCacheSnapshot.read(path).orElseThrow();
+
+    assertEquals(1234, restored.getBlockNumber());
+    assertEquals(NOW, restored.getCreatedAt());
+    assertEquals(2, restored.getAds().size());
+    for (int idx = 0; idx < ads.size(); idx++) {
+      final var expected = ads.get(idx);
+      final var actual = restored.getAds().get(idx);
+      assertEquals(expected.getInventoryId(), actual.getInventoryId());
+      assertEquals(expected.getAdId(), actual.getAdId());
+      assertEquals(expected.getEndTime(), actual.getEndTime());
+      assertEquals(expected.getAdFormatV1Dto(), actual.getAdFormatV1Dto());
+      assertArrayEquals(expected.getResponseBody(), actual.getResponseBody());
+    }
+  }
+
+  @Test
+  public void rejectsCorruptedSnapshot() throws Exception {
+    final var path = tempDir.resolve("snapshot");
+    DeliveryCacheSnapshot.of(1, NOW, List.of(ad(10, INVENTORY_ID))).write(path);
+    final var bytes = Files.readAllBytes(path);
+    bytes[bytes.length / 2] ^= 1;
+    Files.write(path, bytes);
+
+    assertThrows(IOException.class, () -> DeliveryCacheSnapshot.read(path));
+    assertTrue(DeliveryCacheSnapshot.read(tempDir.resolve("missing")).isEmpty());
+  }
+
+  @Test
+  public void restartedNodeServesFromSnapshot() throws Exception {
+    final var setting = new InventoryCacheSetting();
+    setting.setSnapshotFile(tempDir.resolve("snapshot").toString());
+
+    // without a snapshot, nothing is served until keys are registered and a reload has finished
+    final var cold = repository(setting);
+    cold.init();
+    cold.reload();
+    assertTrue(cold.select(INVENTORY_ID).isEmpty());
+    cold.shutdown();
+
+    final var ads = LongStream.rangeClosed(1, AD_COUNT)
+        .mapToObj(adId -> ad(adId, adId % 100 + 1))
+        .collect(Collectors.toList());
+    DeliveryCacheSnapshot.of(1234, NOW - 60, ads).write(Path.of(setting.getSnapshotFile()));
+
+    final var startedAt = System.nanoTime();
+    final var warm = repository(setting);
+    warm.init();
+    final var served = warm.select(INVENTORY_ID);
+    final var timeToFirstServedAd = Duration.ofNanos(System.nanoTime() - startedAt);
+
+    assertTrue(served.isPresent());
+    // restoring the snapshot, unlike a cold reload, doesn't wait for the contract
+    assertTrue(timeToFirstServedAd.compareTo(Duration.ofSeconds(5)) < 0,
+        "time to first served ad " + timeToFirstServedAd);
+    // a reload which can't read the inventory yet keeps the restored ads
+    warm.reload();
+    assertEquals(AD_COUNT / 100, warm.findBy(INVENTORY_ID).size());
+    warm.shutdown();
+  }
+
+  private static InventoryCacheRepository repository(InventoryCacheSetting setting) {
+    final var clock = Clock.fixed(Instant.ofEpochSecond(NOW), ZoneId.systemDefault());
+    return new InventoryCacheRepository(clock, mock(AdNetworkBatchReader.class),
+        new DeliveryPrivateKeyRepository(new KeyStoreSetting()),
+        mock(StorageRepository.class), new AdFormatCacheRepository(setting),
+        new AdFormatDecryptor(setting), new UniformSelectionStrategy(), setting,
+        new EthRpcSetting(), new ReloadMetrics(new SimpleMeterRegistry()),
+        new InventoryShard(new ShardSetting()));
+  }
+
+  private static DeliverableAd ad(long adId, long inventoryId) {
+    return DeliverableAd.of(inventoryId, adId, new AdFormatV1Dto(inventoryId, "0x0", NOW - 3600,
+        NOW + 3600, 1500L, "title " + adId, "description", "http://localhost/lp",
+        "http://localhost/image.png", "nonce"));
+  }
+
+}
@@ -0,0 +1,77 @@
+package jp.deftfitf.adnetwork.repository;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Set;
+import jp.deftfitf.adnetwork.setting.KeyStoreSetting;
+import jp.deftfitf.adnetwork.support.AdFormatV1Encoder;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class DeliveryPrivateKeyRepositoryTest {
+
+  @TempDir
+  Path tempDir;
+
+  @Test
+  public void keysSurviveRestart() throws Exception {
+    final var setting = setting();
+    final var first = AdFormatV1Encoder.generateKeyPair().getPrivate();
+    final var second = AdFormatV1Encoder.generateKeyPair().getPrivate();
+
+    final var repository = new DeliveryPrivateKeyRepository(setting);
+    repository.init();
+    final List<Long> registered = new ArrayList<>();
+    repository.subscribe(registered::add);
+    repository.save(1, second);
+    repository.save(2, second);
+    repository.save(1, first);
+    repository.close();
+    assertEquals(List.of(1L, 2L, 1L), registered);
+
+    // a crash while appending leaves a torn record behind
+    Files.write(Path.of(setting.getFile()), new byte[]{0, 0, 1}, StandardOpenOption.APPEND);
+
+    final var restarted = new DeliveryPrivateKeyRepository(setting);
+    restarted.init();
+    assertEquals(Set.of(1L, 2L), restarted.activeInventoryIds());
+    assertArrayEquals(first.getEncoded(), restarted.findBy(1).orElseThrow().getEncoded());
+    assertArrayEquals(second.getEncoded(), restarted.findBy(2).orElseThrow().getEncoded());
+    restarted.close();
+  }
+
+  @Test
+  public void wrongMasterKeyIsRejected() throws Exception {
+    final var setting = setting();
+    final var repository = new DeliveryPrivateKeyRepository(setting);
+    repository.init();
+    repository.save(1, AdFormatV1Encoder.generateKeyPair().getPrivate());
+    repository.close();
+
+    setting.setMasterKey(randomMasterKey());
+    assertThrows(RuntimeException.class, () -> new DeliveryPrivateKeyRepository(setting).init());
+  }
+
+  private KeyStoreSetting setting() {
+    final var setting = new KeyStoreSetting();
+    setting.setMasterKey(randomMasterKey());
+    setting.setFile(tempDir.resolve("delivery-keys").toString());
+    return setting;
+  }
+
+  private static String randomMasterKey() {
+    final var masterKey = new byte[32];
+    new SecureRandom().nextBytes(masterKey);
+    return Base64.getEncoder().encodeToString(masterKey);
+  }
+
+}
@@ -0,0 +1,59 @@
+package jp.deftfitf.adnetwork.repository;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Set;
+import jp.deftfitf.adnetwork.dto.AdFormatV1Dto;
+import jp.deftfitf.adnetwork.dto.DeliverableAd;
+import org.junit.jupiter.api.Test;
+
+public class DeliveryScheduleTest {
+
+  private static final long INVENTORY_ID = 1;
+
+  private final DeliverySchedule schedule = new DeliverySchedule();
+
+  @Test
+  public void switchesAdsAtTheirBoundaries() {
+    schedule.put(ad(10, 100, 200));
+    schedule.put(ad(11, 150, 300));
+
+    assertEquals(Set.of(), schedule.advance(99));
+    assertTrue(schedule.deliverableAds(INVENTORY_ID, 99).isEmpty());
+
+    assertEquals(Set.of(INVENTORY_ID), schedule.advance(100));
+    assertEquals(1, schedule.deliverableAds(INVENTORY_ID, 100).size());
+
+    assertEquals(Set.of(INVENTORY_ID), schedule.advance(150));
+    assertEquals(2, schedule.deliverableAds(INVENTORY_ID, 150).size());
+
+    // the end time is inclusive
+    assertEquals(Set.of(), schedule.advance(200));
+    assertEquals(Set.of(INVENTORY_ID), schedule.advance(201));
+    final var deliverable = schedule.deliverableAds(INVENTORY_ID, 201);
+    assertEquals(1, deliverable.size());
+    assertEquals(11, deliverable.get(0).getAdId());
+
+    schedule.advance(301);
+    assertTrue(schedule.inventoryIds().isEmpty());
+  }
+
+  @Test
+  public void removedAdIsNotDeliverable() {
+    schedule.put(ad(10, 100, 200));
+    schedule.advance(100);
+
+    schedule.remove(INVENTORY_ID, 10);
+
+    assertTrue(schedule.deliverableAds(INVENTORY_ID, 100).isEmpty());
+    assertTrue(schedule.inventoryIds().isEmpty());
+  }
+
+  private static DeliverableAd ad(long adId, long startTime, long endTime) {
+    return DeliverableAd.of(INVENTORY_ID, adId, startTime, endTime, new AdFormatV1Dto(
+        INVENTORY_ID, "0x0", startTime, endTime, 1500L, "title", "description",
+        "http://localhost/lp", "http://localhost/image.png", "nonce"));
+  }
+
+}
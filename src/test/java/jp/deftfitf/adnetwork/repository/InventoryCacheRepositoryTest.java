@@ -0,0 +1,105 @@
+package jp.deftfitf.adnetwork.repository;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.after;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import jp.deftfitf.adnetwork.chain.AdNetworkBatchReader;
+import jp.deftfitf.adnetwork.crypto.AdFormatDecryptor;
+import jp.deftfitf.adnetwork.metrics.ReloadMetrics;
+import jp.deftfitf.adnetwork.selection.UniformSelectionStrategy;
+import jp.deftfitf.adnetwork.setting.EthRpcSetting;
+import jp.deftfitf.adnetwork.setting.InventoryCacheSetting;
+import jp.deftfitf.adnetwork.setting.KeyStoreSetting;
+import jp.deftfitf.adnetwork.setting.ShardSetting;
+import jp.deftfitf.adnetwork.shard.InventoryShard;
+import jp.deftfitf.adnetwork.support.AdFormatV1Encoder;
+import org.junit.jupiter.api.Test;
+import org.web3j.tuples.generated.Tuple7;
+
+public class InventoryCacheRepositoryTest {
+
+  private static final long INVENTORY_ID = 1;
+  private static final long NOW = 1646112949;
+  private static final int ADS = 5;
+
+  @Test
+  public void timedOutInventoryDropsQueuedWork() throws Exception {
+    final var adNetworkBatchReader = mock(AdNetworkBatchReader.class);
+    final var storageRepository = mock(StorageRepository.class);
+    final var deliveryPrivateKeyRepository =
+        new DeliveryPrivateKeyRepository(new KeyStoreSetting());
+    deliveryPrivateKeyRepository.save(INVENTORY_ID,
+        AdFormatV1Encoder.generateKeyPair().getPrivate());
+    when(adNetworkBatchReader.getAdsOfAsync(List.of(INVENTORY_ID)))
+        .thenReturn(CompletableFuture.completedFuture(Map.of(INVENTORY_ID, adsOf())));
+    // the only storage thread is stuck on the first ad until the inventory has timed out
+    final var stuck = new CountDownLatch(1);
+    when(storageRepository.loadBuffer(anyString())).thenAnswer(invocation -> {
+      stuck.await();
+      return ByteBuffer.allocate(0);
+    });
+
+    final var setting = new InventoryCacheSetting();
+    setting.setSnapshotEnabled(false);
+    setting.setReloadStorageParallelism(1);
+    setting.setReloadInventoryTimeout(Duration.ofMillis(100));
+    final var adFormatDecryptor = new AdFormatDecryptor(setting);
+    final var repository = new InventoryCacheRepository(
+        Clock.fixed(Instant.ofEpochSecond(NOW), ZoneId.systemDefault()), adNetworkBatchReader,
+        deliveryPrivateKeyRepository, storageRepository, new AdFormatCacheRepository(setting),
+        adFormatDecryptor, new UniformSelectionStrategy(), setting, new EthRpcSetting(),
+        new ReloadMetrics(new SimpleMeterRegistry()),
+        new InventoryShard(new ShardSetting()));
+    adFormatDecryptor.init();
+    repository.init();
+    try {
+      repository.reload();
+      assertTrue(repository.findBy(INVENTORY_ID).isEmpty());
+
+      stuck.countDown();
+      // the storage reads queued behind the stuck one have been cancelled
+      verify(storageRepository, after(300).times(1)).loadBuffer(anyString());
+    } finally {
+      repository.shutdown();
+      adFormatDecryptor.shutdown();
+    }
+  }
+
+  private static Tuple7<List<BigInteger>, List<BigInteger>, List<byte[]>, List<byte[]>,
+      List<BigInteger>, List<BigInteger>, List<Boolean>> adsOf() {
+    final var adIds = new ArrayList<BigInteger>();
+    final var inventoryIds = new ArrayList<BigInteger>();
+    final var adHashes = new ArrayList<byte[]>();
+    final var startTimes = new ArrayList<BigInteger>();
+    final var endTimes = new ArrayList<BigInteger>();
+    final var approved = new ArrayList<Boolean>();
+    for (int i = 0; i < ADS; i++) {
+      final var adHash = new byte[32];
+      adHash[0] = (byte) i;
+      adIds.add(BigInteger.valueOf(10 + i));
+      inventoryIds.add(BigInteger.valueOf(INVENTORY_ID));
+      adHashes.add(adHash);
+      startTimes.add(BigInteger.valueOf(NOW - 60));
+      endTimes.add(BigInteger.valueOf(NOW + 3600));
+      approved.add(true);
+    }
+    return new Tuple7<>(adIds, inventoryIds, adHashes, adHashes, startTimes, endTimes, approved);
+  }
+
+}
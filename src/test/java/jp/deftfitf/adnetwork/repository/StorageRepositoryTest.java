@@ -0,0 +1,89 @@
+package jp.deftfitf.adnetwork.repository;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import jp.deftfitf.adnetwork.setting.StorageSetting;
+import jp.deftfitf.adnetwork.setting.StorageSetting.Engine;
+import jp.deftfitf.adnetwork.storage.FileStorageEngine;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.web3j.crypto.Hash;
+import org.web3j.utils.Numeric;
+
+public class StorageRepositoryTest {
+
+  private static final byte[] CONTENT =
+      "{\"title\":\"ad\"}".repeat(64).getBytes(StandardCharsets.UTF_8);
+
+  @TempDir
+  Path tempDir;
+
+  @Test
+  public void ingestDeduplicatesByContentHash() throws Exception {
+    final var setting = setting(Engine.FILE);
+    var repository = open(setting);
+    final var first = repository.ingest("ad-formats", "", new ByteArrayInputStream(CONTENT), true);
+    final var second = repository.ingest("ad-formats", "", new ByteArrayInputStream(CONTENT), true);
+
+    assertEquals(Numeric.toHexStringNoPrefix(Hash.sha3(CONTENT)), first.getHash());
+    assertEquals("ad-formats/" + first.getHash(), first.getKey());
+    assertTrue(first.isCreated());
+    assertEquals(first.getKey(), second.getKey());
+    assertFalse(second.isCreated());
+    assertArrayEquals(CONTENT, repository.loadBytes(first.getKey()));
+    assertTrue(Files.exists(tempDir.resolve(first.getKey() + StorageRepository.GZIP_SUFFIX)));
+    try (final var temporaryFiles = Files.list(
+        tempDir.resolve(FileStorageEngine.TEMPORARY_DIRECTORY))) {
+      assertEquals(0, temporaryFiles.count());
+    }
+
+    repository.shutdown();
+    repository = open(setting);
+    final var afterRestart =
+        repository.ingest("ad-formats", "", new ByteArrayInputStream(CONTENT), true);
+    assertEquals(first.getKey(), afterRestart.getKey());
+    assertFalse(afterRestart.isCreated());
+    repository.shutdown();
+  }
+
+  @Test
+  public void ingestFindsObjectsStoredBefore() throws Exception {
+    final var repository = open(setting(Engine.SEGMENT));
+    final var hash = Numeric.toHexStringNoPrefix(Hash.sha3(CONTENT));
+    repository.save("images/" + hash + ".png", new ByteArrayInputStream(CONTENT));
+
+    final var ingested =
+        repository.ingest("images", "png", new ByteArrayInputStream(CONTENT), false);
+    assertFalse(ingested.isCreated());
+    assertArrayEquals(CONTENT, repository.loadBytes(ingested.getKey()));
+
+    final var other = "other".getBytes(StandardCharsets.UTF_8);
+    final var created = repository.ingest("images", "png", new ByteArrayInputStream(other), false);
+    assertTrue(created.isCreated());
+    assertArrayEquals(other, repository.loadBytes(created.getKey()));
+    repository.shutdown();
+  }
+
+  private StorageSetting setting(Engine engine) {
+    final var setting = new StorageSetting();
+    setting.setEngine(engine);
+    setting.setBaseDirectory(tempDir.toString());
+    setting.setSegmentDirectory(tempDir.resolve("segments").toString());
+    setting.setSegmentSize(1024 * 1024);
+    return setting;
+  }
+
+  private static StorageRepository open(StorageSetting setting) throws Exception {
+    final var repository = new StorageRepository(setting);
+    repository.init();
+    return repository;
+  }
+
+}
@@ -0,0 +1,53 @@
+package jp.deftfitf.adnetwork.selection;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import jp.deftfitf.adnetwork.dto.AdFormatV1Dto;
+import jp.deftfitf.adnetwork.dto.DeliverableAd;
+import org.junit.jupiter.api.Test;
+
+public class PriceWeightedSelectionStrategyTest {
+
+  private static final int SAMPLES = 200_000;
+
+  private final PriceWeightedSelectionStrategy strategy = new PriceWeightedSelectionStrategy();
+
+  @Test
+  public void selectsInProportionToPrice() {
+    final var selector = strategy.prepare(List.of(ad(1, 1500), ad(2, 500), ad(3, 0), ad(4, 3000)));
+
+    final var frequencies = sample(selector);
+
+    assertEquals(0.3, frequencies.getOrDefault(1L, 0.0), 0.01);
+    assertEquals(0.1, frequencies.getOrDefault(2L, 0.0), 0.01);
+    assertEquals(0.0, frequencies.getOrDefault(3L, 0.0));
+    assertEquals(0.6, frequencies.getOrDefault(4L, 0.0), 0.01);
+  }
+
+  @Test
+  public void selectsUniformlyWhenAllAdsAreFree() {
+    final var selector = strategy.prepare(List.of(ad(1, 0), ad(2, 0)));
+
+    final var frequencies = sample(selector);
+
+    assertEquals(0.5, frequencies.getOrDefault(1L, 0.0), 0.01);
+    assertEquals(0.5, frequencies.getOrDefault(2L, 0.0), 0.01);
+  }
+
+  private static Map<Long, Double> sample(AdSelector selector) {
+    final var frequencies = new HashMap<Long, Double>();
+    for (int i = 0; i < SAMPLES; i++) {
+      frequencies.merge(selector.select().getAdId(), 1.0 / SAMPLES, Double::sum);
+    }
+    return frequencies;
+  }
+
+  private static DeliverableAd ad(long adId, long adPrice) {
+    return DeliverableAd.of(1, adId, new AdFormatV1Dto(1L, "0x0", 0L, 0L, adPrice,
+        "title", "description", "http://localhost/lp", "http://localhost/image.png", "nonce"));
+  }
+
+}
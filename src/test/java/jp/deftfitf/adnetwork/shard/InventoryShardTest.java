@@ -0,0 +1,64 @@
+package jp.deftfitf.adnetwork.shard;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashMap;
+import java.util.List;
+import jp.deftfitf.adnetwork.setting.ShardSetting;
+import org.junit.jupiter.api.Test;
+
+public class InventoryShardTest {
+
+  private static final int INVENTORIES = 30_000;
+
+  @Test
+  public void spreadsInventoriesEvenly() {
+    final var shard = shardOf(List.of("http://a", "http://b", "http://c"), "http://a");
+    final var counts = new HashMap<String, Integer>();
+    for (long inventoryId = 1; inventoryId <= INVENTORIES; inventoryId++) {
+      counts.merge(shard.ownerOf(inventoryId), 1, Integer::sum);
+    }
+
+    assertEquals(3, counts.size());
+    for (final var count : counts.values()) {
+      assertTrue(Math.abs(count - INVENTORIES / 3) < INVENTORIES / 3 * 0.15, counts::toString);
+    }
+  }
+
+  @Test
+  public void movesOnlyInventoriesOfAddedMember() {
+    final var before = shardOf(List.of("http://a", "http://b", "http://c"), "http://a");
+    final var after = shardOf(List.of("http://a", "http://b", "http://c", "http://d"), "http://a");
+    var moved = 0;
+    for (long inventoryId = 1; inventoryId <= INVENTORIES; inventoryId++) {
+      final var owner = after.ownerOf(inventoryId);
+      if (!owner.equals(before.ownerOf(inventoryId))) {
+        assertEquals("http://d", owner);
+        moved++;
+      }
+    }
+    // rehashing by modulo would move three quarters of them
+    final var finalMoved = moved;
+    assertTrue(moved > 0 && moved < INVENTORIES * 0.35, () -> "moved " + finalMoved);
+  }
+
+  @Test
+  public void ownsEveryInventoryWhenDisabled() {
+    final var shard = new InventoryShard(new ShardSetting());
+    assertTrue(shard.owns(1));
+    assertTrue(shard.owns(Long.MAX_VALUE));
+    assertThrows(IllegalStateException.class,
+        () -> shardOf(List.of("http://a", "http://b"), "http://c"));
+  }
+
+  private static InventoryShard shardOf(List<String> members, String self) {
+    final var setting = new ShardSetting();
+    setting.setEnabled(true);
+    setting.setMembers(members);
+    setting.setSelf(self);
+    return new InventoryShard(setting);
+  }
+
+}
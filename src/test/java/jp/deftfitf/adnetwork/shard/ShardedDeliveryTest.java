@@ -0,0 +1,226 @@
+package jp.deftfitf.adnetwork.shard;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpClient.Redirect;
+import java.net.http.HttpRequest;
+import java.net.http.HttpRequest.BodyPublishers;
+import java.net.http.HttpResponse;
+import java.net.http.HttpResponse.BodyHandlers;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import jp.deftfitf.adnetwork.chain.AdNetworkBatchReader;
+import jp.deftfitf.adnetwork.crypto.AdFormatDecryptor;
+import jp.deftfitf.adnetwork.delivery.EventLoopDeliveryServer;
+import jp.deftfitf.adnetwork.dto.DeliverableAd;
+import jp.deftfitf.adnetwork.metrics.DeliveryMetrics;
+import jp.deftfitf.adnetwork.metrics.ReloadMetrics;
+import jp.deftfitf.adnetwork.repository.AdFormatCacheRepository;
+import jp.deftfitf.adnetwork.repository.InventoryCacheRepository;
+import jp.deftfitf.adnetwork.repository.StorageRepository;
+import jp.deftfitf.adnetwork.selection.UniformSelectionStrategy;
+import jp.deftfitf.adnetwork.setting.AdNetworkContractSetting;
+import jp.deftfitf.adnetwork.setting.DeliverySetting;
+import jp.deftfitf.adnetwork.setting.EthRpcSetting;
+import jp.deftfitf.adnetwork.setting.InventoryCacheSetting;
+import jp.deftfitf.adnetwork.setting.MetricsSetting;
+import jp.deftfitf.adnetwork.setting.ShardSetting;
+import jp.deftfitf.adnetwork.setting.ShardSetting.ForeignInventory;
+import jp.deftfitf.adnetwork.setting.StorageSetting;
+import jp.deftfitf.adnetwork.support.AdNetworkSimulator;
+import jp.deftfitf.adnetwork.support.SyntheticAdNetwork;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.web3j.crypto.Credentials;
+import org.web3j.protocol.Web3j;
+import org.web3j.protocol.http.HttpService;
+
+/**
+ * Runs a fleet of delivery nodes in process, each on its own port and loading its own shard of the
+ * inventories from a simulated contract.
+ */
+public class ShardedDeliveryTest {
+
+  private static final long NOW = 1646112949;
+  private static final int INVENTORIES = 12;
+  private static final int NODES = 3;
+
+  @TempDir
+  Path tempDir;
+
+  private final Credentials credentials =
+      Credentials.create("0x8f2a55949038a9610f50fb23b5883af3b4ecb3c3bb792cbcefbd1542c692be63");
+  private final HttpClient httpClient =
+      HttpClient.newBuilder().followRedirects(Redirect.NEVER).build();
+  private final List<Node> nodes = new ArrayList<>();
+  private AdNetworkSimulator simulator;
+  private Web3j web3j;
+  private StorageRepository storageRepository;
+
+  @BeforeEach
+  public void setUp() throws Exception {
+    final var network = SyntheticAdNetwork.generate(INVENTORIES, 2, NOW, 0);
+    simulator = new AdNetworkSimulator();
+    network.deploy(simulator);
+    web3j = Web3j.build(new HttpService(simulator.url()));
+
+    final var storageSetting = new StorageSetting();
+    storageSetting.setBaseDirectory(tempDir.toString());
+    storageRepository = new StorageRepository(storageSetting);
+    storageRepository.init();
+    network.store(storageRepository);
+
+    final var ports = new int[NODES];
+    final var members = new ArrayList<String>();
+    for (int idx = 0; idx < NODES; idx++) {
+      try (final var socket = new ServerSocket(0)) {
+        ports[idx] = socket.getLocalPort();
+      }
+      members.add("http://localhost:" + ports[idx]);
+    }
+
+    final var contractSetting = new AdNetworkContractSetting();
+    contractSetting.setAddress(AdNetworkSimulator.CONTRACT_ADDRESS);
+    for (int idx = 0; idx < NODES; idx++) {
+      final var shardSetting = new ShardSetting();
+      shardSetting.setEnabled(true);
+      shardSetting.setMembers(members);
+      shardSetting.setSelf(members.get(idx));
+      // the last node redirects instead of forwarding
+      shardSetting.setForeignInventory(
+          idx == NODES - 1 ? ForeignInventory.REDIRECT : ForeignInventory.FORWARD);
+      final var node = new Node(shardSetting, ports[idx]);
+      nodes.add(node);
+
+      final var setting = new InventoryCacheSetting();
+      setting.setSnapshotEnabled(false);
+      node.adFormatDecryptor = new AdFormatDecryptor(setting);
+      node.inventoryCacheRepository = new InventoryCacheRepository(
+          Clock.fixed(Instant.ofEpochSecond(NOW), ZoneId.systemDefault()),
+          new AdNetworkBatchReader(web3j, credentials, contractSetting, new EthRpcSetting(),
+              new SimpleMeterRegistry()),
+          network.getDeliveryPrivateKeyRepository(), storageRepository,
+          new AdFormatCacheRepository(setting), node.adFormatDecryptor,
+          new UniformSelectionStrategy(), setting, new EthRpcSetting(),
+          new ReloadMetrics(new SimpleMeterRegistry()), node.inventoryShard);
+      node.adFormatDecryptor.init();
+      node.inventoryCacheRepository.init();
+      node.inventoryCacheRepository.reload();
+      node.start();
+    }
+  }
+
+  @AfterEach
+  public void tearDown() {
+    for (final var node : nodes) {
+      node.stop();
+    }
+    storageRepository.shutdown();
+    web3j.shutdown();
+    simulator.close();
+  }
+
+  @Test
+  public void eachNodeLoadsOnlyItsShard() {
+    var inventories = 0;
+    for (final var node : nodes) {
+      for (long inventoryId = 1; inventoryId <= INVENTORIES; inventoryId++) {
+        assertEquals(node.inventoryShard.owns(inventoryId),
+            !node.inventoryCacheRepository.findBy(inventoryId).isEmpty());
+      }
+      inventories += node.inventoryCacheRepository.stats().getInventories();
+    }
+    assertEquals(INVENTORIES, inventories);
+  }
+
+  @Test
+  public void forwardsForeignInventoriesToOwner() throws Exception {
+    final var node = nodes.get(0);
+    for (long inventoryId = 1; inventoryId <= INVENTORIES; inventoryId++) {
+      final var response = post(node, inventoryId);
+      assertEquals(200, response.statusCode());
+      assertFalse(Arrays.equals(DeliverableAd.NOT_FOUND_RESPONSE_BODY, response.body()),
+          "inventoryId=" + inventoryId);
+    }
+  }
+
+  @Test
+  public void redirectsForeignInventoriesToOwner() throws Exception {
+    final var node = nodes.get(NODES - 1);
+    var redirected = 0;
+    for (long inventoryId = 1; inventoryId <= INVENTORIES; inventoryId++) {
+      final var response = post(node, inventoryId);
+      if (node.inventoryShard.owns(inventoryId)) {
+        assertEquals(200, response.statusCode());
+        continue;
+      }
+      assertEquals(307, response.statusCode());
+      assertEquals(node.inventoryShard.ownerOf(inventoryId) + "/delivery",
+          response.headers().firstValue("Location").orElse(null));
+      redirected++;
+    }
+    assertTrue(redirected > 0);
+  }
+
+  private HttpResponse<byte[]> post(Node node, long inventoryId) throws Exception {
+    final var request = HttpRequest.newBuilder(
+            URI.create("http://localhost:" + node.port + "/delivery"))
+        .header("Content-Type", "application/json")
+        .POST(BodyPublishers.ofString("{\"inventoryId\":" + inventoryId + "}"))
+        .build();
+    return httpClient.send(request, BodyHandlers.ofByteArray());
+  }
+
+  private static class Node {
+
+    private final int port;
+    private final InventoryShard inventoryShard;
+    private final DeliveryForwarder deliveryForwarder;
+    private final ShardSetting shardSetting;
+    private final DeliveryMetrics deliveryMetrics =
+        new DeliveryMetrics(new SimpleMeterRegistry(), new MetricsSetting());
+    private AdFormatDecryptor adFormatDecryptor;
+    private InventoryCacheRepository inventoryCacheRepository;
+    private EventLoopDeliveryServer server;
+
+    private Node(ShardSetting shardSetting, int port) {
+      this.port = port;
+      this.shardSetting = shardSetting;
+      this.inventoryShard = new InventoryShard(shardSetting);
+      this.deliveryForwarder = new DeliveryForwarder(shardSetting, deliveryMetrics);
+    }
+
+    private void start() {
+      final var setting = new DeliverySetting();
+      setting.setEventLoopPort(port);
+      deliveryForwarder.init();
+      server = new EventLoopDeliveryServer(inventoryCacheRepository, setting, deliveryMetrics,
+          inventoryShard, deliveryForwarder, shardSetting);
+      server.start();
+    }
+
+    private void stop() {
+      if (server != null) {
+        server.stop();
+        deliveryForwarder.shutdown();
+      }
+      inventoryCacheRepository.shutdown();
+      adFormatDecryptor.shutdown();
+    }
+
+  }
+
+}
@@ -0,0 +1,72 @@
+package jp.deftfitf.adnetwork.storage;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class SegmentStorageEngineTest {
+
+  private static final int SEGMENT_SIZE = 4096;
+
+  @TempDir
+  Path tempDir;
+
+  @Test
+  public void recoversIndexFromSegments() throws Exception {
+    try (final var engine = open()) {
+      save(engine, "ad-formats/a", "first");
+      save(engine, "ad-formats/b", "second");
+      engine.delete("ad-formats/a");
+    }
+
+    try (final var engine = open()) {
+      assertEquals("second", read(engine, "ad-formats/b"));
+      assertThrows(NoSuchFileException.class, () -> engine.read("ad-formats/a"));
+    }
+  }
+
+  @Test
+  public void compactionKeepsLiveObjects() throws Exception {
+    try (final var engine = open()) {
+      for (int idx = 0; idx < 100; idx++) {
+        save(engine, "images/" + idx, "value-" + idx + "-".repeat(32));
+      }
+      for (int idx = 0; idx < 80; idx++) {
+        engine.delete("images/" + idx);
+      }
+      save(engine, "images/5", "saved again");
+      final var segmentCount = engine.segmentCount();
+
+      engine.compact();
+
+      assertTrue(engine.segmentCount() < segmentCount);
+    }
+
+    try (final var engine = open()) {
+      assertEquals("value-90" + "-".repeat(32), read(engine, "images/90"));
+      assertEquals("saved again", read(engine, "images/5"));
+      assertThrows(NoSuchFileException.class, () -> engine.read("images/3"));
+    }
+  }
+
+  private SegmentStorageEngine open() throws IOException {
+    return new SegmentStorageEngine(tempDir, SEGMENT_SIZE, 0.5);
+  }
+
+  private static void save(StorageEngine engine, String key, String value) throws IOException {
+    engine.save(key, new ByteArrayInputStream(value.getBytes(StandardCharsets.UTF_8)));
+  }
+
+  private static String read(StorageEngine engine, String key) throws IOException {
+    return StandardCharsets.UTF_8.decode(engine.read(key)).toString();
+  }
+
+}
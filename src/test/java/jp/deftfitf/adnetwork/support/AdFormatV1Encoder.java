@@ -0,0 +1,72 @@
+package jp.deftfitf.adnetwork.support;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.PublicKey;
+import java.security.SecureRandom;
+import java.security.spec.MGF1ParameterSpec;
+import java.util.Base64;
+import javax.crypto.Cipher;
+import javax.crypto.KeyGenerator;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.OAEPParameterSpec;
+import javax.crypto.spec.PSource;
+import jp.deftfitf.adnetwork.dto.AdFormatV1Dto;
+
+/**
+ * Builds `v1:key:ciphertext` envelopes in the same way as DApps do.
+ */
+public final class AdFormatV1Encoder {
+
+  private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+  private static final SecureRandom RANDOM = new SecureRandom();
+  private static final int GCM_IV_LENGTH = 12;
+
+  private AdFormatV1Encoder() {
+  }
+
+  public static KeyPair generateKeyPair() throws GeneralSecurityException {
+    final var generator = KeyPairGenerator.getInstance("RSA");
+    generator.initialize(2048);
+    return generator.generateKeyPair();
+  }
+
+  public static String encode(PublicKey publicKey, AdFormatV1Dto adFormatV1Dto)
+      throws GeneralSecurityException, JsonProcessingException {
+    return encode(publicKey, OBJECT_MAPPER.writeValueAsString(adFormatV1Dto));
+  }
+
+  public static String encode(PublicKey publicKey, String plainText)
+      throws GeneralSecurityException {
+    final var keyGenerator = KeyGenerator.getInstance("AES");
+    keyGenerator.init(128);
+    final var aesKey = keyGenerator.generateKey();
+
+    final var rsaCipher = Cipher.getInstance("RSA/ECB/OAEPPadding");
+    rsaCipher.init(Cipher.ENCRYPT_MODE, publicKey, new OAEPParameterSpec(
+        "SHA-256", "MGF1",
+        new MGF1ParameterSpec("SHA-256"),
+        PSource.PSpecified.DEFAULT));
+    final var encryptedKey =
+        rsaCipher.doFinal(Base64.getEncoder().encode(aesKey.getEncoded()));
+
+    final var iv = new byte[GCM_IV_LENGTH];
+    RANDOM.nextBytes(iv);
+    final var aesCipher = Cipher.getInstance("AES/GCM/NoPadding");
+    aesCipher.init(Cipher.ENCRYPT_MODE, aesKey, new GCMParameterSpec(128, iv));
+    final var ciphertext = aesCipher.doFinal(plainText.getBytes(StandardCharsets.UTF_8));
+
+    final var merged = new byte[iv.length + ciphertext.length];
+    System.arraycopy(iv, 0, merged, 0, iv.length);
+    System.arraycopy(ciphertext, 0, merged, iv.length, ciphertext.length);
+
+    return "v1:"
+        + Base64.getEncoder().encodeToString(encryptedKey) + ":"
+        + Base64.getEncoder().encodeToString(merged);
+  }
+
+}
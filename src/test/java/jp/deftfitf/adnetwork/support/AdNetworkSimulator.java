@@ -0,0 +1,293 @@
+package jp.deftfitf.adnetwork.support;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import org.web3j.abi.EventEncoder;
+import org.web3j.abi.FunctionEncoder;
+import org.web3j.abi.datatypes.Address;
+import org.web3j.abi.datatypes.Bool;
+import org.web3j.abi.datatypes.DynamicArray;
+import org.web3j.abi.datatypes.Type;
+import org.web3j.abi.datatypes.Utf8String;
+import org.web3j.abi.datatypes.generated.Bytes32;
+import org.web3j.abi.datatypes.generated.Uint256;
+import org.web3j.abi.datatypes.generated.Uint32;
+import org.web3j.adnetwork.AdNetwork;
+import org.web3j.utils.Numeric;
+
+/**
+ * In-process AdNetwork contract behind a local JSON-RPC endpoint. It answers the eth_call of
+ * getAdsOf, getInventory and getInventories, eth_getLogs of the events the application follows,
+ * and eth_blockNumber. Every change is mined into a block of its own.
+ */
+public class AdNetworkSimulator implements AutoCloseable {
+
+  public static final String CONTRACT_ADDRESS = "0x00000000000000000000000000000000000ad001";
+
+  private static final String ZERO_ADDRESS = "0x0000000000000000000000000000000000000000";
+  private static final int MAX_INVENTORIES_PER_PAGE = 50;
+  private static final String ADS_OF = selectorOf(AdNetwork.FUNC_GETADSOF, 1);
+  private static final String INVENTORY = selectorOf(AdNetwork.FUNC_GETINVENTORY, 1);
+  private static final String INVENTORIES = selectorOf(AdNetwork.FUNC_GETINVENTORIES, 2);
+
+  private final StubJsonRpcServer server;
+  private final Map<Long, Inventory> inventories = new ConcurrentSkipListMap<>();
+  private final Map<Long, List<Ad>> inventoryIdToAds = new ConcurrentHashMap<>();
+  private final List<Map<String, Object>> logs = new ArrayList<>();
+  private long blockNumber = 0;
+
+  public AdNetworkSimulator() throws IOException {
+    server = new StubJsonRpcServer()
+        .on("eth_blockNumber", params -> Numeric.encodeQuantity(BigInteger.valueOf(blockNumber())))
+        .on("eth_call", this::call)
+        .on("eth_getLogs", this::getLogs);
+  }
+
+  public String url() {
+    return server.url();
+  }
+
+  /**
+   * Delay every JSON-RPC response, single or batch, by the latency.
+   */
+  public AdNetworkSimulator latency(Duration latency) {
+    server.latency(latency);
+    return this;
+  }
+
+  /**
+   * @return JSON-RPC calls answered so far, counting every call of a batch
+   */
+  public int callCount() {
+    return server.callCount();
+  }
+
+  public synchronized long blockNumber() {
+    return blockNumber;
+  }
+
+  public synchronized void createInventory(
+      long inventoryId, String owner, String name, String uri, String publicKey, long floorPrice
+  ) {
+    inventories.put(inventoryId,
+        new Inventory(inventoryId, owner, name, uri, publicKey, floorPrice));
+    inventoryIdToAds.putIfAbsent(inventoryId, new ArrayList<>());
+    emit(AdNetwork.INVENTORYCREATED_EVENT, List.of(), List.of(new Uint256(inventoryId)));
+  }
+
+  /**
+   * Create an ad waiting for review.
+   */
+  public synchronized void createAd(
+      long inventoryId, long adId, byte[] adHash, byte[] adHashForDelivery, long start, long end
+  ) {
+    inventoryIdToAds.get(inventoryId)
+        .add(new Ad(adId, inventoryId, adHash, adHashForDelivery, start, end));
+    emit(AdNetwork.ADCREATED_EVENT,
+        List.of(new Uint256(inventoryId)), List.of(new Uint256(adId)));
+  }
+
+  public synchronized void approveAd(long inventoryId, long adId) {
+    adOf(inventoryId, adId).approved = true;
+    emit(AdNetwork.ADAPPROVED_EVENT,
+        List.of(new Uint256(adId)), List.of(new Uint256(inventoryId)));
+  }
+
+  public synchronized void rejectAd(long inventoryId, long adId) {
+    inventoryIdToAds.get(inventoryId).remove(adOf(inventoryId, adId));
+    emit(AdNetwork.ADREJECTED_EVENT,
+        List.of(new Uint256(adId)), List.of(new Uint256(inventoryId)));
+  }
+
+  private Ad adOf(long inventoryId, long adId) {
+    return inventoryIdToAds.get(inventoryId).stream()
+        .filter(ad -> ad.adId == adId)
+        .findFirst()
+        .orElseThrow(() -> new IllegalArgumentException("no such ad: " + adId));
+  }
+
+  private void emit(
+      org.web3j.abi.datatypes.Event event,
+      List<Uint256> indexedValues,
+      List<Uint256> nonIndexedValues
+  ) {
+    blockNumber++;
+    final var topics = new ArrayList<String>();
+    topics.add(EventEncoder.encode(event));
+    indexedValues.forEach(value -> topics.add(word(value.getValue())));
+
+    final var log = new LinkedHashMap<String, Object>();
+    log.put("removed", false);
+    log.put("logIndex", "0x0");
+    log.put("transactionIndex", "0x0");
+    log.put("transactionHash", word(BigInteger.valueOf(blockNumber)));
+    log.put("blockHash", word(BigInteger.valueOf(blockNumber)));
+    log.put("blockNumber", Numeric.encodeQuantity(BigInteger.valueOf(blockNumber)));
+    log.put("address", CONTRACT_ADDRESS);
+    log.put("data", "0x" + FunctionEncoder.encodeConstructor(new ArrayList<>(nonIndexedValues)));
+    log.put("topics", topics);
+    logs.add(log);
+  }
+
+  private synchronized List<Map<String, Object>> getLogs(JsonNode params) {
+    final var filter = params.get(0);
+    final var fromBlock = Numeric.decodeQuantity(filter.get("fromBlock").asText()).longValue();
+    final var toBlock = Numeric.decodeQuantity(filter.get("toBlock").asText()).longValue();
+    return logs.stream()
+        .filter(log -> {
+          final var logBlock =
+              Numeric.decodeQuantity((String) log.get("blockNumber")).longValue();
+          return fromBlock <= logBlock && logBlock <= toBlock;
+        })
+        .collect(Collectors.toList());
+  }
+
+  private String call(JsonNode params) {
+    final var data = Numeric.cleanHexPrefix(params.get(0).get("data").asText());
+    final var selector = data.substring(0, 8);
+    final var arguments = new ArrayList<BigInteger>();
+    for (int from = 8; from + 64 <= data.length(); from += 64) {
+      arguments.add(new BigInteger(data.substring(from, from + 64), 16));
+    }
+
+    final List<Type> outputs;
+    if (selector.equals(ADS_OF)) {
+      outputs = adsOf(arguments.get(0).longValueExact());
+    } else if (selector.equals(INVENTORY)) {
+      outputs = inventory(arguments.get(0).longValueExact());
+    } else if (selector.equals(INVENTORIES)) {
+      outputs = inventories(arguments.get(0).intValueExact(), arguments.get(1).intValueExact());
+    } else {
+      throw new IllegalArgumentException("execution reverted: unknown function " + selector);
+    }
+    // a revert is answered with empty data, as web3j reads it
+    return outputs == null ? "0x" : "0x" + FunctionEncoder.encodeConstructor(outputs);
+  }
+
+  private synchronized List<Type> adsOf(long inventoryId) {
+    final var ads = inventoryIdToAds.getOrDefault(inventoryId, List.of());
+    return Arrays.<Type>asList(
+        array(Uint256.class, ads, ad -> new Uint256(ad.adId)),
+        array(Uint256.class, ads, ad -> new Uint256(ad.inventoryId)),
+        array(Bytes32.class, ads, ad -> new Bytes32(ad.adHash)),
+        array(Bytes32.class, ads, ad -> new Bytes32(ad.adHashForDelivery)),
+        array(Uint32.class, ads, ad -> new Uint32(ad.start)),
+        array(Uint32.class, ads, ad -> new Uint32(ad.end)),
+        array(Bool.class, ads, ad -> new Bool(ad.approved)));
+  }
+
+  private List<Type> inventory(long inventoryId) {
+    final var inventory = inventories.get(inventoryId);
+    if (inventory == null) {
+      return null;
+    }
+    return Arrays.<Type>asList(
+        new Uint256(inventory.inventoryId),
+        new Address(inventory.owner),
+        new Utf8String(inventory.name),
+        new Utf8String(inventory.uri),
+        new Utf8String(inventory.publicKey),
+        new Uint256(inventory.floorPrice));
+  }
+
+  private List<Type> inventories(int offset, int limit) {
+    if (limit <= 0 || limit > MAX_INVENTORIES_PER_PAGE || offset > inventories.size()) {
+      return null;
+    }
+    // as the contract does, arrays are sized offset + limit and the tail is left zero
+    final var upper = Math.min(inventories.size(), offset + limit);
+    final var page = inventories.values().stream()
+        .skip(offset)
+        .limit(limit)
+        .collect(Collectors.toList());
+    for (int idx = page.size(); idx < upper; idx++) {
+      page.add(new Inventory(0, ZERO_ADDRESS, "", "", "", 0));
+    }
+    return Arrays.<Type>asList(
+        array(Uint256.class, page, inventory -> new Uint256(inventory.inventoryId)),
+        array(Address.class, page, inventory -> new Address(inventory.owner)),
+        array(Utf8String.class, page, inventory -> new Utf8String(inventory.name)),
+        array(Utf8String.class, page, inventory -> new Utf8String(inventory.uri)),
+        array(Utf8String.class, page, inventory -> new Utf8String(inventory.publicKey)),
+        array(Uint256.class, page, inventory -> new Uint256(inventory.floorPrice)));
+  }
+
+  @SuppressWarnings("rawtypes")
+  private static <E, T extends Type> DynamicArray<T> array(
+      Class<T> type, List<E> elements, Function<E, T> mapper
+  ) {
+    return new DynamicArray<>(type,
+        elements.stream().map(mapper).collect(Collectors.toList()));
+  }
+
+  private static String selectorOf(String function, int arguments) {
+    final var inputs = new ArrayList<Type>();
+    for (int idx = 0; idx < arguments; idx++) {
+      inputs.add(new Uint256(0));
+    }
+    return FunctionEncoder.encode(
+        new org.web3j.abi.datatypes.Function(function, inputs, List.of())).substring(2, 10);
+  }
+
+  private static String word(BigInteger value) {
+    return Numeric.toHexStringWithPrefixZeroPadded(value, 64);
+  }
+
+  @Override
+  public void close() {
+    server.close();
+  }
+
+  private static class Inventory {
+
+    final long inventoryId;
+    final String owner;
+    final String name;
+    final String uri;
+    final String publicKey;
+    final long floorPrice;
+
+    Inventory(long inventoryId, String owner, String name, String uri, String publicKey,
+        long floorPrice) {
+      this.inventoryId = inventoryId;
+      this.owner = owner;
+      this.name = name;
+      this.uri = uri;
+      this.publicKey = publicKey;
+      this.floorPrice = floorPrice;
+    }
+  }
+
+  private static class Ad {
+
+    final long adId;
+    final long inventoryId;
+    final byte[] adHash;
+    final byte[] adHashForDelivery;
+    final long start;
+    final long end;
+    boolean approved;
+
+    Ad(long adId, long inventoryId, byte[] adHash, byte[] adHashForDelivery, long start,
+        long end) {
+      this.adId = adId;
+      this.inventoryId = inventoryId;
+      this.adHash = adHash;
+      this.adHashForDelivery = adHashForDelivery;
+      this.start = start;
+      this.end = end;
+    }
+  }
+
+}
@@ -0,0 +1,141 @@
+package jp.deftfitf.adnetwork.support;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.math.BigInteger;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.List;
+import java.util.stream.Collectors;
+import jp.deftfitf.adnetwork.chain.AdNetworkBatchReader;
+import jp.deftfitf.adnetwork.chain.AdNetworkEvent;
+import jp.deftfitf.adnetwork.chain.AdNetworkEvent.Type;
+import jp.deftfitf.adnetwork.chain.Web3jAdNetworkLogSource;
+import jp.deftfitf.adnetwork.crypto.AdFormatDecryptor;
+import jp.deftfitf.adnetwork.metrics.ReloadMetrics;
+import jp.deftfitf.adnetwork.repository.AdFormatCacheRepository;
+import jp.deftfitf.adnetwork.repository.InventoryCacheRepository;
+import jp.deftfitf.adnetwork.repository.StorageRepository;
+import jp.deftfitf.adnetwork.selection.UniformSelectionStrategy;
+import jp.deftfitf.adnetwork.setting.AdNetworkContractSetting;
+import jp.deftfitf.adnetwork.setting.EthRpcSetting;
+import jp.deftfitf.adnetwork.setting.InventoryCacheSetting;
+import jp.deftfitf.adnetwork.setting.ShardSetting;
+import jp.deftfitf.adnetwork.setting.StorageSetting;
+import jp.deftfitf.adnetwork.shard.InventoryShard;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.web3j.adnetwork.AdNetwork;
+import org.web3j.crypto.Credentials;
+import org.web3j.protocol.Web3j;
+import org.web3j.protocol.http.HttpService;
+import org.web3j.tx.gas.DefaultGasProvider;
+
+public class AdNetworkSimulatorTest {
+
+  private static final long NOW = 1646112949;
+
+  @TempDir
+  Path tempDir;
+
+  private final AdNetworkContractSetting contractSetting = new AdNetworkContractSetting();
+  private final Credentials credentials =
+      Credentials.create("0x8f2a55949038a9610f50fb23b5883af3b4ecb3c3bb792cbcefbd1542c692be63");
+  private SyntheticAdNetwork network;
+  private AdNetworkSimulator simulator;
+  private Web3j web3j;
+  private AdNetworkBatchReader reader;
+
+  @BeforeEach
+  public void setUp() throws Exception {
+    network = SyntheticAdNetwork.generate(3, 4, NOW, 0);
+    simulator = new AdNetworkSimulator();
+    network.deploy(simulator);
+    web3j = Web3j.build(new HttpService(simulator.url()));
+    contractSetting.setAddress(AdNetworkSimulator.CONTRACT_ADDRESS);
+    reader = new AdNetworkBatchReader(web3j, credentials, contractSetting, new EthRpcSetting(),
+        new SimpleMeterRegistry());
+  }
+
+  @AfterEach
+  public void tearDown() {
+    web3j.shutdown();
+    simulator.close();
+  }
+
+  @Test
+  public void answersContractCalls() throws Exception {
+    final var ads = reader.getAdsOf(List.of(1L, 2L, 3L));
+    assertEquals(3, ads.size());
+    assertEquals(network.getAdsOf().get(2L).component1(), ads.get(2L).component1());
+    assertEquals(List.of(true, true, true, true), ads.get(2L).component7());
+
+    final var inventories = reader.getInventoryAsync(List.of(3L, 4L)).join();
+    assertEquals(BigInteger.valueOf(3), inventories.get(3L).component1());
+    assertFalse(inventories.containsKey(4L));
+
+    final var page = AdNetwork.load(AdNetworkSimulator.CONTRACT_ADDRESS, web3j, credentials,
+        new DefaultGasProvider()).getInventories(BigInteger.ONE, BigInteger.TEN).send();
+    assertEquals(List.of(BigInteger.valueOf(2), BigInteger.valueOf(3), BigInteger.ZERO),
+        page.component1());
+  }
+
+  @Test
+  public void emitsEventsPerBlock() throws Exception {
+    final var logSource = new Web3jAdNetworkLogSource(web3j, contractSetting);
+    // one inventory creation, and a creation and an approval per ad
+    assertEquals(3 + 3 * 4 * 2, logSource.latestBlockNumber());
+
+    simulator.rejectAd(1, 2);
+    final var latest = logSource.latestBlockNumber();
+    final var events = logSource.fetch(latest, latest);
+    assertEquals(List.of(AdNetworkEvent.of(Type.AD_REJECTED, latest, 0, 1, 2)), events);
+
+    final var created = logSource.fetch(1, latest).stream()
+        .filter(event -> event.getType() == Type.INVENTORY_CREATED)
+        .map(AdNetworkEvent::getInventoryId)
+        .collect(Collectors.toList());
+    assertEquals(List.of(1L, 2L, 3L), created);
+  }
+
+  @Test
+  public void reloadsAdsFromSimulator() throws Exception {
+    final var storageSetting = new StorageSetting();
+    storageSetting.setBaseDirectory(tempDir.toString());
+    final var storageRepository = new StorageRepository(storageSetting);
+    storageRepository.init();
+    network.store(storageRepository);
+
+    final var setting = new InventoryCacheSetting();
+    setting.setSnapshotEnabled(false);
+    final var adFormatDecryptor = new AdFormatDecryptor(setting);
+    final var inventoryCacheRepository = new InventoryCacheRepository(
+        Clock.fixed(Instant.ofEpochSecond(NOW), ZoneId.systemDefault()), reader,
+        network.getDeliveryPrivateKeyRepository(), storageRepository,
+        new AdFormatCacheRepository(setting), adFormatDecryptor,
+        new UniformSelectionStrategy(), setting, new EthRpcSetting(),
+        new ReloadMetrics(new SimpleMeterRegistry()),
+        new InventoryShard(new ShardSetting()));
+    adFormatDecryptor.init();
+    inventoryCacheRepository.init();
+    try {
+      inventoryCacheRepository.reload();
+    } finally {
+      inventoryCacheRepository.shutdown();
+      adFormatDecryptor.shutdown();
+      storageRepository.shutdown();
+    }
+
+    final var stats = inventoryCacheRepository.stats();
+    assertEquals(3, stats.getInventories());
+    assertEquals(12, stats.getDeliverableAds());
+    assertEquals(simulator.blockNumber(), stats.getSourceBlockNumber());
+  }
+
+}
@@ -0,0 +1,150 @@
+package jp.deftfitf.adnetwork.support;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpRequest.BodyPublishers;
+import java.net.http.HttpResponse.BodyHandlers;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import jp.deftfitf.adnetwork.dto.DeliverableAd;
+
+/**
+ * Open-loop driver of /delivery. Requests are sent at a fixed rate whether or not earlier ones have
+ * completed, and latency is measured from the time a request was due, so a stalled server shows up
+ * in the percentiles instead of slowing the driver down. Requests which would exceed
+ * {@code maxOutstanding} are dropped and counted.
+ */
+public class DeliveryLoadDriver {
+
+  private final HttpClient httpClient = HttpClient.newBuilder()
+      .version(HttpClient.Version.HTTP_1_1)
+      .build();
+  private final URI deliveryUri;
+  private final int inventoryCount;
+  private final int maxOutstanding;
+
+  /**
+   * @param inventoryCount requests are spread uniformly over inventories 1 to inventoryCount
+   */
+  public DeliveryLoadDriver(URI deliveryUri, int inventoryCount, int maxOutstanding) {
+    this.deliveryUri = deliveryUri;
+    this.inventoryCount = inventoryCount;
+    this.maxOutstanding = maxOutstanding;
+  }
+
+  public Report run(int requestsPerSecond, Duration duration) throws InterruptedException {
+    final var total = (int) Math.min(Integer.MAX_VALUE - 8,
+        requestsPerSecond * duration.toSeconds());
+    final var intervalNanos = TimeUnit.SECONDS.toNanos(1) / requestsPerSecond;
+    final var requests = new HttpRequest[inventoryCount];
+    for (int idx = 0; idx < inventoryCount; idx++) {
+      requests[idx] = HttpRequest.newBuilder(deliveryUri)
+          .header("Content-Type", "application/json")
+          .POST(BodyPublishers.ofString("{\"inventoryId\":" + (idx + 1) + "}"))
+          .build();
+    }
+
+    // latencies are written by completion threads, each to its own slot
+    final var latencies = new long[total];
+    Arrays.fill(latencies, -1);
+    final var outstanding = new Semaphore(maxOutstanding);
+    final var hits = new AtomicInteger();
+    final var errors = new AtomicInteger();
+    final var random = new Random(0);
+    var dropped = 0;
+
+    final var startedAt = System.nanoTime();
+    for (int idx = 0; idx < total; idx++) {
+      final var dueAt = startedAt + idx * intervalNanos;
+      long wait;
+      while ((wait = dueAt - System.nanoTime()) > 0) {
+        LockSupport.parkNanos(wait);
+      }
+      if (!outstanding.tryAcquire()) {
+        dropped++;
+        continue;
+      }
+      final var slot = idx;
+      httpClient.sendAsync(requests[random.nextInt(inventoryCount)], BodyHandlers.ofByteArray())
+          .whenComplete((response, e) -> {
+            latencies[slot] = System.nanoTime() - dueAt;
+            if (e != null || response.statusCode() != 200) {
+              errors.incrementAndGet();
+            } else if (!Arrays.equals(DeliverableAd.NOT_FOUND_RESPONSE_BODY, response.body())) {
+              hits.incrementAndGet();
+            }
+            outstanding.release();
+          });
+    }
+    outstanding.acquire(maxOutstanding);
+    final var elapsedNanos = System.nanoTime() - startedAt;
+
+    final var completed = Arrays.stream(latencies).filter(latency -> latency >= 0).sorted()
+        .toArray();
+    return new Report(total, completed, dropped, errors.get(), hits.get(), elapsedNanos);
+  }
+
+  public static class Report {
+
+    private final int sent;
+    private final long[] sortedLatencies;
+    private final int dropped;
+    private final int errors;
+    private final int hits;
+    private final long elapsedNanos;
+
+    Report(int sent, long[] sortedLatencies, int dropped, int errors, int hits,
+        long elapsedNanos) {
+      this.sent = sent;
+      this.sortedLatencies = sortedLatencies;
+      this.dropped = dropped;
+      this.errors = errors;
+      this.hits = hits;
+      this.elapsedNanos = elapsedNanos;
+    }
+
+    public int getCompleted() {
+      return sortedLatencies.length;
+    }
+
+    public int getErrors() {
+      return errors;
+    }
+
+    public int getHits() {
+      return hits;
+    }
+
+    public double throughput() {
+      return (sortedLatencies.length - errors) / (elapsedNanos / 1e9);
+    }
+
+    /**
+     * @return latency of the quantile in microseconds
+     */
+    public long percentile(double quantile) {
+      if (sortedLatencies.length == 0) {
+        return 0;
+      }
+      final var idx = (int) Math.ceil(quantile * sortedLatencies.length) - 1;
+      return sortedLatencies[Math.max(0, idx)] / 1000;
+    }
+
+    @Override
+    public String toString() {
+      return String.format(
+          "sent=%d completed=%d dropped=%d errors=%d hits=%d throughput=%.1f/s%n"
+              + "latency us: p50=%d p90=%d p99=%d p99.9=%d max=%d",
+          sent, getCompleted(), dropped, errors, hits, throughput(),
+          percentile(0.5), percentile(0.9), percentile(0.99), percentile(0.999),
+          percentile(1.0));
+    }
+  }
+
+}
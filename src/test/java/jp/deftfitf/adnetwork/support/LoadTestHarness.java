@@ -0,0 +1,148 @@
+package jp.deftfitf.adnetwork.support;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.nio.file.Files;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import jp.deftfitf.adnetwork.chain.AdNetworkBatchReader;
+import jp.deftfitf.adnetwork.chain.rpc.ResilientHttpService;
+import jp.deftfitf.adnetwork.crypto.AdFormatDecryptor;
+import jp.deftfitf.adnetwork.delivery.EventLoopDeliveryServer;
+import jp.deftfitf.adnetwork.metrics.DeliveryMetrics;
+import jp.deftfitf.adnetwork.metrics.ReloadMetrics;
+import jp.deftfitf.adnetwork.repository.AdFormatCacheRepository;
+import jp.deftfitf.adnetwork.repository.InventoryCacheRepository;
+import jp.deftfitf.adnetwork.repository.StorageRepository;
+import jp.deftfitf.adnetwork.selection.PriceWeightedSelectionStrategy;
+import jp.deftfitf.adnetwork.setting.AdNetworkContractSetting;
+import jp.deftfitf.adnetwork.setting.DeliverySetting;
+import jp.deftfitf.adnetwork.setting.EthRpcSetting;
+import jp.deftfitf.adnetwork.setting.InventoryCacheSetting;
+import jp.deftfitf.adnetwork.setting.MetricsSetting;
+import jp.deftfitf.adnetwork.setting.ShardSetting;
+import jp.deftfitf.adnetwork.setting.StorageSetting;
+import jp.deftfitf.adnetwork.shard.DeliveryForwarder;
+import jp.deftfitf.adnetwork.shard.InventoryShard;
+import okhttp3.OkHttpClient;
+import org.web3j.crypto.Credentials;
+import org.web3j.protocol.Web3j;
+
+/**
+ * Offline load test of the delivery server, without Ganache. N inventories with M ads each are
+ * deployed to {@link AdNetworkSimulator}, loaded by a cold reload through the JSON-RPC client, and
+ * served by {@link EventLoopDeliveryServer} under an open-loop load.
+ *
+ * <pre>
+ * ./gradlew loadTest -PloadTestArgs="--inventories=1000 --ads=10 --rpc-latency-ms=20 --rate=20000"
+ * </pre>
+ */
+public class LoadTestHarness {
+
+  private static final long NOW = 1646112949;
+
+  public static void main(String[] args) throws Exception {
+    final var options = parse(args);
+    final var inventories = Integer.parseInt(options.getOrDefault("inventories", "1000"));
+    final var adsPerInventory = Integer.parseInt(options.getOrDefault("ads", "10"));
+    final var rpcLatency = Duration.ofMillis(
+        Long.parseLong(options.getOrDefault("rpc-latency-ms", "20")));
+    final var rate = Integer.parseInt(options.getOrDefault("rate", "10000"));
+    final var duration = Duration.ofSeconds(
+        Long.parseLong(options.getOrDefault("duration-s", "30")));
+    final var batchSize = Integer.parseInt(options.getOrDefault("batch-size", "100"));
+    final var maxOutstanding = Integer.parseInt(options.getOrDefault("max-outstanding", "10000"));
+
+    System.out.printf("generating %d inventories x %d ads%n", inventories, adsPerInventory);
+    final var network = SyntheticAdNetwork.generate(inventories, adsPerInventory, NOW, 0);
+    final var storageSetting = new StorageSetting();
+    final var storageDirectory = Files.createTempDirectory("adnetwork-load-test");
+    storageSetting.setBaseDirectory(storageDirectory.toString());
+    final var storageRepository = new StorageRepository(storageSetting);
+    storageRepository.init();
+    network.store(storageRepository);
+
+    try (final var simulator = new AdNetworkSimulator()) {
+      network.deploy(simulator);
+      simulator.latency(rpcLatency);
+
+      final var rpcSetting = new EthRpcSetting();
+      rpcSetting.setBatchSize(batchSize);
+      final var rpcExecutor = Executors.newFixedThreadPool(rpcSetting.getAsyncParallelism());
+      final var registry = new SimpleMeterRegistry();
+      final var web3j = Web3j.build(new ResilientHttpService(simulator.url(),
+          new OkHttpClient.Builder().callTimeout(rpcSetting.getCallTimeout()).build(),
+          rpcSetting, rpcExecutor, registry));
+      final var contractSetting = new AdNetworkContractSetting();
+      contractSetting.setAddress(AdNetworkSimulator.CONTRACT_ADDRESS);
+      final var credentials =
+          Credentials.create("0x8f2a55949038a9610f50fb23b5883af3b4ecb3c3bb792cbcefbd1542c692be63");
+
+      final var cacheSetting = new InventoryCacheSetting();
+      cacheSetting.setSnapshotEnabled(false);
+      final var adFormatDecryptor = new AdFormatDecryptor(cacheSetting);
+      adFormatDecryptor.init();
+      final var inventoryCacheRepository = new InventoryCacheRepository(
+          Clock.fixed(Instant.ofEpochSecond(NOW), ZoneId.systemDefault()),
+          new AdNetworkBatchReader(web3j, credentials, contractSetting, rpcSetting, registry),
+          network.getDeliveryPrivateKeyRepository(), storageRepository,
+          new AdFormatCacheRepository(cacheSetting), adFormatDecryptor,
+          new PriceWeightedSelectionStrategy(), cacheSetting, rpcSetting,
+          new ReloadMetrics(registry),
+          new InventoryShard(new ShardSetting()));
+      inventoryCacheRepository.init();
+
+      final var reloadStartedAt = System.nanoTime();
+      inventoryCacheRepository.reload();
+      System.out.printf("cold reload: %d ms over %d JSON-RPC calls, %s%n",
+          TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - reloadStartedAt),
+          simulator.callCount(), inventoryCacheRepository.stats());
+
+      final var deliverySetting = new DeliverySetting();
+      try (final var socket = new ServerSocket(0)) {
+        deliverySetting.setEventLoopPort(socket.getLocalPort());
+      }
+      final var deliveryMetrics = new DeliveryMetrics(registry, new MetricsSetting());
+      final var shardSetting = new ShardSetting();
+      final var server = new EventLoopDeliveryServer(inventoryCacheRepository, deliverySetting,
+          deliveryMetrics, new InventoryShard(shardSetting),
+          new DeliveryForwarder(shardSetting, deliveryMetrics), shardSetting);
+      server.start();
+      try {
+        final var driver = new DeliveryLoadDriver(
+            URI.create("http://localhost:" + deliverySetting.getEventLoopPort() + "/delivery"),
+            inventories, maxOutstanding);
+        System.out.printf("driving %d req/s for %d s%n", rate, duration.toSeconds());
+        System.out.println(driver.run(rate, duration));
+      } finally {
+        server.stop();
+        inventoryCacheRepository.shutdown();
+        adFormatDecryptor.shutdown();
+        web3j.shutdown();
+        rpcExecutor.shutdownNow();
+        storageRepository.shutdown();
+      }
+    }
+    System.exit(0);
+  }
+
+  private static Map<String, String> parse(String[] args) {
+    final var options = new HashMap<String, String>();
+    for (final var arg : args) {
+      if (!arg.startsWith("--") || !arg.contains("=")) {
+        throw new IllegalArgumentException("expected --name=value: " + arg);
+      }
+      final var separator = arg.indexOf('=');
+      options.put(arg.substring(2, separator), arg.substring(separator + 1));
+    }
+    return options;
+  }
+
+}
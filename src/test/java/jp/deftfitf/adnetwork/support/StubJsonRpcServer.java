@@ -0,0 +1,160 @@
+package jp.deftfitf.adnetwork.support;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Local JSON-RPC endpoint which answers with registered handlers and counts HTTP requests and
+ * JSON-RPC calls. Batch requests are answered in the same order, or in reverse order as JSON-RPC
+ * allows. Latency and HTTP errors can be injected to exercise the client's timeouts and retries.
+ */
+public class StubJsonRpcServer implements AutoCloseable {
+
+  private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+  private final HttpServer server;
+  private final ExecutorService executor = Executors.newCachedThreadPool();
+  private final Map<String, Function<JsonNode, Object>> methods = new ConcurrentHashMap<>();
+  private final AtomicInteger httpRequestCount = new AtomicInteger();
+  private final AtomicInteger callCount = new AtomicInteger();
+  private final AtomicInteger failuresToInject = new AtomicInteger();
+  private volatile int failureStatus = 503;
+  private volatile Duration latency = Duration.ZERO;
+  private volatile boolean reverseBatches = false;
+
+  public StubJsonRpcServer() throws IOException {
+    server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+    server.createContext("/", this::handle);
+    server.setExecutor(executor);
+    server.start();
+  }
+
+  public String url() {
+    return "http://127.0.0.1:" + server.getAddress().getPort();
+  }
+
+  /**
+   * @param handler receives `params` and returns `result`. A thrown exception becomes an error.
+   */
+  public StubJsonRpcServer on(String method, Function<JsonNode, Object> handler) {
+    methods.put(method, handler);
+    return this;
+  }
+
+  /**
+   * Delay every response by the latency.
+   */
+  public StubJsonRpcServer latency(Duration latency) {
+    this.latency = latency;
+    return this;
+  }
+
+  /**
+   * Answer the calls of a batch request in reverse order.
+   */
+  public StubJsonRpcServer reverseBatches(boolean reverseBatches) {
+    this.reverseBatches = reverseBatches;
+    return this;
+  }
+
+  /**
+   * Answer the next requests with the HTTP status and an empty body.
+   */
+  public StubJsonRpcServer failNext(int count, int httpStatus) {
+    failureStatus = httpStatus;
+    failuresToInject.set(count);
+    return this;
+  }
+
+  public int httpRequestCount() {
+    return httpRequestCount.get();
+  }
+
+  public int callCount() {
+    return callCount.get();
+  }
+
+  private void handle(HttpExchange exchange) throws IOException {
+    httpRequestCount.incrementAndGet();
+    final JsonNode request;
+    try (final var is = exchange.getRequestBody()) {
+      request = OBJECT_MAPPER.readTree(is);
+    }
+    try {
+      Thread.sleep(latency.toMillis());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return;
+    }
+    if (failuresToInject.getAndUpdate(count -> Math.max(0, count - 1)) > 0) {
+      exchange.sendResponseHeaders(failureStatus, -1);
+      exchange.close();
+      return;
+    }
+
+    final JsonNode response;
+    if (request.isArray()) {
+      final var responses = OBJECT_MAPPER.createArrayNode();
+      request.forEach(call -> {
+        if (reverseBatches) {
+          responses.insert(0, respond(call));
+        } else {
+          responses.add(respond(call));
+        }
+      });
+      response = responses;
+    } else {
+      response = respond(request);
+    }
+
+    final var body = OBJECT_MAPPER.writeValueAsBytes(response);
+    exchange.getResponseHeaders().add("Content-Type", "application/json");
+    exchange.sendResponseHeaders(200, body.length);
+    try (final var os = exchange.getResponseBody()) {
+      os.write(body);
+    }
+  }
+
+  private ObjectNode respond(JsonNode call) {
+    callCount.incrementAndGet();
+    final var response = OBJECT_MAPPER.createObjectNode();
+    response.put("jsonrpc", "2.0");
+    response.set("id", call.get("id"));
+
+    final var handler = methods.get(call.get("method").asText());
+    if (handler == null) {
+      return response.set("error", error(-32601, "method not found"));
+    }
+    try {
+      return response.set("result", OBJECT_MAPPER.valueToTree(handler.apply(call.get("params"))));
+    } catch (RuntimeException e) {
+      return response.set("error", error(-32000, String.valueOf(e.getMessage())));
+    }
+  }
+
+  private static ObjectNode error(int code, String message) {
+    final var error = OBJECT_MAPPER.createObjectNode();
+    error.put("code", code);
+    error.put("message", message);
+    return error;
+  }
+
+  @Override
+  public void close() {
+    server.stop(0);
+    executor.shutdownNow();
+  }
+
+}
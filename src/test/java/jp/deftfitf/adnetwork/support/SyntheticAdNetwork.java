@@ -0,0 +1,192 @@
+package jp.deftfitf.adnetwork.support;
+
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import java.io.ByteArrayInputStream;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import jp.deftfitf.adnetwork.chain.AdNetworkBatchReader;
+import jp.deftfitf.adnetwork.dto.AdFormatV1Dto;
+import jp.deftfitf.adnetwork.repository.DeliveryPrivateKeyRepository;
+import jp.deftfitf.adnetwork.repository.StorageRepository;
+import jp.deftfitf.adnetwork.setting.KeyStoreSetting;
+import org.web3j.crypto.Hash;
+import org.web3j.tuples.generated.Tuple7;
+import org.web3j.utils.Numeric;
+
+/**
+ * Generates N inventories with M approved ads each, as the contract and the storage would return
+ * them. Ad formats are real RSA/AES envelopes, which the application decrypts as it does those of
+ * DApps. Every inventory shares one RSA key pair, so that generating large networks stays cheap.
+ * The same seed generates the same ads, except for the random parts of the envelopes.
+ *
+ * <p>The network is served either by mocks, or by {@link #deploy(AdNetworkSimulator)} and
+ * {@link #store(StorageRepository)}.
+ */
+public final class SyntheticAdNetwork {
+
+  private static final String OWNER = "0x9F3868ce2fc5e535da82fa1cC3A779EACf75285E";
+
+  private final long now;
+  private final DeliveryPrivateKeyRepository deliveryPrivateKeyRepository =
+      new DeliveryPrivateKeyRepository(new KeyStoreSetting());
+  private final Map<Long, Tuple7<
+      List<BigInteger>, List<BigInteger>, List<byte[]>, List<byte[]>,
+      List<BigInteger>, List<BigInteger>, List<Boolean>>> inventoryIdToAds = new HashMap<>();
+  private final Map<String, byte[]> adFormats = new HashMap<>();
+  private KeyPair keyPair;
+
+  private SyntheticAdNetwork(long now) {
+    this.now = now;
+  }
+
+  /**
+   * @param now epoch second at which every ad is deliverable
+   */
+  public static SyntheticAdNetwork generate(int inventoryCount, int adsPerInventory, long now,
+      long seed) throws GeneralSecurityException, JsonProcessingException {
+    final var network = new SyntheticAdNetwork(now);
+    final var random = new Random(seed);
+    final var keyPair = AdFormatV1Encoder.generateKeyPair();
+    network.keyPair = keyPair;
+    for (long inventoryId = 1; inventoryId <= inventoryCount; inventoryId++) {
+      network.deliveryPrivateKeyRepository.save(inventoryId, keyPair.getPrivate());
+
+      final var adIds = new ArrayList<BigInteger>(adsPerInventory);
+      final var inventoryIds = new ArrayList<BigInteger>(adsPerInventory);
+      final var adHashes = new ArrayList<byte[]>(adsPerInventory);
+      final var startTimes = new ArrayList<BigInteger>(adsPerInventory);
+      final var endTimes = new ArrayList<BigInteger>(adsPerInventory);
+      for (int idx = 0; idx < adsPerInventory; idx++) {
+        final var adId = (inventoryId - 1) * adsPerInventory + idx + 1;
+        final var startTime = now - 1 - random.nextInt(3600);
+        final var endTime = now + 3600 + random.nextInt(86400);
+        final var adFormatV1Dto = new AdFormatV1Dto(inventoryId,
+            OWNER, startTime, endTime,
+            100L + random.nextInt(10000), "Ad " + adId, "Description of ad " + adId,
+            "http://localhost:3000/lp/" + adId, "http://localhost:8080/public/images/" + adId
+            + ".jpeg", Long.toHexString(random.nextLong()));
+        final var encoded = AdFormatV1Encoder.encode(keyPair.getPublic(), adFormatV1Dto)
+            .getBytes(StandardCharsets.UTF_8);
+        final var adHash = Hash.sha3(encoded);
+        network.adFormats.put("ad-formats/" + Numeric.toHexStringNoPrefix(adHash), encoded);
+
+        adIds.add(BigInteger.valueOf(adId));
+        inventoryIds.add(BigInteger.valueOf(inventoryId));
+        adHashes.add(adHash);
+        startTimes.add(BigInteger.valueOf(startTime));
+        endTimes.add(BigInteger.valueOf(endTime));
+      }
+      network.inventoryIdToAds.put(inventoryId, new Tuple7<>(
+          adIds,
+          inventoryIds,
+          adHashes,
+          adHashes,
+          startTimes,
+          endTimes,
+          Collections.nCopies(adsPerInventory, true)));
+    }
+    return network;
+  }
+
+  public long getNow() {
+    return now;
+  }
+
+  /**
+   * @return a repository holding the private key of every inventory
+   */
+  public DeliveryPrivateKeyRepository getDeliveryPrivateKeyRepository() {
+    return deliveryPrivateKeyRepository;
+  }
+
+  /**
+   * @return getAdsOf results by inventory id
+   */
+  public Map<Long, Tuple7<
+      List<BigInteger>, List<BigInteger>, List<byte[]>, List<byte[]>,
+      List<BigInteger>, List<BigInteger>, List<Boolean>>> getAdsOf() {
+    return inventoryIdToAds;
+  }
+
+  /**
+   * Create every inventory and ad on the simulator, and approve the ads.
+   */
+  public void deploy(AdNetworkSimulator simulator) {
+    final var publicKey = Base64.getEncoder().encodeToString(keyPair.getPublic().getEncoded());
+    for (final var entry : inventoryIdToAds.entrySet()) {
+      final long inventoryId = entry.getKey();
+      simulator.createInventory(inventoryId, OWNER, "inventory " + inventoryId,
+          "http://localhost:3000/inventories/" + inventoryId, publicKey, 100);
+      final var ads = entry.getValue();
+      for (int idx = 0; idx < ads.component1().size(); idx++) {
+        final var adId = ads.component1().get(idx).longValue();
+        simulator.createAd(inventoryId, adId, ads.component3().get(idx),
+            ads.component4().get(idx), ads.component5().get(idx).longValue(),
+            ads.component6().get(idx).longValue());
+        simulator.approveAd(inventoryId, adId);
+      }
+    }
+  }
+
+  /**
+   * Save every encrypted ad format to the storage.
+   */
+  public void store(StorageRepository storageRepository) {
+    adFormats.forEach((key, adFormat) ->
+        storageRepository.save(key, new ByteArrayInputStream(adFormat)));
+  }
+
+  /**
+   * @return a reader answering one JSON-RPC batch per call after the latency on the executor
+   */
+  public AdNetworkBatchReader batchReader(Executor executor, long latencyMillis) {
+    final var reader = mock(AdNetworkBatchReader.class);
+    when(reader.getAdsOfAsync(anyCollection())).thenAnswer(invocation -> {
+      final Collection<Long> inventoryIds = invocation.getArgument(0);
+      return CompletableFuture.supplyAsync(() -> {
+        if (latencyMillis > 0) {
+          try {
+            Thread.sleep(latencyMillis);
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+        }
+        return inventoryIds.stream()
+            .collect(Collectors.toMap(Function.identity(), inventoryIdToAds::get));
+      }, executor);
+    });
+    return reader;
+  }
+
+  /**
+   * @return a storage holding the encrypted ad format of every ad in memory
+   */
+  public StorageRepository storageRepository() {
+    final var storageRepository = mock(StorageRepository.class);
+    when(storageRepository.loadBuffer(anyString()))
+        .thenAnswer(invocation ->
+            ByteBuffer.wrap(adFormats.get(invocation.<String>getArgument(0))));
+    return storageRepository;
+  }
+
+}